@@ -0,0 +1,201 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College)
+
+All rights reserved.  Revision $REV ($DATE)
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package acme.util.bench;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CyclicBarrier;
+
+import acme.util.Statistics;
+
+/**
+ * A small JMH-style driver for the benchmarks under bench/. Each benchmark runs at 1, 2, 4, ...
+ * maxThreads threads. Every thread count gets its own warmup iterations, then measured
+ * iterations of a fixed duration. The driver reports throughput summed over all threads as
+ * mean +- the 95% confidence half-width over the measured iterations (see Statistics).
+ *
+ * Run with "ant bench-run -Dbench.args=..." or
+ *
+ * <pre>
+ *   java -cp classes:build/bench-classes acme.util.bench.BenchRunner [-t maxThreads] [-w warmups]
+ *        [-i iterations] [-ms millisPerIteration] [pattern ...]
+ * </pre>
+ *
+ * A benchmark runs if its suite-qualified name ("VectorClockBench.max/8") contains one of the
+ * patterns, or if no patterns are given. A suite is a class with a static benchmarks() method
+ * returning a List of Bench. The default suites are listed in SUITES.
+ */
+public class BenchRunner {
+
+	static final String[] SUITES = { "tools.util.EpochBench", "tools.util.VectorClockBench",
+			"tools.fasttrack.FTVarStateModelBench", "tools.fasttrack.SamplingPolicyBench",
+			"rr.state.ArrayStateFactoryBench",
+			"acme.util.identityhash.ConcurrentIdentityHashMapBench" };
+
+	// operations per call to Bench.run between checks of stop.
+	private static final int BATCH = 256;
+
+	// stride between per-thread slots in the result array, to keep them on separate lines.
+	private static final int PAD = 16;
+
+	private static volatile boolean stop;
+
+	// results of Bench.run end up here, so the JIT cannot remove them.
+	public static volatile long blackhole;
+
+	/** Throughput in operations per microsecond for each measured iteration. */
+	public static double[] measure(final Bench b, final int threads, final int warmups,
+			final int iterations, final long millis) throws Exception {
+		b.setup(threads);
+		final int rounds = warmups + iterations;
+		final CyclicBarrier start = new CyclicBarrier(threads + 1);
+		final CyclicBarrier end = new CyclicBarrier(threads + 1);
+		final long[] ops = new long[threads * PAD];
+		final Thread[] workers = new Thread[threads];
+		for (int t = 0; t < threads; t++) {
+			final int tid = t;
+			workers[t] = new Thread("Bench-" + tid) {
+				@Override
+				public void run() {
+					try {
+						b.setupThread(tid);
+						long sink = 0;
+						for (int r = 0; r < rounds; r++) {
+							start.await();
+							long n = 0;
+							while (!stop) {
+								sink += b.run(tid, BATCH);
+								n += BATCH;
+							}
+							ops[tid * PAD] = n;
+							end.await();
+						}
+						blackhole += sink;
+					} catch (Exception e) {
+						throw new RuntimeException(e);
+					}
+				}
+			};
+			workers[t].start();
+		}
+
+		final double[] result = new double[iterations];
+		for (int r = 0; r < rounds; r++) {
+			stop = false;
+			start.await();
+			final long t0 = System.nanoTime();
+			Thread.sleep(millis);
+			stop = true;
+			end.await();
+			final long elapsed = System.nanoTime() - t0;
+			long total = 0;
+			for (int t = 0; t < threads; t++) {
+				total += ops[t * PAD];
+			}
+			if (r >= warmups) {
+				result[r - warmups] = total / (elapsed / 1000.0);
+			}
+		}
+		for (Thread w : workers) {
+			w.join();
+		}
+		return result;
+	}
+
+	@SuppressWarnings("unchecked")
+	static List<Bench> suite(String className) throws Exception {
+		final Method m = Class.forName(className).getMethod("benchmarks");
+		return (List<Bench>) m.invoke(null);
+	}
+
+	public static void main(String[] args) throws Exception {
+		int maxThreads = Runtime.getRuntime().availableProcessors();
+		int warmups = 3;
+		int iterations = 5;
+		long millis = 200;
+		final List<String> patterns = new ArrayList<String>();
+		for (int i = 0; i < args.length; i++) {
+			if (args[i].equals("-t")) {
+				maxThreads = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-w")) {
+				warmups = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-i")) {
+				iterations = Integer.parseInt(args[++i]);
+			} else if (args[i].equals("-ms")) {
+				millis = Long.parseLong(args[++i]);
+			} else {
+				patterns.add(args[i]);
+			}
+		}
+
+		System.out.printf("%-50s %7s %12s %10s%n", "Benchmark", "Threads", "ops/us", "+-95%");
+		for (String className : SUITES) {
+			final String suiteName = className.substring(className.lastIndexOf('.') + 1);
+			for (Bench b : suite(className)) {
+				final String name = suiteName + "." + b.getName();
+				if (!matches(name, patterns)) {
+					continue;
+				}
+				for (int threads = 1; threads <= maxThreads; threads = next(threads, maxThreads)) {
+					final double[] r = measure(b, threads, warmups, iterations, millis);
+					System.out.printf("%-50s %7d %12.3f %10.3f%n", name, threads, Statistics.mean(r), Statistics.ci95(r));
+				}
+			}
+		}
+	}
+
+	private static boolean matches(String name, List<String> patterns) {
+		if (patterns.isEmpty()) {
+			return true;
+		}
+		for (String p : patterns) {
+			if (name.contains(p)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	// 1, 2, 4, ..., and maxThreads itself if it is not a power of two.
+	private static int next(int threads, int maxThreads) {
+		final int n = threads * 2;
+		return n > maxThreads && threads < maxThreads ? maxThreads : n;
+	}
+}
@@ -0,0 +1,120 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package acme.util.identityhash;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import acme.util.Util;
+import acme.util.bench.Bench;
+
+/**
+ * ConcurrentIdentityHashMap lookups on a shared, pre-filled map, and putIfAbsent/remove churn on
+ * keys private to each thread, with the caller passing the identity hash as ArrayStateFactory
+ * does. See BenchRunner.
+ */
+public class ConcurrentIdentityHashMapBench {
+
+	static final int KEYS = 4096;
+
+	public static List<Bench> benchmarks() {
+		final List<Bench> benches = new ArrayList<Bench>();
+		benches.add(new Bench("get") {
+			ConcurrentIdentityHashMap<Object, Object> map;
+			Object[] keys;
+			int[] hashes;
+
+			@Override
+			public void setup(int threads) {
+				map = new ConcurrentIdentityHashMap<Object, Object>((1 << 16) - 11, (float) 0.5,
+						threads);
+				keys = new Object[KEYS];
+				hashes = new int[KEYS];
+				for (int i = 0; i < KEYS; i++) {
+					keys[i] = new Object();
+					hashes[i] = Util.identityHashCode(keys[i]);
+					map.put(keys[i], keys[i]);
+				}
+			}
+
+			@Override
+			public long run(int tid, int ops) {
+				long sink = 0;
+				for (int i = 0, k = tid * 31; i < ops; i++, k = (k + 1) & (KEYS - 1)) {
+					if (map.get(keys[k], hashes[k]) != null) {
+						sink++;
+					}
+				}
+				return sink;
+			}
+		});
+		benches.add(new Bench("putIfAbsent+remove") {
+			ConcurrentIdentityHashMap<Object, Object> map;
+			Object[][] keys;
+
+			@Override
+			public void setup(int threads) {
+				map = new ConcurrentIdentityHashMap<Object, Object>((1 << 16) - 11, (float) 0.5,
+						threads);
+				keys = new Object[threads][];
+			}
+
+			@Override
+			public void setupThread(int tid) {
+				final Object[] k = new Object[KEYS / 16];
+				for (int i = 0; i < k.length; i++) {
+					k[i] = new Object();
+				}
+				keys[tid] = k;
+			}
+
+			@Override
+			public long run(int tid, int ops) {
+				final Object[] k = keys[tid];
+				long sink = 0;
+				for (int i = 0; i < ops; i++) {
+					final Object key = k[i % k.length];
+					final int hash = Util.identityHashCode(key);
+					if (map.putIfAbsent(key, key, hash) == null) {
+						sink++;
+					}
+					if ((i & 1) == 1) {
+						map.remove(k[(i - 1) % k.length]);
+					}
+				}
+				return sink;
+			}
+		});
+		return benches;
+	}
+}
@@ -0,0 +1,137 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package rr.state;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import acme.util.bench.Bench;
+import rr.state.ArrayStateFactory.ArrayMode;
+
+/**
+ * ArrayStateFactory.get for arrays found in the per-thread cache, arrays found in the global
+ * table, and the same table lookups with all threads sharing one set of arrays. All array states
+ * for those are created in setup, so they measure lookups only. The make benchmarks allocate a
+ * fresh FINE array per operation, so they measure inserts into the table while earlier arrays are
+ * being collected and expunged. See BenchRunner.
+ */
+public class ArrayStateFactoryBench {
+
+	// more arrays per thread than the per-thread cache holds.
+	static final int TABLE_ARRAYS = 256;
+	static final int CACHED_ARRAYS = 4;
+	// a row sweep over a 2-d array, as in the JavaGrande sor and lufact kernels.
+	static final int ROW_ARRAYS = 1000;
+
+	static class FactoryBench extends Bench {
+		final int arraysPerThread;
+		final boolean shared;
+		Object[][] arrays;
+		ArrayStateFactory[] factories;
+
+		FactoryBench(String name, int arraysPerThread, boolean shared) {
+			super(name);
+			this.arraysPerThread = arraysPerThread;
+			this.shared = shared;
+		}
+
+		@Override
+		public void setup(int threads) {
+			arrays = new Object[threads][];
+			factories = new ArrayStateFactory[threads];
+			if (shared) {
+				final Object[] a = makeArrays(arraysPerThread);
+				for (int t = 0; t < threads; t++) {
+					arrays[t] = a;
+				}
+			}
+		}
+
+		@Override
+		public void setupThread(int tid) {
+			if (!shared) {
+				arrays[tid] = makeArrays(arraysPerThread);
+			}
+			factories[tid] = new ArrayStateFactory(null, ArrayMode.FINE, false);
+		}
+
+		static Object[] makeArrays(int n) {
+			final Object[] a = new Object[n];
+			for (int i = 0; i < n; i++) {
+				a[i] = new int[16];
+				ArrayStateFactory.make(a[i], ArrayMode.FINE, false);
+			}
+			return a;
+		}
+
+		@Override
+		public long run(int tid, int ops) {
+			final ArrayStateFactory f = factories[tid];
+			final Object[] a = arrays[tid];
+			long sink = 0;
+			for (int i = 0; i < ops; i++) {
+				sink += f.get(a[i % a.length]).hashCode;
+			}
+			return sink;
+		}
+	}
+
+	static class MakeBench extends Bench {
+		final int length;
+
+		MakeBench(String name, int length) {
+			super(name);
+			this.length = length;
+		}
+
+		@Override
+		public long run(int tid, int ops) {
+			long sink = 0;
+			for (int i = 0; i < ops; i++) {
+				sink += ArrayStateFactory.make(new int[length], ArrayMode.FINE, false).hashCode;
+			}
+			return sink;
+		}
+	}
+
+	public static List<Bench> benchmarks() {
+		final List<Bench> benches = new ArrayList<Bench>();
+		benches.add(new FactoryBench("get/cached", CACHED_ARRAYS, false));
+		benches.add(new FactoryBench("get/table", TABLE_ARRAYS, false));
+		benches.add(new FactoryBench("get/sharedTable", TABLE_ARRAYS, true));
+		benches.add(new FactoryBench("get/rows", ROW_ARRAYS, false));
+		benches.add(new MakeBench("make/fine4", 4));
+		benches.add(new MakeBench("make/fine64", 64));
+		return benches;
+	}
+}
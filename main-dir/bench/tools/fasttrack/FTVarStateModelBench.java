@@ -0,0 +1,272 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import acme.util.bench.Bench;
+import rr.tool.RR;
+import tools.util.Epoch;
+import tools.util.VectorClock;
+
+/**
+ * A stand-alone model of the FT2 read and write rules on FTVarState: same-epoch, exclusive and
+ * read-shared. The rules are a copy of FastTrackTool.readFastPath/write with the ShadowThread
+ * fields passed in, since ts_get_E/ts_get_V only exist in an instrumented RoadRunner run. So this
+ * measures FTVarState and the shape of the rules, not FastTrackTool itself: a change to the tool's
+ * fast paths does not show up here unless it is copied below. Races are counted rather than
+ * reported. See BenchRunner.
+ *
+ * Every thread's clock is far ahead of every other thread's epoch, so the shared variables see no
+ * races and the benchmarks measure the race-free paths, including the monitor on contention.
+ */
+public class FTVarStateModelBench {
+
+	static final int MAX_THREADS = 64;
+	static final int INIT_VECTOR_CLOCK_SIZE = 4;
+
+	/** Per-thread clock and epoch, standing in for ts_get_V/ts_get_E. */
+	static final class ThreadClock {
+		final int tid;
+		final VectorClock V;
+		int/* epoch */ E;
+
+		ThreadClock(int tid) {
+			this.tid = tid;
+			V = new VectorClock(MAX_THREADS);
+			for (int i = 0; i < MAX_THREADS; i++) {
+				V.set(i, Epoch.make(i, Epoch.MAX_CLOCK));
+			}
+			E = Epoch.make(tid, 1);
+			V.set(tid, E);
+		}
+
+		// wraps around before the clock overflows into the tid bits; the other threads' view of
+		// this thread stays at MAX_CLOCK, so that is still race-free.
+		void tick() {
+			if (Epoch.clock(E) >= Epoch.MAX_CLOCK - 1) {
+				V.set(tid, Epoch.make(tid, 1));
+			} else {
+				V.tick(tid);
+			}
+			E = V.get(tid);
+		}
+	}
+
+	// returns 1 on a race, as FastTrackTool.readFastPath would return false.
+	static int read(FTVarState sx, ThreadClock st) {
+		final int/* epoch */ e = st.E;
+		final int tid = st.tid;
+		final int/* epoch */ r0 = sx.R;
+		if (r0 == e) {
+			return 0;
+		} else if (r0 == Epoch.READ_SHARED && sx.get(tid) == e) {
+			return 0;
+		}
+		synchronized (sx) {
+			final VectorClock tV = st.V;
+			final int/* epoch */ r = sx.R;
+			final int/* epoch */ w = sx.W;
+			final int wTid = Epoch.tid(w);
+			if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+				return 1;
+			}
+			if (r != Epoch.READ_SHARED) {
+				final int rTid = Epoch.tid(r);
+				if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
+					sx.R = e;
+				} else {
+					int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
+					sx.makeCV(initSize);
+					sx.set(rTid, r);
+					sx.set(tid, e);
+					sx.R = Epoch.READ_SHARED;
+				}
+			} else {
+				sx.set(tid, e);
+			}
+			return 0;
+		}
+	}
+
+	static int write(FTVarState sx, ThreadClock st) {
+		final int/* epoch */ e = st.E;
+		if (sx.W == e) {
+			return 0;
+		}
+		synchronized (sx) {
+			int races = 0;
+			final int/* epoch */ w = sx.W;
+			final int wTid = Epoch.tid(w);
+			final int tid = st.tid;
+			final VectorClock tV = st.V;
+			if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+				races++;
+			}
+			final int/* epoch */ r = sx.R;
+			if (r != Epoch.READ_SHARED) {
+				final int rTid = Epoch.tid(r);
+				if (rTid != tid && !Epoch.leq(r, tV.get(rTid))) {
+					races++;
+				}
+			} else if (sx.anyGt(tV)) {
+				races++;
+			}
+			sx.W = e;
+			return races;
+		}
+	}
+
+	/** shared: one variable for all threads; otherwise one per thread. */
+	static abstract class VarBench extends Bench {
+		final boolean shared;
+		final boolean sharedReads;
+		ThreadClock[] clocks;
+		FTVarState[] vars;
+
+		VarBench(String name, boolean shared, boolean sharedReads) {
+			super(name);
+			this.shared = shared;
+			this.sharedReads = sharedReads;
+		}
+
+		@Override
+		public void setup(int threads) {
+			clocks = new ThreadClock[threads];
+			vars = new FTVarState[threads];
+			if (shared) {
+				final FTVarState sx = new FTVarState(false, Epoch.make(0, 1));
+				if (sharedReads) {
+					// start in Read-Shared.
+					sx.makeCV(MAX_THREADS);
+					sx.R = Epoch.READ_SHARED;
+				}
+				for (int t = 0; t < threads; t++) {
+					vars[t] = sx;
+				}
+			}
+		}
+
+		@Override
+		public void setupThread(int tid) {
+			clocks[tid] = new ThreadClock(tid);
+			if (!shared) {
+				vars[tid] = new FTVarState(false, Epoch.make(tid, 1));
+			}
+		}
+	}
+
+	public static List<Bench> benchmarks() {
+		// Epoch sizes its tid field by maxTid.
+		RR.maxTidOption.set(MAX_THREADS);
+		final List<Bench> benches = new ArrayList<Bench>();
+		benches.add(new VarBench("read/sameEpoch", false, false) {
+			@Override
+			public long run(int tid, int ops) {
+				final FTVarState sx = vars[tid];
+				final ThreadClock st = clocks[tid];
+				long races = 0;
+				for (int i = 0; i < ops; i++) {
+					races += read(sx, st);
+				}
+				return races;
+			}
+		});
+		benches.add(new VarBench("write/sameEpoch", false, false) {
+			@Override
+			public long run(int tid, int ops) {
+				final FTVarState sx = vars[tid];
+				final ThreadClock st = clocks[tid];
+				long races = 0;
+				for (int i = 0; i < ops; i++) {
+					races += write(sx, st);
+				}
+				return races;
+			}
+		});
+		benches.add(new VarBench("read/exclusive", false, false) {
+			@Override
+			public long run(int tid, int ops) {
+				final FTVarState sx = vars[tid];
+				final ThreadClock st = clocks[tid];
+				long races = 0;
+				for (int i = 0; i < ops; i++) {
+					st.tick();
+					races += read(sx, st);
+				}
+				return races;
+			}
+		});
+		benches.add(new VarBench("write/exclusive", false, false) {
+			@Override
+			public long run(int tid, int ops) {
+				final FTVarState sx = vars[tid];
+				final ThreadClock st = clocks[tid];
+				long races = 0;
+				for (int i = 0; i < ops; i++) {
+					st.tick();
+					races += write(sx, st);
+				}
+				return races;
+			}
+		});
+		benches.add(new VarBench("read/shared", true, true) {
+			@Override
+			public long run(int tid, int ops) {
+				final FTVarState sx = vars[tid];
+				final ThreadClock st = clocks[tid];
+				long races = 0;
+				for (int i = 0; i < ops; i++) {
+					st.tick();
+					races += read(sx, st);
+				}
+				return races;
+			}
+		});
+		benches.add(new VarBench("write/contended", true, false) {
+			@Override
+			public long run(int tid, int ops) {
+				final FTVarState sx = vars[tid];
+				final ThreadClock st = clocks[tid];
+				long races = 0;
+				for (int i = 0; i < ops; i++) {
+					st.tick();
+					races += write(sx, st);
+				}
+				return races;
+			}
+		});
+		return benches;
+	}
+}
@@ -0,0 +1,370 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import acme.util.bench.Bench;
+import rr.tool.RR;
+import tools.util.Epoch;
+
+/**
+ * Throughput of the per-access sampling decision in FT2S/EFT2S, comparing the decision code the
+ * tools used before SamplingPolicy (string compare of the scheme, Math.random(), a global monitor
+ * for the shared permutation, static per-tid arrays) with each SamplingPolicy, at 1..64 threads.
+ *
+ * Run with "ant bench" and then
+ *
+ * <pre>
+ *   java -cp classes:build/bench-classes tools.fasttrack.SamplingPolicyBench [millis] [maxThreads]
+ * </pre>
+ *
+ * Each configuration reports millions of decisions per second summed over all threads. The
+ * adaptive/global configurations share one variable between all threads (the contended case);
+ * all other configurations give each thread its own variable. benchmarks() exposes the same
+ * configurations to BenchRunner.
+ */
+public class SamplingPolicyBench {
+
+	static final int MAX_THREADS = 64;
+	static final int RATE = 10;
+	static final int BURST = 100;
+
+	private static volatile boolean stop;
+
+	/** One benchmarked decision procedure. */
+	static abstract class Config {
+		final String name;
+		final boolean sharedVar;
+
+		Config(String name, boolean sharedVar) {
+			this.name = name;
+			this.sharedVar = sharedVar;
+		}
+
+		FTSVarState makeVar(int tid) {
+			return new FTSVarState(false, Epoch.make(tid, 0));
+		}
+
+		void setup() {
+		}
+
+		void initThread(SamplerState ts, int tid) {
+		}
+
+		abstract boolean sample(SamplerState ts, FTSVarState sx, int tid);
+	}
+
+	static Config policy(final String name, final SamplingPolicy p, boolean sharedVar) {
+		return new Config(name, sharedVar) {
+			@Override
+			FTSVarState makeVar(int tid) {
+				FTSVarState sx = super.makeVar(tid);
+				p.initVar(sx);
+				return sx;
+			}
+
+			@Override
+			void initThread(SamplerState ts, int tid) {
+				p.initThread(ts, tid);
+			}
+
+			@Override
+			boolean sample(SamplerState ts, FTSVarState sx, int tid) {
+				return p.sample(ts, sx, tid);
+			}
+		};
+	}
+
+	/***** The decision code from the tools before SamplingPolicy, reproduced verbatim. *****/
+
+	static String samplingScheme;
+	static int samplingType;
+	static boolean burstLvl;
+	static int globalCounter;
+	static final Object globalCntrLock = new Object();
+	static boolean[] globalPermu;
+	static int[] threadCounter;
+	static boolean[][] threadPermu;
+	static int maxSamplingLvl;
+	static boolean[][] adaptivPermu;
+	static int burstLength;
+
+	static void oldSetup() {
+		globalPermu = SamplingPolicy.arrayPermute(100, RATE);
+		threadCounter = new int[MAX_THREADS];
+		threadPermu = new boolean[MAX_THREADS][];
+		for (int i = 0; i < MAX_THREADS; i++)
+			threadPermu[i] = SamplingPolicy.arrayPermute(100, RATE);
+		burstLength = BURST;
+		maxSamplingLvl = (BURST - 10) / 10 + 1;
+		adaptivPermu = new boolean[maxSamplingLvl][];
+		for (int i = 0; i < maxSamplingLvl; ++i)
+			adaptivPermu[i] = SamplingPolicy.arrayPermute(BURST, BURST - 10 * i);
+		--maxSamplingLvl;
+	}
+
+	/** The sampling fields the variable state carried before SamplingPolicy. */
+	static final class OldVarState extends FTSVarState {
+		private static final long serialVersionUID = 1L;
+
+		int[] threadAccessCount;
+		int[] threadSamplingLvl;
+		int globalCntr;
+		int samplingLvl;
+
+		OldVarState(int tid) {
+			super(false, Epoch.make(tid, 0));
+		}
+
+		void CreateThreadAccessCount(int maxTid, int setVal) {
+			threadAccessCount = new int[maxTid];
+			threadSamplingLvl = new int[maxTid];
+			for (int i = 0; i < maxTid; ++i) {
+				threadAccessCount[i] = setVal;
+				threadSamplingLvl[i] = 0;
+			}
+			globalCntr = setVal;
+		}
+	}
+
+	static boolean oldSample(OldVarState sx, int tid) {
+		boolean sampleCheck = false;
+		int istype = samplingType;
+		if (samplingScheme.equals("count")) {
+			if (istype == 0)
+				sampleCheck = (Math.random() * 100 < RATE) ? true : false;
+			else if (istype == 1) {
+				synchronized (globalCntrLock) {
+					sampleCheck = globalPermu[globalCounter];
+					globalCounter++;
+					if (globalCounter == 100)
+						globalCounter = 0;
+				}
+			} else {
+				sampleCheck = threadPermu[tid][threadCounter[tid]];
+				threadCounter[tid]++;
+				if (threadCounter[tid] == 100)
+					threadCounter[tid] = 0;
+			}
+		} else {
+			if (burstLvl) {
+				synchronized (sx) {
+					sx.globalCntr--;
+					sampleCheck = adaptivPermu[sx.samplingLvl][sx.globalCntr];
+					if (sx.globalCntr == 0) {
+						sx.globalCntr = burstLength;
+						if (sx.samplingLvl < maxSamplingLvl)
+							sx.samplingLvl++;
+					}
+				}
+			} else {
+				sx.threadAccessCount[tid]--;
+				sampleCheck = adaptivPermu[sx.threadSamplingLvl[tid]][sx.threadAccessCount[tid]];
+				if (sx.threadAccessCount[tid] == 0) {
+					sx.threadAccessCount[tid] = burstLength;
+					if (sx.threadSamplingLvl[tid] < maxSamplingLvl)
+						sx.threadSamplingLvl[tid]++;
+				}
+			}
+		}
+		return sampleCheck;
+	}
+
+	static Config old(String name, final String scheme, final int type, final boolean global) {
+		return new Config(name, scheme.equals("adaptive") && global) {
+			@Override
+			FTSVarState makeVar(int tid) {
+				OldVarState sx = new OldVarState(tid);
+				sx.CreateThreadAccessCount(MAX_THREADS, BURST);
+				return sx;
+			}
+
+			@Override
+			void setup() {
+				samplingScheme = scheme;
+				samplingType = type;
+				burstLvl = global;
+			}
+
+			@Override
+			boolean sample(SamplerState ts, FTSVarState sx, int tid) {
+				return oldSample((OldVarState) sx, tid);
+			}
+		};
+	}
+
+	/******/
+
+	static double run(final Config c, final int threads, final long millis) throws InterruptedException {
+		final FTSVarState shared = c.makeVar(0);
+		final long[] counts = new long[threads * 8];
+		final CountDownLatch ready = new CountDownLatch(threads);
+		final CountDownLatch go = new CountDownLatch(1);
+		final List<Thread> workers = new ArrayList<Thread>();
+		stop = false;
+		for (int t = 0; t < threads; t++) {
+			final int tid = t;
+			Thread w = new Thread() {
+				@Override
+				public void run() {
+					final FTSVarState sx = c.sharedVar ? shared : c.makeVar(tid);
+					final SamplerState ts = new SamplerState(tid);
+					c.initThread(ts, tid);
+					long n = 0, hits = 0;
+					ready.countDown();
+					try {
+						go.await();
+					} catch (InterruptedException e) {
+						return;
+					}
+					while (!stop) {
+						for (int i = 0; i < 1024; i++) {
+							if (c.sample(ts, sx, tid))
+								hits++;
+						}
+						n += 1024;
+					}
+					counts[tid * 8] = n;
+					counts[tid * 8 + 1] = hits;
+				}
+			};
+			workers.add(w);
+			w.start();
+		}
+		ready.await();
+		final long start = System.nanoTime();
+		go.countDown();
+		Thread.sleep(millis);
+		stop = true;
+		for (Thread w : workers)
+			w.join();
+		final long elapsed = System.nanoTime() - start;
+		long total = 0;
+		for (int t = 0; t < threads; t++)
+			total += counts[t * 8];
+		return total / (elapsed / 1000.0);
+	}
+
+	static List<Config> configs() {
+		// shadow state counters are sized by maxTid.
+		RR.maxTidOption.set(MAX_THREADS);
+		oldSetup();
+		final SamplingPolicy adaptiveGlobal = SamplingPolicy.make("adaptive", 0, RATE, "global",
+				BURST, 10, 10, MAX_THREADS);
+		final SamplingPolicy adaptiveThread = SamplingPolicy.make("adaptive", 0, RATE, "thread",
+				BURST, 10, 10, MAX_THREADS);
+
+		final List<Config> configs = new ArrayList<Config>();
+		configs.add(old("old count/0 (Math.random)", "count", 0, false));
+		configs.add(policy("new bernoulli", new BernoulliSamplingPolicy(RATE), false));
+		configs.add(old("old count/1 (global lock)", "count", 1, false));
+		configs.add(policy("new count/global", new CountGlobalSamplingPolicy(RATE), false));
+		configs.add(old("old count/2 (static arrays)", "count", 2, false));
+		configs.add(policy("new count/thread", new CountThreadSamplingPolicy(RATE), false));
+		configs.add(old("old adaptive/global", "adaptive", 0, true));
+		configs.add(policy("new adaptive/global", adaptiveGlobal, true));
+		configs.add(old("old adaptive/thread", "adaptive", 0, false));
+		configs.add(policy("new adaptive/thread", adaptiveThread, false));
+		configs.add(policy("new geometric", new GeometricSamplingPolicy(RATE), false));
+		return configs;
+	}
+
+	/** The same configurations, for BenchRunner. */
+	public static List<Bench> benchmarks() {
+		final List<Bench> benches = new ArrayList<Bench>();
+		for (final Config c : configs()) {
+			benches.add(new Bench(c.name.replaceAll(" \\(.*\\)", "").replace(' ', '-')) {
+				FTSVarState[] vars;
+				SamplerState[] samplers;
+
+				@Override
+				public void setup(int threads) {
+					c.setup();
+					vars = new FTSVarState[threads];
+					samplers = new SamplerState[threads];
+					if (c.sharedVar) {
+						final FTSVarState shared = c.makeVar(0);
+						for (int t = 0; t < threads; t++) {
+							vars[t] = shared;
+						}
+					}
+				}
+
+				@Override
+				public void setupThread(int tid) {
+					if (!c.sharedVar) {
+						vars[tid] = c.makeVar(tid);
+					}
+					samplers[tid] = new SamplerState(tid);
+					c.initThread(samplers[tid], tid);
+				}
+
+				@Override
+				public long run(int tid, int ops) {
+					final FTSVarState sx = vars[tid];
+					final SamplerState ts = samplers[tid];
+					long hits = 0;
+					for (int i = 0; i < ops; i++) {
+						if (c.sample(ts, sx, tid))
+							hits++;
+					}
+					return hits;
+				}
+			});
+		}
+		return benches;
+	}
+
+	public static void main(String[] args) throws Exception {
+		final long millis = args.length > 0 ? Long.parseLong(args[0]) : 500;
+		final int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : MAX_THREADS;
+
+		final List<Config> configs = configs();
+		System.out.printf("%-30s", "Mdecisions/s  threads:");
+		for (int threads = 1; threads <= maxThreads; threads *= 2)
+			System.out.printf("%10d", threads);
+		System.out.println();
+		for (Config c : configs) {
+			System.out.printf("%-30s", c.name);
+			for (int threads = 1; threads <= maxThreads; threads *= 2) {
+				c.setup();
+				run(c, threads, millis / 5); // warmup
+				System.out.printf("%10.1f", run(c, threads, millis));
+			}
+			System.out.println();
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import acme.util.bench.Bench;
+import rr.tool.RR;
+
+/**
+ * Epoch encode/decode and comparison, as used on every FastTrack access. See BenchRunner.
+ */
+public class EpochBench {
+
+	static final int MAX_THREADS = 64;
+
+	public static List<Bench> benchmarks() {
+		// Epoch sizes its tid field by maxTid.
+		RR.maxTidOption.set(MAX_THREADS);
+		final List<Bench> benches = new ArrayList<Bench>();
+		benches.add(new Bench("make") {
+			@Override
+			public long run(int tid, int ops) {
+				long sink = 0;
+				for (int i = 0; i < ops; i++) {
+					sink += Epoch.make(tid, i);
+				}
+				return sink;
+			}
+		});
+		benches.add(new Bench("tid+clock") {
+			@Override
+			public long run(int tid, int ops) {
+				long sink = 0;
+				int/* epoch */ e = Epoch.make(tid, 1);
+				for (int i = 0; i < ops; i++) {
+					sink += Epoch.tid(e) + Epoch.clock(e);
+					e += i & 1;
+				}
+				return sink;
+			}
+		});
+		benches.add(new Bench("tick") {
+			@Override
+			public long run(int tid, int ops) {
+				int/* epoch */ e = Epoch.make(tid, 0);
+				for (int i = 0; i < ops; i++) {
+					e = Epoch.tick(e);
+				}
+				return e;
+			}
+		});
+		benches.add(new Bench("leq") {
+			@Override
+			public long run(int tid, int ops) {
+				long sink = 0;
+				final int/* epoch */ e = Epoch.make(tid, 1000);
+				for (int i = 0; i < ops; i++) {
+					if (Epoch.leq(Epoch.make(tid, i & 2047), e)) {
+						sink++;
+					}
+				}
+				return sink;
+			}
+		});
+		benches.add(new Bench("max") {
+			@Override
+			public long run(int tid, int ops) {
+				int/* epoch */ e = Epoch.make(tid, 1000);
+				for (int i = 0; i < ops; i++) {
+					e = Epoch.max(e, Epoch.make(tid, i & 2047));
+				}
+				return e;
+			}
+		});
+		return benches;
+	}
+}
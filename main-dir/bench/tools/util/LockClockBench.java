@@ -0,0 +1,149 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.util;
+
+import rr.tool.RR;
+
+/**
+ * Cost of a lock acquire/release pair on a VectorClock lock (tV.max(lockV); lockV.max(tV)) versus
+ * a DirtyVectorClock lock (acquireInto/releaseFrom), as FT2S/EFT2S run them without and with
+ * -dirtyLockClocks, for 4..maxThreads thread clocks.
+ *
+ * Run with "ant bench" and then
+ *
+ * <pre>
+ *   java -cp classes:build/bench-classes tools.util.LockClockBench [millis] [maxThreads]
+ * </pre>
+ *
+ * The lock events are replayed on one thread, since both clocks are protected by the lock itself.
+ * Patterns: "reacquire" -- one thread takes the lock over and over; "pair" -- two threads hand
+ * the lock back and forth while the others stay idle; "round-robin" -- every thread takes the
+ * lock in turn. Each configuration reports nanoseconds per acquire/release pair.
+ */
+public class LockClockBench {
+
+	static final int MAX_THREADS = 64;
+
+	/** One lock-event pattern: which tid performs the i-th acquire/release. */
+	static abstract class Pattern {
+		final String name;
+
+		Pattern(String name) {
+			this.name = name;
+		}
+
+		abstract int tid(long i, int threads);
+	}
+
+	static final Pattern[] PATTERNS = { new Pattern("reacquire") {
+		@Override
+		int tid(long i, int threads) {
+			return 0;
+		}
+	}, new Pattern("pair") {
+		@Override
+		int tid(long i, int threads) {
+			return (int) (i & 1);
+		}
+	}, new Pattern("round-robin") {
+		@Override
+		int tid(long i, int threads) {
+			return (int) (i % threads);
+		}
+	} };
+
+	static VectorClock[] threadClocks(int threads) {
+		final VectorClock[] tVs = new VectorClock[threads];
+		for (int t = 0; t < threads; t++) {
+			tVs[t] = new VectorClock(threads);
+			tVs[t].tick(t);
+		}
+		return tVs;
+	}
+
+	static double run(Pattern p, boolean dirty, int threads, long millis) {
+		final VectorClock[] tVs = threadClocks(threads);
+		final Object[] sts = new Object[threads];
+		for (int t = 0; t < threads; t++) {
+			sts[t] = new Object();
+		}
+		final VectorClock plainLock = new VectorClock(threads);
+		final DirtyVectorClock dirtyLock = new DirtyVectorClock(threads);
+		final long deadline = System.nanoTime() + millis * 1000000L;
+		long n = 0;
+		final long start = System.nanoTime();
+		do {
+			for (int k = 0; k < 1024; k++, n++) {
+				final int tid = p.tid(n, threads);
+				final VectorClock tV = tVs[tid];
+				if (dirty) {
+					dirtyLock.acquireInto(tV, sts[tid], tid);
+					dirtyLock.releaseFrom(tV, sts[tid], tid);
+				} else {
+					tV.max(plainLock);
+					plainLock.max(tV);
+				}
+				tV.tick(tid);
+			}
+		} while (System.nanoTime() < deadline);
+		final long elapsed = System.nanoTime() - start;
+		// sanity: both clocks must end up ordered the same way.
+		if (!tVs[p.tid(n - 1, threads)].anyGt(dirty ? dirtyLock : plainLock)) {
+			throw new IllegalStateException("last releaser's clock not ahead of lock clock");
+		}
+		return elapsed / (double) n;
+	}
+
+	public static void main(String[] args) {
+		final long millis = args.length > 0 ? Long.parseLong(args[0]) : 500;
+		final int maxThreads = args.length > 1 ? Integer.parseInt(args[1]) : MAX_THREADS;
+
+		// Epoch sizes its tid field by maxTid.
+		RR.maxTidOption.set(MAX_THREADS);
+
+		System.out.printf("%-30s", "ns/acq+rel  threads:");
+		for (int threads = 4; threads <= maxThreads; threads *= 2)
+			System.out.printf("%10d", threads);
+		System.out.println();
+		for (Pattern p : PATTERNS) {
+			for (boolean dirty : new boolean[] { false, true }) {
+				System.out.printf("%-30s", p.name + (dirty ? " dirty" : " plain"));
+				for (int threads = 4; threads <= maxThreads; threads *= 2) {
+					run(p, dirty, threads, millis / 5); // warmup
+					System.out.printf("%10.1f", run(p, dirty, threads, millis));
+				}
+				System.out.println();
+			}
+		}
+	}
+}
@@ -0,0 +1,125 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import acme.util.bench.Bench;
+import rr.tool.RR;
+
+/**
+ * VectorClock max, copy and anyGt for clocks of 8 entries (the unrolled case) and 64 entries.
+ * Each thread works on its own pair of clocks a >= b, which is the race-free case: max(a, b)
+ * changes nothing and b.anyGt(a) scans every entry. See BenchRunner.
+ */
+public class VectorClockBench {
+
+	static final int MAX_THREADS = 64;
+	static final int[] SIZES = { 8, MAX_THREADS };
+
+	/** A benchmark over a per-thread pair of clocks a, b of the given size. */
+	static abstract class ClockBench extends Bench {
+		final int size;
+		VectorClock[] as;
+		VectorClock[] bs;
+
+		ClockBench(String name, int size) {
+			super(name + "/" + size);
+			this.size = size;
+		}
+
+		@Override
+		public void setup(int threads) {
+			as = new VectorClock[threads];
+			bs = new VectorClock[threads];
+		}
+
+		@Override
+		public void setupThread(int tid) {
+			final VectorClock a = new VectorClock(size);
+			final VectorClock b = new VectorClock(size);
+			for (int i = 0; i < size; i++) {
+				a.set(i, Epoch.make(i, 10));
+				b.set(i, Epoch.make(i, i % 2 == 0 ? 10 : 5));
+			}
+			as[tid] = a;
+			bs[tid] = b;
+		}
+	}
+
+	public static List<Bench> benchmarks() {
+		// Epoch sizes its tid field by maxTid.
+		RR.maxTidOption.set(MAX_THREADS);
+		final List<Bench> benches = new ArrayList<Bench>();
+		for (int size : SIZES) {
+			benches.add(new ClockBench("max", size) {
+				@Override
+				public long run(int tid, int ops) {
+					final VectorClock a = as[tid];
+					final VectorClock b = bs[tid];
+					for (int i = 0; i < ops; i++) {
+						a.max(b);
+					}
+					return a.get(size - 1);
+				}
+			});
+			benches.add(new ClockBench("copy", size) {
+				@Override
+				public long run(int tid, int ops) {
+					final VectorClock a = as[tid];
+					final VectorClock b = bs[tid];
+					for (int i = 0; i < ops; i++) {
+						a.copy(b);
+					}
+					return a.get(size - 1);
+				}
+			});
+			benches.add(new ClockBench("anyGt", size) {
+				@Override
+				public long run(int tid, int ops) {
+					final VectorClock a = as[tid];
+					final VectorClock b = bs[tid];
+					long sink = 0;
+					for (int i = 0; i < ops; i++) {
+						if (b.anyGt(a)) {
+							sink++;
+						}
+					}
+					return sink;
+				}
+			});
+		}
+		return benches;
+	}
+}
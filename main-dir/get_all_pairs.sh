@@ -4,12 +4,12 @@ do
 	cd $x
 	for y in 1 2 3 4 5
 	do 
-		./TEST -tool=EFT2 -array=FINE -field=FINE  -noTidGC -availableProcessors=4 -benchmark=1 -warmup=0 RRBench | grep "#---#" >> ../../results/results_${x}_FT2_1
-		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingrate=10 -samplingtype=2  -noTidGC -availableProcessors=4 -benchmark=1 -warmup=0 RRBench | grep "#---#" >> ../../results/results_${x}_FT2_2
-		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingrate=50 -samplingtype=2  -noTidGC -availableProcessors=4 -benchmark=1 -warmup=0 RRBench | grep "#---#" >> ../../results/results_${x}_FT2_3
-		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingscheme=adaptive -samplingtype=0  -burstlen=100 -decRate=10 -minsampling=10 -noTidGC -availableProcessors=4 -benchmark=1 -warmup=0 RRBench | grep "#---#" >> ../../results/results_${x}_FT2_4
-		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingscheme=adaptive -samplingtype=1  -burstlen=200 -decRate=2 -minsampling=20 -noTidGC -availableProcessors=4 -benchmark=1 -warmup=0 RRBench | grep "#---#" >> ../../results/results_${x}_FT2_5
-		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingscheme=adaptive -samplingtype=1  -burstlen=200 -decRate=5 -minsampling=8 -noTidGC -availableProcessors=4 -benchmark=1 -warmup=0 RRBench | grep "#---#" >> ../../results/results_${x}_FT2_
+		./TEST -tool=EFT2 -array=FINE -field=FINE  -noTidGC -availableProcessors=4 -racePairFile=../../results/results_${x}_FT2_1_${y}.csv -benchmark=1 -warmup=0 RRBench
+		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingrate=10 -samplingtype=2  -noTidGC -availableProcessors=4 -racePairFile=../../results/results_${x}_FT2_2_${y}.csv -benchmark=1 -warmup=0 RRBench
+		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingrate=50 -samplingtype=2  -noTidGC -availableProcessors=4 -racePairFile=../../results/results_${x}_FT2_3_${y}.csv -benchmark=1 -warmup=0 RRBench
+		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingscheme=adaptive -samplingtype=0  -burstlen=100 -decRate=10 -minsampling=10 -noTidGC -availableProcessors=4 -racePairFile=../../results/results_${x}_FT2_4_${y}.csv -benchmark=1 -warmup=0 RRBench
+		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingscheme=adaptive -samplingtype=1  -burstlen=200 -decRate=2 -minsampling=20 -noTidGC -availableProcessors=4 -racePairFile=../../results/results_${x}_FT2_5_${y}.csv -benchmark=1 -warmup=0 RRBench
+		./TEST -tool=EFT2S -array=FINE -field=FINE -samplingscheme=adaptive -samplingtype=1  -burstlen=200 -decRate=5 -minsampling=8 -noTidGC -availableProcessors=4 -racePairFile=../../results/results_${x}_FT2_6_${y}.csv -benchmark=1 -warmup=0 RRBench
 
 	done
 	cd ../	
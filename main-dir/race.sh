@@ -1,5 +1,25 @@
 cd ./results
-for x in "avrora" "luindex" "lusearch" "sunflow" "xalan"
+# merge the per-run CSVs of each configuration: one row per (first, second) pair, counts summed,
+# tids and clock from the first run that saw it, most frequent first.
+for x in "avrora" "luindex" "lusearch" "sunflow"
+do
+	for y in "1" "2" "3" "4" "5" "6"
+	do 
+		tail -q -n +2 results_${x}_FT2_${y}_*.csv | awk '
+			match($0, /^"([^"]|"")*","([^"]|"")*",/) {
+				key = substr($0, 1, RLENGTH - 1)
+				split(substr($0, RLENGTH + 1), f, ",")
+				if (!(key in count)) { rest[key] = f[2] "," f[3] "," f[4] }
+				count[key] += f[1]
+			}
+			END { for (k in count) print count[k] "\t" k "," count[k] "," rest[k] }' |
+		sort -t "	" -k1,1nr | cut -f2- |
+		{ echo "first,second,count,first_tid,second_tid,first_clock"; cat; } > ../iresults/results_${x}_FT2_${y}.csv
+	done
+done
+
+# FT2 and FT2S do not collect race pairs; keep their output as before.
+for x in "xalan"
 do
 	for y in "1" "2" "3" "4" "5" "6"
 	do 
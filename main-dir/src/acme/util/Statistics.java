@@ -0,0 +1,92 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College)
+
+All rights reserved.  Revision $REV ($DATE)
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package acme.util;
+
+/**
+ * Sample statistics for repeated measurements: mean, standard deviation and the half-width of
+ * the 95% confidence interval of the mean, using Student's t distribution.
+ */
+public class Statistics {
+
+	// two-sided 95% Student t quantiles for 1..30 degrees of freedom.
+	private static final double[] T95 = { 12.706, 4.303, 3.182, 2.776, 2.571, 2.447, 2.365, 2.306,
+			2.262, 2.228, 2.201, 2.179, 2.160, 2.145, 2.131, 2.120, 2.110, 2.101, 2.093, 2.086,
+			2.080, 2.074, 2.069, 2.064, 2.060, 2.056, 2.052, 2.048, 2.045, 2.042 };
+
+	public static double mean(double[] xs) {
+		double sum = 0;
+		for (double x : xs) {
+			sum += x;
+		}
+		return xs.length == 0 ? Double.NaN : sum / xs.length;
+	}
+
+	/** Sample standard deviation; 0 for fewer than two samples. */
+	public static double stddev(double[] xs) {
+		final int n = xs.length;
+		if (n < 2) {
+			return 0;
+		}
+		final double m = mean(xs);
+		double ss = 0;
+		for (double x : xs) {
+			ss += (x - m) * (x - m);
+		}
+		return Math.sqrt(ss / (n - 1));
+	}
+
+	/** Half-width of the 95% confidence interval of the mean; 0 for fewer than two samples. */
+	public static double ci95(double[] xs) {
+		final int n = xs.length;
+		if (n < 2) {
+			return 0;
+		}
+		final double t = n - 1 <= T95.length ? T95[n - 2] : 1.960;
+		return t * stddev(xs) / Math.sqrt(n);
+	}
+
+	/**
+	 * Half-width of the 95% interval of a / b, given the means and half-widths of independent a and
+	 * b, by first-order error propagation.
+	 */
+	public static double ratioCi95(double a, double aCi, double b, double bCi) {
+		final double r = a / b;
+		return Math.abs(r) * Math.sqrt((aCi / a) * (aCi / a) + (bCi / b) * (bCi / b));
+	}
+}
@@ -39,8 +39,8 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 package acme.util;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.regex.Pattern;
 
 /**
@@ -57,7 +57,8 @@ import java.util.regex.Pattern;
  * does nothing for all other Strings.
  */
 public class StringMatcher {
-	private HashMap<String,StringMatchResult> cache = new HashMap<String,StringMatchResult>();
+	// concurrent, since classes are instrumented (and filtered) on many loader threads at once.
+	private ConcurrentHashMap<String,StringMatchResult> cache = new ConcurrentHashMap<String,StringMatchResult>();
 	
 	static class Entry {
 		final Pattern pattern;
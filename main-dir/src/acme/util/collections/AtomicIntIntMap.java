@@ -0,0 +1,109 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package acme.util.collections;
+
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * A thread-safe resizable map from small non-negative integers to integer counters. Keys are
+ * stored in fixed-size chunks of atomic counters, so growing the map only copies the chunk
+ * directory and never loses a concurrent update.
+ */
+public class AtomicIntIntMap {
+
+	private static final int CHUNK_BITS = 10;
+	private static final int CHUNK = 1 << CHUNK_BITS;
+
+	private volatile AtomicIntegerArray[] chunks = new AtomicIntegerArray[4];
+
+	private AtomicIntegerArray chunk(int loc) {
+		final int c = loc >>> CHUNK_BITS;
+		AtomicIntegerArray[] cs = chunks;
+		if (c < cs.length) {
+			final AtomicIntegerArray a = cs[c];
+			if (a != null) {
+				return a;
+			}
+		}
+		synchronized (this) {
+			cs = chunks;
+			if (c >= cs.length) {
+				final AtomicIntegerArray[] bigger = new AtomicIntegerArray[Math.max(c + 1, cs.length * 2)];
+				System.arraycopy(cs, 0, bigger, 0, cs.length);
+				cs = bigger;
+			}
+			if (cs[c] == null) {
+				cs[c] = new AtomicIntegerArray(CHUNK);
+			}
+			chunks = cs;
+			return cs[c];
+		}
+	}
+
+	public int get(int loc) {
+		final AtomicIntegerArray[] cs = chunks;
+		final int c = loc >>> CHUNK_BITS;
+		if (c < cs.length && cs[c] != null) {
+			return cs[c].get(loc & (CHUNK - 1));
+		}
+		return 0;
+	}
+
+	public int inc(int loc) {
+		return chunk(loc).incrementAndGet(loc & (CHUNK - 1));
+	}
+
+	/**
+	 * Increment the counter for loc if it is below limit. Returns the new value, or -1 if the
+	 * counter had already reached limit.
+	 */
+	public int incIfBelow(int loc, int limit) {
+		final AtomicIntegerArray a = chunk(loc);
+		final int i = loc & (CHUNK - 1);
+		while (true) {
+			final int v = a.get(i);
+			if (v >= limit) {
+				return -1;
+			}
+			if (a.compareAndSet(i, v, v + 1)) {
+				return v + 1;
+			}
+		}
+	}
+}
@@ -69,21 +69,36 @@ public final class Decoration<T extends Decoratable, V> implements Serializable
 		try {
 			V v = (V) vs[slot];
 			if (v == null) {
-				set(n, v = defaultValue.get(n));
+				v = getDefault(n);
 			}
 			return v;
 		} catch (Exception e) {
-			V v = null;
-			set(n, v = defaultValue.get(n));
+			return getDefault(n);
+		}
+	}
+
+	/*
+	 * Create the default value under n's lock, so that threads racing to decorate the same object
+	 * agree on one value.
+	 */
+	private V getDefault(final T n) {
+		synchronized (n) {
+			final Object[] vs = n.decorations;
+			@SuppressWarnings("unchecked")
+			V v = slot < vs.length ? (V) vs[slot] : null;
+			if (v == null) {
+				set(n, v = defaultValue.get(n));
+			}
 			return v;
 		}
 	}
 
+	/*
+	 * Under n's lock, like the growth of n.decorations: an unlocked store could land in an array
+	 * that another thread is copying and replacing, and be lost.
+	 */
 	public final void set(final T n, final V val) {
-		try {
-			final Object[] v = n.decorations;
-			v[slot] = val;
-		} catch (Exception e) {
+		synchronized (n) {
 			Object[] v = n.decorations;
 			if (slot >= v.length) {
 				Object[] _new = new Object[factory.allocated()];
@@ -50,8 +50,10 @@ import rr.instrument.Instrumentor;
 import rr.instrument.classes.CloneFixer;
 import rr.instrument.classes.ThreadDataThunkInserter;
 import rr.loader.InstrumentingDefineClassLoader;
+import rr.meta.AccessSiteSampler;
 import rr.meta.InstrumentationFilter;
 import rr.replay.RRReplay;
+import rr.sampling.CodeSampler;
 import rr.state.AbstractArrayStateCache;
 import rr.state.ArrayStateFactory;
 import rr.state.ShadowThread;
@@ -200,7 +202,9 @@ public class RRMain {
 								+ "                 should be nested inside a test ensuring that RR_MODE is SLOW.");
 				Util.error(
 						"  RR_META_DATA   The directory created on previous run by -dump from which to reload\n"
-								+ "                 cached metadata and instrumented class files.\n");
+								+ "                 cached metadata and instrumented class files.  A cached class\n"
+								+ "                 is only used if its bytes and the instrumentation options\n"
+								+ "                 match those recorded in the directory's rr.cache file.\n");
 				cl.usage();
 				Util.exit(0);
 			}
@@ -243,6 +247,16 @@ public class RRMain {
 		cl.add(Instrumentor.verifyOption);
 		cl.add(Instrumentor.trackArraySitesOption);
 		cl.add(Instrumentor.trackReflectionOption);
+		cl.add(Instrumentor.noEscapeOption);
+		cl.add(Instrumentor.noRedundantOption);
+		cl.add(AccessSiteSampler.siteSamplingOption);
+		cl.add(AccessSiteSampler.thresholdOption);
+		cl.add(AccessSiteSampler.periodOption);
+		cl.add(AccessSiteSampler.burstOption);
+		cl.add(CodeSampler.codeSamplingOption);
+		cl.add(CodeSampler.policyOption);
+		cl.add(CodeSampler.rateOption);
+		cl.add(CodeSampler.burstOption);
 		cl.add(ThreadStateExtensionAgent.noDecorationInline);
 		cl.addOrderConstraint(ThreadStateExtensionAgent.noDecorationInline, rr.tool.RR.toolOption);
 
@@ -281,7 +295,7 @@ public class RRMain {
 		int n = cl.apply(argv);
 
 		RR.createDefaultToolIfNecessary();
-		ArrayStateFactory.addAtticListener();
+		ArrayStateFactory.addCleanupListener();
 
 		if (n >= argv.length) {
 			Assert.fail("Missing class name. Use -help for summary of options.");
@@ -348,7 +362,7 @@ public class RRMain {
 			final String[] newArgv = new String[argv.length - (n + 1)];
 
 			System.arraycopy(argv, n + 1, newArgv, 0, newArgv.length);
-			if (!fileName.endsWith(".rrlog")) {
+			if (!fileName.endsWith(".rrlog") && !fileName.endsWith(".rrz")) {
 				if (benchmarkOption.get() == 0) {
 					runNormally(fileName, newArgv);
 				} else {
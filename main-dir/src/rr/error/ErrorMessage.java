@@ -41,12 +41,14 @@ package rr.error;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.util.Collection;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import rr.meta.MetaDataInfo;
 import rr.state.ShadowThread;
 import acme.util.Assert;
 import acme.util.Util;
-import acme.util.collections.IntIntMap;
+import acme.util.collections.AtomicIntIntMap;
 import acme.util.option.CommandLine;
 import acme.util.option.CommandLineOption;
 
@@ -54,12 +56,16 @@ import acme.util.option.CommandLineOption;
  * An error message reporter for a specific syntactic category (field, method, etc.).  A summary 
  * of the reported errors will appear in the XML at the end of a run.
  * <p>
+ * Reporting takes no locks: the per-element counters are atomic, and an error within the
+ * maxWarn limit is queued as a Report that a background thread formats and prints.  The limit
+ * is exact, since a report is only queued by the thread whose increment stayed below it.
+ * <p>
  * See sample tools for examples.  
  */
 public class ErrorMessage<T extends MetaDataInfo> {
 
-	private static int totalNumberOfErrors = 0;
-	private static int totalNumberOfDistinctErrors = 0;
+	private static final AtomicInteger totalNumberOfErrors = new AtomicInteger();
+	private static final AtomicInteger totalNumberOfDistinctErrors = new AtomicInteger();
 
 	public static CommandLineOption<Integer> maxWarnOption = 
 		CommandLine.makeInteger("maxWarn", 100, CommandLineOption.Kind.STABLE, "Maximum number of warnings of each type that will be printed for a specific declaration/operation.");
@@ -68,13 +74,64 @@ public class ErrorMessage<T extends MetaDataInfo> {
 	protected final String type;
 
 	/** Number of errors reported in total. */
-	protected int counter;
+	protected final AtomicInteger counter = new AtomicInteger();
 
 	/** Number of errors reported for each meta data element, kept by id. */
-	protected final IntIntMap counters = new IntIntMap();
+	protected final AtomicIntIntMap counters = new AtomicIntIntMap();
 
 	/** Max number of errors of this type before they are suppressed in the output. */
-	protected int limit = -1;  // -1 for eLimit, >= 0 for specific limit
+	protected volatile int limit = -1;  // -1 for eLimit, >= 0 for specific limit
+
+	/**
+	 * An error waiting to be printed.  extraData holds the values as strings, taken when the
+	 * error was reported, since the objects may change before the report is formatted.
+	 */
+	private static final class Report {
+		final ErrorMessage<?> message;
+		final int tid;
+		final String blame;
+		final int count;
+		final int max;
+		final String[] extraData;
+
+		Report(ErrorMessage<?> message, int tid, String blame, int count, int max, String[] extraData) {
+			this.message = message;
+			this.tid = tid;
+			this.blame = blame;
+			this.count = count;
+			this.max = max;
+			this.extraData = extraData;
+		}
+	}
+
+	private static final LinkedBlockingQueue<Report> reports = new LinkedBlockingQueue<Report>();
+
+	// reports queued or being printed.
+	private static final AtomicInteger pending = new AtomicInteger();
+
+	private static final Thread formatter = new Thread("RR Error Formatter") {
+		@Override
+		public void run() {
+			try {
+				while (true) {
+					final Report r = reports.take();
+					Util.error(r.message.format(r));
+					if (pending.decrementAndGet() == 0) {
+						synchronized (pending) {
+							pending.notifyAll();
+						}
+					}
+				}
+			} catch (InterruptedException e) {
+				Assert.panic(e);
+			}
+		}
+	};
+
+	static {
+		formatter.setDaemon(true);
+		formatter.start();
+	}
 
 	/**
 	 * type: Generic name for this type of error.
@@ -83,11 +140,11 @@ public class ErrorMessage<T extends MetaDataInfo> {
 		this.type = type;
 	}
 
-	private void defaultStart(ShadowThread cur, PrintWriter tmp) {
+	private void defaultStart(int tid, PrintWriter tmp) {
 		tmp.println();
 		tmp.println("=====================================================================");
 		tmp.printf("%s Error\n\n", type);
-		tmp.printf("%15s: %-5d\n","Thread", cur.getTid());
+		tmp.printf("%15s: %-5d\n","Thread", tid);
 	}
 
 	private void defaultEnd(PrintWriter tmp) {
@@ -102,7 +159,8 @@ public class ErrorMessage<T extends MetaDataInfo> {
 	}
 
 	public int getMax() {
-		return limit == -1 ? maxWarnOption.get() : limit;
+		final int l = limit;
+		return l == -1 ? maxWarnOption.get() : l;
 	}
 
 	public void setMax(int limit) {
@@ -137,40 +195,60 @@ public class ErrorMessage<T extends MetaDataInfo> {
 							"Stack",		ShadowThread.stackDumpForErrorMessage(thread));
 		</pre>
 	 */
-	public synchronized void error(ShadowThread cur, T t, Object... extraData) {
+	public void error(ShadowThread cur, T t, Object... extraData) {
 		try {
-			if (stillLooking(t)) {			
-				StringWriter sw = new StringWriter();
-				PrintWriter pw = new PrintWriter(sw);
-				counter++;
-				defaultStart(cur, pw);
-
-				if (t != null) {
-					synchronized(ErrorMessage.class) {
-						if (count(t) == 0) {
-							totalNumberOfDistinctErrors++;
-						}
-						counters.inc(t.getId());
-					}
-					pw.printf("%15s: %s\n","Blame", t);
-					pw.printf("%15s: %d    (max: %d)\n", "Count", 
-							counters.get(t.getId()), getMax());
+			int count = 0;
+			if (t != null) {
+				count = counters.incIfBelow(t.getId(), getMax());
+				if (count < 0) {
+					return;
+				}
+				if (count == 1) {
+					totalNumberOfDistinctErrors.incrementAndGet();
 				}
-				printExtra(pw, extraData);
-				defaultEnd(pw);
-				Util.error(sw.toString());
-				totalNumberOfErrors++;
 			}
+			counter.incrementAndGet();
+			totalNumberOfErrors.incrementAndGet();
+			enqueue(new Report(this, cur.getTid(), t == null ? null : t.toString(), count,
+					getMax(), strings(extraData)));
 		} catch (Throwable e) {
 			Assert.panic(e);
 		}
 	}
 
-	private void printExtra(PrintWriter pw, Object... extra) {
+	private static String[] strings(Object... extra) {
 		Assert.assertTrue(extra.length % 2 == 0, "Passing wrong number of info pieces to error message");
+		final String[] result = new String[extra.length];
+		for (int i = 0; i < extra.length; i++) {
+			result[i] = extra[i] == null ? "null" : extra[i].toString();
+		}
+		return result;
+	}
+
+	private static void enqueue(Report r) {
+		pending.incrementAndGet();
+		reports.add(r);
+	}
+
+	// formatter thread only
+	private String format(Report r) {
+		StringWriter sw = new StringWriter();
+		PrintWriter pw = new PrintWriter(sw);
+		defaultStart(r.tid, pw);
+		if (r.blame != null) {
+			pw.printf("%15s: %s\n","Blame", r.blame);
+			if (r.count > 0) {
+				pw.printf("%15s: %d    (max: %d)\n", "Count", r.count, r.max);
+			}
+		}
+		printExtra(pw, r.extraData);
+		defaultEnd(pw);
+		return sw.toString();
+	}
+
+	private void printExtra(PrintWriter pw, String[] extra) {
 		for (int i = 0; i < extra.length; i+=2) {
-			pw.printf("%15s: %s\n", extra[i], 
-					extra[i+1] == null ? "null" : extra[i+1].toString().replaceAll("\n","\n                 "));
+			pw.printf("%15s: %s\n", extra[i], extra[i+1].replaceAll("\n","\n                 "));
 		}
 	}
 
@@ -183,38 +261,44 @@ public class ErrorMessage<T extends MetaDataInfo> {
 			if (stillLooking(t)) report = true;
 		}
 		if (report) {
-			StringWriter sw = new StringWriter();
-			PrintWriter pw = new PrintWriter(sw);
-			counter++;
-			defaultStart(cur, pw);
-
+			counter.incrementAndGet();
 			String blame = "";
 			for (T t : ts) {
 				if (blame.length() > 0) blame += " -- ";
 				blame += t;
 				counters.inc(t.getId());
 			}
-			pw.printf("%15s: %s\n","Blame", blame);
-
-			printExtra(pw, extraData);
-			defaultEnd(pw);
-			Util.error(sw.toString());
+			enqueue(new Report(this, cur.getTid(), blame, 0, getMax(), strings(extraData)));
 		}
 	}
 
+	/**
+	 * Wait until every error reported so far has been printed.
+	 */
+	public static void flush() {
+		synchronized (pending) {
+			while (pending.get() > 0) {
+				try {
+					pending.wait(100);
+				} catch (InterruptedException e) {
+					return;
+				}
+			}
+		}
+	}
 
 	/** 
 	 * Total number of errors reported.
 	 */
 	public static int getTotalNumberOfErrors() {
-		return totalNumberOfErrors;
+		return totalNumberOfErrors.get();
 	}
 
 	/**
 	 * Number of syntactic elements on which errors were reported.
 	 */
 	public static int getTotalNumberOfDistinctErrors() {
-		return totalNumberOfDistinctErrors;
+		return totalNumberOfDistinctErrors.get();
 	}
 
 }
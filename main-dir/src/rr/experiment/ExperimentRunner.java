@@ -0,0 +1,444 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.experiment;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import acme.util.Assert;
+import acme.util.Statistics;
+import acme.util.Util;
+
+/**
+ * Runs a matrix of RoadRunner configurations over the benchmarks in benchmarks/ and summarizes
+ * the results. This replaces the hand-written loops in race.sh, perturb.sh and TEST_BMS:
+ *
+ * <pre>
+ *   java -cp classes rr.experiment.ExperimentRunner experiment.properties
+ * </pre>
+ *
+ * Each run is a fresh JVM started through the benchmark's TEST_BENCH script (so msetup must have
+ * been sourced), in benchmark mode: -benchmark=iterations -warmup=warmup. Runs execute in
+ * parallel, at most cores / coresPerRun at a time, and each run gets
+ * -availableProcessors=coresPerRun. Two runs of the same benchmark never overlap, since
+ * TEST_BENCH unpacks its inputs into the benchmark's scratch directory.
+ *
+ * The spec is a properties file:
+ *
+ * <pre>
+ *   benchmarks  = avrora:luindex:lusearch    (colon separated, or "all"; default all)
+ *   reps        = 5                          (fresh JVMs per configuration and benchmark)
+ *   iterations  = 3                          (-benchmark)
+ *   warmup      = 1                          (-warmup)
+ *   cores       = 8                          (default: available processors)
+ *   coresPerRun = 2                          (default 1)
+ *   timeout     = 30                         (minutes per run; default 0 = none)
+ *   args        = -quiet -maxWarn=1          (passed to every run)
+ *   baseline    = Base                       (default Base, which defaults to -noinst)
+ *   benchmarkDir = benchmarks
+ *   logs        = log/experiment             (per-run .log and .xml files)
+ *   out         = experiment.csv
+ *   config.FT2  = -tool=FT2
+ *   config.FT2S = -tool=FT2S -samplingscheme={count,geometric} -samplingrate={1,10,50}
+ * </pre>
+ *
+ * Each {a,b,...} in a configuration expands to one configuration per alternative (the cross
+ * product for several), named by appending the chosen alternatives, e.g. FT2S_count_10.
+ *
+ * For every configuration and benchmark, the summary reports the mean and 95% confidence
+ * half-width over the successful runs of: the average iteration time ("RRBench: Average", ms),
+ * the overhead relative to the baseline configuration on that benchmark, the peak heap in use
+ * (memUsed, MB; runs get -trackMemoryUsage), and the distinct races reported
+ * (distinctErrorTotal).
+ */
+public class ExperimentRunner {
+
+	// same order as benchmarks/TEST_BMS.
+	static final String ALL_BMS = "crypt:lufact:moldyn:montecarlo:raytracer:series:sor:sparsematmult:avrora:batik:fop:h2:jython:luindex:lusearch:pmd:sunflow:tomcat:xalan";
+
+	/** A named set of RoadRunner arguments: one column of the matrix. */
+	static final class Config {
+		final String name;
+		final List<String> args;
+
+		Config(String name, List<String> args) {
+			this.name = name;
+			this.args = args;
+		}
+	}
+
+	/** One run of a configuration on a benchmark. */
+	static final class Run {
+		final Config config;
+		final String benchmark;
+		final int rep;
+
+		boolean ok;
+		double runtime;
+		double heap;
+		double races;
+
+		Run(Config config, String benchmark, int rep) {
+			this.config = config;
+			this.benchmark = benchmark;
+			this.rep = rep;
+		}
+
+		String tag() {
+			return config.name + "-" + benchmark + "-" + rep;
+		}
+	}
+
+	private final List<String> benchmarks = new ArrayList<String>();
+	private final List<Config> configs = new ArrayList<Config>();
+	private final List<String> commonArgs;
+	private final int reps;
+	private final int iterations;
+	private final int warmup;
+	private final int cores;
+	private final int coresPerRun;
+	private final long timeoutMinutes;
+	private final String baseline;
+	private final File benchDir;
+	private final File logDir;
+	private final File out;
+
+	private final List<Run> runs = new ArrayList<Run>();
+
+	// guarded by this
+	private final LinkedList<Run> pending = new LinkedList<Run>();
+	private final Set<String> busy = new HashSet<String>();
+	private int finished;
+
+	public ExperimentRunner(Properties spec) {
+		final String bms = spec.getProperty("benchmarks", "all").trim();
+		benchmarks.addAll(Arrays.asList((bms.equals("all") ? ALL_BMS : bms).split(":")));
+		reps = intProperty(spec, "reps", 5);
+		iterations = intProperty(spec, "iterations", 3);
+		warmup = intProperty(spec, "warmup", 1);
+		cores = intProperty(spec, "cores", Runtime.getRuntime().availableProcessors());
+		coresPerRun = intProperty(spec, "coresPerRun", 1);
+		timeoutMinutes = intProperty(spec, "timeout", 0);
+		commonArgs = split(spec.getProperty("args", "-quiet -maxWarn=1"));
+		baseline = spec.getProperty("baseline", "Base").trim();
+		benchDir = new File(spec.getProperty("benchmarkDir", "benchmarks").trim());
+		logDir = new File(spec.getProperty("logs", "log/experiment").trim());
+		out = new File(spec.getProperty("out", "experiment.csv").trim());
+
+		final Set<String> keys = new TreeSet<String>(spec.stringPropertyNames());
+		if (!keys.contains("config." + baseline)) {
+			configs.add(new Config(baseline, split("-noinst")));
+		}
+		for (String key : keys) {
+			if (key.startsWith("config.")) {
+				expand(key.substring("config.".length()), spec.getProperty(key).trim(), configs);
+			}
+		}
+		for (String bm : benchmarks) {
+			if (!new File(new File(benchDir, bm), "TEST_BENCH").exists()) {
+				Assert.fail("No TEST_BENCH for benchmark %s in %s", bm, benchDir);
+			}
+		}
+	}
+
+	static int intProperty(Properties spec, String key, int dV) {
+		final String v = spec.getProperty(key);
+		try {
+			return v == null ? dV : Integer.parseInt(v.trim());
+		} catch (NumberFormatException e) {
+			Assert.fail("Bad value for %s: %s", key, v);
+			return dV;
+		}
+	}
+
+	static List<String> split(String args) {
+		final List<String> result = new ArrayList<String>();
+		for (String s : args.trim().split("\\s+")) {
+			if (s.length() > 0) {
+				result.add(s);
+			}
+		}
+		return result;
+	}
+
+	private static final Pattern ALTERNATIVES = Pattern.compile("\\{([^{}]*)\\}");
+
+	// add one Config per combination of {a,b,...} alternatives in args to configs.
+	static void expand(String name, String args, List<Config> configs) {
+		final Matcher m = ALTERNATIVES.matcher(args);
+		if (!m.find()) {
+			configs.add(new Config(name, split(args)));
+			return;
+		}
+		for (String alt : m.group(1).split(",")) {
+			alt = alt.trim();
+			final String rest = args.substring(0, m.start()) + alt + args.substring(m.end());
+			expand(name + "_" + alt.replaceAll("[^A-Za-z0-9.=-]", ""), rest, configs);
+		}
+	}
+
+	/** Run every configuration on every benchmark reps times, then write the summary. */
+	public void run() throws InterruptedException, IOException {
+		logDir.mkdirs();
+		for (int rep = 1; rep <= reps; rep++) {
+			for (Config c : configs) {
+				for (String bm : benchmarks) {
+					runs.add(new Run(c, bm, rep));
+				}
+			}
+		}
+		pending.addAll(runs);
+
+		final int slots = Math.max(1, cores / coresPerRun);
+		Util.logf("Experiment: %d configurations x %d benchmarks x %d reps, %d at a time.",
+				configs.size(), benchmarks.size(), reps, slots);
+		final List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < slots; i++) {
+			final Thread w = new Thread("Experiment-" + i) {
+				@Override
+				public void run() {
+					try {
+						for (Run r = next(); r != null; r = next()) {
+							execute(r);
+							done(r);
+						}
+					} catch (InterruptedException e) {
+						Assert.panic(e);
+					}
+				}
+			};
+			workers.add(w);
+			w.start();
+		}
+		for (Thread w : workers) {
+			w.join();
+		}
+		summarize();
+	}
+
+	// the first pending run whose benchmark is not running.
+	private synchronized Run next() throws InterruptedException {
+		while (!pending.isEmpty()) {
+			for (Iterator<Run> i = pending.iterator(); i.hasNext();) {
+				final Run r = i.next();
+				if (!busy.contains(r.benchmark)) {
+					i.remove();
+					busy.add(r.benchmark);
+					return r;
+				}
+			}
+			wait();
+		}
+		return null;
+	}
+
+	private synchronized void done(Run r) {
+		busy.remove(r.benchmark);
+		finished++;
+		Util.logf("[%d/%d] %s: %s", finished, runs.size(), r.tag(),
+				r.ok ? String.format("%.0f ms, %.0f MB, %.0f races", r.runtime, r.heap, r.races)
+						: "FAILED");
+		notifyAll();
+	}
+
+	private void execute(Run r) {
+		final File xml = new File(logDir, r.tag() + ".xml");
+		final List<String> cmd = new ArrayList<String>();
+		cmd.add("./TEST_BENCH");
+		cmd.add("-benchmark=" + iterations);
+		cmd.add("-warmup=" + warmup);
+		cmd.add("-availableProcessors=" + coresPerRun);
+		cmd.add("-trackMemoryUsage");
+		cmd.add("-logs=" + logDir.getAbsolutePath());
+		cmd.add("-xml=" + xml.getName());
+		cmd.addAll(commonArgs);
+		cmd.addAll(r.config.args);
+		xml.delete();
+		try {
+			final Process p = new ProcessBuilder(cmd).directory(new File(benchDir, r.benchmark))
+					.redirectErrorStream(true)
+					.redirectOutput(new File(logDir, r.tag() + ".log")).start();
+			if (timeoutMinutes > 0) {
+				if (!p.waitFor(timeoutMinutes, TimeUnit.MINUTES)) {
+					p.destroyForcibly();
+					Assert.warn("%s timed out after %d minutes", r.tag(), timeoutMinutes);
+					return;
+				}
+			} else {
+				p.waitFor();
+			}
+			parse(r, new String(Files.readAllBytes(xml.toPath()), StandardCharsets.UTF_8));
+		} catch (IOException e) {
+			Assert.warn("%s: %s", r.tag(), e);
+		} catch (InterruptedException e) {
+			Assert.panic(e);
+		}
+	}
+
+	/*
+	 * RR's XML summary is not escaped, so it is not always well-formed. Pull the few values we
+	 * need out with patterns instead of a parser.
+	 */
+
+	private static final Pattern AVERAGE = Pattern
+			.compile("<name>\\s*\"RRBench: Average\"\\s*</name>\\s*<value>\\s*([\\d,]+)");
+
+	static Double element(String xml, String tag) {
+		final Matcher m = Pattern.compile("<" + tag + ">\\s*(-?[\\d,.]+)\\s*</" + tag + ">")
+				.matcher(xml);
+		return m.find() ? Double.valueOf(m.group(1).replace(",", "")) : null;
+	}
+
+	static void parse(Run r, String xml) {
+		final Matcher m = AVERAGE.matcher(xml);
+		final Double heap = element(xml, "memUsed");
+		final Double races = element(xml, "distinctErrorTotal");
+		if (!m.find() || heap == null || races == null || xml.contains("<failed> true </failed>")) {
+			return;
+		}
+		r.runtime = Double.parseDouble(m.group(1).replace(",", ""));
+		r.heap = heap;
+		r.races = races;
+		r.ok = true;
+	}
+
+	/** Mean and 95% half-width of one metric. */
+	static final class Stat {
+		final double mean;
+		final double ci;
+
+		Stat(double[] xs) {
+			this(Statistics.mean(xs), Statistics.ci95(xs));
+		}
+
+		Stat(double mean, double ci) {
+			this.mean = mean;
+			this.ci = ci;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%.2f,%.2f", mean, ci);
+		}
+	}
+
+	private void summarize() throws FileNotFoundException {
+		// config name -> benchmark -> successful runs
+		final Map<String, Map<String, List<Run>>> byConfig = new LinkedHashMap<String, Map<String, List<Run>>>();
+		for (Config c : configs) {
+			final Map<String, List<Run>> byBm = new LinkedHashMap<String, List<Run>>();
+			for (String bm : benchmarks) {
+				byBm.put(bm, new ArrayList<Run>());
+			}
+			byConfig.put(c.name, byBm);
+		}
+		for (Run r : runs) {
+			if (r.ok) {
+				byConfig.get(r.config.name).get(r.benchmark).add(r);
+			}
+		}
+
+		final PrintWriter csv = new PrintWriter(out);
+		csv.println("config,benchmark,runs,failed,runtime_ms,runtime_ci95,overhead,overhead_ci95,"
+				+ "peak_heap_mb,peak_heap_ci95,distinct_races,distinct_races_ci95");
+		Util.printf("%-30s %-12s %5s %16s %14s %14s %12s%n", "Config", "Benchmark", "Runs",
+				"Runtime (ms)", "Overhead", "Heap (MB)", "Races");
+		for (Config c : configs) {
+			for (String bm : benchmarks) {
+				final List<Run> ok = byConfig.get(c.name).get(bm);
+				final Stat runtime = stat(ok, 0);
+				final Stat base = stat(byConfig.get(baseline).get(bm), 0);
+				final Stat overhead = c.name.equals(baseline) ? new Stat(1, 0)
+						: new Stat(runtime.mean / base.mean, Statistics.ratioCi95(runtime.mean,
+								runtime.ci, base.mean, base.ci));
+				final Stat heap = stat(ok, 1);
+				final Stat races = stat(ok, 2);
+				csv.printf("%s,%s,%d,%d,%s,%s,%s,%s%n", c.name, bm, ok.size(), reps - ok.size(),
+						runtime, overhead, heap, races);
+				Util.printf("%-30s %-12s %2d/%-2d %9.0f +-%4.0f %7.2f +-%4.2f %7.0f +-%4.0f %5.1f +-%4.1f%n",
+						c.name, bm, ok.size(), reps, runtime.mean, runtime.ci, overhead.mean,
+						overhead.ci, heap.mean, heap.ci, races.mean, races.ci);
+			}
+		}
+		csv.close();
+		Util.logf("Wrote %s", out);
+	}
+
+	// metric 0: runtime, 1: heap, 2: races
+	private static Stat stat(List<Run> runs, int metric) {
+		final double[] xs = new double[runs.size()];
+		for (int i = 0; i < xs.length; i++) {
+			final Run r = runs.get(i);
+			xs[i] = metric == 0 ? r.runtime : metric == 1 ? r.heap : r.races;
+		}
+		return new Stat(xs);
+	}
+
+	static Properties load(String fileName) throws IOException {
+		final Properties spec = new Properties();
+		final InputStream in = new FileInputStream(fileName);
+		try {
+			spec.load(in);
+		} finally {
+			in.close();
+		}
+		return spec;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			Assert.fail("Usage: ExperimentRunner <spec.properties>");
+		}
+		new ExperimentRunner(load(args[0])).run();
+	}
+}
@@ -0,0 +1,329 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.experiment;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import acme.util.Assert;
+import acme.util.Util;
+import rr.experiment.ExperimentRunner.Config;
+
+/**
+ * Replays one recorded trace (a -tool=LOG replay log) through several tool configurations and
+ * compares the race pairs they report:
+ *
+ * <pre>
+ *   java -cp classes rr.experiment.OfflineAnalysis offline.properties
+ * </pre>
+ *
+ * Every configuration sees exactly the same event sequence, so a sampling configuration can be
+ * compared against the full analysis without rerunning the nondeterministic program for each
+ * one. Configurations run as concurrent rrrun processes (msetup must have been sourced): tool
+ * state such as ShadowThread fields and static options is per JVM, so two tool chains cannot
+ * share one. The replay log segments are memory-mapped read-only, so all the processes read the
+ * trace through the same page cache.
+ *
+ * The spec is a properties file:
+ *
+ * <pre>
+ *   trace       = benchmarks/avrora/events.rrlog   (replay log or .rrz trace; required)
+ *   parallel    = 4                                (processes at once; default available processors)
+ *   timeout     = 30                               (minutes per configuration; default 0 = none)
+ *   args        = -quiet -classpath=...            (passed to every run)
+ *   reference   = EFT2                             (default: the first configuration by name)
+ *   logs        = log/offline                      (per-configuration .log, .xml and race-pair .csv)
+ *   out         = offline.csv
+ *   config.EFT2  = -tool=EFT2
+ *   config.EFT2S = -tool=EFT2S -samplingscheme={count,geometric} -samplingrate={1,10,50}
+ * </pre>
+ *
+ * Configurations expand {a,b,...} alternatives as in ExperimentRunner. For each configuration
+ * the summary reports the replay time (the "time" of RR's XML summary, in ms), the distinct race
+ * pairs reported (from -racePairFile), and how many of the reference configuration's pairs it
+ * found. out also lists every pair found by any configuration with the configurations that
+ * found it. Every configuration is passed -racePairFile, so each must use a tool that accepts
+ * it (EFT2, EFT2S or FT2SS).
+ */
+public class OfflineAnalysis {
+
+	/** The result of replaying the trace with one configuration. */
+	static final class Result {
+		final Config config;
+
+		boolean ok;
+		double time;
+		final Set<String> pairs = new LinkedHashSet<String>();
+
+		Result(Config config) {
+			this.config = config;
+		}
+	}
+
+	private final File trace;
+	private final List<Config> configs = new ArrayList<Config>();
+	private final List<String> commonArgs;
+	private final int parallel;
+	private final long timeoutMinutes;
+	private final String reference;
+	private final File logDir;
+	private final File out;
+
+	private final List<Result> results = new ArrayList<Result>();
+	private final AtomicInteger nextResult = new AtomicInteger();
+
+	public OfflineAnalysis(Properties spec) {
+		final String t = spec.getProperty("trace");
+		if (t == null) {
+			Assert.fail("No trace given");
+		}
+		trace = new File(t.trim()).getAbsoluteFile();
+		// RRMain only replays arguments ending in .rrlog or .rrz, relative to its directory.
+		final String name = trace.getName();
+		if (!(name.endsWith(".rrlog") || name.endsWith(".rrz")) || !trace.exists()) {
+			Assert.fail("Not a replay log (.rrlog) or compressed trace (.rrz): %s", trace);
+		}
+		parallel = ExperimentRunner.intProperty(spec, "parallel",
+				Runtime.getRuntime().availableProcessors());
+		timeoutMinutes = ExperimentRunner.intProperty(spec, "timeout", 0);
+		commonArgs = ExperimentRunner.split(spec.getProperty("args", "-quiet"));
+		logDir = new File(spec.getProperty("logs", "log/offline").trim()).getAbsoluteFile();
+		out = new File(spec.getProperty("out", "offline.csv").trim());
+
+		for (String key : new TreeSet<String>(spec.stringPropertyNames())) {
+			if (key.startsWith("config.")) {
+				ExperimentRunner.expand(key.substring("config.".length()),
+						spec.getProperty(key).trim(), configs);
+			}
+		}
+		if (configs.isEmpty()) {
+			Assert.fail("No configurations given");
+		}
+		reference = spec.getProperty("reference", configs.get(0).name).trim();
+		for (Config c : configs) {
+			results.add(new Result(c));
+		}
+		if (result(reference) == null) {
+			Assert.fail("Unknown reference configuration %s", reference);
+		}
+	}
+
+	private Result result(String name) {
+		for (Result r : results) {
+			if (r.config.name.equals(name)) {
+				return r;
+			}
+		}
+		return null;
+	}
+
+	/** Replay the trace under every configuration, then write the summary. */
+	public void run() throws InterruptedException, IOException {
+		logDir.mkdirs();
+		final int slots = Math.max(1, Math.min(parallel, results.size()));
+		Util.logf("Offline analysis of %s: %d configurations, %d at a time.", trace,
+				results.size(), slots);
+		final List<Thread> workers = new ArrayList<Thread>();
+		for (int i = 0; i < slots; i++) {
+			final Thread w = new Thread("Offline-" + i) {
+				@Override
+				public void run() {
+					for (int n = nextResult.getAndIncrement(); n < results.size(); n = nextResult
+							.getAndIncrement()) {
+						final Result r = results.get(n);
+						execute(r);
+						Util.logf("%s: %s", r.config.name, r.ok
+								? String.format("%.0f ms, %d race pairs", r.time, r.pairs.size())
+								: "FAILED");
+					}
+				}
+			};
+			workers.add(w);
+			w.start();
+		}
+		for (Thread w : workers) {
+			w.join();
+		}
+		summarize();
+	}
+
+	private void execute(Result r) {
+		final File xml = new File(logDir, r.config.name + ".xml");
+		final File pairs = new File(logDir, r.config.name + "-pairs.csv");
+		final List<String> cmd = new ArrayList<String>();
+		cmd.add("rrrun");
+		cmd.add("-logs=" + logDir);
+		cmd.add("-xml=" + xml.getName());
+		cmd.add("-racePairFile=" + pairs);
+		cmd.addAll(commonArgs);
+		cmd.addAll(r.config.args);
+		cmd.add(trace.getName());
+		xml.delete();
+		pairs.delete();
+		try {
+			final Process p = new ProcessBuilder(cmd).directory(trace.getParentFile())
+					.redirectErrorStream(true)
+					.redirectOutput(new File(logDir, r.config.name + ".log")).start();
+			if (timeoutMinutes > 0) {
+				if (!p.waitFor(timeoutMinutes, TimeUnit.MINUTES)) {
+					p.destroyForcibly();
+					Assert.warn("%s timed out after %d minutes", r.config.name, timeoutMinutes);
+					return;
+				}
+			} else {
+				p.waitFor();
+			}
+			final String summary = new String(Files.readAllBytes(xml.toPath()),
+					StandardCharsets.UTF_8);
+			final Double time = ExperimentRunner.element(summary, "time");
+			if (time == null || summary.contains("<failed> true </failed>")) {
+				return;
+			}
+			if (pairs.exists()) {
+				readPairs(pairs, r.pairs);
+			}
+			r.time = time;
+			r.ok = true;
+		} catch (IOException e) {
+			Assert.warn("%s: %s", r.config.name, e);
+		} catch (InterruptedException e) {
+			Assert.panic(e);
+		}
+	}
+
+	// the first two columns of a RacePairAggregator CSV, as "first -- second".
+	static void readPairs(File f, Set<String> into) throws IOException {
+		final List<String> lines = Files.readAllLines(f.toPath(), StandardCharsets.UTF_8);
+		for (int i = 1; i < lines.size(); i++) {
+			final List<String> row = fields(lines.get(i), 2);
+			if (row.size() == 2) {
+				into.add(row.get(0) + " -- " + row.get(1));
+			}
+		}
+	}
+
+	// the first n fields of a line of CSV with optionally quoted fields.
+	static List<String> fields(String line, int n) {
+		final List<String> fields = new ArrayList<String>();
+		final StringBuilder f = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length() && fields.size() < n; i++) {
+			final char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					f.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					f.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(f.toString());
+				f.setLength(0);
+			} else {
+				f.append(c);
+			}
+		}
+		if (fields.size() < n) {
+			fields.add(f.toString());
+		}
+		return fields;
+	}
+
+	private static String csv(String s) {
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	private void summarize() throws IOException {
+		final Result ref = result(reference);
+		final PrintWriter csv = new PrintWriter(out);
+		csv.println("config,ok,time_ms,race_pairs,reference_pairs_found,reference_pairs");
+		Util.printf("%-30s %12s %10s %18s%n", "Config", "Time (ms)", "Pairs",
+				"Found of " + reference);
+		// pair -> configurations that found it
+		final Map<String, List<String>> found = new TreeMap<String, List<String>>();
+		for (Result r : results) {
+			int hits = 0;
+			for (String p : r.pairs) {
+				if (ref.pairs.contains(p)) {
+					hits++;
+				}
+				List<String> by = found.get(p);
+				if (by == null) {
+					by = new ArrayList<String>();
+					found.put(p, by);
+				}
+				by.add(r.config.name);
+			}
+			csv.printf("%s,%s,%.0f,%d,%d,%d%n", r.config.name, r.ok, r.time, r.pairs.size(), hits,
+					ref.pairs.size());
+			Util.printf("%-30s %12s %10d %10d / %-6d%n", r.config.name,
+					r.ok ? String.format("%.0f", r.time) : "FAILED", r.pairs.size(), hits,
+					ref.pairs.size());
+		}
+		csv.println();
+		csv.println("pair,found_by");
+		for (Map.Entry<String, List<String>> e : found.entrySet()) {
+			final StringBuilder by = new StringBuilder();
+			for (String name : e.getValue()) {
+				by.append(by.length() == 0 ? "" : " ").append(name);
+			}
+			csv.printf("%s,%s%n", csv(e.getKey()), csv(by.toString()));
+		}
+		csv.close();
+		Util.logf("Wrote %s", out);
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length != 1) {
+			Assert.fail("Usage: OfflineAnalysis <spec.properties>");
+		}
+		new OfflineAnalysis(ExperimentRunner.load(args[0])).run();
+	}
+}
@@ -38,6 +38,7 @@ OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
 
 package rr.instrument;
 
+import rr.meta.AccessSiteSampler;
 import rr.meta.FieldInfo;
 import rr.org.objectweb.asm.MethodVisitor;
 import rr.org.objectweb.asm.Opcodes;
@@ -231,6 +232,25 @@ public class ASMUtil implements Opcodes {
 	}
 
 
+	// Jumps to skip unless AccessSiteSampler says the access should generate an event.
+	public static void insertFieldSiteCheck(final RRMethodAdapter mv, final int fadVar, final int tdVar, final Label skip) {
+		if (AccessSiteSampler.siteSamplingOption.get()) {
+			mv.visitVarInsn(ILOAD, fadVar);
+			mv.visitVarInsn(ALOAD, tdVar);
+			mv.invokeStatic(Constants.SITE_SAMPLER_TYPE, Constants.SAMPLE_FIELD_SITE_METHOD);
+			mv.visitJumpInsn(IFEQ, skip);
+		}
+	}
+
+	public static void insertArraySiteCheck(final RRMethodAdapter mv, final int arrayAccessId, final int tdVar, final Label skip) {
+		if (AccessSiteSampler.siteSamplingOption.get()) {
+			mv.push(arrayAccessId);
+			mv.visitVarInsn(ALOAD, tdVar);
+			mv.invokeStatic(Constants.SITE_SAMPLER_TYPE, Constants.SAMPLE_ARRAY_SITE_METHOD);
+			mv.visitJumpInsn(IFEQ, skip);
+		}
+	}
+
 	// indexVar == -1 -> on stack
 	public static void insertArrayFastPathCode(final RRMethodAdapter mv, final boolean isWrite, final int shadowStateVar, final int guardStateLoc, final int tdVar, final Label success, final int indexVar) {
 		if (!RR.nofastPathOption.get()) {
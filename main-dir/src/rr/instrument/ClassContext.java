@@ -46,6 +46,8 @@ public class ClassContext implements Serializable {
 
 	protected final ClassInfo rrClass;
 	protected String fileName;
+	protected int threadLocalAccesses;
+	protected int redundantChecks;
 	
 	public ClassContext(ClassInfo rrClass) {
 		this.rrClass = rrClass;
@@ -62,6 +64,24 @@ public class ClassContext implements Serializable {
 	public void setFileName(String fileName) {
 		this.fileName = fileName;
 	}
+
+	/** Number of access sites left uninstrumented because their target is thread-local. */
+	public int getThreadLocalAccesses() {
+		return threadLocalAccesses;
+	}
+
+	public void addThreadLocalAccess() {
+		threadLocalAccesses++;
+	}
+
+	/** Number of access sites left uninstrumented because they repeat an earlier check. */
+	public int getRedundantChecks() {
+		return redundantChecks;
+	}
+
+	public void addRedundantChecks(int n) {
+		redundantChecks += n;
+	}
 	
 	
 }
@@ -123,6 +123,12 @@ public class Constants {
 	public static final Method VOLATILE_READ_ACCESS_METHOD_WITH_VALUES = new Method("volatileReadAccess", OBJECT_TYPE, new Type[] { OBJECT_TYPE, GUARD_STATE_TYPE, Type.INT_TYPE, THREAD_STATE_TYPE, OBJECT_TYPE });
 	public static final Method VOLATILE_WRITE_ACCESS_METHOD_WITH_VALUES = new Method("volatileWriteAccess", OBJECT_TYPE, new Type[] { OBJECT_TYPE, GUARD_STATE_TYPE, Type.INT_TYPE, THREAD_STATE_TYPE, OBJECT_TYPE, OBJECT_TYPE});
 
+	public static final Type SITE_SAMPLER_TYPE = Type.getType(rr.meta.AccessSiteSampler.class);
+	public static final Method SAMPLE_FIELD_SITE_METHOD = Method.getMethod("boolean sampleField(int, rr.state.ShadowThread)");
+	public static final Method SAMPLE_ARRAY_SITE_METHOD = Method.getMethod("boolean sampleArray(int, rr.state.ShadowThread)");
+	public static final Type CODE_SAMPLER_TYPE = Type.getType(rr.sampling.CodeSampler.class);
+	public static final Method SAMPLE_CODE_METHOD = Method.getMethod("boolean sample(int, rr.state.ShadowThread)");
+
 	public static final Method READ_FP_METHOD = Method.getMethod("boolean readFastPath(rr.state.ShadowVar, rr.state.ShadowThread)");
 	public static final Method WRITE_FP_METHOD =  Method.getMethod("boolean writeFastPath(rr.state.ShadowVar, rr.state.ShadowThread)");
 	public static final Method ARRAY_READ_FP_METHOD = Method.getMethod("boolean arrayReadFastPath(int, rr.state.ShadowVar, rr.state.ShadowThread)");
@@ -143,6 +149,7 @@ public class Constants {
 	protected static final String THUNK_SUFFIX = SUFFIX + "_Update_";
 	protected static final String ORIGINAL_CODE_SUFFIX = SUFFIX + "_Original_";
 	protected static final String SYNCHRONIZED_THUNK_SUFFIX = SUFFIX + "_Sync_";
+	protected static final String UNSAMPLED_CODE_SUFFIX = SUFFIX + "_Unsampled_";
 
 	
 	public static boolean isSyntheticName(String name) {
@@ -171,6 +178,10 @@ public class Constants {
 		return PREFIX + name + ORIGINAL_CODE_SUFFIX; 
 	}
 
+	public static String getUnsampledName(String name) {
+		return PREFIX + name + UNSAMPLED_CODE_SUFFIX; 
+	}
+
 	public static String getUpdateThunkName(String className, String fieldName) {
 		className = mungeClassName(className);
 		return PREFIX + className + THUNK_SUFFIX + fieldName;
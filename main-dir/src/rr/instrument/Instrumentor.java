@@ -37,6 +37,8 @@ import java.util.Set;
 import java.util.Vector;
 
 import acme.util.Assert;
+import acme.util.Util;
+import acme.util.count.Counter;
 import acme.util.count.Timer;
 import acme.util.decorations.Decoration;
 import acme.util.decorations.DecorationFactory;
@@ -102,10 +104,22 @@ public class Instrumentor {
 			"arraySites", false, CommandLineOption.Kind.STABLE,
 			"Track arrays only on given line locations.");
 
+	public static final CommandLineOption<Boolean> noEscapeOption = CommandLine.makeBoolean(
+			"noEscape", false, CommandLineOption.Kind.STABLE,
+			"Instrument accesses to objects and arrays that are allocated in the accessing method and never escape it.  (They are skipped by default.)");
+
+	public static final CommandLineOption<Boolean> noRedundantOption = CommandLine.makeBoolean(
+			"noRedundant", false, CommandLineOption.Kind.STABLE,
+			"Instrument accesses that repeat an access to the same location earlier in the same basic block with no synchronization or call in between.  (They are skipped by default.)");
+
 	public static final Option<Boolean> useTestAcquireOption = new Option<Boolean>(
 			"Use TestAcquires", false);
 
 	private static final Timer insTime = new Timer("Time", "Instrumenter");
+	private static final Counter threadLocalAccesses = new Counter("Instrumenter",
+			"Thread-Local Access Sites");
+	private static final Counter redundantChecks = new Counter("Instrumenter",
+			"Redundant Checks Removed");
 
 	public static final Decoration<ClassInfo, ClassContext> classContext = MetaDataInfoMaps
 			.getClasses().makeDecoration("class instrument context", DecorationFactory.Type.SINGLE,
@@ -123,7 +137,13 @@ public class Instrumentor {
 						}
 					});
 
-	public static synchronized ClassWriter instrument(final LoaderContext loader, ClassReader cr) {
+	/*
+	 * instrument and sanityCheck are not synchronized: class loading threads transform their classes
+	 * concurrently. Each call builds its own ClassReader/ClassWriter and visitor chain, so all ASM
+	 * state is confined to the calling thread. The shared metadata is safe for concurrent use: see
+	 * MetaDataBuilder.lock, MetaDataAllocator, and Decoration.
+	 */
+	public static ClassWriter instrument(final LoaderContext loader, ClassReader cr) {
 		long start = insTime.start();
 
 		try {
@@ -215,6 +235,22 @@ public class Instrumentor {
 				cv = new JVMVersionNumberFixer(cv);
 
 				cr.accept(cv, ClassReader.EXPAND_FRAMES);
+
+				final int skipped = ctxt.getThreadLocalAccesses();
+				if (skipped > 0) {
+					Util.logf("%s: %d thread-local access sites not instrumented.",
+							currentClass.getName(), skipped);
+					synchronized (threadLocalAccesses) {
+						threadLocalAccesses.add(skipped);
+					}
+				}
+				final int redundant = ctxt.getRedundantChecks();
+				if (redundant > 0) {
+					Util.logf("%s: %d redundant checks removed.", currentClass.getName(), redundant);
+					synchronized (redundantChecks) {
+						redundantChecks.add(redundant);
+					}
+				}
 			} else {
 				ClassVisitor cv = new InterfaceThunkInserter(cv0);
 
@@ -231,7 +267,7 @@ public class Instrumentor {
 		}
 	}
 
-	public static synchronized void sanityCheck(LoaderContext loaderContext,
+	public static void sanityCheck(LoaderContext loaderContext,
 			ClassReader classReader) {
 		long start = insTime.start();
 		try {
@@ -55,6 +55,18 @@ public class MethodContext implements Serializable {
 	protected String signature;
 	 
 	protected int threadStateVar = -1;
+
+	// access is to an object that never escapes its thread (EscapeAnalysis).
+	public static final int THREAD_LOCAL_ACCESS = 1;
+	// access repeats one already checked in the same block (RedundantCheckEliminator).
+	public static final int REDUNDANT_ACCESS = 2;
+
+	// set by the AccessAnalysis stages while an access is being instrumented.
+	protected int accessFlags;
+
+	// with -codeSampling: the name of this body's unsampled clone, or whether this is the clone.
+	protected String unsampledClone;
+	protected boolean unsampled;
 	
 	public MethodContext(MethodInfo m) {
 		this.method = m;
@@ -116,6 +128,38 @@ public class MethodContext implements Serializable {
 		return this.nextFreeVar - 1;
 	}
 
+	public boolean isThreadLocalAccess() {
+		return (accessFlags & THREAD_LOCAL_ACCESS) != 0;
+	}
+
+	public boolean isRedundantAccess() {
+		return (accessFlags & REDUNDANT_ACCESS) != 0;
+	}
+
+	public int getAccessFlags() {
+		return accessFlags;
+	}
+
+	public void setAccessFlags(int accessFlags) {
+		this.accessFlags = accessFlags;
+	}
+
+	public String getUnsampledClone() {
+		return unsampledClone;
+	}
+
+	public void setUnsampledClone(String unsampledClone) {
+		this.unsampledClone = unsampledClone;
+	}
+
+	public boolean isUnsampled() {
+		return unsampled;
+	}
+
+	public void setUnsampled(boolean unsampled) {
+		this.unsampled = unsampled;
+	}
+
 	public void setFirstFreeVar(int maxLocals) {
 		this.nextFreeVar = maxLocals;
 		this.threadStateVar = this.getNextFreeVar(1);
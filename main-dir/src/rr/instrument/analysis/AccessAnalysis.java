@@ -0,0 +1,152 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package rr.instrument.analysis;
+
+import java.util.Arrays;
+
+import rr.instrument.MethodContext;
+import rr.org.objectweb.asm.MethodVisitor;
+import rr.org.objectweb.asm.Opcodes;
+import rr.org.objectweb.asm.tree.AbstractInsnNode;
+import rr.org.objectweb.asm.tree.FieldInsnNode;
+import rr.org.objectweb.asm.tree.MethodNode;
+
+/**
+ * A stage that buffers a method, decides for each field and array access whether it needs to be
+ * instrumented, and replays the method to mv. While an access is replayed, this stage's flag is
+ * or'd into MethodContext.getAccessFlags(), and the instruction adapters consult those flags.
+ *
+ * Stages can be chained: the flags set by an earlier stage while it replays into this one are
+ * saved per access as the method is buffered and restored when this stage replays. MethodNode.accept
+ * visits instructions in order, so the n-th access replayed is the n-th one buffered and analyzed.
+ */
+public abstract class AccessAnalysis extends MethodNode implements Opcodes {
+
+	protected final MethodVisitor mv;
+	protected final MethodContext context;
+	protected final String owner;
+	private final int flag;
+
+	private int incoming[] = new int[16];
+	private int accesses = 0;
+
+	/** Set by analyze: one entry per access in instructions, in order. */
+	protected boolean marked[];
+
+	protected AccessAnalysis(int flag, MethodVisitor mv, MethodContext context, String owner,
+			int access, String name, String desc, String signature, String[] exceptions) {
+		super(ASM5, access, name, desc, signature, exceptions);
+		this.flag = flag;
+		this.mv = mv;
+		this.context = context;
+		this.owner = owner;
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+		record();
+		super.visitFieldInsn(opcode, owner, name, desc);
+	}
+
+	@Override
+	public void visitInsn(int opcode) {
+		if (isArrayAccess(opcode)) {
+			record();
+		}
+		super.visitInsn(opcode);
+	}
+
+	private void record() {
+		if (accesses == incoming.length) {
+			incoming = Arrays.copyOf(incoming, accesses * 2);
+		}
+		incoming[accesses++] = context.getAccessFlags();
+	}
+
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		marked = new boolean[accesses];
+		if (accesses > 0) {
+			analyze();
+		}
+		accept(new Replayer(mv));
+	}
+
+	protected abstract void analyze();
+
+	public static boolean isArrayAccess(int opcode) {
+		return (opcode >= IALOAD && opcode <= SALOAD) || (opcode >= IASTORE && opcode <= SASTORE);
+	}
+
+	public static boolean isAccess(AbstractInsnNode insn) {
+		return insn instanceof FieldInsnNode || isArrayAccess(insn.getOpcode());
+	}
+
+	class Replayer extends MethodVisitor {
+		int next = 0;
+
+		Replayer(MethodVisitor mv) {
+			super(ASM5, mv);
+		}
+
+		private void set() {
+			context.setAccessFlags(incoming[next] | (marked[next] ? flag : 0));
+			next++;
+		}
+
+		@Override
+		public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+			set();
+			super.visitFieldInsn(opcode, owner, name, desc);
+			context.setAccessFlags(0);
+		}
+
+		@Override
+		public void visitInsn(int opcode) {
+			if (isArrayAccess(opcode)) {
+				set();
+				super.visitInsn(opcode);
+				context.setAccessFlags(0);
+			} else {
+				super.visitInsn(opcode);
+			}
+		}
+	}
+}
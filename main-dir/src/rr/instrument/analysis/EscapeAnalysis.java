@@ -0,0 +1,284 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package rr.instrument.analysis;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import rr.instrument.MethodContext;
+import rr.org.objectweb.asm.MethodVisitor;
+import rr.org.objectweb.asm.Type;
+import rr.org.objectweb.asm.tree.AbstractInsnNode;
+import rr.org.objectweb.asm.tree.InsnNode;
+import rr.org.objectweb.asm.tree.MethodInsnNode;
+import rr.org.objectweb.asm.tree.analysis.Analyzer;
+import rr.org.objectweb.asm.tree.analysis.AnalyzerException;
+import rr.org.objectweb.asm.tree.analysis.Frame;
+import rr.org.objectweb.asm.tree.analysis.SourceInterpreter;
+import rr.org.objectweb.asm.tree.analysis.SourceValue;
+
+import acme.util.Yikes;
+
+/**
+ * Intra-procedural escape analysis. Finds the allocation sites (NEW, NEWARRAY, ANEWARRAY,
+ * MULTIANEWARRAY) whose objects never escape the method and marks the field and array accesses
+ * whose target can only come from such sites as MethodContext.THREAD_LOCAL_ACCESS. The
+ * instruction adapters leave those accesses uninstrumented: no other thread can ever reach the
+ * object.
+ *
+ * A value escapes if it is stored into a field, static, or array, returned, thrown, or passed to
+ * a method. The exceptions are Object.<init>, clone on arrays, the arrays given to
+ * System.arraycopy, and the arrays given to a few java.util.Arrays methods that neither keep
+ * them nor run other code on them: copyOf, copyOfRange, equals, hashCode, and sort and fill on
+ * primitive arrays. Other arguments of those calls still escape. Constructors count as escapes,
+ * since the analysis cannot see what they do with this. Values flowing in from parameters, fields, array elements, and
+ * method results are unknown, and accesses to them are always instrumented.
+ */
+public class EscapeAnalysis extends AccessAnalysis {
+
+	// stands for values the analysis cannot trace to an allocation in this method.
+	private static final AbstractInsnNode UNKNOWN = new InsnNode(NOP);
+
+	public EscapeAnalysis(MethodVisitor mv, MethodContext context, String owner, int access,
+			String name, String desc, String signature, String[] exceptions) {
+		super(MethodContext.THREAD_LOCAL_ACCESS, mv, context, owner, access, name, desc,
+				signature, exceptions);
+	}
+
+	@Override
+	protected void analyze() {
+		final int n = instructions.size();
+		boolean allocates = false;
+		for (int k = 0; k < n && !allocates; k++) {
+			allocates = isAllocation(instructions.get(k));
+		}
+		if (!allocates) {
+			return;
+		}
+
+		final EscapeInterpreter interp = new EscapeInterpreter();
+		final Frame<SourceValue> frames[];
+		try {
+			frames = new Analyzer<SourceValue>(interp).analyze(owner, this);
+		} catch (AnalyzerException e) {
+			Yikes.yikes("Escape analysis failed for %s.%s%s: %s", owner, name, desc, e);
+			return;
+		}
+
+		int a = 0;
+		for (int k = 0; k < n; k++) {
+			final AbstractInsnNode insn = instructions.get(k);
+			if (isAccess(insn)) {
+				final Frame<SourceValue> f = frames[k];
+				final int depth = targetDepth(insn);
+				if (f != null && depth > 0) {
+					marked[a] = isLocal(f.getStack(f.getStackSize() - depth), interp.escaped);
+				}
+				a++;
+			}
+		}
+	}
+
+	private static boolean isLocal(SourceValue v, Set<AbstractInsnNode> escaped) {
+		boolean allocated = false;
+		for (AbstractInsnNode insn : v.insns) {
+			if (isAllocation(insn) && !escaped.contains(insn)) {
+				allocated = true;
+			} else if (insn.getOpcode() != ACONST_NULL) {
+				return false;
+			}
+		}
+		return allocated;
+	}
+
+	private static boolean isAllocation(AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+			case NEW:
+			case NEWARRAY:
+			case ANEWARRAY:
+			case MULTIANEWARRAY:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	/*
+	 * Position of the object or array being accessed, counting from the top of the stack, or 0 for
+	 * instructions that are not instance field or array accesses.
+	 */
+	private static int targetDepth(AbstractInsnNode insn) {
+		switch (insn.getOpcode()) {
+			case GETFIELD:
+				return 1;
+			case PUTFIELD:
+			case IALOAD: case LALOAD: case FALOAD: case DALOAD:
+			case AALOAD: case BALOAD: case CALOAD: case SALOAD:
+				return 2;
+			case IASTORE: case LASTORE: case FASTORE: case DASTORE:
+			case AASTORE: case BASTORE: case CASTORE: case SASTORE:
+				return 3;
+			default:
+				return 0;
+		}
+	}
+
+	/*
+	 * Values are the sets of instructions that may have produced them, as in SourceInterpreter, but
+	 * loads, stores, and casts pass their value through unchanged so that sets name the original
+	 * allocation sites.
+	 */
+	static class EscapeInterpreter extends SourceInterpreter {
+
+		final Set<AbstractInsnNode> escaped = new HashSet<AbstractInsnNode>();
+
+		private void escape(SourceValue v) {
+			escaped.addAll(v.insns);
+		}
+
+		@Override
+		public SourceValue newValue(final Type type) {
+			if (type == Type.VOID_TYPE) {
+				return null;
+			}
+			return new SourceValue(type == null ? 1 : type.getSize(), UNKNOWN);
+		}
+
+		@Override
+		public SourceValue copyOperation(final AbstractInsnNode insn, final SourceValue value) {
+			return value;
+		}
+
+		@Override
+		public SourceValue unaryOperation(final AbstractInsnNode insn, final SourceValue value) {
+			switch (insn.getOpcode()) {
+				case CHECKCAST:
+					return value;
+				case PUTSTATIC:
+				case ATHROW:
+					escape(value);
+					break;
+			}
+			return super.unaryOperation(insn, value);
+		}
+
+		@Override
+		public SourceValue binaryOperation(final AbstractInsnNode insn, final SourceValue value1,
+				final SourceValue value2) {
+			if (insn.getOpcode() == PUTFIELD) {
+				escape(value2);
+			}
+			return super.binaryOperation(insn, value1, value2);
+		}
+
+		@Override
+		public SourceValue ternaryOperation(final AbstractInsnNode insn, final SourceValue value1,
+				final SourceValue value2, final SourceValue value3) {
+			if (insn.getOpcode() == AASTORE) {
+				escape(value3);
+			}
+			return super.ternaryOperation(insn, value1, value2, value3);
+		}
+
+		@Override
+		public SourceValue naryOperation(final AbstractInsnNode insn,
+				final List<? extends SourceValue> values) {
+			if (insn.getOpcode() != MULTIANEWARRAY) {
+				final boolean[] local = localArguments(insn);
+				for (int i = 0; i < values.size(); i++) {
+					if (local == null || !local[i]) {
+						escape(values.get(i));
+					}
+				}
+			}
+			return super.naryOperation(insn, values);
+		}
+
+		// the arguments (receiver first) that a call neither keeps nor hands to other code, or
+		// null if every argument escapes.
+		private static boolean[] localArguments(AbstractInsnNode insn) {
+			if (!(insn instanceof MethodInsnNode)) {
+				return null;
+			}
+			final MethodInsnNode m = (MethodInsnNode) insn;
+			if (m.owner.equals("java/lang/Object") && m.name.equals("<init>")) {
+				return new boolean[] { true };
+			}
+			if (m.owner.startsWith("[") && m.name.equals("clone")) {
+				return new boolean[] { true };
+			}
+			if (m.owner.equals("java/lang/System") && m.name.equals("arraycopy")) {
+				return new boolean[] { true, false, true, false, false };
+			}
+			if (m.owner.equals("java/util/Arrays") && m.getOpcode() == INVOKESTATIC) {
+				final Type[] args = Type.getArgumentTypes(m.desc);
+				if (!isHarmlessArraysMethod(m.name, args)) {
+					return null;
+				}
+				final boolean[] local = new boolean[args.length];
+				for (int i = 0; i < args.length; i++) {
+					local[i] = args[i].getSort() == Type.ARRAY;
+				}
+				return local;
+			}
+			return null;
+		}
+
+		private static boolean isHarmlessArraysMethod(String name, Type[] args) {
+			if (name.equals("copyOf") || name.equals("copyOfRange") || name.equals("equals")
+					|| name.equals("hashCode")) {
+				return true;
+			}
+			if (name.equals("sort") || name.equals("fill")) {
+				// the Object[] versions call compareTo or a Comparator, or store a value.
+				final Type a = args[0];
+				return a.getSort() == Type.ARRAY && a.getDimensions() == 1
+						&& a.getElementType().getSort() != Type.OBJECT;
+			}
+			return false;
+		}
+
+		@Override
+		public void returnOperation(final AbstractInsnNode insn, final SourceValue value,
+				final SourceValue expected) {
+			escape(value);
+		}
+	}
+}
@@ -109,6 +109,7 @@ public class GuardStateInserter extends RRClassAdapter implements Opcodes {
 		if ((access & ACC_FINAL) == 0) {
 			final Label success = new Label();
 
+			if (!isVolatile) ASMUtil.insertFieldSiteCheck(mv, 1 + valueSize, 2 + valueSize, success);
 			mv.visitVarInsn(ALOAD, 0);
 			// THIS
 			visitGetShadow(mv, rrClass.getName(), name, false, field.isVolatile());
@@ -204,6 +205,7 @@ public class GuardStateInserter extends RRClassAdapter implements Opcodes {
 			Label success = new Label();
 
 
+			if (!isVolatile) ASMUtil.insertFieldSiteCheck(mv, 1, 2, success);
 			mv.visitVarInsn(ALOAD, 0);
 			visitGetShadow(mv, rrClass.getName(), name, false, field.isVolatile());
 			// gs
@@ -293,6 +295,7 @@ public class GuardStateInserter extends RRClassAdapter implements Opcodes {
 
 			Label success = new Label();
 
+			if (!isVolatile) ASMUtil.insertFieldSiteCheck(mv, valueSize, 1 + valueSize, success);
 			visitGetShadow(mv, rrClass.getName(), name, true, field.isVolatile());
 			// gs
 			mv.visitVarInsn(ASTORE, 5);
@@ -375,6 +378,7 @@ public class GuardStateInserter extends RRClassAdapter implements Opcodes {
 		if ((access & ACC_FINAL) == 0) {
 			Label success = new Label();
 
+			if (!isVolatile) ASMUtil.insertFieldSiteCheck(mv, 0, 1, success);
 			visitGetShadow(mv, rrClass.getName(), name, true, field.isVolatile());
 			// gs
 			mv.visitVarInsn(ASTORE, 5);
@@ -46,14 +46,18 @@ import rr.org.objectweb.asm.commons.JSRInlinerAdapter;
 import rr.instrument.ASMUtil;
 import rr.instrument.Constants;
 import rr.instrument.Instrumentor;
+import rr.instrument.MethodContext;
 import rr.instrument.analysis.MethodVisitorWithAnalysisFrames;
 import rr.instrument.analysis.PrintingAnalyzerAdapter;
 import rr.instrument.analysis.TraceMethodVisitor;
+import rr.instrument.analysis.EscapeAnalysis;
 import rr.instrument.array.ArrayAnalysis;
 import rr.instrument.methods.ArrayTypeExtractor;
+import rr.instrument.methods.CloningMethodVisitor;
 import rr.instrument.methods.FancyArrayInstructionAdapter;
 import rr.instrument.methods.GuardStateInstructionAdapter;
 import rr.instrument.methods.NoOpMethodReplacer;
+import rr.instrument.methods.RedundantCheckEliminator;
 import rr.instrument.methods.RRMethodAdapter;
 import rr.instrument.methods.ReflectionMethodReplacer;
 import rr.instrument.methods.SimpleArrayInstructionAdapter;
@@ -65,6 +69,7 @@ import rr.meta.ClassInfo;
 import rr.meta.InstrumentationFilter;
 import rr.meta.MetaDataInfoMaps;
 import rr.meta.MethodInfo;
+import rr.sampling.CodeSampler;
 import rr.state.ArrayStateFactory;
 import rr.tool.RR;
 import acme.util.Assert;
@@ -125,56 +130,92 @@ public class ThreadDataThunkInserter extends RRClassAdapter implements Opcodes {
 				return mv;
 			}
 
-			if (instrumentCode) {
-
-				if (ArrayStateFactory.arrayOption.get() != ArrayStateFactory.ArrayMode.NONE) {
-					if (RR.valuesOption.get()) {
-						if (version < V1_6) {
-							Yikes.yikes("Classfile is version " + version + ", but -values requires class files be at least version " + V1_6 + ".  Recompile with javac version 1.6 or higher, or crashes may result.");
-						}
-						
-						SimpleArrayWithValuesInstructionAdapter mv2 = new SimpleArrayWithValuesInstructionAdapter(mv, newMethod);
-						// MethodVisitor p = new PrintingAnalyzerAdapter(owner.getName(), access, newName, desc, mv2);
-						MethodVisitor p = mv2;
-						ArrayTypeExtractor mv3 = new ArrayTypeExtractor(owner.getName(), access, newName, newDesc, p);
-
-						mv2.setTypeAnalyzer(mv3);
-						mv = mv3;
-						if (Debug.debugOn("analysis")) {
-							Assert.fail("Analysis not supported right now.");
+			// -codeSampling: a private copy of the body that only instruments synchronization, and
+			// a check at entry to the instrumented body that runs the copy on unsampled entries. Native
+			// methods have no body to copy.
+			MethodVisitor clone = null;
+			if (instrumentCode && CodeSampler.codeSamplingOption.get() && !Instrumentor.fancyOption.get() && !name.startsWith("<") && (access & ACC_NATIVE) == 0) {
+				final String cloneName = Constants.getUnsampledName(newName);
+				final int cloneAccess = (access & ~(ACC_PUBLIC | ACC_PROTECTED)) | ACC_PRIVATE | ACC_SYNTHETIC;
+				final MethodInfo cloneMethod = MetaDataInfoMaps.getMethod(owner, cloneName, newDesc);
+				cloneMethod.setFlags(newMethod);
+				final MethodContext newContext = Instrumentor.methodContext.get(newMethod);
+				final MethodContext cloneContext = Instrumentor.methodContext.get(cloneMethod);
+				cloneContext.setFirstFreeVar(newContext.getThreadDataVar());
+				cloneContext.setUnsampled(true);
+				newContext.setUnsampledClone(cloneName);
+				clone = instrumentMethod(cv.visitMethod(cloneAccess, cloneName, newDesc, signature, exceptions), cloneAccess, desc, cloneName, newDesc, signature, exceptions, cloneMethod);
+			}
+			mv = instrumentMethod(mv, access, desc, newName, newDesc, signature, exceptions, newMethod);
+			return clone == null ? mv : new CloningMethodVisitor(mv, clone);
+		}
+	}
+
+	protected MethodVisitor instrumentMethod(MethodVisitor mv, int access, String desc, String newName, String newDesc, String signature, String[] exceptions, MethodInfo newMethod) {
+		final ClassInfo owner = context.getRRClass();
+
+		if (instrumentCode) {
+
+			if (ArrayStateFactory.arrayOption.get() != ArrayStateFactory.ArrayMode.NONE) {
+				if (RR.valuesOption.get()) {
+					if (version < V1_6) {
+						Yikes.yikes("Classfile is version " + version + ", but -values requires class files be at least version " + V1_6 + ".  Recompile with javac version 1.6 or higher, or crashes may result.");
+					}
+					
+					SimpleArrayWithValuesInstructionAdapter mv2 = new SimpleArrayWithValuesInstructionAdapter(mv, newMethod);
+					// MethodVisitor p = new PrintingAnalyzerAdapter(owner.getName(), access, newName, desc, mv2);
+					MethodVisitor p = mv2;
+					ArrayTypeExtractor mv3 = new ArrayTypeExtractor(owner.getName(), access, newName, newDesc, p);
+
+					mv2.setTypeAnalyzer(mv3);
+					mv = mv3;
+					if (Debug.debugOn("analysis")) {
+						Assert.fail("Analysis not supported right now.");
 //							mv = new PrintingAnalyzerAdapter(owner.getName(), access, newName, newDesc, mv);
 //							mv = new MethodAdapterWithAnalysisFrames(mv);
 //							mv = new TraceMethodVisitorWithAnalysisFrames((MethodVisitorWithAnalysisFrames)mv, owner.getName(), newName, newDesc);
-						}
-					} else if (!Instrumentor.fancyOption.get()) {
-						mv = new SimpleArrayInstructionAdapter(mv, newMethod);
-					} else {
-						mv = new FancyArrayInstructionAdapter(mv, newMethod);
-				//		mv = new MethodVisitorWithAnalysisFrames(mv, access, newName, desc, signature, exceptions);
-						if (Debug.debugOn("analysis")) {
-							Assert.fail("Analysis not supported right now.");
-//							mv = new TraceMethodVisitor();
-						}
-						mv = new ArrayAnalysis(mv, owner.getName(), access, newName, desc, signature, exceptions);
 					}
+				} else if (!Instrumentor.fancyOption.get()) {
+					mv = new SimpleArrayInstructionAdapter(mv, newMethod);
 				} else {
-					mv = new GuardStateInstructionAdapter(mv, newMethod);
+					mv = new FancyArrayInstructionAdapter(mv, newMethod);
+			//		mv = new MethodVisitorWithAnalysisFrames(mv, access, newName, desc, signature, exceptions);
+					if (Debug.debugOn("analysis")) {
+						Assert.fail("Analysis not supported right now.");
+//							mv = new TraceMethodVisitor();
+					}
+					mv = new ArrayAnalysis(mv, owner.getName(), access, newName, desc, signature, exceptions);
 				}
 			} else {
-				mv = new ThreadDataInstructionAdapter(mv, newMethod);
-			} 
-			
-			
-			mv = new SpecialMethodReplacer(mv, newMethod);
-			mv = new SystemMethodReplacer(mv, newMethod);
-			mv = new NoOpMethodReplacer(mv, newMethod);
-			if (Instrumentor.trackReflectionOption.get()) {
-				mv = new ReflectionMethodReplacer(mv, newMethod);
+				mv = new GuardStateInstructionAdapter(mv, newMethod);
 			}
-			mv = new JSRInlinerAdapter(mv, access, newName, newDesc, signature, exceptions);
-
-			return mv;
+		} else {
+			mv = new ThreadDataInstructionAdapter(mv, newMethod);
+		} 
+		
+		
+		mv = new SpecialMethodReplacer(mv, newMethod);
+		mv = new SystemMethodReplacer(mv, newMethod);
+		mv = new NoOpMethodReplacer(mv, newMethod);
+		if (Instrumentor.trackReflectionOption.get()) {
+			mv = new ReflectionMethodReplacer(mv, newMethod);
 		}
+		// FancyArrayInstructionAdapter buffers the method in ArrayAnalysis, so it would not see
+		// the per-instruction flags set while EscapeAnalysis and RedundantCheckEliminator replay.
+		// Both see the code before ThreadDataInstructionAdapter makes room for the thread state
+		// parameter, so they analyze it with the original descriptor.
+		final MethodContext methodContext = Instrumentor.methodContext.get(newMethod);
+		if (instrumentCode && !Instrumentor.fancyOption.get() && !methodContext.isUnsampled()) {
+			if (!Instrumentor.noEscapeOption.get()) {
+				mv = new EscapeAnalysis(mv, methodContext, owner.getName(), access, newName, desc, signature, exceptions);
+			}
+			if (!Instrumentor.noRedundantOption.get()) {
+				mv = new RedundantCheckEliminator(mv, methodContext, owner.getName(), access, newName, desc, signature, exceptions);
+			}
+		}
+		mv = new JSRInlinerAdapter(mv, access, newName, newDesc, signature, exceptions);
+
+		return mv;
 	}
 
 
@@ -0,0 +1,214 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.instrument.methods;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import rr.org.objectweb.asm.Handle;
+import rr.org.objectweb.asm.Label;
+import rr.org.objectweb.asm.MethodVisitor;
+import rr.org.objectweb.asm.Opcodes;
+
+/**
+ * Forwards a method to mv and a copy of its code to clone. ASM labels carry per-method state, so
+ * the clone gets its own Label for each label of the original. Annotations, attributes, and
+ * parameter names only go to mv.
+ */
+public class CloningMethodVisitor extends MethodVisitor {
+
+	protected final MethodVisitor clone;
+	private final Map<Label, Label> labels = new HashMap<Label, Label>();
+
+	public CloningMethodVisitor(MethodVisitor mv, MethodVisitor clone) {
+		super(Opcodes.ASM5, mv);
+		this.clone = clone;
+	}
+
+	private Label copy(Label l) {
+		Label c = labels.get(l);
+		if (c == null) {
+			c = new Label();
+			labels.put(l, c);
+		}
+		return c;
+	}
+
+	private Label[] copy(Label[] ls) {
+		final Label[] cs = new Label[ls.length];
+		for (int i = 0; i < ls.length; i++) {
+			cs[i] = copy(ls[i]);
+		}
+		return cs;
+	}
+
+	private Object[] copy(int n, Object[] types) {
+		if (types == null) {
+			return null;
+		}
+		final Object[] cs = types.clone();
+		for (int i = 0; i < n; i++) {
+			if (cs[i] instanceof Label) {
+				cs[i] = copy((Label) cs[i]);
+			}
+		}
+		return cs;
+	}
+
+	@Override
+	public void visitCode() {
+		super.visitCode();
+		clone.visitCode();
+	}
+
+	@Override
+	public void visitFrame(int type, int nLocal, Object[] local, int nStack, Object[] stack) {
+		super.visitFrame(type, nLocal, local, nStack, stack);
+		clone.visitFrame(type, nLocal, copy(nLocal, local), nStack, copy(nStack, stack));
+	}
+
+	@Override
+	public void visitInsn(int opcode) {
+		super.visitInsn(opcode);
+		clone.visitInsn(opcode);
+	}
+
+	@Override
+	public void visitIntInsn(int opcode, int operand) {
+		super.visitIntInsn(opcode, operand);
+		clone.visitIntInsn(opcode, operand);
+	}
+
+	@Override
+	public void visitVarInsn(int opcode, int var) {
+		super.visitVarInsn(opcode, var);
+		clone.visitVarInsn(opcode, var);
+	}
+
+	@Override
+	public void visitTypeInsn(int opcode, String type) {
+		super.visitTypeInsn(opcode, type);
+		clone.visitTypeInsn(opcode, type);
+	}
+
+	@Override
+	public void visitFieldInsn(int opcode, String owner, String name, String desc) {
+		super.visitFieldInsn(opcode, owner, name, desc);
+		clone.visitFieldInsn(opcode, owner, name, desc);
+	}
+
+	@Override
+	public void visitMethodInsn(int opcode, String owner, String name, String desc, boolean itf) {
+		super.visitMethodInsn(opcode, owner, name, desc, itf);
+		clone.visitMethodInsn(opcode, owner, name, desc, itf);
+	}
+
+	@Override
+	public void visitInvokeDynamicInsn(String name, String desc, Handle bsm, Object... bsmArgs) {
+		super.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+		clone.visitInvokeDynamicInsn(name, desc, bsm, bsmArgs);
+	}
+
+	@Override
+	public void visitJumpInsn(int opcode, Label label) {
+		super.visitJumpInsn(opcode, label);
+		clone.visitJumpInsn(opcode, copy(label));
+	}
+
+	@Override
+	public void visitLabel(Label label) {
+		super.visitLabel(label);
+		clone.visitLabel(copy(label));
+	}
+
+	@Override
+	public void visitLdcInsn(Object cst) {
+		super.visitLdcInsn(cst);
+		clone.visitLdcInsn(cst);
+	}
+
+	@Override
+	public void visitIincInsn(int var, int increment) {
+		super.visitIincInsn(var, increment);
+		clone.visitIincInsn(var, increment);
+	}
+
+	@Override
+	public void visitTableSwitchInsn(int min, int max, Label dflt, Label... ls) {
+		super.visitTableSwitchInsn(min, max, dflt, ls);
+		clone.visitTableSwitchInsn(min, max, copy(dflt), copy(ls));
+	}
+
+	@Override
+	public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] ls) {
+		super.visitLookupSwitchInsn(dflt, keys, ls);
+		clone.visitLookupSwitchInsn(copy(dflt), keys, copy(ls));
+	}
+
+	@Override
+	public void visitMultiANewArrayInsn(String desc, int dims) {
+		super.visitMultiANewArrayInsn(desc, dims);
+		clone.visitMultiANewArrayInsn(desc, dims);
+	}
+
+	@Override
+	public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+		super.visitTryCatchBlock(start, end, handler, type);
+		clone.visitTryCatchBlock(copy(start), copy(end), copy(handler), type);
+	}
+
+	@Override
+	public void visitLocalVariable(String name, String desc, String signature, Label start,
+			Label end, int index) {
+		super.visitLocalVariable(name, desc, signature, start, end, index);
+		clone.visitLocalVariable(name, desc, signature, copy(start), copy(end), index);
+	}
+
+	@Override
+	public void visitLineNumber(int line, Label start) {
+		super.visitLineNumber(line, start);
+		clone.visitLineNumber(line, copy(start));
+	}
+
+	@Override
+	public void visitMaxs(int maxStack, int maxLocals) {
+		super.visitMaxs(maxStack, maxLocals);
+		clone.visitMaxs(maxStack, maxLocals);
+	}
+
+	@Override
+	public void visitEnd() {
+		super.visitEnd();
+		clone.visitEnd();
+	}
+}
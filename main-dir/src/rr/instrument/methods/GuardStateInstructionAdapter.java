@@ -44,11 +44,18 @@ import rr.meta.MethodInfo;
 import rr.meta.OperationInfo;
 import rr.org.objectweb.asm.MethodVisitor;
 import rr.org.objectweb.asm.Type;
+import rr.sampling.CodeSampler;
 
 public class GuardStateInstructionAdapter extends ThreadDataInstructionAdapter {
 
 	protected static boolean instrument;
 
+	// accesses in this method left uninstrumented by RedundantCheckEliminator.
+	protected int redundantChecks;
+
+	// accesses in this method that are instrumented.
+	protected int instrumentedAccesses;
+
 	public GuardStateInstructionAdapter(final MethodVisitor mv, MethodInfo m) {
 		super(mv, m);
 		instrument = true;
@@ -104,6 +111,40 @@ public class GuardStateInstructionAdapter extends ThreadDataInstructionAdapter {
 	}
 
 	protected boolean shouldInstrument(OperationInfo access) {
-		return InstrumentationFilter.shouldInstrument(access) && instrument;
+		if (!InstrumentationFilter.shouldInstrument(access) || !instrument) {
+			return false;
+		}
+		if (context.isThreadLocalAccess()) {
+			context.getClassContext().addThreadLocalAccess();
+			if (RRMain.slowMode())
+				Util.log("Thread-local access: " + access);
+			return false;
+		}
+		if (context.isRedundantAccess()) {
+			redundantChecks++;
+			if (RRMain.slowMode())
+				Util.log("Redundant access: " + access);
+			return false;
+		}
+		// the unsampled clone still generates volatile accesses: they are synchronization.
+		if (context.isUnsampled() && !(access instanceof FieldAccessInfo
+				&& ((FieldAccessInfo) access).getField().isVolatile())) {
+			return false;
+		}
+		instrumentedAccesses++;
+		return true;
+	}
+
+	@Override
+	public void visitEnd() {
+		if (redundantChecks > 0) {
+			if (RRMain.slowMode())
+				Util.logf("%s: %d redundant checks removed.", getMethod(), redundantChecks);
+			context.getClassContext().addRedundantChecks(redundantChecks);
+		}
+		if (context.getUnsampledClone() != null) {
+			CodeSampler.setAccessSites(getMethod().getId(), instrumentedAccesses);
+		}
+		super.visitEnd();
 	}
 }
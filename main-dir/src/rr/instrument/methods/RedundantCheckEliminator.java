@@ -0,0 +1,314 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.instrument.methods;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import acme.util.Yikes;
+import rr.instrument.MethodContext;
+import rr.instrument.analysis.AccessAnalysis;
+import rr.loader.RRTypeInfo;
+import rr.meta.FieldInfo;
+import rr.org.objectweb.asm.MethodVisitor;
+import rr.org.objectweb.asm.tree.AbstractInsnNode;
+import rr.org.objectweb.asm.tree.FieldInsnNode;
+import rr.org.objectweb.asm.tree.IincInsnNode;
+import rr.org.objectweb.asm.tree.IntInsnNode;
+import rr.org.objectweb.asm.tree.JumpInsnNode;
+import rr.org.objectweb.asm.tree.LabelNode;
+import rr.org.objectweb.asm.tree.LdcInsnNode;
+import rr.org.objectweb.asm.tree.LookupSwitchInsnNode;
+import rr.org.objectweb.asm.tree.TableSwitchInsnNode;
+import rr.org.objectweb.asm.tree.TryCatchBlockNode;
+import rr.org.objectweb.asm.tree.VarInsnNode;
+import rr.org.objectweb.asm.tree.analysis.Analyzer;
+import rr.org.objectweb.asm.tree.analysis.AnalyzerException;
+import rr.org.objectweb.asm.tree.analysis.Frame;
+import rr.org.objectweb.asm.tree.analysis.SourceInterpreter;
+import rr.org.objectweb.asm.tree.analysis.SourceValue;
+
+/**
+ * Marks as MethodContext.REDUNDANT_ACCESS each field or array access that repeats an access to the
+ * same location earlier in the same (extended) basic block, with no synchronization or method call
+ * in between. Both accesses are by the same thread in the same epoch, so a tool like FastTrack
+ * finds nothing new on the second: a read is redundant after a read of the location, and a write
+ * after a write ("Read Same Epoch" and "Write Same Epoch"). A read after a write is kept, since
+ * FastTrack records the read and a later race is reported against its site.
+ *
+ * Locations are static fields, fields of an object loaded from a local, and elements of an array
+ * loaded from a local at a constant index or one loaded from a local. Accesses through any other
+ * expression are always instrumented. Stores to a local end the locations that name it. Branch
+ * targets, exception handlers, jumps, returns, throws, monitor operations, invocations, and
+ * volatile accesses end all of them.
+ */
+public class RedundantCheckEliminator extends AccessAnalysis {
+
+	/*
+	 * A location checked earlier in the current block.
+	 */
+	private static class Check {
+		final String location;
+		final int base, index;  // locals the location depends on, or -1
+		boolean read, written;
+
+		Check(String location, int base, int index) {
+			this.location = location;
+			this.base = base;
+			this.index = index;
+		}
+
+		// true if an access of this kind was already checked.
+		boolean check(boolean isWrite) {
+			if (isWrite ? written : read) {
+				return true;
+			}
+			if (isWrite) {
+				written = true;
+			} else {
+				read = true;
+			}
+			return false;
+		}
+	}
+
+	private final ArrayList<Check> checks = new ArrayList<Check>();
+	private int lastStore[];
+	private int blockStart;
+
+	public RedundantCheckEliminator(MethodVisitor mv, MethodContext context, String owner,
+			int access, String name, String desc, String signature, String[] exceptions) {
+		super(MethodContext.REDUNDANT_ACCESS, mv, context, owner, access, name, desc, signature,
+				exceptions);
+	}
+
+	@Override
+	protected void analyze() {
+		if (marked.length < 2) {
+			return;
+		}
+		final Frame<SourceValue> frames[];
+		try {
+			frames = new Analyzer<SourceValue>(new SourceInterpreter()).analyze(owner, this);
+		} catch (AnalyzerException e) {
+			Yikes.yikes("Redundant check analysis failed for %s.%s%s: %s", owner, name, desc, e);
+			return;
+		}
+
+		final Set<LabelNode> targets = new HashSet<LabelNode>();
+		for (TryCatchBlockNode b : tryCatchBlocks) {
+			targets.add(b.handler);
+		}
+		final int n = instructions.size();
+		for (int k = 0; k < n; k++) {
+			final AbstractInsnNode insn = instructions.get(k);
+			if (insn instanceof JumpInsnNode) {
+				targets.add(((JumpInsnNode) insn).label);
+			} else if (insn instanceof TableSwitchInsnNode) {
+				targets.add(((TableSwitchInsnNode) insn).dflt);
+				targets.addAll(((TableSwitchInsnNode) insn).labels);
+			} else if (insn instanceof LookupSwitchInsnNode) {
+				targets.add(((LookupSwitchInsnNode) insn).dflt);
+				targets.addAll(((LookupSwitchInsnNode) insn).labels);
+			}
+		}
+
+		lastStore = new int[maxLocals];
+		Arrays.fill(lastStore, -1);
+		blockStart = -1;
+		int a = 0;
+		for (int k = 0; k < n; k++) {
+			final AbstractInsnNode insn = instructions.get(k);
+			final int opcode = insn.getOpcode();
+			if (insn instanceof LabelNode) {
+				if (targets.contains(insn)) {
+					clear(k);
+				}
+			} else if (isAccess(insn)) {
+				if (frames[k] != null) {
+					marked[a] = access(insn, frames[k]);
+				}
+				a++;
+			} else if (insn instanceof VarInsnNode && opcode >= ISTORE && opcode <= ASTORE) {
+				store(((VarInsnNode) insn).var, k);
+			} else if (insn instanceof IincInsnNode) {
+				store(((IincInsnNode) insn).var, k);
+			} else if (endsBlock(insn)) {
+				clear(k);
+			}
+		}
+		checks.clear();
+	}
+
+	private void clear(int k) {
+		checks.clear();
+		blockStart = k;
+	}
+
+	private static boolean endsBlock(AbstractInsnNode insn) {
+		switch (insn.getType()) {
+			case AbstractInsnNode.METHOD_INSN:
+			case AbstractInsnNode.INVOKE_DYNAMIC_INSN:
+			case AbstractInsnNode.TABLESWITCH_INSN:
+			case AbstractInsnNode.LOOKUPSWITCH_INSN:
+				return true;
+		}
+		switch (insn.getOpcode()) {
+			case MONITORENTER:
+			case MONITOREXIT:
+			case GOTO:
+			case JSR:
+			case RET:
+			case ATHROW:
+			case IRETURN: case LRETURN: case FRETURN: case DRETURN: case ARETURN: case RETURN:
+				return true;
+			default:
+				return false;
+		}
+	}
+
+	private void store(int var, int k) {
+		lastStore[var] = k;
+		for (Iterator<Check> i = checks.iterator(); i.hasNext(); ) {
+			final Check c = i.next();
+			if (c.base == var || c.index == var) {
+				i.remove();
+			}
+		}
+	}
+
+	/*
+	 * Records the access and returns whether it repeats an earlier check.
+	 */
+	private boolean access(AbstractInsnNode insn, Frame<SourceValue> f) {
+		final int opcode = insn.getOpcode();
+		final int top = f.getStackSize() - 1;
+		final String location;
+		final int base, index;
+		final boolean isWrite;
+		if (insn instanceof FieldInsnNode) {
+			final FieldInsnNode fi = (FieldInsnNode) insn;
+			if (fi.name.contains("$rr")) {
+				return false;
+			}
+			final FieldInfo field = RRTypeInfo.resolveFieldDescriptor(fi.owner, fi.name, fi.desc);
+			if (field.isVolatile()) {
+				clear(instructions.indexOf(insn));
+				return false;
+			}
+			final String key = field.getOwner().getName() + "." + fi.name;
+			switch (opcode) {
+				case GETSTATIC:
+				case PUTSTATIC:
+					base = -1;
+					break;
+				case GETFIELD:
+					base = local(f.getStack(top), ALOAD);
+					break;
+				default:
+					base = local(f.getStack(top - 1), ALOAD);
+					break;
+			}
+			if (base == -1 && (opcode == GETFIELD || opcode == PUTFIELD)) {
+				return false;
+			}
+			location = base + ":" + key;
+			index = -1;
+			isWrite = opcode == PUTFIELD || opcode == PUTSTATIC;
+		} else {
+			isWrite = opcode >= IASTORE;
+			final int depth = isWrite ? 2 : 1;
+			base = local(f.getStack(top - depth), ALOAD);
+			if (base == -1) {
+				return false;
+			}
+			final SourceValue i = f.getStack(top - depth + 1);
+			final Integer c = constant(i);
+			if (c != null) {
+				index = -1;
+				location = base + "[#" + c + "]";
+			} else {
+				index = local(i, ILOAD);
+				if (index == -1) {
+					return false;
+				}
+				location = base + "[" + index + "]";
+			}
+		}
+
+		for (Check c : checks) {
+			if (c.location.equals(location)) {
+				return c.check(isWrite);
+			}
+		}
+		final Check c = new Check(location, base, index);
+		checks.add(c);
+		return c.check(isWrite);
+	}
+
+	/*
+	 * The local v was loaded from with opcode, if it was loaded in the current block and after the
+	 * last store to that local, or -1.
+	 */
+	private int local(SourceValue v, int opcode) {
+		if (v.insns.size() != 1) {
+			return -1;
+		}
+		final AbstractInsnNode insn = v.insns.iterator().next();
+		if (insn.getOpcode() != opcode) {
+			return -1;
+		}
+		final int var = ((VarInsnNode) insn).var;
+		final int k = instructions.indexOf(insn);
+		return k > blockStart && k > lastStore[var] ? var : -1;
+	}
+
+	private static Integer constant(SourceValue v) {
+		if (v.insns.size() != 1) {
+			return null;
+		}
+		final AbstractInsnNode insn = v.insns.iterator().next();
+		final int opcode = insn.getOpcode();
+		if (opcode >= ICONST_M1 && opcode <= ICONST_5) {
+			return opcode - ICONST_0;
+		} else if (opcode == BIPUSH || opcode == SIPUSH) {
+			return ((IntInsnNode) insn).operand;
+		} else if (insn instanceof LdcInsnNode && ((LdcInsnNode) insn).cst instanceof Integer) {
+			return (Integer) ((LdcInsnNode) insn).cst;
+		}
+		return null;
+	}
+}
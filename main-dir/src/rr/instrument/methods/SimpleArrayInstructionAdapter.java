@@ -43,7 +43,6 @@ import rr.RRMain;
 import rr.instrument.ASMUtil;
 import rr.instrument.Constants;
 import rr.meta.ArrayAccessInfo;
-import rr.meta.InstrumentationFilter;
 import rr.meta.MetaDataInfoMaps;
 import rr.meta.MethodInfo;
 import rr.org.objectweb.asm.Label;
@@ -105,15 +104,16 @@ public class SimpleArrayInstructionAdapter extends GuardStateInstructionAdapter
 		case LALOAD:	{					
 
 			ArrayAccessInfo access = MetaDataInfoMaps.makeArrayAccess(this.getLocation(), this.getMethod(), false);
-			if (!InstrumentationFilter.shouldInstrument(access)) {
+			if (!shouldInstrument(access)) {
 				if (RRMain.slowMode()) Util.log("Skipping: " + access);
 				super.visitArrayInsn(opcode);
 				return;
 			} 
 
 
+			final Label success = new Label();
+			ASMUtil.insertArraySiteCheck(this, access.getId(), threadDataLoc, success);
 			if (!RR.nofastPathOption.get()) {
-				final Label success = new Label();
 				this.visitInsn(DUP2);
 				// index target index target
 				this.push(access.getId());
@@ -141,8 +141,6 @@ public class SimpleArrayInstructionAdapter extends GuardStateInstructionAdapter
 				// ShadowVar ShadowThread arrayAccessDataid index target index target  
 				this.invokeStatic(Constants.MANAGER_TYPE, Constants.READ_ARRAY_WITH_UPDATER_METHOD);
 				// index target
-
-				this.visitLabel(success);
 			} else {
 				// index target
 				this.visitInsn(DUP2);
@@ -154,6 +152,7 @@ public class SimpleArrayInstructionAdapter extends GuardStateInstructionAdapter
 				this.invokeStatic(Constants.MANAGER_TYPE, Constants.READ_ARRAY_METHOD);
 				// index target
 			} 
+			this.visitLabel(success);
 			super.visitArrayInsn(opcode);
 			break;
 		}
@@ -168,7 +167,7 @@ public class SimpleArrayInstructionAdapter extends GuardStateInstructionAdapter
 		case SASTORE: {
 
 			ArrayAccessInfo access = MetaDataInfoMaps.makeArrayAccess(this.getLocation(), this.getMethod(), true);
-			if (!InstrumentationFilter.shouldInstrument(access)) {
+			if (!shouldInstrument(access)) {
 				if (RRMain.slowMode()) Util.log("Skipping: " + access);
 				super.visitArrayInsn(opcode);
 				return;
@@ -189,8 +188,9 @@ public class SimpleArrayInstructionAdapter extends GuardStateInstructionAdapter
 				// index target value 
 			}
 
+			final Label success = new Label();
+			ASMUtil.insertArraySiteCheck(this, access.getId(), threadDataLoc, success);
 			if (!RR.nofastPathOption.get()) {
-				final Label success = new Label();
 				this.visitInsn(DUP2);
 				// index target index target value
 				this.push(access.getId());
@@ -218,7 +218,6 @@ public class SimpleArrayInstructionAdapter extends GuardStateInstructionAdapter
 				// ShadowVar ShadowThread arrayAccessDataid index target index target value  
 				this.invokeStatic(Constants.MANAGER_TYPE, Constants.WRITE_ARRAY_WITH_UPDATER_METHOD);
 				// index target value
-				this.visitLabel(success);
 			} else {
 
 				this.visitInsn(DUP2);
@@ -230,6 +229,7 @@ public class SimpleArrayInstructionAdapter extends GuardStateInstructionAdapter
 				this.invokeStatic(Constants.MANAGER_TYPE, Constants.WRITE_ARRAY_METHOD);
 				// index target value
 			}
+			this.visitLabel(success);
 
 			if (doubleSize) {
 				// index target value value
@@ -46,7 +46,6 @@ import rr.org.objectweb.asm.commons.Method;
 
 import rr.instrument.ASMUtil;
 import rr.instrument.Constants;
-import rr.meta.InstrumentationFilter;
 import rr.meta.MetaDataInfoMaps;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.MethodInfo;
@@ -103,7 +102,7 @@ public class SimpleArrayWithValuesInstructionAdapter extends GuardStateInstructi
 
 			ArrayAccessInfo access = MetaDataInfoMaps.makeArrayAccess(this.getLocation(), this.getMethod(), false);
 
-			if (!InstrumentationFilter.shouldInstrument(access)) {
+			if (!shouldInstrument(access)) {
 				Util.log("Skipping: " + access);
 				this.arrayLoad(typeForOpcode);
 				return;
@@ -154,7 +153,7 @@ public class SimpleArrayWithValuesInstructionAdapter extends GuardStateInstructi
 
 			ArrayAccessInfo access = MetaDataInfoMaps.makeArrayAccess(this.getLocation(), this.getMethod(), true);
 			
-			if (!InstrumentationFilter.shouldInstrument(access)) {
+			if (!shouldInstrument(access)) {
 				Util.log("Skipping: " + access);
 				super.visitArrayInsn(opcode);
 				return;
@@ -151,6 +151,21 @@ public class ThreadDataInstructionAdapter extends RRMethodAdapter implements Opc
 			super.visitVarInsn(ALOAD, threadDataParamLoc);
 		}
 		super.visitVarInsn(ASTORE, threadDataLoc);
+
+		// -codeSampling: run the unsampled clone unless CodeSampler picks this entry.
+		final String clone = context.getUnsampledClone();
+		if (clone != null) {
+			final MethodInfo m = context.getMethod();
+			final Label sampled = new Label();
+			mv.visitLdcInsn(m.getId());
+			mv.visitVarInsn(ALOAD, threadDataLoc);
+			mv.visitMethodInsn(INVOKESTATIC, Constants.CODE_SAMPLER_TYPE.getInternalName(),
+					Constants.SAMPLE_CODE_METHOD.getName(), Constants.SAMPLE_CODE_METHOD.getDescriptor(), false);
+			mv.visitJumpInsn(IFNE, sampled);
+			ASMUtil.callMethodInSameClass(m.getOwner().getName(), clone, m.getDescriptor(), mv, m.isStatic() ? ACC_STATIC : 0);
+			mv.visitInsn(ASMUtil.returnInstr(Type.getReturnType(m.getDescriptor())));
+			mv.visitLabel(sampled);
+		}
 	}	
 
 
@@ -0,0 +1,237 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.loader;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.security.MessageDigest;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import acme.util.Assert;
+import acme.util.Util;
+import acme.util.count.Counter;
+import acme.util.option.Option;
+import rr.instrument.Instrumentor;
+import rr.instrument.classes.CloneFixer;
+import rr.instrument.classes.InterruptFixer;
+import rr.instrument.classes.ThreadDataThunkInserter;
+import rr.instrument.methods.ThreadDataInstructionAdapter;
+import rr.meta.AccessSiteSampler;
+import rr.meta.InstrumentationFilter;
+import rr.meta.MetaDataInfoMaps;
+import rr.sampling.CodeSampler;
+import rr.state.ArrayStateFactory;
+import rr.state.update.Updaters;
+import rr.tool.RR;
+import rr.tool.RREventGenerator;
+
+/**
+ * Validation for the instrumented classes cached in a -dump directory and reused through
+ * RR_META_DATA (MetaDataInfoMaps.metaOption).
+ *
+ * The instrumented bytecode refers to metadata by id, so a cache is always a whole directory: the
+ * rr.meta snapshot plus the class files written with it. Next to them, writeManifest records a hash
+ * of the instrumentation-relevant options and, for each instrumented class, a hash of its original
+ * bytes. A cached class is only used if both match the current run; otherwise it is instrumented
+ * again against the loaded metadata, which hands out fresh ids for any new operations.
+ */
+public class InstrumentationCache {
+
+	public static final String MANIFEST = "rr.cache";
+
+	private static final Counter hits = new Counter("InstrumentationCache", "Hits");
+	private static final Counter stale = new Counter("InstrumentationCache", "Stale");
+
+	// class name -> hash of original bytes, for classes instrumented in this run.
+	private static final ConcurrentHashMap<String, String> instrumented = new ConcurrentHashMap<String, String>();
+
+	/*
+	 * Every option read while instrumenting, plus the tool chain, which determines the tool-specific
+	 * visitors, fast paths, and method replacements.
+	 */
+	private static final Option<?>[] relevantOptions = { RR.toolOption, RR.valuesOption,
+			RR.nofastPathOption, RR.noEnterOption, Instrumentor.fieldOption,
+			Instrumentor.fancyOption, Instrumentor.trackReflectionOption,
+			Instrumentor.trackArraySitesOption, Instrumentor.noEscapeOption,
+			Instrumentor.noRedundantOption, AccessSiteSampler.siteSamplingOption,
+			CodeSampler.codeSamplingOption, ArrayStateFactory.arrayOption,
+			Updaters.updateOptions, InstrumentationFilter.classesToWatch,
+			InstrumentationFilter.methodsToWatch, InstrumentationFilter.fieldsToWatch,
+			InstrumentationFilter.linesToWatch, InstrumentationFilter.methodsSupportThreadStateParam,
+			InstrumentationFilter.noOpsOption, InterruptFixer.noInterruptOption,
+			CloneFixer.noCloneOption, ThreadDataThunkInserter.noConstructorOption,
+			ThreadDataInstructionAdapter.callSitesOption, RREventGenerator.multiClassLoaderOption };
+
+	public static String options() {
+		StringBuilder b = new StringBuilder();
+		for (Option<?> o : relevantOptions) {
+			b.append(o.getId()).append('=').append(o.get()).append(';');
+		}
+		return b.toString();
+	}
+
+	public static String hash(byte[] bytes) {
+		try {
+			final MessageDigest md = MessageDigest.getInstance("SHA-1");
+			final byte[] d = md.digest(bytes);
+			final StringBuilder b = new StringBuilder();
+			for (byte x : d) {
+				b.append(String.format("%02x", x));
+			}
+			return b.toString();
+		} catch (Exception e) {
+			Assert.panic(e);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the cached instrumented version of className if it was built from the same original
+	 * bytes with the same options, and null otherwise.
+	 */
+	public static byte[] lookup(String className, byte[] original) {
+		final Map<String, String> c = manifest();
+		if (c == null) {
+			return null;
+		}
+		final String h = c.get(className);
+		if (h == null) {
+			return null;
+		}
+		if (!h.equals(hash(original))) {
+			synchronized (stale) {
+				stale.inc();
+			}
+			Util.logf("Cached version of %s is stale.", className);
+			return null;
+		}
+		final byte[] b = Loader.readFromFileCache("classes", className);
+		if (b != null) {
+			synchronized (hits) {
+				hits.inc();
+			}
+		}
+		return b;
+	}
+
+	/**
+	 * Record that className was instrumented from original in this run.
+	 */
+	public static void record(String className, byte[] original) {
+		if (!Instrumentor.dumpClassOption.get().equals("")) {
+			instrumented.put(className, hash(original));
+		}
+	}
+
+	/**
+	 * Called as rr.meta is dumped. Entries from the cache read in this run carry over unless the
+	 * class was instrumented again.
+	 */
+	public static void writeManifest(String dir) {
+		final TreeMap<String, String> entries = new TreeMap<String, String>();
+		final Map<String, String> c = manifest();
+		if (c != null) {
+			entries.putAll(c);
+		}
+		entries.putAll(instrumented);
+		try {
+			PrintWriter pw = new PrintWriter(new FileWriter(dir + "/" + MANIFEST));
+			pw.println("# " + options());
+			pw.println("options " + hash(options().getBytes("UTF-8")));
+			for (Map.Entry<String, String> e : entries.entrySet()) {
+				pw.println(e.getKey() + " " + e.getValue());
+			}
+			pw.close();
+		} catch (IOException e) {
+			Assert.panic(e);
+		}
+	}
+
+	/*
+	 * class name -> hash of original bytes, from the manifest of the cache being read. null if
+	 * there is no usable cache. Read once, when the first class loaded initializes the holder, so
+	 * that the options have been set by then; later lookups do not lock.
+	 */
+	private static final class Manifest {
+		static final Map<String, String> cached = readManifest();
+	}
+
+	private static Map<String, String> manifest() {
+		return Manifest.cached;
+	}
+
+	private static Map<String, String> readManifest() {
+		final String dir = MetaDataInfoMaps.metaOption.get();
+		if (dir == null) {
+			return null;
+		}
+		final File f = new File(dir, MANIFEST);
+		if (!f.exists()) {
+			Util.logf("No %s in %s.  Cached classes will not be used.", MANIFEST, dir);
+			return null;
+		}
+		try {
+			final BufferedReader in = new BufferedReader(new FileReader(f));
+			final Map<String, String> m = new ConcurrentHashMap<String, String>();
+			String options = null;
+			for (String line = in.readLine(); line != null; line = in.readLine()) {
+				if (line.startsWith("#")) {
+					continue;
+				}
+				final String[] parts = line.split(" ");
+				if (parts[0].equals("options")) {
+					options = parts[1];
+				} else {
+					m.put(parts[0], parts[1]);
+				}
+			}
+			in.close();
+			if (options == null || !options.equals(hash(options().getBytes("UTF-8")))) {
+				Util.logf("Cache in %s was built with different options.  Cached classes will not be used.",
+						dir);
+				return null;
+			}
+			Util.logf("Using %d cached classes from %s.", m.size(), dir);
+			return m;
+		} catch (IOException e) {
+			Assert.warn("Could not read %s: %s", f, e);
+			return null;
+		}
+	}
+}
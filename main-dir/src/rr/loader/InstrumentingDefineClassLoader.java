@@ -20,7 +20,7 @@ public class InstrumentingDefineClassLoader implements DefineClassListener {
 			CommandLineOption.Kind.EXPERIMENTAL,
 			"Check whether uninstrumented classes contain synchronization operations that will be ignored.");
 
-	public synchronized byte[] define(ClassLoader definingLoader, final String name,
+	public byte[] define(ClassLoader definingLoader, final String name,
 			final byte[] bytes) {
 		final LoaderContext currentLoader = Loader.get(definingLoader);
 		final String internalName = name.replace('.', '/');
@@ -44,10 +44,15 @@ public class InstrumentingDefineClassLoader implements DefineClassListener {
 			} else {
 				Loader.instrumentedFiles.add(name);
 
-				byte[] bytes2 = Loader.readFromFileCache("classes", rrClass.getName());
+				byte[] bytes2 = InstrumentationCache.lookup(rrClass.getName(), bytes);
 				if (bytes2 != null) {
 					Util.logf("Found cached version of %s", name);
-					MetaDataBuilder.preLoadFully(currentLoader, new ClassReader(bytes2));
+					if (rrClass.getState() == ClassInfo.State.COMPLETE) {
+						// metadata came with the cache: no need to parse the class again.
+						Loader.notify(rrClass);
+					} else {
+						MetaDataBuilder.preLoadFully(currentLoader, new ClassReader(bytes2));
+					}
 					for (FieldInfo f : rrClass.getFields()) {
 						if (InstrumentationFilter.shouldInstrument(f)) {
 							f.getUpdater();
@@ -66,6 +71,7 @@ public class InstrumentingDefineClassLoader implements DefineClassListener {
 									bytes);
 							byte[] bytes2 = instrument.toByteArray();
 							Loader.writeToFileCache("classes", rrClass.getName(), bytes2);
+							InstrumentationCache.record(rrClass.getName(), bytes);
 							return bytes2;
 						}
 					});
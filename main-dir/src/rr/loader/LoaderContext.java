@@ -125,6 +125,16 @@ public class LoaderContext {
 	private Hashtable<String,URL> cache = new Hashtable<String, URL>();
 
 	public ClassInfo getRRClass(final String className) throws ClassNotFoundException {
+		final ClassInfo loaded = MetaDataInfoMaps.getClass(className);
+		if (!className.startsWith("[") && !loaded.stateAtMost(ClassInfo.State.IN_PRELOAD)) {
+			return loaded;
+		}
+		synchronized (MetaDataBuilder.lock) {
+			return loadRRClass(className);
+		}
+	}
+
+	private ClassInfo loadRRClass(final String className) throws ClassNotFoundException {
 		try {
 			ClassInfo rrClass = MetaDataInfoMaps.getClass(className);
 			if (className.startsWith("[")) {
@@ -58,6 +58,14 @@ import acme.util.Yikes;
 
 public class MetaDataBuilder {
 
+	/*
+	 * Building metadata moves each ClassInfo through IN_PRELOAD/PRELOADED/COMPLETE and walks
+	 * supertypes recursively through the preLoad stack, so it runs under one lock shared with
+	 * LoaderContext.getRRClass. Only this part of class loading is serialized: instrumenting the
+	 * class afterwards runs concurrently.
+	 */
+	public static final Object lock = new Object();
+
 	static private Stack<String> preLoad = new Stack<String>();
 
 	private static class MetaDataClassVisitor extends ClassVisitor {
@@ -197,8 +205,10 @@ public class MetaDataBuilder {
 	}
 
 	public static void preLoad(LoaderContext c, ClassReader in) {
-		MetaDataClassVisitor mcv = new MetaDataClassVisitor(c, true);
-		in.accept(mcv, 0);
+		synchronized (lock) {
+			MetaDataClassVisitor mcv = new MetaDataClassVisitor(c, true);
+			in.accept(mcv, 0);
+		}
 	}
 
 	public static void preLoadFully(final LoaderContext c, final byte b[])  {
@@ -206,16 +216,18 @@ public class MetaDataBuilder {
 	}
 
 	public static void preLoadFully(final LoaderContext c, final ClassReader in)  {
-		MetaDataClassVisitor mcv = new MetaDataClassVisitor(c, false);
-		in.accept(mcv, 0);
-
-		while (!preLoad.isEmpty()) {
-			final String pop = preLoad.pop();
-			try {
-				ClassInfo r = c.getRRClass(pop);
-			} catch (ClassNotFoundException e) {
-				Yikes.yikes("Failed to load class " + pop + ".  Hopefully just because RR is more eager in loading than JVM...");
-				MetaDataInfoMaps.getClass(pop).setState(State.COMPLETE);
+		synchronized (lock) {
+			MetaDataClassVisitor mcv = new MetaDataClassVisitor(c, false);
+			in.accept(mcv, 0);
+
+			while (!preLoad.isEmpty()) {
+				final String pop = preLoad.pop();
+				try {
+					ClassInfo r = c.getRRClass(pop);
+				} catch (ClassNotFoundException e) {
+					Yikes.yikes("Failed to load class " + pop + ".  Hopefully just because RR is more eager in loading than JVM...");
+					MetaDataInfoMaps.getClass(pop).setState(State.COMPLETE);
+				}
 			}
 		}
 	}
@@ -42,7 +42,11 @@ package rr.meta;
 public abstract class AccessInfo extends OperationInfo {
 
 	protected final boolean isWrite;
-	
+
+	// run-time state for AccessSiteSampler.
+	protected transient volatile boolean sampled;
+	protected transient volatile boolean raced;
+
 
 	public AccessInfo(int id, SourceLocation loc, MethodInfo enclosing, boolean isWrite) {
 		super(id, loc, isWrite ? "write" : "read", enclosing);
@@ -52,4 +56,12 @@ public abstract class AccessInfo extends OperationInfo {
 	public boolean isWrite() {
 		return isWrite;
 	}
+
+	public boolean isSampled() {
+		return sampled;
+	}
+
+	public boolean hasRaced() {
+		return raced;
+	}
 }
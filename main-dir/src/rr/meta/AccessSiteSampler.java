@@ -0,0 +1,145 @@
+/******************************************************************************
+
+Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz)
+                    and Stephen Freund (Williams College) 
+
+All rights reserved.  
+
+Redistribution and use in source and binary forms, with or without
+modification, are permitted provided that the following conditions are
+met:
+
+    * Redistributions of source code must retain the above copyright
+      notice, this list of conditions and the following disclaimer.
+
+    * Redistributions in binary form must reproduce the above
+      copyright notice, this list of conditions and the following
+      disclaimer in the documentation and/or other materials provided
+      with the distribution.
+
+    * Neither the names of the University of California, Santa Cruz
+      and Williams College nor the names of its contributors may be
+      used to endorse or promote products derived from this software
+      without specific prior written permission.
+
+THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS
+"AS IS" AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT
+LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR
+A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT
+HOLDER OR CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL,
+SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT
+LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY
+THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT
+(INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE
+OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+
+******************************************************************************/
+
+package rr.meta;
+
+import java.util.Arrays;
+
+import acme.util.count.Counter;
+import acme.util.option.CommandLine;
+import acme.util.option.CommandLineOption;
+import rr.state.ShadowThread;
+
+/**
+ * Site-level adaptive sampling, in the style of LiteRace. Every access site starts out fully
+ * instrumented. Once a thread has executed a site siteThreshold times without a tool reporting a
+ * race on it, the site is cold-but-safe for that thread: from then on the thread only generates
+ * events there in bursts of siteBurst executions every sitePeriod executions, and the instrumented
+ * fast path skips the event-generation path for the rest. A race reported at a site turns it back
+ * on for good, in all threads.
+ *
+ * As in LiteRace, the execution counts are kept per thread (in the ShadowThread), so the check
+ * never writes shared memory. The AccessInfo is only written when a site first goes cold and
+ * when it races.
+ */
+public class AccessSiteSampler {
+
+	public static final CommandLineOption<Boolean> siteSamplingOption = CommandLine.makeBoolean(
+			"siteSampling", false, CommandLineOption.Kind.EXPERIMENTAL,
+			"Stop generating events at non-volatile field and array access sites that have run -siteThreshold times without a race, except for periodic bursts.  Misses races at those sites between bursts.");
+
+	public static final CommandLineOption<Integer> thresholdOption = CommandLine.makeInteger(
+			"siteThreshold", 10000, CommandLineOption.Kind.EXPERIMENTAL,
+			"Executions of an access site by a thread before -siteSampling samples it in that thread.");
+
+	public static final CommandLineOption<Integer> periodOption = CommandLine.makeInteger(
+			"sitePeriod", 10000, CommandLineOption.Kind.EXPERIMENTAL,
+			"Executions by a thread per sampling period of a site sampled by -siteSampling.");
+
+	public static final CommandLineOption<Integer> burstOption = CommandLine.makeInteger(
+			"siteBurst", 100, CommandLineOption.Kind.EXPERIMENTAL,
+			"Executions at the start of each sampling period for which a site sampled by -siteSampling generates events.");
+
+	private static final Counter sampledSites = new Counter("Site Sampling", "Sites Sampled");
+	private static final Counter racedSites = new Counter("Site Sampling", "Sites Re-enabled");
+
+	/** Called by the instrumented code for field accesses: should this one generate an event? */
+	public static boolean sampleField(int fadId, ShadowThread td) {
+		int counts[] = td.fieldSiteExecutions;
+		if (fadId >= counts.length) {
+			counts = td.fieldSiteExecutions = grow(counts, fadId, MetaDataInfoMaps.getFieldAccesses().size());
+		}
+		final int n = count(counts, fadId);
+		return n == 0 || sample(MetaDataInfoMaps.getFieldAccesses().get(fadId), n);
+	}
+
+	/** Called by the instrumented code for array accesses: should this one generate an event? */
+	public static boolean sampleArray(int arrayAccessId, ShadowThread td) {
+		int counts[] = td.arraySiteExecutions;
+		if (arrayAccessId >= counts.length) {
+			counts = td.arraySiteExecutions = grow(counts, arrayAccessId, MetaDataInfoMaps.getArrayAccesses().size());
+		}
+		final int n = count(counts, arrayAccessId);
+		return n == 0 || sample(MetaDataInfoMaps.getArrayAccesses().get(arrayAccessId), n);
+	}
+
+	private static int[] grow(int counts[], int id, int sites) {
+		return Arrays.copyOf(counts, Math.max(id + 1, Math.max(sites, counts.length * 2)));
+	}
+
+	/*
+	 * Bump this thread's count for the site. Returns 0 while the site is still warming up in this
+	 * thread, and otherwise its position (1..sitePeriod) in the current sampling period.
+	 */
+	private static int count(int counts[], int id) {
+		final int threshold = thresholdOption.get();
+		int n = counts[id] + 1;
+		if (n > threshold + periodOption.get()) {
+			n = threshold + 1;
+		}
+		counts[id] = n;
+		return n <= threshold ? 0 : n - threshold;
+	}
+
+	private static boolean sample(AccessInfo site, int n) {
+		if (site.raced) {
+			return true;
+		}
+		if (!site.sampled) {
+			synchronized (sampledSites) {
+				if (!site.sampled) {
+					site.sampled = true;
+					sampledSites.inc();
+				}
+			}
+		}
+		return n <= burstOption.get();
+	}
+
+	/** Tools call this when they report a race at site. */
+	public static void race(AccessInfo site) {
+		if (!site.raced) {
+			site.raced = true;
+			if (site.sampled) {
+				synchronized (racedSites) {
+					racedSites.inc();
+				}
+			}
+		}
+	}
+}
@@ -49,7 +49,7 @@ public class ClassInfo extends MetaDataInfo implements Comparable<ClassInfo> {
 
 	public static enum State { FRESH, IN_PRELOAD, PRELOADED, COMPLETE }
 
-	protected State state;
+	protected volatile State state;
 	protected boolean isClass;
 	protected final boolean isSynthetic;
 	protected final String name;
@@ -116,8 +116,10 @@ public class ClassInfo extends MetaDataInfo implements Comparable<ClassInfo> {
 		if (superClass != null) {
 			superClass.assertStateAtLeast(State.PRELOADED);
 		}
-		if (!fields.contains(x)) {
-			fields.add(x);
+		synchronized (fields) {
+			if (!fields.contains(x)) {
+				fields.add(x);
+			}
 		}
 	}
 
@@ -178,14 +180,17 @@ public class ClassInfo extends MetaDataInfo implements Comparable<ClassInfo> {
 		}
 	}
 
-	private Set<ClassInfo> supers;
+	private volatile Set<ClassInfo> supers;
 	public Set<ClassInfo> getSuperTypes() {
 		assertStateAtLeast(State.PRELOADED);
-		if (supers == null) {
-			supers = new HashSet<ClassInfo>();
-			addAllSuperTypes(this, supers);
+		Set<ClassInfo> s = supers;
+		if (s == null) {
+			// filled before it is published, since classes are instrumented concurrently.
+			s = new HashSet<ClassInfo>();
+			addAllSuperTypes(this, s);
+			supers = s;
 		}
-		return supers;
+		return s;
 	}
 
 	public State getState() {
@@ -205,16 +210,20 @@ public class ClassInfo extends MetaDataInfo implements Comparable<ClassInfo> {
 	}
 
 	public void addInterface(ClassInfo i) {
-		if (!interfaces.contains(i)) {
-			assertStateAtMost(State.IN_PRELOAD);
-			interfaces.add(i);	
+		synchronized (interfaces) {
+			if (!interfaces.contains(i)) {
+				assertStateAtMost(State.IN_PRELOAD);
+				interfaces.add(i);	
+			}
 		}
 	}
 
 	public void addMethod(MethodInfo x) {
-		if (!methods.contains(x)) {
-			methods.add(x); 
-		} 
+		synchronized (methods) {
+			if (!methods.contains(x)) {
+				methods.add(x); 
+			} 
+		}
 	}
 
 	public Vector<ClassInfo> getInterfaces() {
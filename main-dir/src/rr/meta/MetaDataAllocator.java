@@ -55,7 +55,9 @@ import acme.util.decorations.SingletonValue;
 
 public class MetaDataAllocator<S extends MetaDataInfo> implements Iterable<S>, Serializable {
 
-	protected S mapById[];
+	// Lookups by key or id do not lock. Entries are created under the allocator's lock (see
+	// MetaDataInfoMaps), so ids stay dense even when classes are instrumented concurrently.
+	protected volatile S mapById[];
 	protected final ConcurrentHashMap<String, S> map = new ConcurrentHashMap<String,S>();
 	protected final DecorationFactory<S> decorations = new DecorationFactory<S>();
 
@@ -70,7 +72,7 @@ public class MetaDataAllocator<S extends MetaDataInfo> implements Iterable<S>, S
 		mapById = copyOf(bogusArray, 128);
 	}
 
-	public synchronized S get(final String key) {
+	public S get(final String key) {
 		return map.get(key);
 	}
 
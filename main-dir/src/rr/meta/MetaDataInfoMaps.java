@@ -219,11 +219,17 @@ public class MetaDataInfoMaps {
 
 	public static MethodInfo getMethod(ClassInfo rrType, String name, String signature) {
 		Assert.assertTrue(signature != null);
-		MethodInfo x = getMethods().get(MetaDataInfoKeys.getMethodKey(rrType, name, signature));
+		final String key = MetaDataInfoKeys.getMethodKey(rrType, name, signature);
+		MethodInfo x = getMethods().get(key);
 		if (x == null) {
-			boolean isSynthetic = Constants.isSyntheticName(name);
-			x = new MethodInfo(getMethods().size(), SourceLocation.NULL, rrType, name, signature, isSynthetic);
-			getMethods().put(x);
+			synchronized (getMethods()) {
+				x = getMethods().get(key);
+				if (x == null) {
+					boolean isSynthetic = Constants.isSyntheticName(name);
+					x = new MethodInfo(getMethods().size(), SourceLocation.NULL, rrType, name, signature, isSynthetic);
+					getMethods().put(x);
+				}
+			}
 		} 
 		rrType.addMethod(x);
 
@@ -231,22 +237,34 @@ public class MetaDataInfoMaps {
 	}
 
 	public static ClassInfo getClass(String className) {		
-		ClassInfo x = getClasses().get(MetaDataInfoKeys.getClassKey(className));
+		final String key = MetaDataInfoKeys.getClassKey(className);
+		ClassInfo x = getClasses().get(key);
 		if (x == null) {
 //			System.err.println("NOT FOUND:" + className);
-			boolean isSynthetic = Constants.isSyntheticName(className);
-			x = new ClassInfo(getClasses().size(), SourceLocation.NULL, className, isSynthetic);
-			getClasses().put(x);
+			synchronized (getClasses()) {
+				x = getClasses().get(key);
+				if (x == null) {
+					boolean isSynthetic = Constants.isSyntheticName(className);
+					x = new ClassInfo(getClasses().size(), SourceLocation.NULL, className, isSynthetic);
+					getClasses().put(x);
+				}
+			}
 		} 
 		return x;
 	}
 
 	public static FieldInfo getField(ClassInfo rrClass, String name, String descriptor) {
-		FieldInfo x = getFields().get(MetaDataInfoKeys.getFieldKey(rrClass, name, descriptor));
+		final String key = MetaDataInfoKeys.getFieldKey(rrClass, name, descriptor);
+		FieldInfo x = getFields().get(key);
 		if (x == null) {
-			boolean isSynthetic = Constants.isSyntheticName(name);
-			x = new FieldInfo(getFields().size(), SourceLocation.NULL, rrClass, name, descriptor, isSynthetic);
-			getFields().put(x);
+			synchronized (getFields()) {
+				x = getFields().get(key);
+				if (x == null) {
+					boolean isSynthetic = Constants.isSyntheticName(name);
+					x = new FieldInfo(getFields().size(), SourceLocation.NULL, rrClass, name, descriptor, isSynthetic);
+					getFields().put(x);
+				}
+			}
 		} 
 		rrClass.addField(x);
 		return x;
@@ -260,111 +278,129 @@ public class MetaDataInfoMaps {
 
 	
 	public static AcquireInfo makeAcquire(SourceLocation loc, MethodInfo enclosing) {
-		AcquireInfo a;
-		while (true) {
-			a = getAcquires().get(MetaDataInfoKeys.getLockKey(loc, true));
-			if (a == null) break;
-			loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
+		synchronized (getAcquires()) {
+			AcquireInfo a;
+			while (true) {
+				a = getAcquires().get(MetaDataInfoKeys.getLockKey(loc, true));
+				if (a == null) break;
+				loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
 //			Yikes.yikes("making bogus loc");
-		}
-		a = new AcquireInfo(getAcquires().size(), loc, enclosing);
-		getAcquires().put(a);
+			}
+			a = new AcquireInfo(getAcquires().size(), loc, enclosing);
+			getAcquires().put(a);
 
-		return a;
+			return a;
+		}
 	}
 
 	public static ReleaseInfo makeRelease(SourceLocation loc, MethodInfo enclosing) {
-		ReleaseInfo a;
-		while (true) {
-			a = getReleases().get(MetaDataInfoKeys.getLockKey(loc, false));
-			if (a == null) break;
-			loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
+		synchronized (getReleases()) {
+			ReleaseInfo a;
+			while (true) {
+				a = getReleases().get(MetaDataInfoKeys.getLockKey(loc, false));
+				if (a == null) break;
+				loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
 //			Yikes.yikes("making bogus loc");
+			}
+			a = new ReleaseInfo(getReleases().size(), loc, enclosing);
+			getReleases().put(a);
+			return a;
 		}
-		a = new ReleaseInfo(getReleases().size(), loc, enclosing);
-		getReleases().put(a);
-		return a;
 	}
 
 	public static ArrayAccessInfo makeArrayAccess(SourceLocation loc, MethodInfo enclosing, boolean isWrite) {
-		ArrayAccessInfo a;
-		loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset());
-		while (true) {
-			a = getArrayAccesses().get(MetaDataInfoKeys.getArrayAccessKey(loc, isWrite));
-			if (a == null) break;
-			loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
+		synchronized (getArrayAccesses()) {
+			ArrayAccessInfo a;
+			loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset());
+			while (true) {
+				a = getArrayAccesses().get(MetaDataInfoKeys.getArrayAccessKey(loc, isWrite));
+				if (a == null) break;
+				loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
 //			Yikes.yikes("making bogus loc");
+			}
+			a = new ArrayAccessInfo(getArrayAccesses().size(), loc, enclosing, isWrite);
+			getArrayAccesses().put(a);
+			return a;
 		}
-		a = new ArrayAccessInfo(getArrayAccesses().size(), loc, enclosing, isWrite);
-		getArrayAccesses().put(a);
-		return a;
 	}
 
 	public static FieldAccessInfo makeFieldAccess(SourceLocation loc, MethodInfo enclosing, boolean isWrite, FieldInfo field) {
-		FieldAccessInfo a;
-		loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset());
-		while (true) {
-			a = getFieldAccesses().get(MetaDataInfoKeys.getFieldAccessKey(loc, enclosing, field, isWrite));
-			if (a == null) break;
-			loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
+		synchronized (getFieldAccesses()) {
+			FieldAccessInfo a;
+			loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset());
+			while (true) {
+				a = getFieldAccesses().get(MetaDataInfoKeys.getFieldAccessKey(loc, enclosing, field, isWrite));
+				if (a == null) break;
+				loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
 //			Yikes.yikes("making bogus loc");
+			}
+			a = new FieldAccessInfo(getFieldAccesses().size(), loc, enclosing, isWrite, field);
+			getFieldAccesses().put(a);
+			return a;
 		}
-		a = new FieldAccessInfo(getFieldAccesses().size(), loc, enclosing, isWrite, field);
-		getFieldAccesses().put(a);
-		return a;
 	}
 
 	public static JoinInfo makeJoin(SourceLocation loc, MethodInfo enclosing) {
-		JoinInfo a = getJoins().get(MetaDataInfoKeys.getJoinKey(loc));
-		if (a == null) {
-			a = new JoinInfo(getJoins().size(), loc, enclosing);
-			getJoins().put(a);
+		synchronized (getJoins()) {
+			JoinInfo a = getJoins().get(MetaDataInfoKeys.getJoinKey(loc));
+			if (a == null) {
+				a = new JoinInfo(getJoins().size(), loc, enclosing);
+				getJoins().put(a);
+			}
+			return a;
 		}
-		return a;
 	}
 
 	public static StartInfo makeStart(SourceLocation loc, MethodInfo enclosing) {
-		StartInfo a = getStarts().get(MetaDataInfoKeys.getStartKey(loc));
-		if (a == null) {
-			a = new StartInfo(getStarts().size(), loc, enclosing);
-			getStarts().put(a);
+		synchronized (getStarts()) {
+			StartInfo a = getStarts().get(MetaDataInfoKeys.getStartKey(loc));
+			if (a == null) {
+				a = new StartInfo(getStarts().size(), loc, enclosing);
+				getStarts().put(a);
+			}
+			return a;
 		}
-		return a;
 	}
 
 	public static WaitInfo makeWait(SourceLocation loc, MethodInfo enclosing) {
-		WaitInfo a = getWaits().get(MetaDataInfoKeys.getWaitKey(loc));
-		if (a == null) {
-			a = new WaitInfo(getWaits().size(), loc, enclosing);
-			getWaits().put(a);
+		synchronized (getWaits()) {
+			WaitInfo a = getWaits().get(MetaDataInfoKeys.getWaitKey(loc));
+			if (a == null) {
+				a = new WaitInfo(getWaits().size(), loc, enclosing);
+				getWaits().put(a);
+			}
+			return a;
 		}
-		return a;
 	}
 
 
 
 	public static InterruptInfo makeInterrupt(SourceLocation sourceLocation, MethodInfo method) {
-		InterruptInfo a = getInterrupts().get(MetaDataInfoKeys.getWaitKey(sourceLocation));
-		if (a == null) {
-			a = new InterruptInfo(getInterrupts().size(), sourceLocation, method);
-			getInterrupts().put(a);
+		synchronized (getInterrupts()) {
+			InterruptInfo a = getInterrupts().get(MetaDataInfoKeys.getWaitKey(sourceLocation));
+			if (a == null) {
+				a = new InterruptInfo(getInterrupts().size(), sourceLocation, method);
+				getInterrupts().put(a);
+			}
+			return a;	
 		}
-		return a;	
 	}
 
 
 	public static InvokeInfo makeInvoke(SourceLocation loc, MethodInfo method, MethodInfo enclosing) {
-		InvokeInfo a;
-		final MetaDataAllocator<InvokeInfo> invokes2 = getInvokes();
-		while (true) {
-			a = invokes2.get(MetaDataInfoKeys.getInvokeKey(loc, method));
-			if (a == null) break;
-			loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
-		}
-		a = new InvokeInfo(invokes2.size(), loc, method, enclosing);
-		invokes2.put(a);
+		synchronized (getInvokes()) {
+			InvokeInfo a;
+			final MetaDataAllocator<InvokeInfo> invokes2 = getInvokes();
+			while (true) {
+				a = invokes2.get(MetaDataInfoKeys.getInvokeKey(loc, method));
+				if (a == null) break;
+				loc = new SourceLocation(loc.getFile(), loc.getMethod(), loc.getLine(), loc.getOffset() + 1);
+			}
+			a = new InvokeInfo(invokes2.size(), loc, method, enclosing);
+			invokes2.put(a);
 
-		return a;
+			return a;
+		}
 	}
 
 
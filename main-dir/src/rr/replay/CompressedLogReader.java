@@ -0,0 +1,340 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.replay;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+import acme.util.Assert;
+import acme.util.Util;
+
+/**
+ * Reads a trace written by CompressedLogWriter. The block after the current one is inflated on
+ * a background thread while the current one is decoded. seek positions the reader at any
+ * sequence number using the block index.
+ */
+public class CompressedLogReader implements LogReader {
+
+	private static final class Block {
+		final byte[] raw;
+		final int records;
+		final long firstSeq;
+
+		Block(byte[] raw, int records, long firstSeq) {
+			this.raw = raw;
+			this.records = records;
+			this.firstSeq = firstSeq;
+		}
+	}
+
+	private final File file;
+	private final FileChannel in;
+	private final ArrayList<String> strings = new ArrayList<String>();
+	private final long[] offsets;
+	private final long[] firstSeqs;
+	private final int maxThreadId;
+	private final long recordCount;
+
+	private final ExecutorService inflater = Executors.newSingleThreadExecutor(new ThreadFactory() {
+		public Thread newThread(Runnable r) {
+			final Thread t = new Thread(r, "RR Log Inflater");
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	// the block being decoded, and the next one being inflated.
+	private int blockIndex;
+	private Future<Block> nextBlock;
+	private Block block;
+	private int pos;
+	private int left;
+	private long prevSeq;
+	private int prevThread;
+	private int prevB;
+
+	public CompressedLogReader(File file) throws IOException {
+		this.file = file;
+		this.in = new RandomAccessFile(file, "r").getChannel();
+		final long size = in.size();
+		Assert.assertTrue(size >= 8 + CompressedLogWriter.TRAILER_BYTES, "Not a compressed trace: " + file);
+
+		final ByteBuffer header = read(0, 8);
+		final int magic = header.getInt();
+		final int version = header.getInt();
+		Assert.assertTrue(magic == CompressedLogWriter.MAGIC, "Not a compressed trace: " + file);
+		Assert.assertTrue(version == CompressedLogWriter.VERSION, "Compressed trace " + file
+				+ " has version " + version + ", expected " + CompressedLogWriter.VERSION);
+
+		final ByteBuffer trailer = read(size - CompressedLogWriter.TRAILER_BYTES,
+				CompressedLogWriter.TRAILER_BYTES);
+		maxThreadId = trailer.getInt();
+		recordCount = trailer.getLong();
+		final long stringsOffset = trailer.getLong();
+		final long indexOffset = trailer.getLong();
+		Assert.assertTrue(trailer.getInt() == CompressedLogWriter.MAGIC, "Truncated trace: " + file);
+
+		final byte[] table = new byte[(int) (indexOffset - stringsOffset)];
+		read(stringsOffset, table.length).get(table);
+		final DataInputStream tableIn = new DataInputStream(new ByteArrayInputStream(table));
+		for (int n = tableIn.readInt(); n > 0; n--) {
+			strings.add(tableIn.readUTF());
+		}
+
+		final ByteBuffer index = read(indexOffset,
+				(int) (size - CompressedLogWriter.TRAILER_BYTES - indexOffset));
+		final int blocks = index.getInt();
+		offsets = new long[blocks];
+		firstSeqs = new long[blocks];
+		for (int i = 0; i < blocks; i++) {
+			offsets[i] = index.getLong();
+			firstSeqs[i] = index.getLong();
+		}
+		startBlock(0);
+	}
+
+	private ByteBuffer read(long at, int n) throws IOException {
+		final ByteBuffer b = ByteBuffer.allocate(n);
+		while (b.hasRemaining()) {
+			if (in.read(b, at + b.position()) < 0) {
+				Assert.fail("Truncated trace: %s", file);
+			}
+		}
+		b.flip();
+		return b;
+	}
+
+	private Future<Block> inflate(final int i) {
+		if (i >= offsets.length) {
+			return null;
+		}
+		return inflater.submit(new Callable<Block>() {
+			public Block call() throws IOException, DataFormatException {
+				final ByteBuffer h = read(offsets[i], 20);
+				final int compressed = h.getInt();
+				final int length = h.getInt();
+				final int records = h.getInt();
+				final long firstSeq = h.getLong();
+				final byte[] input = new byte[compressed];
+				read(offsets[i] + 20, compressed).get(input);
+				final Inflater inf = new Inflater(true);
+				try {
+					inf.setInput(input);
+					final byte[] raw = new byte[length];
+					int n = 0;
+					while (n < length) {
+						final int k = inf.inflate(raw, n, length - n);
+						if (k == 0 && (inf.finished() || inf.needsInput())) {
+							break;
+						}
+						n += k;
+					}
+					Assert.assertTrue(n == length, "Corrupt block " + i + " in " + file);
+					return new Block(raw, records, firstSeq);
+				} finally {
+					inf.end();
+				}
+			}
+		});
+	}
+
+	// make block i the next one to decode.
+	private void startBlock(int i) {
+		if (nextBlock != null) {
+			nextBlock.cancel(false);
+		}
+		blockIndex = i;
+		block = null;
+		left = 0;
+		nextBlock = inflate(i);
+	}
+
+	private boolean loadBlock() throws IOException {
+		if (nextBlock == null) {
+			return false;
+		}
+		try {
+			block = nextBlock.get();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		} catch (ExecutionException e) {
+			throw new IOException("Reading " + file, e.getCause());
+		}
+		nextBlock = inflate(++blockIndex);
+		pos = 0;
+		left = block.records;
+		prevSeq = block.firstSeq - 1;
+		prevThread = LogRecord.NONE;
+		prevB = 0;
+		return true;
+	}
+
+	public boolean next(LogRecord r) throws IOException {
+		while (left == 0) {
+			if (!loadBlock()) {
+				return false;
+			}
+		}
+		final byte[] raw = block.raw;
+		final int header = raw[pos++];
+		r.type = header & CompressedLogWriter.TYPE_MASK;
+		r.seq = prevSeq + 1 + ((header & CompressedLogWriter.SEQ_GAP) != 0 ? getVarLong(raw) : 0);
+		r.thread = (header & CompressedLogWriter.SAME_THREAD) != 0 ? prevThread : getVarInt(raw) - 1;
+		r.key = getVarInt(raw) - 1;
+		r.a = getVarInt(raw) - 1;
+		r.b = prevB + unzigzag(getVarInt(raw));
+		r.c = unzigzag(getVarInt(raw));
+		prevSeq = r.seq;
+		prevThread = r.thread;
+		prevB = r.b;
+		left--;
+		return true;
+	}
+
+	/**
+	 * Position the reader so that next returns the first record with a sequence number of at
+	 * least seq.
+	 */
+	public void seek(long seq) throws IOException {
+		int lo = 0;
+		int hi = firstSeqs.length - 1;
+		int found = 0;
+		while (lo <= hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (firstSeqs[mid] <= seq) {
+				found = mid;
+				lo = mid + 1;
+			} else {
+				hi = mid - 1;
+			}
+		}
+		startBlock(found);
+		final LogRecord skip = new LogRecord();
+		while (left == 0 && loadBlock()) {
+			// skip empty blocks
+		}
+		while (left > 0 && prevSeq + 1 < seq) {
+			// records are only decodable in order, so decode and drop those before seq.
+			final int savedPos = pos;
+			final long savedSeq = prevSeq;
+			final int savedThread = prevThread;
+			final int savedB = prevB;
+			next(skip);
+			if (skip.seq >= seq) {
+				pos = savedPos;
+				prevSeq = savedSeq;
+				prevThread = savedThread;
+				prevB = savedB;
+				left++;
+				break;
+			}
+		}
+	}
+
+	private int getVarInt(byte[] raw) {
+		int x = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = raw[pos++];
+			x |= (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		return x;
+	}
+
+	private long getVarLong(byte[] raw) {
+		long x = 0;
+		int shift = 0;
+		byte b;
+		do {
+			b = raw[pos++];
+			x |= (long) (b & 0x7f) << shift;
+			shift += 7;
+		} while (b < 0);
+		return x;
+	}
+
+	private static int unzigzag(int x) {
+		return (x >>> 1) ^ -(x & 1);
+	}
+
+	public String string(int key) {
+		return strings.get(key);
+	}
+
+	public int stringCount() {
+		return strings.size();
+	}
+
+	public int maxThreadId() {
+		return maxThreadId;
+	}
+
+	public long recordCount() {
+		return recordCount;
+	}
+
+	/**
+	 * Print records of a compressed trace, starting at sequence number from (default 0).
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length < 1 || args.length > 3) {
+			Assert.fail("Usage: CompressedLogReader <compressed trace> [from [count]]");
+		}
+		final CompressedLogReader in = new CompressedLogReader(new File(args[0]));
+		final long from = args.length > 1 ? Long.parseLong(args[1]) : 0;
+		long count = args.length > 2 ? Long.parseLong(args[2]) : Long.MAX_VALUE;
+		Util.logf("%,d records, %d blocks, %d strings, max thread %d", in.recordCount,
+				in.offsets.length, in.strings.size(), in.maxThreadId);
+		in.seek(from);
+		final LogRecord r = new LogRecord();
+		while (count-- > 0 && in.next(r)) {
+			Util.log(r.toString() + (r.key >= 0 ? "  " + in.string(r.key) : ""));
+		}
+	}
+}
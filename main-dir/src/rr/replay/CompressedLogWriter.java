@@ -0,0 +1,312 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import acme.util.Assert;
+import acme.util.Util;
+
+/**
+ * Writes a compressed trace: LogRecords in sequence order, packed into independently
+ * compressed blocks, followed by the string table and a block index. CompressedLogReader reads
+ * it, and can seek to any record through the index.
+ *
+ * <pre>
+ *   header:  int MAGIC, int VERSION
+ *   blocks:  int compressed length, int raw length, int records, long first seq, deflated bytes
+ *   strings: int count, count writeUTF strings
+ *   index:   int blocks, then per block: long file offset, long first seq
+ *   trailer: int maxThreadId, long records, long strings offset, long index offset, int MAGIC
+ * </pre>
+ *
+ * A record starts with a byte holding its type (bits 0-4), SAME_THREAD (thread is that of the
+ * previous record) and SEQ_GAP (seq is not the previous seq + 1; a varlong gap follows). Then
+ * come varints: thread + 1 unless SAME_THREAD, key + 1, a + 1, zigzag of b minus the previous
+ * b, and zigzag of c. Deltas restart at each block, so a block decodes on its own.
+ *
+ * Encoding is done by the appending thread. Blocks are deflated and written by a background
+ * thread, with a few blocks of slack so encoding and compression overlap.
+ */
+public class CompressedLogWriter {
+
+	public static final int MAGIC = 0x52524c5a; // "RRLZ"
+	public static final int VERSION = 1;
+
+	static final int TYPE_MASK = 0x1f;
+	static final int SAME_THREAD = 0x20;
+	static final int SEQ_GAP = 0x40;
+
+	static final int TRAILER_BYTES = 4 + 8 + 8 + 8 + 4;
+
+	// a block ends at BLOCK_RECORDS records or once it may not fit another record.
+	static final int BLOCK_RECORDS = 1 << 16;
+	static final int BLOCK_BYTES = 1 << 20;
+	static final int MAX_RECORD_BYTES = 1 + 10 + 5 * 5;
+
+	private static final class Block {
+		final byte[] raw;
+		final int length;
+		final int records;
+		final long firstSeq;
+
+		Block(byte[] raw, int length, int records, long firstSeq) {
+			this.raw = raw;
+			this.length = length;
+			this.records = records;
+			this.firstSeq = firstSeq;
+		}
+	}
+
+	private static final Block DONE = new Block(null, 0, 0, 0);
+
+	private final File file;
+	private final DataOutputStream out;
+	private final ArrayBlockingQueue<Block> full = new ArrayBlockingQueue<Block>(4);
+	private final ArrayBlockingQueue<byte[]> free = new ArrayBlockingQueue<byte[]>(8);
+	private final Thread compressor;
+	private volatile Throwable failure;
+
+	// only used by the compressor thread until it has finished
+	private long offset;
+	private final List<long[]> index = new ArrayList<long[]>();
+
+	// the block being encoded
+	private byte[] buf = new byte[BLOCK_BYTES];
+	private int pos;
+	private int records;
+	private long firstSeq;
+	private long prevSeq;
+	private int prevThread;
+	private int prevB;
+
+	private long recordCount;
+	private int maxThreadId;
+
+	public CompressedLogWriter(File file) throws IOException {
+		this.file = file;
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+		out.writeInt(MAGIC);
+		out.writeInt(VERSION);
+		offset = 8;
+		compressor = new Thread("RR Log Compressor") {
+			@Override
+			public void run() {
+				final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+				byte[] compressed = new byte[BLOCK_BYTES + BLOCK_BYTES / 8 + 64];
+				try {
+					for (Block b = full.take(); b != DONE; b = full.take()) {
+						deflater.reset();
+						deflater.setInput(b.raw, 0, b.length);
+						deflater.finish();
+						int n = 0;
+						while (!deflater.finished()) {
+							if (n == compressed.length) {
+								final byte[] bigger = new byte[compressed.length * 2];
+								System.arraycopy(compressed, 0, bigger, 0, n);
+								compressed = bigger;
+							}
+							n += deflater.deflate(compressed, n, compressed.length - n);
+						}
+						free.offer(b.raw);
+						index.add(new long[] { offset, b.firstSeq });
+						out.writeInt(n);
+						out.writeInt(b.length);
+						out.writeInt(b.records);
+						out.writeLong(b.firstSeq);
+						out.write(compressed, 0, n);
+						offset += 20 + n;
+					}
+				} catch (Throwable e) {
+					failure = e;
+				} finally {
+					deflater.end();
+				}
+			}
+		};
+		compressor.setDaemon(true);
+		compressor.start();
+	}
+
+	public void append(LogRecord r) throws IOException {
+		if (records == 0) {
+			firstSeq = r.seq;
+			prevSeq = r.seq - 1;
+			prevThread = LogRecord.NONE;
+			prevB = 0;
+		}
+		int header = r.type;
+		if (r.thread == prevThread) {
+			header |= SAME_THREAD;
+		}
+		if (r.seq != prevSeq + 1) {
+			header |= SEQ_GAP;
+		}
+		buf[pos++] = (byte) header;
+		if ((header & SEQ_GAP) != 0) {
+			putVarLong(r.seq - prevSeq - 1);
+		}
+		if ((header & SAME_THREAD) == 0) {
+			putVarInt(r.thread + 1);
+		}
+		putVarInt(r.key + 1);
+		putVarInt(r.a + 1);
+		putVarInt(zigzag(r.b - prevB));
+		putVarInt(zigzag(r.c));
+		prevSeq = r.seq;
+		prevThread = r.thread;
+		prevB = r.b;
+		records++;
+		recordCount++;
+		maxThreadId = Math.max(maxThreadId, r.thread);
+		if (records == BLOCK_RECORDS || pos > BLOCK_BYTES - MAX_RECORD_BYTES) {
+			flush();
+		}
+	}
+
+	static int zigzag(int x) {
+		return (x << 1) ^ (x >> 31);
+	}
+
+	private void putVarInt(int x) {
+		while ((x & ~0x7f) != 0) {
+			buf[pos++] = (byte) ((x & 0x7f) | 0x80);
+			x >>>= 7;
+		}
+		buf[pos++] = (byte) x;
+	}
+
+	private void putVarLong(long x) {
+		while ((x & ~0x7fL) != 0) {
+			buf[pos++] = (byte) ((x & 0x7f) | 0x80);
+			x >>>= 7;
+		}
+		buf[pos++] = (byte) x;
+	}
+
+	private void flush() throws IOException {
+		if (records > 0) {
+			enqueue(new Block(buf, pos, records, firstSeq));
+			final byte[] b = free.poll();
+			buf = b != null ? b : new byte[BLOCK_BYTES];
+			pos = 0;
+			records = 0;
+		}
+	}
+
+	/*
+	 * Hand b to the compressor. Waits in short steps and rechecks failure, so a dead compressor
+	 * is reported instead of blocking forever on the full queue.
+	 */
+	private void enqueue(Block b) throws IOException {
+		try {
+			do {
+				checkFailure();
+			} while (!full.offer(b, 100, TimeUnit.MILLISECONDS));
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+	}
+
+	private void checkFailure() throws IOException {
+		if (failure != null) {
+			throw new IOException("Compressing " + file, failure);
+		}
+	}
+
+	public void close(List<String> strings) throws IOException {
+		flush();
+		enqueue(DONE);
+		try {
+			compressor.join();
+		} catch (InterruptedException e) {
+			throw new IOException(e);
+		}
+		checkFailure();
+		// out.size() is an int, so track offsets ourselves.
+		final ByteArrayOutputStream table = new ByteArrayOutputStream();
+		final DataOutputStream tableOut = new DataOutputStream(table);
+		tableOut.writeInt(strings.size());
+		for (String s : strings) {
+			tableOut.writeUTF(s);
+		}
+		tableOut.close();
+		final long stringsOffset = offset;
+		table.writeTo(out);
+		final long indexOffset = stringsOffset + table.size();
+		out.writeInt(index.size());
+		for (long[] e : index) {
+			out.writeLong(e[0]);
+			out.writeLong(e[1]);
+		}
+		out.writeInt(maxThreadId);
+		out.writeLong(recordCount);
+		out.writeLong(stringsOffset);
+		out.writeLong(indexOffset);
+		out.writeInt(MAGIC);
+		out.close();
+	}
+
+	/**
+	 * Convert a log in any format LogReader.open accepts (such as a directory of segments from
+	 * -tool=LOG) into a compressed trace.
+	 */
+	public static void main(String[] args) throws IOException {
+		if (args.length != 2) {
+			Assert.fail("Usage: CompressedLogWriter <replay log> <compressed trace>");
+		}
+		final LogReader in = LogReader.open(new File(args[0]));
+		final CompressedLogWriter out = new CompressedLogWriter(new File(args[1]));
+		final LogRecord r = new LogRecord();
+		while (in.next(r)) {
+			out.append(r);
+		}
+		final List<String> strings = new ArrayList<String>();
+		for (int i = 0; i < in.stringCount(); i++) {
+			strings.add(in.string(i));
+		}
+		out.close(strings);
+		Util.logf("Wrote %,d records in %,d bytes to %s", out.recordCount,
+				new File(args[1]).length(), args[1]);
+	}
+}
@@ -0,0 +1,146 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.replay;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * One event of a segmented replay log (see SegmentedLogWriter and SegmentedLogReader). Every
+ * record is BYTES long on disk, big-endian:
+ *
+ * <pre>
+ *   long seq; int type; int thread; int key; int a; int b; int c;
+ * </pre>
+ *
+ * seq is the global sequence number that orders records across segments; type is an EventEnum
+ * ordinal; thread is the log's id for the ShadowThread, and key a string table index. The rest
+ * depends on type (unused fields are NONE):
+ *
+ * <pre>
+ *   ACCESS                            a = AccessEvent.Kind ordinal, b = object, c = array index
+ *   ACQUIRE RELEASE ENTER EXIT
+ *   PREWAIT POSTWAIT                  b = object
+ *   PREJOIN POSTJOIN                  b = joined thread
+ *   PRESTART POSTSTART                b = new thread
+ *   PRENOTIFY POSTNOTIFY              b = object, c = 1 for notifyAll
+ *   PREBARRIER POSTBARRIER            b = barrier object, c = parties
+ *   CLASS_INITIALIZED LOADCLASS       key = class name
+ *   FREE                              b = object
+ *   CREATE STOP PRESLEEP POSTSLEEP QUIT
+ * </pre>
+ */
+public final class LogRecord {
+
+	public static final int BYTES = 32;
+
+	public static final int NONE = -1;
+
+	// every segment file starts with MAGIC, VERSION and the segment id.
+	public static final int MAGIC = 0x52524c47; // "RRLG"
+	public static final int VERSION = 1;
+	public static final int HEADER_BYTES = 12;
+
+	private static final EventEnum[] EVENTS = EventEnum.values();
+
+	public long seq;
+	public int type;
+	public int thread;
+	public int key;
+	public int a;
+	public int b;
+	public int c;
+
+	public EventEnum event() {
+		return EVENTS[type];
+	}
+
+	public static void put(ByteBuffer buf, long seq, int type, int thread, int key, int a, int b,
+			int c) {
+		buf.putLong(seq);
+		buf.putInt(type);
+		buf.putInt(thread);
+		buf.putInt(key);
+		buf.putInt(a);
+		buf.putInt(b);
+		buf.putInt(c);
+	}
+
+	public void read(ByteBuffer buf) {
+		seq = buf.getLong();
+		type = buf.getInt();
+		thread = buf.getInt();
+		key = buf.getInt();
+		a = buf.getInt();
+		b = buf.getInt();
+		c = buf.getInt();
+	}
+
+	// absolute read of the record at offset at; buf's position is unchanged.
+	public void read(ByteBuffer buf, int at) {
+		seq = buf.getLong(at);
+		type = buf.getInt(at + 8);
+		thread = buf.getInt(at + 12);
+		key = buf.getInt(at + 16);
+		a = buf.getInt(at + 20);
+		b = buf.getInt(at + 24);
+		c = buf.getInt(at + 28);
+	}
+
+	public void read(DataInputStream in) throws IOException {
+		seq = in.readLong();
+		type = in.readInt();
+		thread = in.readInt();
+		key = in.readInt();
+		a = in.readInt();
+		b = in.readInt();
+		c = in.readInt();
+	}
+
+	public void copy(LogRecord other) {
+		seq = other.seq;
+		type = other.type;
+		thread = other.thread;
+		key = other.key;
+		a = other.a;
+		b = other.b;
+		c = other.c;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d: %s thread=%d key=%d a=%d b=%d c=%d", seq, event(), thread, key, a,
+				b, c);
+	}
+}
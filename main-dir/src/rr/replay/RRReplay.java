@@ -32,11 +32,9 @@
 
 package rr.replay;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
+import java.io.File;
 import java.io.IOException;
-import java.util.Vector;
+import java.util.Arrays;
 
 import acme.util.Assert;
 import acme.util.Util;
@@ -79,18 +77,20 @@ import rr.tool.RREventGenerator;
  */
 public class RRReplay implements MetaDataInfoVisitor {
 
-	protected Vector<ShadowThread> threads = new Vector<ShadowThread>();
-	protected Vector<ReplayObject> objects = new Vector<ReplayObject>();
-	protected Vector<ReplayArray> arrays = new Vector<ReplayArray>();
-	protected Vector<ReplayBarrier> barriers = new Vector<ReplayBarrier>();
-	protected Vector<String> strings = new Vector<String>();
+	private static final AccessEvent.Kind[] KINDS = AccessEvent.Kind.values();
+
+	// indexed by the log's thread and object ids, which are small and dense.
+	protected ShadowThread[] threads = new ShadowThread[64];
+	protected ReplayObject[] objects = new ReplayObject[1024];
+	protected ReplayArray[] arrays = new ReplayArray[1024];
+	protected ReplayBarrier[] barriers = new ReplayBarrier[16];
 	protected int eventCount;
 
-	protected final DataInputStream in;
+	protected final LogReader in;
 
 	public RRReplay(String eventLog) throws IOException {
 		Util.log(eventLog);
-		in = new DataInputStream(new BufferedInputStream(new FileInputStream(eventLog)));
+		in = LogReader.open(new File(eventLog));
 		Loader.addListener(this);
 
 		// Util.addToPeriodicTasks(new PeriodicTaskStmt("Replay Stats", 1000) {
@@ -110,45 +110,41 @@ public class RRReplay implements MetaDataInfoVisitor {
 
 	boolean doIt = true;
 
-	static protected <T> void put(int index, Vector<T> ts, T t) {
-		while (index >= ts.size()) {
-			ts.setSize(ts.size() * 2 + 1);
+	// returns ts, or a copy large enough to hold index.
+	static protected <T> T[] ensure(int index, T[] ts) {
+		if (index < ts.length) {
+			return ts;
 		}
-		ts.set(index, t);
-	}
-
-	static protected <T> T get(int index, Vector<T> ts) {
-		while (index >= ts.size()) {
-			ts.setSize(ts.size() * 2 + 1);
-		}
-		return ts.get(index);
+		return Arrays.copyOf(ts, Math.max(index + 1, ts.length * 2));
 	}
 
 	public synchronized void go() {
 		try {
 			RR.startTimer();
 			boolean trackArrays = ArrayStateFactory.arrayOption.get() != ArrayStateFactory.ArrayMode.NONE;
-			while (true) {
-				EventEnum event = EventEnum.values()[in.readInt()];
+			final LogRecord r = new LogRecord();
+			while (in.next(r)) {
+				EventEnum event = r.event();
 				eventCount++;
 				switch (event) {
 					case LOADCLASS: {
-						String className = readString();
+						String className = in.string(r.key);
 						RRMain.loader.findClass(className);
 						break;
 					}
 					case CREATE: {
-						int thread = in.readInt();
+						int thread = r.thread;
 						Thread t = new Thread();
 						ShadowThread ts = ShadowThread.make(t, null);
-						put(thread, threads, ts);
+						threads = ensure(thread, threads);
+						threads[thread] = ts;
 						break;
 					}
 					case ACCESS: {
-						AccessEvent.Kind kind = AccessEvent.Kind.values()[in.readInt()];
-						int thread = in.readInt();
-						String accessKey = readString();
-						int target = in.readInt();
+						AccessEvent.Kind kind = KINDS[r.a];
+						int thread = r.thread;
+						String accessKey = in.string(r.key);
+						int target = r.b;
 						switch (kind) {
 							case VOLATILE: {
 								FieldAccessInfo fad = MetaDataInfoMaps.getFieldAccesses().get(accessKey);
@@ -181,7 +177,7 @@ public class RRReplay implements MetaDataInfoVisitor {
 							}
 							case ARRAY: {
 								ArrayAccessInfo fad = MetaDataInfoMaps.getArrayAccesses().get(accessKey);
-								int index = in.readInt();
+								int index = r.c;
 								if (!trackArrays) {
 									break;
 								}
@@ -202,11 +198,11 @@ public class RRReplay implements MetaDataInfoVisitor {
 					}
 
 					case ACQUIRE: {
-						int thread = in.readInt();
-						String accessKey = readString();
+						int thread = r.thread;
+						String accessKey = in.string(r.key);
 						AcquireInfo fad = MetaDataInfoMaps.getAcquires().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for '" + accessKey + "'");
-						int obj = in.readInt();
+						int obj = r.b;
 						ReplayObject object = object(obj);
 						ShadowThread td = thread(thread);
 						AcquireEvent ae = td.getAcquireEvent();
@@ -217,11 +213,11 @@ public class RRReplay implements MetaDataInfoVisitor {
 						break;
 					}
 					case RELEASE: {
-						int thread = in.readInt();
-						String accessKey = readString();
+						int thread = r.thread;
+						String accessKey = in.string(r.key);
 						ReleaseInfo fad = MetaDataInfoMaps.getReleases().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for '" + accessKey + "'");
-						int obj = in.readInt();
+						int obj = r.b;
 						ReplayObject object = object(obj);
 						ShadowThread td = thread(thread);
 						ReleaseEvent ae = td.getReleaseEvent();
@@ -232,36 +228,35 @@ public class RRReplay implements MetaDataInfoVisitor {
 						break;
 					}
 					case ENTER: {
-						int thread = in.readInt();
-						String accessKey = readString();
+						int thread = r.thread;
+						String accessKey = in.string(r.key);
 						MethodInfo fad = MetaDataInfoMaps.getMethods().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for " + accessKey);
-						int obj = in.readInt();
+						int obj = r.b;
 						if (doIt)
 							RREventGenerator.enter(object(obj), fad.getId(), thread(thread));
 						break;
 					}
 					case EXIT: {
-						int thread = in.readInt();
-						String accessKey = readString();
+						int thread = r.thread;
+						String accessKey = in.string(r.key);
 						MethodInfo fad = MetaDataInfoMaps.getMethods().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for " + accessKey);
-						int obj = in.readInt();
+						int obj = r.b;
 						if (doIt)
 							RREventGenerator.exit(thread(thread));
 						break;
 					}
 
 					case STOP: {
-						int thread = in.readInt();
+						int thread = r.thread;
 						thread(thread).terminate();
 						break;
 					}
 
 					case PRESTART: {
-						int thread = in.readInt();
-
-						int newThread = in.readInt();
+						int thread = r.thread;
+						int newThread = r.b;
 
 						ShadowThread td = thread(thread);
 						StartEvent se = td.getStartEvent();
@@ -272,8 +267,8 @@ public class RRReplay implements MetaDataInfoVisitor {
 
 					}
 					case POSTSTART: {
-						int thread = in.readInt();
-						int newThread = in.readInt();
+						int thread = r.thread;
+						int newThread = r.b;
 
 						ShadowThread td = thread(thread);
 						StartEvent se = td.getStartEvent();
@@ -285,14 +280,14 @@ public class RRReplay implements MetaDataInfoVisitor {
 					}
 
 					case PRESLEEP: {
-						int thread = in.readInt();
+						int thread = r.thread;
 						SleepEvent sleepEvent = thread(thread).getSleepEvent();
 						if (doIt)
 							RR.getTool().preSleep(sleepEvent);
 						break;
 					}
 					case POSTSLEEP: {
-						int thread = in.readInt();
+						int thread = r.thread;
 						SleepEvent sleepEvent = thread(thread).getSleepEvent();
 						if (doIt)
 							RR.getTool().postSleep(sleepEvent);
@@ -300,18 +295,18 @@ public class RRReplay implements MetaDataInfoVisitor {
 					}
 
 					case PREBARRIER: {
-						int td = in.readInt();
-						int barrier = in.readInt();
-						int parties = in.readInt();
+						int td = r.thread;
+						int barrier = r.b;
+						int parties = r.c;
 						if (doIt)
 							SpecialMethods.invoke("ReplayBarrier.await()V", true, barrier(barrier, parties),
 									thread(td));
 						break;
 					}
 					case POSTBARRIER: {
-						int td = in.readInt();
-						int barrier = in.readInt();
-						int parties = in.readInt();
+						int td = r.thread;
+						int barrier = r.b;
+						int parties = r.c;
 						if (doIt)
 							SpecialMethods.invoke("ReplayBarrier.await()V", false, barrier(barrier, parties),
 									thread(td));
@@ -319,12 +314,12 @@ public class RRReplay implements MetaDataInfoVisitor {
 					}
 
 					case PREJOIN: {
-						ShadowThread td = thread(in.readInt());
-						String accessKey = readString();
+						ShadowThread td = thread(r.thread);
+						String accessKey = in.string(r.key);
 						JoinInfo fad = MetaDataInfoMaps.getJoins().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for " + accessKey);
 
-						ShadowThread joiningThread = thread(in.readInt());
+						ShadowThread joiningThread = thread(r.b);
 
 						JoinEvent je = td.getJoinEvent();
 						je.setJoiningThread(joiningThread);
@@ -336,12 +331,12 @@ public class RRReplay implements MetaDataInfoVisitor {
 					}
 
 					case POSTJOIN: {
-						ShadowThread td = thread(in.readInt());
-						String accessKey = readString();
+						ShadowThread td = thread(r.thread);
+						String accessKey = in.string(r.key);
 						JoinInfo fad = MetaDataInfoMaps.getJoins().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for " + accessKey);
 
-						ShadowThread joiningThread = thread(in.readInt());
+						ShadowThread joiningThread = thread(r.b);
 
 						JoinEvent je = td.getJoinEvent();
 						je.setJoiningThread(joiningThread);
@@ -353,9 +348,9 @@ public class RRReplay implements MetaDataInfoVisitor {
 					}
 
 					case PRENOTIFY: {
-						ShadowThread td = thread(in.readInt());
-						Object o = object(in.readInt());
-						boolean all = in.readBoolean();
+						ShadowThread td = thread(r.thread);
+						Object o = object(r.b);
+						boolean all = r.c != 0;
 						NotifyEvent ne = td.getNotifyEvent();
 
 						ne.setLock(ShadowLock.get(o));
@@ -366,9 +361,9 @@ public class RRReplay implements MetaDataInfoVisitor {
 						break;
 					}
 					case POSTNOTIFY: {
-						ShadowThread td = thread(in.readInt());
-						Object o = object(in.readInt());
-						boolean all = in.readBoolean();
+						ShadowThread td = thread(r.thread);
+						Object o = object(r.b);
+						boolean all = r.c != 0;
 						NotifyEvent ne = td.getNotifyEvent();
 
 						ne.setLock(ShadowLock.get(o));
@@ -379,12 +374,12 @@ public class RRReplay implements MetaDataInfoVisitor {
 						break;
 					}
 					case PREWAIT: {
-						ShadowThread td = thread(in.readInt());
-						String accessKey = readString();
+						ShadowThread td = thread(r.thread);
+						String accessKey = in.string(r.key);
 						WaitInfo fad = MetaDataInfoMaps.getWaits().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for " + accessKey);
 
-						Object o = object(in.readInt());
+						Object o = object(r.b);
 
 						WaitEvent je = td.getWaitEvent();
 						je.setInfo(fad);
@@ -394,12 +389,12 @@ public class RRReplay implements MetaDataInfoVisitor {
 						break;
 					}
 					case POSTWAIT: {
-						ShadowThread td = thread(in.readInt());
-						String accessKey = readString();
+						ShadowThread td = thread(r.thread);
+						String accessKey = in.string(r.key);
 						WaitInfo fad = MetaDataInfoMaps.getWaits().get(accessKey);
 						Assert.assertTrue(fad != null, "Bad MetaData for " + accessKey);
 
-						Object o = object(in.readInt());
+						Object o = object(r.b);
 
 						WaitEvent je = td.getWaitEvent();
 						je.setInfo(fad);
@@ -410,8 +405,8 @@ public class RRReplay implements MetaDataInfoVisitor {
 					}
 
 					case CLASS_INITIALIZED: {
-						ShadowThread td = thread(in.readInt());
-						String classKey = readString();
+						ShadowThread td = thread(r.thread);
+						String classKey = in.string(r.key);
 						ClassInitializedEvent ce = td.getClassInitEvent();
 						ce.setRRClass(MetaDataInfoMaps.getClass(classKey));
 						if (doIt)
@@ -419,18 +414,12 @@ public class RRReplay implements MetaDataInfoVisitor {
 						break;
 					}
 
-					case STRING: {
-						String s = in.readUTF();
-						strings.add(s);
-						break;
-					}
-
 					case FREE: {
-						int id = in.readInt();
-						if (doIt && objects.size() > id)
-							objects.set(id, null);
-						if (doIt && arrays.size() > id)
-							arrays.set(id, null);
+						int id = r.b;
+						if (doIt && objects.length > id)
+							objects[id] = null;
+						if (doIt && arrays.length > id)
+							arrays[id] = null;
 						break;
 					}
 
@@ -443,46 +432,48 @@ public class RRReplay implements MetaDataInfoVisitor {
 
 				}
 			}
+			Assert.warn("Replay log ended without QUIT after %d events", eventCount);
+			RR.endTimer();
 		} catch (Throwable e) {
 			Assert.panic(new Throwable(
 					"Replay Error (" + e.getClass() + ") on Event " + eventCount + ": " + e, e));
 		}
 	}
 
-	private synchronized String readString() throws IOException {
-		int key = in.readInt();
-		return strings.get(key);
-	}
+	// The tables below are only used by go(), which holds the lock.
 
-	private synchronized ShadowThread thread(int thread) {
-		ShadowThread ts = threads.get(thread);
+	private ShadowThread thread(int thread) {
+		ShadowThread ts = thread < threads.length ? threads[thread] : null;
 		Assert.assertTrue(ts != null);
 		return ts;
 	}
 
-	private synchronized ReplayObject object(final int target) {
-		ReplayObject o = get(target, objects);
+	private ReplayObject object(final int target) {
+		objects = ensure(target, objects);
+		ReplayObject o = objects[target];
 		if (o == null) {
 			o = new ReplayObject(target);
-			put(target, objects, o);
+			objects[target] = o;
 		}
 		return o;
 	}
 
-	private synchronized ReplayArray array(final int target) {
-		ReplayArray o = get(target, arrays);
+	private ReplayArray array(final int target) {
+		arrays = ensure(target, arrays);
+		ReplayArray o = arrays[target];
 		if (o == null) {
 			o = new ReplayArray(target);
-			put(target, arrays, o);
+			arrays[target] = o;
 		}
 		return o;
 	}
 
-	private synchronized ReplayBarrier barrier(final int target, int parties) {
-		ReplayBarrier o = get(target, barriers);
+	private ReplayBarrier barrier(final int target, int parties) {
+		barriers = ensure(target, barriers);
+		ReplayBarrier o = barriers[target];
 		if (o == null) {
 			o = new ReplayBarrier(parties);
-			put(target, barriers, o);
+			barriers[target] = o;
 		}
 		return o;
 	}
@@ -0,0 +1,225 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.replay;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+
+import acme.util.Assert;
+
+/**
+ * Reads a log written by SegmentedLogWriter, merging its segments back into one stream of
+ * LogRecords in sequence order.
+ *
+ * Segments are memory-mapped in windows of up to WINDOW_BYTES, and records are decoded in place
+ * with absolute reads, so no bytes are copied through an intermediate buffer. The merge is a
+ * binary heap of segment indices keyed by each segment's next sequence number.
+ */
+public class SegmentedLogReader implements LogReader {
+
+	// a multiple of LogRecord.BYTES, well below the 2GB limit of a single mapping.
+	private static final long WINDOW_BYTES = (256L << 20) / LogRecord.BYTES * LogRecord.BYTES;
+
+	private final ArrayList<String> strings = new ArrayList<String>();
+
+	private final SegmentCursor[] segments;
+
+	// heap of indices into segments with records left, ordered by SegmentCursor.seq.
+	private final int[] heap;
+	private int heapSize;
+
+	private long expected = 0;
+
+	private int maxSegmentId = 0;
+
+	private static final class SegmentCursor {
+		final File file;
+		final FileChannel in;
+		final long size;
+
+		MappedByteBuffer map;
+		long mapStart;
+		int pos;
+
+		// sequence number of the record at pos.
+		long seq;
+
+		SegmentCursor(File file) throws IOException {
+			this.file = file;
+			this.in = new RandomAccessFile(file, "r").getChannel();
+			this.size = in.size();
+			Assert.assertTrue(size >= LogRecord.HEADER_BYTES, "Empty log segment " + file);
+			Assert.assertTrue((size - LogRecord.HEADER_BYTES) % LogRecord.BYTES == 0,
+					"Truncated record at end of " + file);
+			map(0);
+			final int magic = map.getInt(0);
+			final int version = map.getInt(4);
+			Assert.assertTrue(magic == LogRecord.MAGIC, "Not a log segment: " + file);
+			Assert.assertTrue(version == LogRecord.VERSION,
+					"Log segment " + file + " has version " + version + ", expected " + LogRecord.VERSION);
+			pos = LogRecord.HEADER_BYTES;
+		}
+
+		private void map(long start) throws IOException {
+			mapStart = start;
+			map = in.map(FileChannel.MapMode.READ_ONLY, start, Math.min(WINDOW_BYTES, size - start));
+			pos = 0;
+		}
+
+		// load seq for the record at pos, moving the window if needed. False at end of file.
+		boolean peek() throws IOException {
+			if (pos + LogRecord.BYTES > map.limit()) {
+				final long next = mapStart + pos;
+				if (next >= size) {
+					in.close();
+					map = null;
+					return false;
+				}
+				map(next);
+			}
+			seq = map.getLong(pos);
+			return true;
+		}
+
+		void read(LogRecord r) {
+			r.read(map, pos);
+			pos += LogRecord.BYTES;
+		}
+	}
+
+	public SegmentedLogReader(File dir) throws IOException {
+		final DataInputStream in = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(new File(dir, "strings"))));
+		for (int n = in.readInt(); n > 0; n--) {
+			strings.add(in.readUTF());
+		}
+		in.close();
+
+		final File[] files = dir.listFiles();
+		Assert.assertTrue(files != null, "Not a log directory: " + dir);
+		final ArrayList<SegmentCursor> cursors = new ArrayList<SegmentCursor>();
+		for (File f : files) {
+			if (f.getName().startsWith("seg-")) {
+				cursors.add(new SegmentCursor(f));
+				maxSegmentId = Math.max(maxSegmentId, Integer.parseInt(f.getName().substring(4)));
+			}
+		}
+		segments = cursors.toArray(new SegmentCursor[cursors.size()]);
+		heap = new int[segments.length];
+		for (int i = 0; i < segments.length; i++) {
+			if (segments[i].peek()) {
+				heap[heapSize] = i;
+				siftUp(heapSize++);
+			}
+		}
+	}
+
+	public String string(int key) {
+		return strings.get(key);
+	}
+
+	public int stringCount() {
+		return strings.size();
+	}
+
+	// segments are numbered by the writer's thread ids.
+	public int maxThreadId() {
+		return maxSegmentId;
+	}
+
+	/**
+	 * Decode the next record in sequence order into r. Returns false when all segments are
+	 * exhausted.
+	 */
+	public boolean next(LogRecord r) throws IOException {
+		if (heapSize == 0) {
+			return false;
+		}
+		final SegmentCursor c = segments[heap[0]];
+		c.read(r);
+		if (r.seq != expected) {
+			// records appended while the log was closing may be missing.
+			Assert.warn("Missing log records %d to %d", expected, r.seq - 1);
+		}
+		expected = r.seq + 1;
+		if (!c.peek()) {
+			heap[0] = heap[--heapSize];
+		}
+		siftDown(0);
+		return true;
+	}
+
+	private void siftUp(int i) {
+		final int x = heap[i];
+		final long seq = segments[x].seq;
+		while (i > 0) {
+			final int parent = (i - 1) >> 1;
+			if (segments[heap[parent]].seq <= seq) {
+				break;
+			}
+			heap[i] = heap[parent];
+			i = parent;
+		}
+		heap[i] = x;
+	}
+
+	private void siftDown(int i) {
+		if (i >= heapSize) {
+			return;
+		}
+		final int x = heap[i];
+		final long seq = segments[x].seq;
+		while (true) {
+			int child = 2 * i + 1;
+			if (child >= heapSize) {
+				break;
+			}
+			if (child + 1 < heapSize && segments[heap[child + 1]].seq < segments[heap[child]].seq) {
+				child++;
+			}
+			if (seq <= segments[heap[child]].seq) {
+				break;
+			}
+			heap[i] = heap[child];
+			i = child;
+		}
+		heap[i] = x;
+	}
+}
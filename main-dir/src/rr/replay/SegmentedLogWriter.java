@@ -0,0 +1,204 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.replay;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import acme.util.Assert;
+import acme.util.Util;
+
+/**
+ * Writes a replay log as one segment file per logging thread, so threads never share a stream.
+ *
+ * Each Segment appends fixed-width LogRecords into a direct buffer owned by one thread. Every
+ * record takes the next number from a global atomic sequence counter, which is the only shared
+ * write on the logging path. Full buffers are queued to a background writer thread. That thread
+ * appends them to the segment's file and recycles them. SegmentedLogReader merges the segments
+ * back into sequence order.
+ *
+ * Layout of the log directory: seg-N for segment N (a header, then records), and strings (the
+ * string table: a count followed by that many writeUTF strings, indexed by LogRecord.key).
+ */
+public class SegmentedLogWriter {
+
+	// records per buffer: 64KB.
+	private static final int RECORDS_PER_BUFFER = 2048;
+
+	private final File dir;
+	private final AtomicLong seq = new AtomicLong();
+
+	private final LinkedBlockingQueue<Segment> full = new LinkedBlockingQueue<Segment>();
+	private final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<ByteBuffer>();
+	private final ConcurrentLinkedQueue<Segment> segments = new ConcurrentLinkedQueue<Segment>();
+
+	// queued as the last full buffer by close().
+	private final Segment done = new Segment(-1, null);
+
+	private final Thread writer;
+
+	// only used by the writer thread
+	private final HashMap<Integer, FileChannel> files = new HashMap<Integer, FileChannel>();
+	private long bytesWritten;
+
+	/**
+	 * The records of one thread. append is normally only called by the owning thread (or by
+	 * several threads holding a lock on the segment, for shared segments). append and flush
+	 * also lock the segment themselves, so close can flush a segment whose owner is still
+	 * logging (e.g., a daemon thread at exit) without tearing records. The lock is uncontended
+	 * otherwise.
+	 */
+	public final class Segment {
+		final int id;
+		ByteBuffer buf;
+
+		// set for the copies queued to the writer.
+		private ByteBuffer fullBuf;
+
+		Segment(int id, ByteBuffer buf) {
+			this.id = id;
+			this.buf = buf;
+		}
+
+		public synchronized void append(int type, int thread, int key, int a, int b, int c) {
+			LogRecord.put(buf, seq.getAndIncrement(), type, thread, key, a, b, c);
+			if (!buf.hasRemaining()) {
+				flush();
+			}
+		}
+
+		synchronized void flush() {
+			if (buf.position() > 0) {
+				final Segment s = new Segment(id, null);
+				s.fullBuf = buf;
+				full.add(s);
+				buf = buffer();
+			}
+		}
+	}
+
+	public SegmentedLogWriter(File dir) {
+		this.dir = dir;
+		dir.mkdirs();
+		final File[] old = dir.listFiles();
+		if (old != null) {
+			for (File f : old) {
+				f.delete();
+			}
+		}
+		writer = new Thread("RR Log Writer") {
+			@Override
+			public void run() {
+				try {
+					for (Segment s = full.take(); s != done; s = full.take()) {
+						write(s.id, s.fullBuf);
+					}
+					for (FileChannel f : files.values()) {
+						f.close();
+					}
+				} catch (Exception e) {
+					Assert.panic(e);
+				}
+			}
+		};
+		writer.setDaemon(true);
+		writer.start();
+	}
+
+	private ByteBuffer buffer() {
+		final ByteBuffer b = free.poll();
+		return b != null ? b : ByteBuffer.allocateDirect(RECORDS_PER_BUFFER * LogRecord.BYTES);
+	}
+
+	public Segment newSegment(int id) {
+		final Segment s = new Segment(id, buffer());
+		segments.add(s);
+		return s;
+	}
+
+	// writer thread only
+	private void write(int id, ByteBuffer b) throws IOException {
+		FileChannel f = files.get(id);
+		if (f == null) {
+			f = new RandomAccessFile(new File(dir, "seg-" + id), "rw").getChannel();
+			final ByteBuffer header = ByteBuffer.allocate(LogRecord.HEADER_BYTES);
+			header.putInt(LogRecord.MAGIC).putInt(LogRecord.VERSION).putInt(id).flip();
+			while (header.hasRemaining()) {
+				f.write(header);
+			}
+			files.put(id, f);
+		}
+		b.flip();
+		bytesWritten += b.remaining();
+		while (b.hasRemaining()) {
+			f.write(b);
+		}
+		b.clear();
+		free.add(b);
+	}
+
+	public long getSequence() {
+		return seq.get();
+	}
+
+	/**
+	 * Flush every segment, wait for the writer to finish, and write the string table. Records
+	 * appended concurrently with close may be lost, as with the old single-stream log.
+	 */
+	public void close(List<String> strings) throws IOException, InterruptedException {
+		for (Segment s : segments) {
+			s.flush();
+		}
+		full.add(done);
+		writer.join();
+		final DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(new File(dir, "strings"))));
+		out.writeInt(strings.size());
+		for (String s : strings) {
+			out.writeUTF(s);
+		}
+		out.close();
+		Util.logf("Wrote %,d bytes of events in %d segments to %s", bytesWritten, files.size(), dir);
+	}
+}
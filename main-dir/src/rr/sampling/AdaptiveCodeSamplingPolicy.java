@@ -0,0 +1,80 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package rr.sampling;
+
+/**
+ * LiteRace's adaptive bursty sampling: each thread samples every entry of a method at first, and
+ * after each burst of sampled entries divides that method's rate by 10, down to a floor of
+ * minRate%. Cold code is thus always checked, and hot code rarely. The entries skipped between
+ * samples are counted down, so an unsampled entry costs a decrement.
+ */
+public final class AdaptiveCodeSamplingPolicy extends CodeSamplingPolicy {
+
+	private final int minRate;
+	private final int burst;
+	private final int maxPeriod;
+
+	public AdaptiveCodeSamplingPolicy(int minRate, int burst) {
+		this.minRate = Math.max(1, Math.min(100, minRate));
+		this.burst = Math.max(1, burst);
+		this.maxPeriod = 100 / this.minRate;
+	}
+
+	@Override
+	public boolean sample(CodeSamplerState s, int methodId) {
+		if (methodId >= s.skip.length) {
+			s.ensure(methodId);
+		}
+		final int k = s.skip[methodId];
+		if (k > 0) {
+			s.skip[methodId] = k - 1;
+			return false;
+		}
+		int period = s.period[methodId];
+		if (period == 0) {
+			period = 1;
+		}
+		if (++s.samples[methodId] == burst) {
+			s.samples[methodId] = 0;
+			period = Math.min(period * 10, maxPeriod);
+		}
+		s.period[methodId] = period;
+		s.skip[methodId] = period - 1;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return "adaptive(burst " + burst + ", down to " + minRate + "%)";
+	}
+}
@@ -0,0 +1,161 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package rr.sampling;
+
+import acme.util.count.AbstractCounter;
+import acme.util.count.RatioCounter;
+import acme.util.option.CommandLine;
+import acme.util.option.CommandLineOption;
+import rr.state.ShadowThread;
+
+/**
+ * Code-cloning sampling, in the style of LiteRace and Pacer. With -codeSampling, the instrumentor
+ * gives every instrumented method body an uninstrumented clone that only generates
+ * synchronization, volatile, and call events, plus an entry check that calls sample below and
+ * runs the clone when it returns false. Unsampled execution then costs one call per method entry
+ * instead of one per access.
+ *
+ * The decision is made per thread by a CodeSamplingPolicy (see -codeSamplingPolicy) and holds until
+ * the method returns: a long-running loop entered unsampled stays unsampled.
+ *
+ * The counters report the fraction of method entries that were sampled, and the fraction of
+ * accesses, estimated by weighting each entry with the number of access sites the method
+ * instruments.
+ */
+public class CodeSampler {
+
+	public static final CommandLineOption<Boolean> codeSamplingOption = CommandLine.makeBoolean(
+			"codeSampling", false, CommandLineOption.Kind.EXPERIMENTAL,
+			"Give each instrumented method an uninstrumented clone for accesses, and pick which copy to run at each method entry with -codeSamplingPolicy.  Misses races in unsampled code.");
+
+	public static final CommandLineOption<String> policyOption = CommandLine.makeString(
+			"codeSamplingPolicy", "adaptive", CommandLineOption.Kind.EXPERIMENTAL,
+			"How -codeSampling picks sampled method entries: 'fixed' samples each entry with probability -codeSamplingRate%; 'adaptive' samples every entry of a method by a thread at first and divides the rate by 10 after each -codeSamplingBurst samples, down to -codeSamplingRate%.");
+
+	public static final CommandLineOption<Integer> rateOption = CommandLine.makeInteger(
+			"codeSamplingRate", 1, CommandLineOption.Kind.EXPERIMENTAL,
+			"Sampling rate, in percent, for the fixed -codeSamplingPolicy, and the lowest rate for the adaptive one.");
+
+	public static final CommandLineOption<Integer> burstOption = CommandLine.makeInteger(
+			"codeSamplingBurst", 10, CommandLineOption.Kind.EXPERIMENTAL,
+			"Sampled entries at each rate before the adaptive -codeSamplingPolicy lowers the rate.");
+
+	// instrumented access sites per method id, or 0 if not yet known.
+	private static volatile int[] accessSites = new int[1024];
+
+	/**
+	 * Called by the entry check of each sampled method body: true if this entry should run the
+	 * instrumented body.
+	 */
+	public static boolean sample(int methodId, ShadowThread td) {
+		final CodeSamplerState s = CodeSamplerState.get(td);
+		final boolean sampled = s.policy.sample(s, methodId);
+		final int[] sites = accessSites;
+		final int n = methodId < sites.length ? sites[methodId] : 0;
+		s.entries++;
+		s.accesses += n;
+		if (sampled) {
+			s.sampledEntries++;
+			s.sampledAccesses += n;
+		}
+		return sampled;
+	}
+
+	/** Called by the instrumentor once it has instrumented the sampled body of methodId. */
+	public static synchronized void setAccessSites(int methodId, int n) {
+		int[] sites = accessSites;
+		if (methodId >= sites.length) {
+			final int[] a = new int[Math.max(methodId + 1, sites.length * 2)];
+			System.arraycopy(sites, 0, a, 0, sites.length);
+			sites = a;
+		}
+		sites[methodId] = n;
+		accessSites = sites;
+	}
+
+	/*
+	 * Sums a field over the states of all threads when the counters are reported.
+	 */
+	private static abstract class Sum extends AbstractCounter {
+
+		Sum(String name) {
+			super("Code Sampling", name);
+		}
+
+		abstract long count(CodeSamplerState s);
+
+		@Override
+		public long getCount() {
+			long total = 0;
+			for (CodeSamplerState s : CodeSamplerState.all()) {
+				total += count(s);
+			}
+			return total;
+		}
+
+		@Override
+		public String get() {
+			return String.format("%,d", getCount());
+		}
+	}
+
+	private static final Sum entries = new Sum("Method Entries") {
+		long count(CodeSamplerState s) {
+			return s.entries;
+		}
+	};
+
+	private static final Sum sampledEntries = new Sum("Sampled Method Entries") {
+		long count(CodeSamplerState s) {
+			return s.sampledEntries;
+		}
+	};
+
+	private static final Sum accesses = new Sum("Access Sites Entered") {
+		long count(CodeSamplerState s) {
+			return s.accesses;
+		}
+	};
+
+	private static final Sum sampledAccesses = new Sum("Sampled Access Sites Entered") {
+		long count(CodeSamplerState s) {
+			return s.sampledAccesses;
+		}
+	};
+
+	private static final RatioCounter entryFraction = new RatioCounter("Code Sampling",
+			"Sampled Entry Fraction", sampledEntries, entries);
+
+	private static final RatioCounter accessFraction = new RatioCounter("Code Sampling",
+			"Sampled Access Fraction", sampledAccesses, accesses);
+}
@@ -0,0 +1,126 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package rr.sampling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import acme.util.decorations.Decoration;
+import acme.util.decorations.DecorationFactory;
+import acme.util.decorations.DefaultValue;
+import rr.state.ShadowThread;
+
+/**
+ * Per-thread state for CodeSampler and its CodeSamplingPolicy. Only the owning thread reads or
+ * writes the fields, except when the counters are summed for the final report.
+ *
+ * The state hangs off the ShadowThread in a ts_get_codeSampler/ts_set_codeSampler field, which RR
+ * adds when -codeSampling is on. With -noDecInline the stubs below use a decoration instead.
+ */
+public final class CodeSamplerState {
+
+	private static final List<CodeSamplerState> all = new ArrayList<CodeSamplerState>();
+
+	private static final Decoration<ShadowThread, CodeSamplerState> states = ShadowThread
+			.makeDecoration("code sampler", DecorationFactory.Type.MULTIPLE,
+					new DefaultValue<ShadowThread, CodeSamplerState>() {
+						public CodeSamplerState get(ShadowThread td) {
+							return new CodeSamplerState(td.getTid());
+						}
+					});
+
+	public final CodeSamplingPolicy policy;
+
+	// xorshift state for the randomized policies. Never zero.
+	public long seed;
+
+	// per method id, for the policies that adapt per method.
+	public int[] skip = new int[0];
+	public int[] samples = new int[0];
+	public int[] period = new int[0];
+
+	long entries, sampledEntries, accesses, sampledAccesses;
+
+	private CodeSamplerState(int tid) {
+		this.policy = CodeSamplingPolicy.get();
+		long s = (System.nanoTime() ^ 0x9E3779B97F4A7C15L) + 0xBF58476D1CE4E5B9L * (tid + 1);
+		this.seed = (s == 0) ? 0x2545F4914F6CDD1DL : s;
+		synchronized (all) {
+			all.add(this);
+		}
+	}
+
+	protected static CodeSamplerState ts_get_codeSampler(ShadowThread td) {
+		return states.get(td);
+	}
+
+	protected static void ts_set_codeSampler(ShadowThread td, CodeSamplerState s) {
+		states.set(td, s);
+	}
+
+	static CodeSamplerState get(ShadowThread td) {
+		CodeSamplerState s = ts_get_codeSampler(td);
+		if (s == null) {
+			s = new CodeSamplerState(td.getTid());
+			ts_set_codeSampler(td, s);
+		}
+		return s;
+	}
+
+	static List<CodeSamplerState> all() {
+		synchronized (all) {
+			return new ArrayList<CodeSamplerState>(all);
+		}
+	}
+
+	// xorshift64: one step of the per-thread generator.
+	public long next() {
+		long x = seed;
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		seed = x;
+		return x;
+	}
+
+	/** Makes the per-method arrays long enough to index with methodId. */
+	public void ensure(int methodId) {
+		if (methodId >= skip.length) {
+			final int n = Math.max(methodId + 1, skip.length * 2);
+			skip = Arrays.copyOf(skip, n);
+			samples = Arrays.copyOf(samples, n);
+			period = Arrays.copyOf(period, n);
+		}
+	}
+}
@@ -0,0 +1,72 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package rr.sampling;
+
+import acme.util.Assert;
+import acme.util.Util;
+
+/**
+ * Decides, at each entry to a method with a sampled and an unsampled body, which body the entering
+ * thread runs. Called only by the entering thread, with that thread's CodeSamplerState, so
+ * policies keep their per-thread state there and never lock.
+ *
+ * New policies extend this class and are added to make below.
+ */
+public abstract class CodeSamplingPolicy {
+
+	private static CodeSamplingPolicy policy;
+
+	/** Returns true if this entry of methodId should run the instrumented body. */
+	public abstract boolean sample(CodeSamplerState s, int methodId);
+
+	/** The policy picked by the command line options, made on first use. */
+	public static synchronized CodeSamplingPolicy get() {
+		if (policy == null) {
+			policy = make(CodeSampler.policyOption.get(), CodeSampler.rateOption.get(),
+					CodeSampler.burstOption.get());
+			Util.log("Code sampling policy: " + policy);
+		}
+		return policy;
+	}
+
+	public static CodeSamplingPolicy make(String name, int rate, int burst) {
+		if (name.equals("fixed")) {
+			return new FixedRateCodeSamplingPolicy(rate);
+		} else if (name.equals("adaptive")) {
+			return new AdaptiveCodeSamplingPolicy(rate, burst);
+		} else {
+			Assert.fail("Unknown code sampling policy '%s'", name);
+			return null;
+		}
+	}
+}
@@ -32,18 +32,17 @@
 
 package rr.simple;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.util.HashMap;
-import java.util.IdentityHashMap;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import acme.util.Assert;
 import acme.util.Util;
 import acme.util.decorations.DefaultValue;
 import acme.util.identityhash.WeakIdentityHashMap;
 import acme.util.option.CommandLine;
+import acme.util.option.CommandLineOption;
 import rr.annotations.Abbrev;
 import rr.barrier.BarrierEvent;
 import rr.barrier.BarrierListener;
@@ -75,505 +74,332 @@ import rr.meta.ReleaseInfo;
 import rr.meta.StartInfo;
 import rr.meta.WaitInfo;
 import rr.replay.EventEnum;
+import rr.replay.LogRecord;
 import rr.replay.ReplayBarrier;
+import rr.replay.SegmentedLogWriter;
 import rr.state.ShadowThread;
 import rr.tool.RR;
 import rr.tool.Tool;
 
 /**
  * Used to create a log to for trace replaying. Not stable.
+ * 
+ * Each thread appends fixed-width records to its own segment of a SegmentedLogWriter, so logging
+ * an event takes no global lock. RRReplay merges the segments back into one total order.
  */
 
 @Abbrev("LOG")
 final public class ReplayLogTool extends Tool
 		implements MetaDataInfoVisitor, BarrierListener<ReplayBarrier> {
 
-	protected static int count = 0;
+	public static final CommandLineOption<String> replayLogOption = CommandLine.makeString(
+			"replayLog", "events.rrlog", CommandLineOption.Kind.EXPERIMENTAL,
+			"Directory for the segmented event log written by the LOG tool.");
+
+	private static final int NONE = LogRecord.NONE;
+
+	// object ids are kept in STRIPES weak maps, picked by identity hash code.
+	private static final int STRIPES = 64;
+
+	protected final AtomicInteger count = new AtomicInteger();
+	protected final AtomicInteger threadCount = new AtomicInteger();
 
 	private class MonitoredInteger {
-		final int x = count++;
+		final int x = count.getAndIncrement();
 
 		@Override
 		protected void finalize() {
-			try {
-				synchronized (out) {
-					writeEventType(EventEnum.FREE);
-					out.writeInt(x);
+			if (open) {
+				synchronized (global) {
+					global.append(EventEnum.FREE.ordinal(), NONE, NONE, NONE, x, NONE);
 				}
-			} catch (IOException e) {
-				Assert.panic(e);
 			}
 		}
 	}
 
-	protected IdentityHashMap<ShadowThread, Integer> threads = new IdentityHashMap<ShadowThread, Integer>();
-	protected WeakIdentityHashMap<Object, MonitoredInteger> objects = new WeakIdentityHashMap<Object, MonitoredInteger>();
-	protected HashMap<String, Integer> strings = new HashMap<String, Integer>();
-	protected DataOutputStream out;
-	protected int eventCount = 0;
-	protected boolean open = true;
+	protected final WeakIdentityHashMap<Object, MonitoredInteger>[] objects = makeStripes();
+	protected final ConcurrentHashMap<String, Integer> strings = new ConcurrentHashMap<String, Integer>();
+	protected final ArrayList<String> stringTable = new ArrayList<String>();
+
+	protected SegmentedLogWriter log;
+
+	// for records not appended by the thread they describe. Requires a lock on global.
+	protected SegmentedLogWriter.Segment global;
+
+	protected volatile boolean open = false;
+
+	@SuppressWarnings("unchecked")
+	private WeakIdentityHashMap<Object, MonitoredInteger>[] makeStripes() {
+		return (WeakIdentityHashMap<Object, MonitoredInteger>[]) new WeakIdentityHashMap<?, ?>[STRIPES];
+	}
 
 	public ReplayLogTool(String name, Tool next, CommandLine commandLine) {
 		super(name, next, commandLine);
+		commandLine.add(replayLogOption);
+		for (int i = 0; i < STRIPES; i++) {
+			objects[i] = new WeakIdentityHashMap<Object, MonitoredInteger>();
+		}
 	}
 
 	@Override
 	public void init() {
 		RR.nofastPathOption.set(true);
-		try {
-			out = new DataOutputStream(
-					new BufferedOutputStream(new FileOutputStream("events.rrlog"), 8192 * 32));
-			addMetaDataListener(this);
-
-			new BarrierMonitor<ReplayBarrier>(this, new DefaultValue<Object, ReplayBarrier>() {
-				public ReplayBarrier get(Object k) {
-					ReplayBarrier fakeBarrier = new ReplayBarrier(object(k));
-					return fakeBarrier;
-				}
-			});
-
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		log = new SegmentedLogWriter(new File(replayLogOption.get()));
+		global = log.newSegment(0);
+		open = true;
+		addMetaDataListener(this);
+
+		new BarrierMonitor<ReplayBarrier>(this, new DefaultValue<Object, ReplayBarrier>() {
+			public ReplayBarrier get(Object k) {
+				ReplayBarrier fakeBarrier = new ReplayBarrier(object(k));
+				return fakeBarrier;
+			}
+		});
 	}
 
 	@Override
 	public void fini() {
 		try {
-			synchronized (out) {
-				writeEventType(EventEnum.QUIT);
-				out.close();
+			synchronized (global) {
 				open = false;
+				global.append(EventEnum.QUIT.ordinal(), NONE, NONE, NONE, NONE, NONE);
+			}
+			synchronized (stringTable) {
+				log.close(stringTable);
 			}
-			Util.logf("Generated %,d Events", this.eventCount);
-		} catch (IOException e) {
+			Util.logf("Generated %,d Events", log.getSequence());
+		} catch (Exception e) {
 			Assert.fail(e);
 		}
 	}
 
-	// requires out
-	private void writeEventType(EventEnum e) throws IOException {
-		out.writeInt(e.ordinal());
-		eventCount++;
+	/******************************************************************/
+
+	protected static int ts_get_logId(ShadowThread st) {
+		Assert.panic("Bad");
+		return -1;
+	}
+
+	protected static void ts_set_logId(ShadowThread st, int id) {
+		Assert.panic("Bad");
+	}
+
+	protected static SegmentedLogWriter.Segment ts_get_logSegment(ShadowThread st) {
+		Assert.panic("Bad");
+		return null;
 	}
 
-	// requires out
-	private int stringKey(String s) throws IOException {
-		synchronized (strings) {
-			Integer x = strings.get(s);
-			if (x == null) {
-				x = strings.size();
-				writeEventType(EventEnum.STRING);
-				out.writeUTF(s);
+	protected static void ts_set_logSegment(ShadowThread st, SegmentedLogWriter.Segment s) {
+		Assert.panic("Bad");
+	}
+
+	/******************************************************************/
+
+	private int stringKey(String s) {
+		Integer x = strings.get(s);
+		if (x == null) {
+			synchronized (stringTable) {
+				x = strings.get(s);
+				if (x == null) {
+					x = stringTable.size();
+					stringTable.add(s);
+					strings.put(s, x);
+				}
 			}
-			strings.put(s, x);
-			return x;
 		}
+		return x;
+	}
+
+	/*
+	 * Log ids are never reused, unlike tids. Segment 0 is the global segment, so ids start at 1.
+	 * Another thread may name td first (start, join), hence the lock for the slow path.
+	 */
+	protected int thread(ShadowThread td) {
+		int id = ts_get_logId(td);
+		if (id == 0) {
+			synchronized (threadCount) {
+				id = ts_get_logId(td);
+				if (id == 0) {
+					id = threadCount.incrementAndGet();
+					ts_set_logId(td, id);
+				}
+			}
+		}
+		return id;
 	}
 
-	protected int thread(ShadowThread s) {
-		synchronized (threads) {
-			Integer i = threads.get(s);
-			if (i == null) {
-				i = new Integer(threads.size());
-				threads.put(s, i);
-			}
-			return i;
+	// only called by the thread td.
+	private SegmentedLogWriter.Segment segment(ShadowThread td) {
+		SegmentedLogWriter.Segment s = ts_get_logSegment(td);
+		if (s == null) {
+			s = log.newSegment(thread(td));
+			ts_set_logSegment(td, s);
 		}
+		return s;
 	}
 
 	protected int object(Object s) {
-		synchronized (objects) {
-			MonitoredInteger i = objects.get(s);
+		final WeakIdentityHashMap<Object, MonitoredInteger> stripe = objects[System
+				.identityHashCode(s) & (STRIPES - 1)];
+		synchronized (stripe) {
+			MonitoredInteger i = stripe.get(s);
 			if (i == null) {
 				i = new MonitoredInteger();
-				objects.put(s, i);
+				stripe.put(s, i);
 			}
 			return i.x;
 		}
 	}
 
-	@Override
-	public void create(NewThreadEvent e) {
-		ShadowThread td = e.getThread();
-		int thread = thread(td);
-		synchronized (out) {
+	private void append(ShadowThread td, EventEnum e, int key, int a, int b, int c) {
+		if (open) {
+			segment(td).append(e.ordinal(), thread(td), key, a, b, c);
+		}
+	}
+
+	// for events that may be reported on a thread other than td.
+	private void appendGlobal(ShadowThread td, EventEnum e) {
+		final int thread = thread(td);
+		synchronized (global) {
 			if (open) {
-				try {
-					writeEventType(EventEnum.CREATE);
-					out.writeInt(thread);
-				} catch (IOException ex) {
-					Assert.fail(ex);
-				}
+				global.append(e.ordinal(), thread, NONE, NONE, NONE, NONE);
 			}
 		}
+	}
+
+	@Override
+	public void create(NewThreadEvent e) {
+		appendGlobal(e.getThread(), EventEnum.CREATE);
 		super.create(e);
 	}
 
 	@Override
 	public void stop(ShadowThread td) {
-		int thread = thread(td);
-		synchronized (out) {
-			if (open) {
-				try {
-					writeEventType(EventEnum.STOP);
-					out.writeInt(thread);
-				} catch (IOException e) {
-					Assert.fail(e);
-				}
-			}
-		}
+		appendGlobal(td, EventEnum.STOP);
 		super.stop(td);
 	}
 
 	@Override
 	public void access(AccessEvent fae) {
-		try {
-			int ordinal = fae.getKind().ordinal();
-			int thread = thread(fae.getThread());
-			int object = object(fae.getTarget());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(fae.getAccessInfo().getKey());
-					writeEventType(EventEnum.ACCESS);
-					out.writeInt(ordinal);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-					if (fae.getKind() == AccessEvent.Kind.ARRAY) {
-						out.writeInt(((ArrayAccessEvent) fae).getIndex());
-					}
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(fae.getThread(), EventEnum.ACCESS, stringKey(fae.getAccessInfo().getKey()),
+				fae.getKind().ordinal(), object(fae.getTarget()),
+				fae.getKind() == AccessEvent.Kind.ARRAY ? ((ArrayAccessEvent) fae).getIndex() : NONE);
 		super.access(fae);
 	}
 
 	@Override
 	public void volatileAccess(VolatileAccessEvent fae) {
-		try {
-			int ordinal = fae.getKind().ordinal();
-			int thread = thread(fae.getThread());
-			int object = object(fae.getTarget());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(fae.getAccessInfo().getKey());
-					writeEventType(EventEnum.ACCESS);
-					out.writeInt(ordinal);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
-
+		append(fae.getThread(), EventEnum.ACCESS, stringKey(fae.getAccessInfo().getKey()),
+				fae.getKind().ordinal(), object(fae.getTarget()), NONE);
 		super.volatileAccess(fae);
 	}
 
 	@Override
 	public void acquire(AcquireEvent ae) {
-		try {
-			int thread = thread(ae.getThread());
-			int object = object(ae.getLock().getLock());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(ae.getInfo().getKey());
-					writeEventType(EventEnum.ACQUIRE);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(ae.getThread(), EventEnum.ACQUIRE, stringKey(ae.getInfo().getKey()), NONE,
+				object(ae.getLock().getLock()), NONE);
 		super.acquire(ae);
 	}
 
 	@Override
 	public void release(ReleaseEvent ae) {
-		try {
-			int thread = thread(ae.getThread());
-			int object = object(ae.getLock().getLock());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(ae.getInfo().getKey());
-					writeEventType(EventEnum.RELEASE);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
-
+		append(ae.getThread(), EventEnum.RELEASE, stringKey(ae.getInfo().getKey()), NONE,
+				object(ae.getLock().getLock()), NONE);
 		super.release(ae);
 	}
 
 	@Override
 	public void enter(MethodEvent me) {
-		try {
-			int thread = thread(me.getThread());
-			int object = object(me.getTarget());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(me.getInfo().getKey());
-					writeEventType(EventEnum.ENTER);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(me.getThread(), EventEnum.ENTER, stringKey(me.getInfo().getKey()), NONE,
+				object(me.getTarget()), NONE);
 		super.enter(me);
 	}
 
 	@Override
 	public void exit(MethodEvent me) {
-		try {
-			int thread = thread(me.getThread());
-			int object = object(me.getTarget());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(me.getInfo().getKey());
-					writeEventType(EventEnum.EXIT);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(me.getThread(), EventEnum.EXIT, stringKey(me.getInfo().getKey()), NONE,
+				object(me.getTarget()), NONE);
 		super.exit(me);
 	}
 
 	@Override
 	public void postJoin(JoinEvent je) {
-		try {
-			int thread = thread(je.getThread());
-			int thread2 = thread(je.getJoiningThread());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(je.getInfo().getKey());
-					writeEventType(EventEnum.POSTJOIN);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(thread2);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(je.getThread(), EventEnum.POSTJOIN, stringKey(je.getInfo().getKey()), NONE,
+				thread(je.getJoiningThread()), NONE);
 		super.postJoin(je);
 	}
 
 	@Override
 	public void postNotify(NotifyEvent ne) {
-		try {
-			int thread = thread(ne.getThread());
-			int object = object(ne.getLock().getLock());
-			boolean notifyAll = ne.isNotifyAll();
-			synchronized (out) {
-				if (open) {
-					writeEventType(EventEnum.POSTNOTIFY);
-					out.writeInt(thread);
-					out.writeInt(object);
-					out.writeBoolean(notifyAll);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(ne.getThread(), EventEnum.POSTNOTIFY, NONE, NONE, object(ne.getLock().getLock()),
+				ne.isNotifyAll() ? 1 : 0);
 		super.postNotify(ne);
 	}
 
 	@Override
 	public void postSleep(SleepEvent se) {
-		int thread = thread(se.getThread());
-		synchronized (out) {
-			if (open) {
-				try {
-					writeEventType(EventEnum.POSTSLEEP);
-					out.writeInt(thread);
-				} catch (IOException e) {
-					Assert.fail(e);
-				}
-			}
-		}
+		append(se.getThread(), EventEnum.POSTSLEEP, NONE, NONE, NONE, NONE);
 		super.postSleep(se);
 	}
 
 	@Override
 	public void postStart(StartEvent se) {
-		try {
-			int thread = thread(se.getThread());
-			int thread2 = thread(se.getNewThread());
-			synchronized (out) {
-				if (open) {
-					writeEventType(EventEnum.POSTSTART);
-					out.writeInt(thread);
-					out.writeInt(thread2);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(se.getThread(), EventEnum.POSTSTART, NONE, NONE, thread(se.getNewThread()), NONE);
 		super.postStart(se);
 	}
 
 	@Override
 	public void postWait(WaitEvent we) {
-		try {
-			int thread = thread(we.getThread());
-			int object = object(we.getLock().getLock());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(we.getInfo().getKey());
-					writeEventType(EventEnum.POSTWAIT);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(we.getThread(), EventEnum.POSTWAIT, stringKey(we.getInfo().getKey()), NONE,
+				object(we.getLock().getLock()), NONE);
 		super.postWait(we);
 	}
 
 	@Override
 	public void preJoin(JoinEvent je) {
-		try {
-			int thread = thread(je.getThread());
-			int thread2 = thread(je.getJoiningThread());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(je.getInfo().getKey());
-					writeEventType(EventEnum.PREJOIN);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(thread2);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(je.getThread(), EventEnum.PREJOIN, stringKey(je.getInfo().getKey()), NONE,
+				thread(je.getJoiningThread()), NONE);
 		super.preJoin(je);
 	}
 
 	@Override
 	public void preNotify(NotifyEvent ne) {
-		int thread = thread(ne.getThread());
-		int object = object(ne.getLock().getLock());
-		boolean notifyAll = ne.isNotifyAll();
-		synchronized (out) {
-			if (open) {
-				try {
-					writeEventType(EventEnum.PRENOTIFY);
-					out.writeInt(thread);
-					out.writeInt(object);
-					out.writeBoolean(notifyAll);
-				} catch (IOException e) {
-					Assert.fail(e);
-				}
-			}
-		}
+		append(ne.getThread(), EventEnum.PRENOTIFY, NONE, NONE, object(ne.getLock().getLock()),
+				ne.isNotifyAll() ? 1 : 0);
 		super.preNotify(ne);
 	}
 
 	@Override
 	public void preSleep(SleepEvent se) {
-		int thread = thread(se.getThread());
-		synchronized (out) {
-			if (open) {
-				try {
-					writeEventType(EventEnum.PRESLEEP);
-					out.writeInt(thread);
-				} catch (IOException e) {
-					Assert.fail(e);
-				}
-			}
-		}
+		append(se.getThread(), EventEnum.PRESLEEP, NONE, NONE, NONE, NONE);
 		super.preSleep(se);
 	}
 
 	@Override
 	public void preStart(StartEvent se) {
-		try {
-			int thread = thread(se.getThread());
-			int thread2 = thread(se.getNewThread());
-			synchronized (out) {
-				if (open) {
-					writeEventType(EventEnum.PRESTART);
-					out.writeInt(thread);
-					out.writeInt(thread2);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
-
+		append(se.getThread(), EventEnum.PRESTART, NONE, NONE, thread(se.getNewThread()), NONE);
 		super.preStart(se);
 	}
 
 	@Override
 	public void classInitialized(ClassInitializedEvent ce) {
-		try {
-			int thread = thread(ce.getThread());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(ce.getRRClass().getName());
-					writeEventType(EventEnum.CLASS_INITIALIZED);
-					out.writeInt(thread);
-					out.writeInt(key);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
-
+		append(ce.getThread(), EventEnum.CLASS_INITIALIZED, stringKey(ce.getRRClass().getName()),
+				NONE, NONE, NONE);
 		super.classInitialized(ce);
 	}
 
 	@Override
 	public void preWait(WaitEvent we) {
-		try {
-			int thread = thread(we.getThread());
-			int object = object(we.getLock().getLock());
-			synchronized (out) {
-				if (open) {
-					int key = stringKey(we.getInfo().getKey());
-					writeEventType(EventEnum.PREWAIT);
-					out.writeInt(thread);
-					out.writeInt(key);
-					out.writeInt(object);
-				}
-			}
-		} catch (IOException e) {
-			Assert.fail(e);
-		}
+		append(we.getThread(), EventEnum.PREWAIT, stringKey(we.getInfo().getKey()), NONE,
+				object(we.getLock().getLock()), NONE);
 		super.preWait(we);
 	}
 
-	public synchronized void visit(ClassInfo x) {
-		synchronized (out) {
+	public void visit(ClassInfo x) {
+		final int key = stringKey(x.getName().replace("/", "."));
+		synchronized (global) {
 			if (open) {
-				try {
-					int key = stringKey(x.getName().replace("/", "."));
-					writeEventType(EventEnum.LOADCLASS);
-					out.writeInt(key);
-				} catch (IOException e) {
-					Assert.fail(e);
-				}
+				global.append(EventEnum.LOADCLASS.ordinal(), NONE, key, NONE, NONE, NONE);
 			}
 		}
 	}
@@ -629,33 +455,13 @@ final public class ReplayLogTool extends Tool
 	}
 
 	public void postDoBarrier(BarrierEvent<ReplayBarrier> be) {
-		synchronized (out) {
-			if (open) {
-				try {
-					writeEventType(EventEnum.POSTBARRIER);
-					out.writeInt(thread(be.getThread()));
-					out.writeInt(object(be.getBarrier()));
-					out.writeInt(be.getParties());
-				} catch (IOException e) {
-					Assert.fail(e);
-				}
-			}
-		}
+		append(be.getThread(), EventEnum.POSTBARRIER, NONE, NONE, object(be.getBarrier()),
+				be.getParties());
 	}
 
-	public synchronized void preDoBarrier(BarrierEvent<ReplayBarrier> be) {
-		synchronized (out) {
-			if (open) {
-				try {
-					writeEventType(EventEnum.PREBARRIER);
-					out.writeInt(thread(be.getThread()));
-					out.writeInt(object(be.getBarrier()));
-					out.writeInt(be.getParties());
-				} catch (IOException e) {
-					Assert.fail(e);
-				}
-			}
-		}
+	public void preDoBarrier(BarrierEvent<ReplayBarrier> be) {
+		append(be.getThread(), EventEnum.PREBARRIER, NONE, NONE, object(be.getBarrier()),
+				be.getParties());
 	}
 
 	public void visit(InterruptInfo x) {
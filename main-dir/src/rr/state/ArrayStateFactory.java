@@ -34,8 +34,8 @@ package rr.state;
 
 import java.lang.management.GarbageCollectorMXBean;
 import java.lang.management.ManagementFactory;
-import java.lang.ref.WeakReference;
 import java.lang.reflect.Constructor;
+import java.util.Arrays;
 import java.util.BitSet;
 import java.util.HashMap;
 
@@ -52,9 +52,6 @@ import acme.util.Util;
 import acme.util.Yikes;
 import acme.util.count.Counter;
 import acme.util.count.Timer;
-import acme.util.identityhash.ConcurrentIdentityHashMap;
-import acme.util.identityhash.WeakIdentityHashMap;
-import acme.util.identityhash.WeakIdentityHashMap.ValueFunction;
 import acme.util.option.CommandLine;
 import acme.util.option.CommandLineOption;
 
@@ -64,18 +61,12 @@ public class ArrayStateFactory {
 		NONE, FINE, COARSE, SPECIAL, USER
 	};
 
-	protected static final ConcurrentIdentityHashMap<Object, AbstractArrayState> table = new ConcurrentIdentityHashMap<Object, AbstractArrayState>(
-			(1 << 16) - 11, (float) 0.5, RR.maxTidOption.get());
-
 	/*
-	 * In previous versions that AbstractArrayState values were weak references, which could cause
-	 * state for long-lived arrays in the attic to be remove if those arrays were not accesses often
-	 * enough to keep them in the other caches.
+	 * Keys are held weakly, and AbstractArrayState only holds its array weakly, so the table never
+	 * pins arrays and entries for collected arrays are expunged as they are found. This replaces
+	 * the old strong table that was periodically moved into a weak attic.
 	 */
-	private static final WeakIdentityHashMap<Object, AbstractArrayState> attic = new WeakIdentityHashMap<Object, AbstractArrayState>(
-			(1 << 16) - 11);
-
-	private static int count = 0; // since ConcurrentHashMap size() is slow, approximate here...
+	protected static final ArrayStateTable table = new ArrayStateTable(1 << 16);
 
 	public static CommandLineOption<ArrayMode> arrayOption = CommandLine.makeEnumChoice("array",
 			ArrayMode.FINE, CommandLineOption.Kind.STABLE,
@@ -109,31 +100,44 @@ public class ArrayStateFactory {
 
 	public static final NullArrayState NULL = new NullArrayState();
 
-	private static int CACHE_SIZE = 8;
-
-	protected final AbstractArrayState cache[] = new AbstractArrayState[CACHE_SIZE];
+	/*
+	 * Per-thread cache in front of the table: a direct-mapped array indexed by the array's identity
+	 * hash, backed by a small victim buffer for arrays that conflict in the direct-mapped part.
+	 * Every CACHE_WINDOW lookups, the miss rate for the window is checked, and the direct-mapped
+	 * part doubles (up to CACHE_MAX) if more than 1/CACHE_GROW_RATE of the lookups missed.
+	 */
+	private static final int CACHE_SIZE = 16;
+	private static final int CACHE_MAX = 1024;
+	private static final int VICTIM_SIZE = 4;
+	private static final int CACHE_WINDOW = 1024;
+	private static final int CACHE_GROW_RATE = 8;
+
+	protected AbstractArrayState cache[] = new AbstractArrayState[CACHE_SIZE];
+	protected int mask = CACHE_SIZE - 1;
+	protected final AbstractArrayState victim[] = new AbstractArrayState[VICTIM_SIZE];
 	protected int rotate = 0;
+	protected int lookups = 0;
+	protected int misses = 0;
 
 	protected final ArrayMode defaultMode;
 	protected final boolean useCAS;
 
 	protected final ShadowThread owner;
 
-	private static int MAP_CHECK = 2000;
-	private static int MAP_MAX = 100000;
-	private static int MAP_INC = 500;
-	private static int mapCheck = MAP_CHECK;
+	// stale entries removed on each insert, so cleanup keeps pace with allocation.
+	private static final int EXPUNGE_PER_PUT = 8;
 	private static final Counter size = new Counter("ArrayStateFactory", "Size");
-	private static final Timer atticTime = new Timer("ArrayStateFactory", "Attic Move Time");
-	private static final Counter atticHits = new Counter("ArrayStateFactory", "Attic Hits");
+	private static final Counter expunged = new Counter("ArrayStateFactory", "Expunged");
+	private static final Timer cleanupTime = new Timer("ArrayStateFactory", "Cleanup Time");
+	private static final Counter cacheHits = new Counter("ArrayStateFactory", "Cache Hits");
+	private static final Counter cacheMisses = new Counter("ArrayStateFactory", "Cache Misses");
+	private static final Counter cacheGrows = new Counter("ArrayStateFactory", "Cache Grows");
 
 	public ArrayStateFactory(ShadowThread shadowThread, ArrayMode defaultMode, boolean useCAS) {
 		this.defaultMode = defaultMode;
 		this.useCAS = useCAS;
 		this.owner = shadowThread;
-		for (int i = 0; i < cache.length; i++) {
-			cache[i] = NULL;
-		}
+		clearCache();
 	}
 
 	public ArrayStateFactory(ShadowThread shadowThread) {
@@ -150,18 +154,6 @@ public class ArrayStateFactory {
 			if (state != null) {
 				return state;
 			}
-			synchronized (attic) {
-				state = attic.get(array);
-				if (state != null) {
-					atticHits.inc();
-					AbstractArrayState z = table.putIfAbsent(array, state, hash);
-					if (z != null && z != state) {
-						Assert.panic("Pulled wrong array state for %s from attic: %s != %s", array,
-								state, z);
-					}
-					return state;
-				}
-			}
 			switch (mode) {
 				case NONE:
 					Assert.panic("NO array state option....");
@@ -195,20 +187,74 @@ public class ArrayStateFactory {
 	}
 
 	public AbstractArrayState get(Object array, ArrayMode mode, boolean useCAS) {
-		AbstractArrayState state;
+		if (array == null) {
+			return NULL;
+		}
+		if (++lookups == CACHE_WINDOW) {
+			endWindow();
+		}
+
+		final AbstractArrayState[] cache = this.cache;
+		final int slot = Util.identityHashCode(array) & mask;
+		final AbstractArrayState s = cache[slot];
+		if (s.getArrayNoCheck() == array) {
+			return s;
+		}
 
-		for (int i = 0; i < CACHE_SIZE; i++) {
-			final AbstractArrayState s = cache[i];
-			if (s.getArrayNoCheck() == array) {
-				return s;
+		for (int i = 0; i < VICTIM_SIZE; i++) {
+			final AbstractArrayState v = victim[i];
+			if (v.getArrayNoCheck() == array) {
+				// swap, so the most recent of the two conflicting arrays is direct-mapped.
+				victim[i] = s;
+				cache[slot] = v;
+				return v;
 			}
 		}
 
-		state = get0(array, mode, useCAS);
-		cache[rotate] = state;
-		rotate = (rotate + 1) % cache.length;
+		misses++;
+		final AbstractArrayState state = get0(array, mode, useCAS);
+		if (s != NULL) {
+			victim[rotate] = s;
+			rotate = (rotate + 1) & (VICTIM_SIZE - 1);
+		}
+		cache[slot] = state;
 		return state;
+	}
+
+	private void endWindow() {
+		synchronized (cacheHits) {
+			cacheHits.add(lookups - misses);
+			cacheMisses.add(misses);
+		}
+		if (misses * CACHE_GROW_RATE > lookups && cache.length < CACHE_MAX) {
+			grow();
+		}
+		lookups = 0;
+		misses = 0;
+	}
+
+	private void grow() {
+		final AbstractArrayState[] old = cache;
+		final AbstractArrayState[] bigger = new AbstractArrayState[old.length * 2];
+		final int biggerMask = bigger.length - 1;
+		Arrays.fill(bigger, NULL);
+		for (AbstractArrayState s : old) {
+			if (s != NULL) {
+				bigger[s.hashCode() & biggerMask] = s;
+			}
+		}
+		cache = bigger;
+		mask = biggerMask;
+		cacheGrows.inc();
+	}
 
+	/*
+	 * Called by the owner, or by the cleaner thread so that the caches do not keep states for
+	 * collected arrays around. States for live arrays are just looked up again.
+	 */
+	protected void clearCache() {
+		Arrays.fill(cache, NULL);
+		Arrays.fill(victim, NULL);
 	}
 
 	private static AbstractArrayState put0(Object array, AbstractArrayState state, int hash) {
@@ -217,37 +263,26 @@ public class ArrayStateFactory {
 			Yikes.yikes("Concurrent array state creation...");
 			state.forget();
 			state = z;
+		} else {
+			size.inc();
 		}
-		count++;
-		size.inc();
-		if (count > 0 && count % mapCheck == 0) {
-			synchronized (ArrayStateFactory.class) {
-				ArrayStateFactory.class.notify();
-			}
+		final int n = table.expunge(EXPUNGE_PER_PUT);
+		if (n > 0) {
+			expunged.add(n);
 		}
-
 		return state;
 	}
 
-	protected static void moveToAttic() {
-		synchronized (attic) {
-			count = 0;
-			if (mapCheck < MAP_MAX) {
-				mapCheck += MAP_INC;
-			}
-			long start = atticTime.start();
-			int oldAtticSize = attic.size();
-			for (AbstractArrayState aas : table.values()) {
-				final Object a = aas.getArray();
-				if (!attic.containsKey(a)) {
-					attic.put(a, aas);
-				}
-				final AbstractArrayState remove = table.remove(a);
-			}
-			long elapsed = atticTime.stop(start) / 1000000;
-			Util.logf("ArrayStateFactory Moved Entries to Attic (%d ms).  Attic size: %d->%d.",
-					elapsed, oldAtticSize, attic.size());
-		}
+	/*
+	 * Remove every entry whose array has been collected.
+	 */
+	protected static void expungeAll() {
+		long start = cleanupTime.start();
+		final int n = table.expunge(Integer.MAX_VALUE);
+		expunged.add(n);
+		long elapsed = cleanupTime.stop(start) / 1000000;
+		Util.logf("ArrayStateFactory Expunged %d Entries (%d ms).  Table size: %d / %d.", n,
+				elapsed, table.size(), table.capacity());
 	}
 
 	public static AbstractArrayState make(Object array) {
@@ -256,9 +291,6 @@ public class ArrayStateFactory {
 	}
 
 	public static void clearAll() {
-		synchronized (attic) {
-			attic.clear();
-		}
 		table.clear();
 		for (int i = 0; i < RR.maxTidOption.get(); i++) {
 			AbstractArrayStateCache.clearAll(i);
@@ -267,7 +299,7 @@ public class ArrayStateFactory {
 
 	/* Add listeners to clean up caches on gc */
 
-	static class AtticListener implements javax.management.NotificationListener {
+	static class CleanupListener implements javax.management.NotificationListener {
 		public void handleNotification(Notification notification, Object handback) {
 			synchronized (ArrayStateFactory.class) {
 				ArrayStateFactory.class.notify();
@@ -278,7 +310,7 @@ public class ArrayStateFactory {
 		}
 	}
 
-	public static void addAtticListener() {
+	public static void addCleanupListener() {
 		if (!RRMain.noInstrumentOption.get()) {
 			new Thread("Array Cleaner") {
 				public void run() {
@@ -291,20 +323,18 @@ public class ArrayStateFactory {
 							}
 						}
 						for (ShadowThread t : ShadowThread.getThreads()) {
-							for (int i = 0; i < CACHE_SIZE; i++) {
-								t.arrayStateFactory.cache[i] = NULL;
-							}
+							t.arrayStateFactory.clearCache();
 						}
-						moveToAttic();
+						expungeAll();
 					}
 				}
 			}.start();
 
-			AtticListener listener = new AtticListener();
+			CleanupListener listener = new CleanupListener();
 			for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
 				String name = gc.getName();
 				if (name.contains("Mark")) {
-					Util.log("Adding Attic Listener to GC " + name);
+					Util.log("Adding Array Cleanup Listener to GC " + name);
 					NotificationEmitter emitter = (NotificationEmitter) gc;
 					emitter.addNotificationListener(listener, null, null);
 				}
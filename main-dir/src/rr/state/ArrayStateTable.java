@@ -0,0 +1,285 @@
+/******************************************************************************
+ * 
+ * Copyright (c) 2010, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ * 
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ * 
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ * 
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ * 
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ * 
+ ******************************************************************************/
+
+package rr.state;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Identity map from arrays to their shadow state, used by ArrayStateFactory.
+ *
+ * Open addressing with linear probing over a single slot array. Each slot holds an Entry, which
+ * is a weak reference to the array carrying the array's identity hash and its state, so one CAS
+ * publishes key and value together. Lookups never lock. Inserts CAS an empty slot. The state only
+ * holds its array weakly, so an entry never keeps its array alive; when the array is collected,
+ * its entry shows up on the reference queue and expunge() turns its slot into a tombstone.
+ *
+ * When too many slots are in use (live entries plus tombstones), one thread rebuilds the table:
+ * it first freezes every empty slot so no insert can land behind it, then copies the live entries
+ * into a new table sized for them and publishes it. Inserts that hit a frozen slot wait for the
+ * new table and retry there. Lookups on the old table stay correct, since entries are never
+ * removed from it, only dropped when it is replaced. Each table counts its own live entries, so a
+ * removal that races with a resize is counted in the table it finally lands in.
+ */
+public final class ArrayStateTable {
+
+	static final class Entry extends WeakReference<Object> {
+		final int hash;
+		final AbstractArrayState state;
+
+		Entry(Object array, int hash, AbstractArrayState state, ReferenceQueue<Object> queue) {
+			super(array, queue);
+			this.hash = hash;
+			this.state = state;
+		}
+	}
+
+	// slot markers: an entry whose array was collected, and an empty slot closed by a resize.
+	private static final Object TOMBSTONE = new Object();
+	private static final Object FROZEN = new Object();
+
+	private static final class Table {
+		final AtomicReferenceArray<Object> slots;
+		final int mask;
+		final int threshold;
+		final AtomicInteger used = new AtomicInteger();
+		final AtomicInteger live = new AtomicInteger();
+
+		Table(int capacity) {
+			slots = new AtomicReferenceArray<Object>(capacity);
+			mask = capacity - 1;
+			threshold = capacity / 2;
+		}
+	}
+
+	private final int initialCapacity;
+	private volatile Table table;
+	private final ReferenceQueue<Object> queue = new ReferenceQueue<Object>();
+	private volatile int resizes;
+
+	/**
+	 * capacity is rounded up to a power of two.
+	 */
+	public ArrayStateTable(int capacity) {
+		this.initialCapacity = Math.max(16, Integer.highestOneBit(capacity - 1) << 1);
+		this.table = new Table(initialCapacity);
+	}
+
+	public AbstractArrayState get(Object array, int hash) {
+		final Table t = table;
+		final AtomicReferenceArray<Object> slots = t.slots;
+		final int mask = t.mask;
+		for (int i = hash & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+			final Object k = slots.get(i);
+			if (k == null || k == FROZEN) {
+				return null;
+			}
+			if (k != TOMBSTONE) {
+				final Entry e = (Entry) k;
+				if (e.hash == hash && e.get() == array) {
+					return e.state;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Returns the state already mapped for array, or null if state was added.
+	 */
+	public AbstractArrayState putIfAbsent(Object array, AbstractArrayState state, int hash) {
+		Entry entry = null;
+		retry: while (true) {
+			final Table t = table;
+			final AtomicReferenceArray<Object> slots = t.slots;
+			final int mask = t.mask;
+			for (int i = hash & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+				Object k = slots.get(i);
+				if (k == null) {
+					if (t.used.get() >= t.threshold) {
+						resize(t);
+						continue retry;
+					}
+					if (entry == null) {
+						entry = new Entry(array, hash, state, queue);
+					}
+					if (slots.compareAndSet(i, null, entry)) {
+						t.used.incrementAndGet();
+						t.live.incrementAndGet();
+						return null;
+					}
+					k = slots.get(i);
+				}
+				if (k == FROZEN) {
+					resize(t);
+					continue retry;
+				}
+				if (k != TOMBSTONE) {
+					final Entry e = (Entry) k;
+					if (e.hash == hash && e.get() == array) {
+						if (entry != null) {
+							entry.clear();
+						}
+						return e.state;
+					}
+				}
+			}
+			resize(t);
+		}
+	}
+
+	/**
+	 * Remove up to max entries whose arrays have been collected. Returns the number removed.
+	 */
+	public int expunge(int max) {
+		int removed = 0;
+		for (int j = 0; j < max; j++) {
+			final Entry e = (Entry) queue.poll();
+			if (e == null) {
+				break;
+			}
+			if (remove(e)) {
+				removed++;
+			}
+		}
+		return removed;
+	}
+
+	/*
+	 * A resize may copy e into the new table before or after e is tombstoned in the old one, and e
+	 * is only on the reference queue once. So after removing e from a table, check under the resize
+	 * lock that the table is still current, and otherwise remove it again from the new table.
+	 */
+	private boolean remove(Entry e) {
+		boolean removed = false;
+		while (true) {
+			final Table t = table;
+			if (remove(t, e)) {
+				removed = true;
+			}
+			synchronized (this) {
+				if (table == t) {
+					return removed;
+				}
+			}
+		}
+	}
+
+	private static boolean remove(Table t, Entry e) {
+		final AtomicReferenceArray<Object> slots = t.slots;
+		final int mask = t.mask;
+		for (int i = e.hash & mask, n = 0; n <= mask; i = (i + 1) & mask, n++) {
+			final Object k = slots.get(i);
+			if (k == e) {
+				if (slots.compareAndSet(i, e, TOMBSTONE)) {
+					t.live.decrementAndGet();
+					return true;
+				}
+				return false;
+			}
+			if (k == null || k == FROZEN) {
+				// not in the current table: dropped by a resize, or an entry that lost its insert race.
+				return false;
+			}
+		}
+		return false;
+	}
+
+	/*
+	 * Only one thread rebuilds a given table; the others block here until the new table is
+	 * published and then retry against it.
+	 */
+	private synchronized void resize(Table t) {
+		if (table != t) {
+			return;
+		}
+		final AtomicReferenceArray<Object> slots = t.slots;
+		final int length = slots.length();
+		int count = 0;
+		for (int i = 0; i < length; i++) {
+			Object k = slots.get(i);
+			if (k == null && slots.compareAndSet(i, null, FROZEN)) {
+				continue;
+			}
+			k = slots.get(i);
+			if (k != TOMBSTONE && ((Entry) k).get() != null) {
+				count++;
+			}
+		}
+		int capacity = initialCapacity;
+		while (capacity / 4 < count) {
+			capacity <<= 1;
+		}
+		final Table n = new Table(capacity);
+		final AtomicReferenceArray<Object> nslots = n.slots;
+		final int mask = n.mask;
+		int copied = 0;
+		for (int i = 0; i < length; i++) {
+			final Object k = slots.get(i);
+			if (k == FROZEN || k == TOMBSTONE || ((Entry) k).get() == null) {
+				continue;
+			}
+			final Entry e = (Entry) k;
+			int j = e.hash & mask;
+			while (nslots.get(j) != null) {
+				j = (j + 1) & mask;
+			}
+			nslots.lazySet(j, e);
+			copied++;
+		}
+		n.used.set(copied);
+		n.live.set(copied);
+		resizes++;
+		table = n;
+	}
+
+	public int size() {
+		return table.live.get();
+	}
+
+	public int capacity() {
+		return table.mask + 1;
+	}
+
+	public int getResizeCount() {
+		return resizes;
+	}
+
+	public synchronized void clear() {
+		table = new Table(initialCapacity);
+		while (queue.poll() != null) {
+		}
+	}
+}
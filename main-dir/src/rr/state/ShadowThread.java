@@ -171,6 +171,13 @@ public class ShadowThread extends Decoratable implements ShadowVar {
      */
     public int invokeId = InvokeInfo.NULL_ID;
 
+    /**
+     * @RRInternal Per-site execution counts for AccessSiteSampler, indexed by field and array access
+     *             id. Only touched by this thread.
+     */
+    public int fieldSiteExecutions[] = new int[0];
+    public int arraySiteExecutions[] = new int[0];
+
     // require ShadowThread.class
     private static synchronized int allocTid(ShadowThread newThread) {
         for (int i = 0; i < tidMap.length; i++) {
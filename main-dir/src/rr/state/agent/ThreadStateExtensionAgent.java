@@ -104,7 +104,7 @@ public class ThreadStateExtensionAgent {
 		@Override
 		public void visit(int version, int access, String name, String signature, String superName,
 				String[] interfaces) {
-			if (!superName.equals("rr/tool/Tool")) {
+			if (loader != null && !superName.equals("rr/tool/Tool")) {
 				loader.prepToolClass(superName);
 			}
 			super.visit(version, access, name, signature, superName, interfaces);
@@ -124,6 +124,15 @@ public class ThreadStateExtensionAgent {
 
 	}
 
+	/*
+	 * For a RoadRunner class outside the tool chain that keeps per-thread state in ts_get_/ts_set_
+	 * fields. Must be called before name or ShadowThread is loaded.
+	 */
+	public static void registerStateClass(final String name) {
+		registerTool(null, name,
+				ThreadStateExtensionAgent.class.getClassLoader().getResourceAsStream(name + ".class"));
+	}
+
 	public static void registerTool(final ToolLoader loader, final String name,
 			final InputStream in) {
 		if (noDecorationInline.get()) {
@@ -66,10 +66,13 @@ import rr.RRMain;
 import rr.error.ErrorMessage;
 import rr.error.ErrorMessages;
 import rr.instrument.Instrumentor;
+import rr.loader.InstrumentationCache;
 import rr.loader.Loader;
 import rr.meta.MetaDataInfoMaps;
+import rr.sampling.CodeSampler;
 import rr.simple.LastTool;
 import rr.state.ShadowThread;
+import rr.state.agent.ThreadStateExtensionAgent;
 import rr.tool.tasks.CountTask;
 import rr.tool.tasks.GCRunner;
 import rr.tool.tasks.MemoryStatsTask;
@@ -248,6 +251,9 @@ public class RR {
 				@Override
 				public void run() throws Exception {
 					initToolLoader();
+					if (CodeSampler.codeSamplingOption.get()) {
+						ThreadStateExtensionAgent.registerStateClass("rr/sampling/CodeSamplerState");
+					}
 					setTool(rr.tool.parser.parser.build(toolLoader, toolOption.get(),
 							toolOption.getCommandLine()));
 					Util.logf("    complete chain: %s", getTool().toChainString());
@@ -346,6 +352,9 @@ public class RR {
 			endTimer(); // call here in case the target didn't exit cleanly
 		}
 
+		// print the errors still queued for the formatter before the summary.
+		ErrorMessage.flush();
+
 		// always always always print time
 		boolean tmp = Util.quietOption.get();
 		Util.quietOption.set(false);
@@ -367,6 +376,7 @@ public class RR {
 		final String dump = Instrumentor.dumpClassOption.get();
 		if (!dump.equals("")) {
 			MetaDataInfoMaps.dump(dump + "/rr.meta");
+			InstrumentationCache.writeManifest(dump);
 			try {
 				PrintWriter pw = new PrintWriter(new FileWriter(dump + "/rr.meta.txt"));
 				MetaDataInfoMaps.print(pw);
@@ -51,6 +51,7 @@ import rr.event.FieldAccessEvent;
 import rr.event.NewThreadEvent;
 import rr.event.ReleaseEvent;
 import rr.event.AccessEvent.Kind;
+import rr.meta.AccessSiteSampler;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.FieldInfo;
 import rr.simple.LastTool;
@@ -243,6 +244,7 @@ public class EraserWithBarriersTool extends Tool implements BarrierListener<Obje
 	}
 
 	private void error(AccessEvent fae, ShadowVar g) {
+		AccessSiteSampler.race(fae.getAccessInfo());
 		ShadowThread currentThread = fae.getThread();
 		if (fae.getKind() != Kind.ARRAY) {
 			FieldInfo fd = ((FieldAccessEvent)fae).getInfo().getField();
@@ -48,6 +48,7 @@ import rr.event.FieldAccessEvent;
 import rr.event.NewThreadEvent;
 import rr.event.ReleaseEvent;
 import rr.event.VolatileAccessEvent;
+import rr.meta.AccessSiteSampler;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.FieldInfo;
 import rr.simple.LastTool;
@@ -128,6 +129,7 @@ final public class LockSetTool extends Tool {
 	}
 
 	private void error(AccessEvent fae, ShadowVar g) {
+		AccessSiteSampler.race(fae.getAccessInfo());
 		ShadowThread currentThread = fae.getThread();
 		if (fae.getKind() != Kind.ARRAY) {
 			FieldInfo fd = ((FieldAccessEvent) fae).getInfo().getField();
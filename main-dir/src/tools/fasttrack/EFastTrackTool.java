@@ -64,6 +64,7 @@ import rr.event.VolatileAccessEvent;
 import rr.event.WaitEvent;
 import rr.instrument.classes.ArrayAllocSiteTracker;
 
+import rr.meta.AccessSiteSampler;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.ClassInfo;
 import rr.meta.FieldInfo;
@@ -77,7 +78,9 @@ import rr.state.ShadowVar;
 import rr.state.ShadowVolatile;
 import rr.tool.RR;
 import rr.tool.Tool;
+import tools.util.AccessSite;
 import tools.util.Epoch;
+import tools.util.RacePairAggregator;
 import tools.util.VectorClock;
 
 /*
@@ -96,7 +99,8 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
 
     private static final boolean COUNT_OPERATIONS = RRMain.slowMode();
     private static final int INIT_VECTOR_CLOCK_SIZE = 4;
-    private static final Object printLock = new Object();
+    // distinct race pairs, written to -racePairFile by fini()
+    private final RacePairAggregator racePairSummary = new RacePairAggregator();
 
 
     public final ErrorMessage<FieldInfo> fieldErrors = ErrorMessages
@@ -127,6 +131,7 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
     /** exact functioning of this stuff*/
     public EFastTrackTool(final String name, final Tool next, CommandLine commandLine) {
         super(name, next, commandLine);
+        commandLine.add(RacePairAggregator.racePairFile);
         new BarrierMonitor<FTBarrierState>(this, new DefaultValue<Object, FTBarrierState>() {
             public FTBarrierState get(Object k) {
                 return new FTBarrierState(k, INIT_VECTOR_CLOCK_SIZE);
@@ -414,7 +419,7 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
         final int/* epoch */ e = ts_get_E(st);
 
         // Getting the current location
-        SourceLocation sl = event.getAccessInfo().getLoc();
+        final int site = AccessSite.make(event);
         final int tid = st.getTid();
 
         /* optional */ {
@@ -422,12 +427,12 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
             if (r == e) {
                 if (COUNT_OPERATIONS)
                     readSameEpoch.inc(st.getTid());
-                sx.prevReads[tid] = sl;
+                sx.prevReads[tid] = site;
                 return;
             } else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
                 if (COUNT_OPERATIONS)
                     readSharedSameEpoch.inc(st.getTid());
-                sx.prevReads[tid] = sl;
+                sx.prevReads[tid] = site;
                 return;
             }
         }
@@ -440,8 +445,8 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
             if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
                 if (COUNT_OPERATIONS)
                     writeReadError.inc(tid);
-                error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid, sl, sx.prevWrite);
-                sx.prevReads[tid] = sl;
+                error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid, site, sx.prevWrite);
+                sx.prevReads[tid] = site;
                 return;
             }
 
@@ -465,7 +470,7 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
                     readShared.inc(tid);
                 sx.set(tid, e);
             }
-            sx.prevReads[tid] = sl;
+            sx.prevReads[tid] = site;
         }
     }
 
@@ -474,14 +479,14 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
     protected void write(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
         final int/* epoch */ e = ts_get_E(st);
         // Getting the current location
-        SourceLocation sl = event.getAccessInfo().getLoc();
+        final int site = AccessSite.make(event);
 
         /* optional */ {
             final int/* epoch */ w = sx.W;
             if (w == e) {
                 if (COUNT_OPERATIONS)
                     writeSameEpoch.inc(st.getTid());
-                sx.prevWrite = sl;
+                sx.prevWrite = site;
                 return;
             }
         }
@@ -495,7 +500,7 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
             if (wTid != tid /* optimization */ && !Epoch.leq(w, tV.get(wTid))) {
                 if (COUNT_OPERATIONS)
                     writeWriteError.inc(tid);
-                error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid, sl, sx.prevWrite);
+                error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid, site, sx.prevWrite);
             }
 
             final int/* epoch */ r = sx.R;
@@ -504,7 +509,7 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
                 if (rTid != tid /* optimization */ && !Epoch.leq(r, tV.get(rTid))) {
                     if (COUNT_OPERATIONS)
                         readWriteError.inc(tid);
-                    error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid, sl, sx.prevReads[rTid]);
+                    error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid, site, sx.prevReads[rTid]);
                 } else {
                     if (COUNT_OPERATIONS)
                         writeExclusive.inc(tid);
@@ -514,7 +519,7 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
                     for (int prevReader = sx.nextGt(tV, 0); prevReader > -1; prevReader = sx
                             .nextGt(tV, prevReader + 1)) {
                         error(event, sx, "Read(Shared)-Write Race", "Read by ", prevReader,
-                                "Write by ", tid, sl, sx.prevReads[prevReader]);
+                                "Write by ", tid, site, sx.prevReads[prevReader]);
                     }
                     if (COUNT_OPERATIONS)
                         sharedWriteError.inc(tid);
@@ -524,7 +529,7 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
                 }
             }
             sx.W = e;
-            sx.prevWrite = sl;
+            sx.prevWrite = site;
         }
     }
 
@@ -678,6 +683,11 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
             other.inc(st.getTid());
     }
 
+    @Override
+    public void fini() {
+        racePairSummary.write(RacePairAggregator.racePairFile.get());
+    }
+
     @Override
     public void printXML(XMLWriter xml) {
         for (ShadowThread td : ShadowThread.getThreads()) {
@@ -686,18 +696,16 @@ public class EFastTrackTool extends Tool implements BarrierListener<FTBarrierSta
     }
 
     protected void error(final AccessEvent ae, final FTVarState x, final String description,
-                         final String prevOp, final int prevTid, final String curOp, final int curTid, SourceLocation start, SourceLocation end) {
+                         final String prevOp, final int prevTid, final String curOp, final int curTid, int start, int end) {
 
+        AccessSiteSampler.race(ae.getAccessInfo());
         if (ae instanceof FieldAccessEvent) {
             fieldError((FieldAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         } else {
             arrayError((ArrayAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
             arrayError((ArrayAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         }
-        synchronized (printLock){
-            System.out.print("#---#" + start.toString() + "\n");
-            System.out.print("#---#" + end.toString() + "\n");
-        }
+        racePairSummary.add(start, curTid, end, prevTid, Epoch.clock(ts_get_E(ae.getThread())));
     }
 
     protected void arrayError(final ArrayAccessEvent aae, final FTVarState sx,
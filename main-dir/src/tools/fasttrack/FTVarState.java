@@ -32,8 +32,10 @@
 
 package tools.fasttrack;
 
-import rr.meta.SourceLocation;
+import java.util.Arrays;
+
 import rr.state.ShadowVar;
+import tools.util.AccessSite;
 import tools.util.Epoch;
 import tools.util.VectorClock;
 
@@ -57,16 +59,10 @@ public class FTVarState extends VectorClock implements ShadowVar {
 	public volatile int/* epoch */ R;
 
 	/**--------------------------------------------------*/
-	public SourceLocation[] prevReads;
-	public SourceLocation prevWrite;
-	/**--^ ones are for the A,B pairs--------------------*/
+	// AccessSites of the last accesses, for EFT2's race pair reports.
+	public int[] prevReads;
+	public int prevWrite = AccessSite.NONE;
 	/**--^ ones are for the A,B pairs--------------------*/
-
-	public int[] threadAccessCount;
-	public int[] threadSamplingLvl;
-	public int globalCntr;
-	public int samplingLvl;
-	/**--------------------------------------------------*/
 	protected FTVarState() {
 	}
 
@@ -81,20 +77,9 @@ public class FTVarState extends VectorClock implements ShadowVar {
 	}
 
 
-	public void CreateThreadAccessCount(int maxTid,int setVal){
-		threadAccessCount = new int[maxTid];
-		threadSamplingLvl = new int[maxTid];
-		for(int i=0;i<maxTid;++i) {
-			threadAccessCount[i] = setVal;
-			threadSamplingLvl[i] = 0;
-		}
-		globalCntr = setVal;
-		return;
-	}
-
 	public void initLoctnInfo(int maxTid){
-		prevReads = new SourceLocation[maxTid];
-		return;
+		prevReads = new int[maxTid];
+		Arrays.fill(prevReads, AccessSite.NONE);
 	}
 
 	@Override
@@ -64,6 +64,7 @@ import rr.event.StartEvent;
 import rr.event.VolatileAccessEvent;
 import rr.event.WaitEvent;
 import rr.instrument.classes.ArrayAllocSiteTracker;
+import rr.meta.AccessSiteSampler;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.ClassInfo;
 import rr.meta.FieldInfo;
@@ -429,63 +430,64 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
         }
     }
 
-    // CS636: Commented the method to prevent inlining of the read barrier
-    // public static boolean readFastPath(final ShadowVar shadow, final ShadowThread st) {
-    // if (shadow instanceof FTVarState) {
-    // final FTVarState sx = ((FTVarState) shadow);
-
-    // final int/* epoch */ e = ts_get_E(st);
-
-    // /* optional */ {
-    // final int/* epoch */ r = sx.R;
-    // if (r == e) {
-    // if (COUNT_OPERATIONS)
-    // readSameEpoch.inc(st.getTid());
-    // return true;
-    // } else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
-    // if (COUNT_OPERATIONS)
-    // readSharedSameEpoch.inc(st.getTid());
-    // return true;
-    // }
-    // }
-
-    // synchronized (sx) {
-    // final int tid = st.getTid();
-    // final VectorClock tV = ts_get_V(st);
-    // final int/* epoch */ r = sx.R;
-    // final int/* epoch */ w = sx.W;
-    // final int wTid = Epoch.tid(w);
-    // if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
-    // ts_set_badVarState(st, sx);
-    // return false;
-    // }
-
-    // if (r != Epoch.READ_SHARED) {
-    // final int rTid = Epoch.tid(r);
-    // if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
-    // if (COUNT_OPERATIONS)
-    // readExclusive.inc(tid);
-    // sx.R = e;
-    // } else {
-    // if (COUNT_OPERATIONS)
-    // readShare.inc(tid);
-    // int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
-    // sx.makeCV(initSize);
-    // sx.set(rTid, r);
-    // sx.set(tid, e);
-    // sx.R = Epoch.READ_SHARED;
-    // }
-    // } else {
-    // if (COUNT_OPERATIONS)
-    // readShared.inc(tid);
-    // sx.set(tid, e);
-    // }
-    // return true;
-    // }
-    // } else {
-    // return false;
-    // }
-    // }
+    // Inlined at each non-volatile read. Handles every case without a race; on a race, hands
+    // sx to the slow path through badVarState so access() reports it.
+    public static boolean readFastPath(final ShadowVar shadow, final ShadowThread st) {
+        if (shadow instanceof FTVarState) {
+            final FTVarState sx = ((FTVarState) shadow);
+
+            final int/* epoch */ e = ts_get_E(st);
+
+            /* optional */ {
+                final int/* epoch */ r = sx.R;
+                if (r == e) {
+                    if (COUNT_OPERATIONS)
+                        readSameEpoch.inc(st.getTid());
+                    return true;
+                } else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
+                    if (COUNT_OPERATIONS)
+                        readSharedSameEpoch.inc(st.getTid());
+                    return true;
+                }
+            }
+
+            synchronized (sx) {
+                final int tid = st.getTid();
+                final VectorClock tV = ts_get_V(st);
+                final int/* epoch */ r = sx.R;
+                final int/* epoch */ w = sx.W;
+                final int wTid = Epoch.tid(w);
+                if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+                    ts_set_badVarState(st, sx);
+                    return false;
+                }
+
+                if (r != Epoch.READ_SHARED) {
+                    final int rTid = Epoch.tid(r);
+                    if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
+                        if (COUNT_OPERATIONS)
+                            readExclusive.inc(tid);
+                        sx.R = e;
+                    } else {
+                        if (COUNT_OPERATIONS)
+                            readShare.inc(tid);
+                        int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
+                        sx.makeCV(initSize);
+                        sx.set(rTid, r);
+                        sx.set(tid, e);
+                        sx.R = Epoch.READ_SHARED;
+                    }
+                } else {
+                    if (COUNT_OPERATIONS)
+                        readShared.inc(tid);
+                    sx.set(tid, e);
+                }
+                return true;
+            }
+        } else {
+            return false;
+        }
+    }
 
     /***/
 
@@ -542,58 +544,58 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
         }
     }
 
-    // CS636: Commented the method to prevent inlining of the read barrier
+    // Inlined at each non-volatile write; same protocol as readFastPath.
     // only count events when returning true;
-    // public static boolean writeFastPath(final ShadowVar shadow, final ShadowThread st) {
-    // if (shadow instanceof FTVarState) {
-    // final FTVarState sx = ((FTVarState) shadow);
-
-    // final int/* epoch */ E = ts_get_E(st);
-
-    // /* optional */ {
-    // final int/* epoch */ w = sx.W;
-    // if (w == E) {
-    // if (COUNT_OPERATIONS)
-    // writeSameEpoch.inc(st.getTid());
-    // return true;
-    // }
-    // }
-
-    // synchronized (sx) {
-    // final int tid = st.getTid();
-    // final int/* epoch */ w = sx.W;
-    // final int wTid = Epoch.tid(w);
-    // final VectorClock tV = ts_get_V(st);
-
-    // if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
-    // ts_set_badVarState(st, sx);
-    // return false;
-    // }
-
-    // final int/* epoch */ r = sx.R;
-    // if (r != Epoch.READ_SHARED) {
-    // final int rTid = Epoch.tid(r);
-    // if (rTid != tid && !Epoch.leq(r, tV.get(rTid))) {
-    // ts_set_badVarState(st, sx);
-    // return false;
-    // }
-    // if (COUNT_OPERATIONS)
-    // writeExclusive.inc(tid);
-    // } else {
-    // if (sx.anyGt(tV)) {
-    // ts_set_badVarState(st, sx);
-    // return false;
-    // }
-    // if (COUNT_OPERATIONS)
-    // writeShared.inc(tid);
-    // }
-    // sx.W = E;
-    // return true;
-    // }
-    // } else {
-    // return false;
-    // }
-    // }
+    public static boolean writeFastPath(final ShadowVar shadow, final ShadowThread st) {
+        if (shadow instanceof FTVarState) {
+            final FTVarState sx = ((FTVarState) shadow);
+
+            final int/* epoch */ E = ts_get_E(st);
+
+            /* optional */ {
+                final int/* epoch */ w = sx.W;
+                if (w == E) {
+                    if (COUNT_OPERATIONS)
+                        writeSameEpoch.inc(st.getTid());
+                    return true;
+                }
+            }
+
+            synchronized (sx) {
+                final int tid = st.getTid();
+                final int/* epoch */ w = sx.W;
+                final int wTid = Epoch.tid(w);
+                final VectorClock tV = ts_get_V(st);
+
+                if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+                    ts_set_badVarState(st, sx);
+                    return false;
+                }
+
+                final int/* epoch */ r = sx.R;
+                if (r != Epoch.READ_SHARED) {
+                    final int rTid = Epoch.tid(r);
+                    if (rTid != tid && !Epoch.leq(r, tV.get(rTid))) {
+                        ts_set_badVarState(st, sx);
+                        return false;
+                    }
+                    if (COUNT_OPERATIONS)
+                        writeExclusive.inc(tid);
+                } else {
+                    if (sx.anyGt(tV)) {
+                        ts_set_badVarState(st, sx);
+                        return false;
+                    }
+                    if (COUNT_OPERATIONS)
+                        writeShared.inc(tid);
+                }
+                sx.W = E;
+                return true;
+            }
+        } else {
+            return false;
+        }
+    }
 
     /*****/
 
@@ -756,6 +758,7 @@ public class FastTrackTool extends Tool implements BarrierListener<FTBarrierStat
     protected void error(final AccessEvent ae, final FTVarState x, final String description,
             final String prevOp, final int prevTid, final String curOp, final int curTid) {
 
+        AccessSiteSampler.race(ae.getAccessInfo());
         if (ae instanceof FieldAccessEvent) {
             fieldError((FieldAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         } else {
@@ -0,0 +1,92 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+/**
+ * adaptive, burstLvl=thread: a burst counter and sampling level per variable per thread. The
+ * owner's counters are kept inline in sx.cntr/sx.lvl; the other threads' counters live in
+ * sx.adaptive, which is only allocated once a second thread is sampled on sx. Each thread's
+ * counters are only touched by that thread.
+ */
+public final class AdaptiveThreadSamplingPolicy extends SamplingPolicy {
+
+	private final boolean[][] levels;
+	private final int maxLevel;
+	private final int burstLen;
+	private final int maxTid;
+
+	public AdaptiveThreadSamplingPolicy(boolean[][] levels, int burstLen, int maxTid) {
+		this.levels = levels;
+		this.maxLevel = levels.length - 1;
+		this.burstLen = burstLen;
+		this.maxTid = maxTid;
+	}
+
+	@Override
+	public void initVar(FTSVarState sx) {
+		sx.cntr = burstLen;
+	}
+
+	@Override
+	public boolean sample(SamplerState ts, FTSVarState sx, int tid) {
+		if (tid == sx.owner) {
+			int c = sx.cntr - 1;
+			final int lvl = sx.lvl;
+			final boolean result = levels[lvl][c];
+			if (c == 0) {
+				c = burstLen;
+				if (lvl < maxLevel)
+					sx.lvl = lvl + 1;
+			}
+			sx.cntr = c;
+			return result;
+		}
+		final int[] a = sx.inflateAdaptive(maxTid, burstLen, tid);
+		final int i = tid << 1;
+		int c = a[i] - 1;
+		final int lvl = a[i + 1];
+		final boolean result = levels[lvl][c];
+		if (c == 0) {
+			c = burstLen;
+			if (lvl < maxLevel)
+				a[i + 1] = lvl + 1;
+		}
+		a[i] = c;
+		return result;
+	}
+
+	@Override
+	public String toString() {
+		return "adaptive/thread(" + (maxLevel + 1) + " levels)";
+	}
+}
@@ -68,6 +68,7 @@ import rr.event.VolatileAccessEvent;
 import rr.event.WaitEvent;
 import rr.instrument.classes.ArrayAllocSiteTracker;
 
+import rr.meta.AccessSiteSampler;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.ClassInfo;
 import rr.meta.FieldInfo;
@@ -81,7 +82,9 @@ import rr.state.ShadowVar;
 import rr.state.ShadowVolatile;
 import rr.tool.RR;
 import rr.tool.Tool;
+import tools.util.AccessSite;
 import tools.util.Epoch;
+import tools.util.RacePairAggregator;
 import tools.util.VectorClock;
 
 /*
@@ -101,7 +104,8 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     private static final boolean COUNT_OPERATIONS = RRMain.slowMode();
     private static final int INIT_VECTOR_CLOCK_SIZE = 4;
 
-    private static final Object printLock = new Object();
+    // distinct race pairs, written to -racePairFile by fini()
+    private final RacePairAggregator racePairSummary = new RacePairAggregator();
     /** --- the extra vatiables for the samling part */
     public static final CommandLineOption<Integer> samplingRate = CommandLine
             .makeInteger("samplingrate", 100, CommandLineOption.Kind.EXPERIMENTAL, "sampling_rate");
@@ -110,7 +114,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
             .makeString("burstLvl", "thread", CommandLineOption.Kind.EXPERIMENTAL, "global or local level");
 
     public static final CommandLineOption<String> samplingScheme = CommandLine
-            .makeString("samplingscheme", "count", CommandLineOption.Kind.EXPERIMENTAL, "sampling_scheme");
+            .makeString("samplingscheme", "count", CommandLineOption.Kind.EXPERIMENTAL, "sampling scheme: count, adaptive, geometric or bernoulli");
 
     public static final CommandLineOption<Integer> samplingType = CommandLine
             .makeInteger("samplingtype", 0, CommandLineOption.Kind.EXPERIMENTAL, "sampling_type");
@@ -124,23 +128,10 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     public static final CommandLineOption<Integer> burstLen = CommandLine
             .makeInteger("burstlen", 0, CommandLineOption.Kind.EXPERIMENTAL, "burst_len");
 
-    // for the global sampling 'count'
-    public static boolean setFlag; private static final Object setFlagLock = new Object();
-
-    public static int globalCounter; private static final Object globalCntrLock = new Object();
-    public static boolean[] globalPermu;
-
-    // for the thread local sampling 'count'
-    public static int[] threadCounter;
-    public static boolean[][] threadPermu;
-
-    // for the 'adaptive' sampling
-    public static int maxSamplingLvl;
-    public static boolean[][] adaptivPermu;
-    public static int  burstLength;
-    public static int decRate;
-    public static int minSamp;
-    public static boolean burstLvl;
+    // resolved from the options above in init(); see SamplingPolicy. Static so the fast
+    // paths can reach it.
+    private static SamplingPolicy policy;
+    private static boolean dirtyLocks;
     /** -------------------------------------------- */
 
     public final ErrorMessage<FieldInfo> fieldErrors = ErrorMessages
@@ -171,6 +162,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     public EFastTrackSTool(final String name, final Tool next, CommandLine commandLine) {
 
         super(name, next, commandLine);
+        commandLine.add(RacePairAggregator.racePairFile);
         /**----------------------------------*/
         commandLine.add(samplingRate);
         commandLine.add(samplingScheme);
@@ -179,7 +171,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
         commandLine.add(decrementRate);
         commandLine.add(burstLen);
         commandLine.add(burstLevel);
-        setFlag = true;
+        commandLine.add(FastTrackSTool.dirtyLockClocks);
         /**-----------------------------------*/
         new BarrierMonitor<FTBarrierState>(this, new DefaultValue<Object, FTBarrierState>() {
             public FTBarrierState get(Object k) {
@@ -188,12 +180,20 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
         });
     }
 
+    @Override
+    public void init() {
+        policy = SamplingPolicy.make(samplingScheme.get(), samplingType.get(), samplingRate.get(),
+                burstLevel.get(), burstLen.get(), minSampling.get(), decrementRate.get(),
+                RR.maxTidOption.get());
+        dirtyLocks = FastTrackSTool.dirtyLockClocks.get();
+    }
+
     /*
      * Shadow State: St.E -- epoch decoration on ShadowThread - Thread-local. Never access from a
      * different thread St.V -- VectorClock decoration on ShadowThread - Thread-local while thread
      * is running. - The thread starting t may access st.V before the start. - Any thread joining on
-     * t may read st.V after the join. Sm.V -- FTLockState decoration on ShadowLock - See
-     * FTLockState for synchronization rules. Sx.R,Sx.W,Sx.V -- FTSVarState objects - See FTSVarState
+     * t may read st.V after the join. Sm.V -- FTSLockState decoration on ShadowLock - See
+     * FTSLockState for synchronization rules. Sx.R,Sx.W,Sx.V -- FTSVarState objects - See FTSVarState
      * for synchronization rules. Svx.V -- FTVolatileState decoration on ShadowVolatile (serves same
      * purpose as L for volatiles) - See FTVolatileState for synchronization rules. Sb.V --
      * FTBarrierState decoration on Barriers - See FTBarrierState for synchronization rules.
@@ -218,6 +218,16 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
         Assert.panic("Bad");
     }
 
+    // only touched by the thread st itself once it is running
+    protected static SamplerState ts_get_sampler(ShadowThread st) {
+        Assert.panic("Bad");
+        return null;
+    }
+
+    protected static void ts_set_sampler(ShadowThread st, SamplerState s) {
+        Assert.panic("Bad");
+    }
+
 
     protected void maxAndIncEpochAndCV(ShadowThread st, VectorClock other, OperationInfo info) {
         final int tid = st.getTid();
@@ -241,17 +251,17 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
         ts_set_E(st, tV.get(tid));
     }
 
-    /** FTLockState extends vector clock in some way */
-    static final Decoration<ShadowLock, FTLockState> lockVs = ShadowLock.makeDecoration(
+    /** FTSLockState extends vector clock in some way */
+    static final Decoration<ShadowLock, FTSLockState> lockVs = ShadowLock.makeDecoration(
             "FastTrack:ShadowLock", DecorationFactory.Type.MULTIPLE,
-            new DefaultValue<ShadowLock, FTLockState>() {
-                public FTLockState get(final ShadowLock lock) {
-                    return new FTLockState(lock, INIT_VECTOR_CLOCK_SIZE);
+            new DefaultValue<ShadowLock, FTSLockState>() {
+                public FTSLockState get(final ShadowLock lock) {
+                    return new FTSLockState(lock, INIT_VECTOR_CLOCK_SIZE);
                 }
             });
 
     // only call when ld.peer() is held
-    static final FTLockState getV(final ShadowLock ld) {
+    static final FTSLockState getV(final ShadowLock ld) {
         return lockVs.get(ld);
     }
 
@@ -277,11 +287,8 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
             volV.max(ts_get_V(st));
             return super.makeShadowVar(event);
         } else {
-            FTVarState temp = new FTVarState(event.isWrite(), ts_get_E(event.getThread()));
-            if(samplingScheme.get().equals("adaptive")){
-                temp.CreateThreadAccessCount(RR.maxTidOption.get().intValue(),burstLen.get().intValue());
-            }
-            temp.initLoctnInfo(RR.maxTidOption.get());
+            FTSVarState temp = new FTSVarState(event.isWrite(), ts_get_E(event.getThread()));
+            policy.initVar(temp);
             return temp;
         }
 
@@ -299,66 +306,9 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                 tV.set(tid, epoch);
                 ts_set_E(st, epoch);
             }
-            if(samplingScheme.get().equals("count")){
-                // count, 1
-                if(samplingType.get()==1 && setFlag){
-                    synchronized(globalCntrLock){
-                        globalCounter = 0;
-                        globalPermu = arrayPermute(100,samplingRate.get().intValue());
-                    }
-                    setFlag = false;
-                }
-                //count, 2
-                else if(samplingType.get()==2){
-                    if(setFlag) {
-                        synchronized (setFlagLock) {
-                            if (setFlag) {
-                                threadCounter = new int[RR.maxTidOption.get()];
-                                for (int i = 0; i < RR.maxTidOption.get(); ++i) threadCounter[i] = 0;
-                                threadPermu = new boolean[RR.maxTidOption.get()][100];
-                                setFlag = false;
-                            }
-                        }
-                    }
-
-                    threadPermu[tid] = arrayPermute(100,samplingRate.get().intValue());
-                }
-            }
-            else {
-                if(setFlag){
-                    synchronized (setFlagLock){
-                        if(setFlag){
-                            burstLength = burstLen.get().intValue();
-                            minSamp = minSampling.get().intValue();
-                            decRate = decrementRate.get().intValue();
-
-                            if(samplingType.get().intValue()==0){
-                                maxSamplingLvl = (burstLength-minSamp)/decRate + 1;
-                                adaptivPermu = new boolean[maxSamplingLvl][burstLength];
-                                for(int i=0;i<maxSamplingLvl;++i)
-                                    adaptivPermu[i] = arrayPermute(burstLength,burstLength-decRate*i);
-                                }
-                            else{
-                                int dummy = burstLength;
-                                maxSamplingLvl = 0;
-                                while(dummy>=minSamp){
-                                    maxSamplingLvl++;
-                                    dummy /= decRate;
-                                }
-                                adaptivPermu = new boolean[maxSamplingLvl][burstLength];
-                                dummy = burstLength;
-                                for(int i=0;i<maxSamplingLvl;++i) {
-                                    adaptivPermu[i] = arrayPermute(burstLength, dummy);
-                                    dummy /= decRate;
-                                }
-                            }
-                            --maxSamplingLvl;
-                            burstLvl = (burstLevel.get().equals("global")?true:false);
-                            setFlag = false;
-                        }
-                    }
-                }
-            }
+            final SamplerState sampler = new SamplerState(tid);
+            policy.initThread(sampler, tid);
+            ts_set_sampler(st, sampler);
 
             incEpochAndCV(st, null);
             Util.log("Initial E for " + tid + ": " + Epoch.toString(ts_get_E(st)));
@@ -368,24 +318,16 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     }
 
 
-    public boolean[] arrayPermute(int len, int tees){
-
-        List<Boolean> dummy = new ArrayList<Boolean>();
-        for(int i = 0; i < tees; i++) dummy.add(true);
-        for(int i = 0; i < (len-tees); i++) dummy.add(false);
-        Collections.shuffle(dummy);
-        boolean[] temp = new boolean[len];
-        for(int i=0;i<len;++i)
-            temp[i] = dummy.get(i).booleanValue();
-        return temp;
-    }
-
     @Override
     public void acquire(final AcquireEvent event) {
         final ShadowThread st = event.getThread();
-        final FTLockState lockV = getV(event.getLock());
+        final FTSLockState lockV = getV(event.getLock());
 
-        maxEpochAndCV(st, lockV, event.getInfo());
+        if (dirtyLocks) {
+            lockV.acquireInto(ts_get_V(st), st, st.getTid());
+        } else {
+            maxEpochAndCV(st, lockV, event.getInfo());
+        }
 
         super.acquire(event);
         if (COUNT_OPERATIONS)
@@ -396,9 +338,13 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     public void release(final ReleaseEvent event) {
         final ShadowThread st = event.getThread();
         final VectorClock tV = ts_get_V(st);
-        final VectorClock lockV = getV(event.getLock());
+        final FTSLockState lockV = getV(event.getLock());
 
-        lockV.max(tV);
+        if (dirtyLocks) {
+            lockV.releaseFrom(tV, st, st.getTid());
+        } else {
+            lockV.max(tV);
+        }
         incEpochAndCV(st, event.getInfo());
 
         super.release(event);
@@ -407,17 +353,17 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     }
 
     
-    static FTVarState ts_get_badVarState(ShadowThread st) {
+    static FTSVarState ts_get_badVarState(ShadowThread st) {
         Assert.panic("Bad");
         return null;
     }
 
-    static void ts_set_badVarState(ShadowThread st, FTVarState v) {
+    static void ts_set_badVarState(ShadowThread st, FTSVarState v) {
         Assert.panic("Bad");
     }
 
     protected static ShadowVar getOriginalOrBad(ShadowVar original, ShadowThread st) {
-        final FTVarState savedState = ts_get_badVarState(st);
+        final FTSVarState savedState = ts_get_badVarState(st);
         if (savedState != null) {
             ts_set_badVarState(st, null);
             return savedState;
@@ -440,9 +386,9 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
         final ShadowThread st = event.getThread();
         final ShadowVar shadow = getOriginalOrBad(event.getOriginalShadow(), st);
 
-        if (shadow instanceof FTVarState) {
+        if (shadow instanceof FTSVarState) {
 
-            FTVarState sx = (FTVarState) shadow;
+            FTSVarState sx = (FTSVarState) shadow;
 
             Object target = event.getTarget();
             if (target == null) {
@@ -454,51 +400,13 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                     // epoch
                 }
             }
-            // for the checks
-            boolean sampleCheck = false;
-            int istype = samplingType.get().intValue();
-            int tid = st.getTid();
-            // normal samplint
-            if(samplingScheme.get().equals("count")){
-                if(istype==0)
-                    sampleCheck = (Math.random()*100 < samplingRate.get()) ? true : false;
-                else if(istype==1){
-                    synchronized (globalCntrLock){
-                        sampleCheck = globalPermu[globalCounter];
-                        globalCounter++;
-                        if(globalCounter==100)
-                            globalCounter = 0;
-                    }
-                }
-                else{
-                    sampleCheck = threadPermu[tid][threadCounter[tid]];
-                    threadCounter[tid]++;
-                    if(threadCounter[tid]==100)
-                        threadCounter[tid] = 0;
-                }
-            }
-            // adaptive sampling
-            else{
-                if(burstLvl){
-                    synchronized (sx){
-                        sx.globalCntr--;
-                        sampleCheck = adaptivPermu[sx.samplingLvl][sx.globalCntr];
-                        if(sx.globalCntr==0){
-                            sx.globalCntr = burstLength;
-                            if(sx.samplingLvl<maxSamplingLvl)
-                                sx.samplingLvl++;
-                        }
-                    }
-                }
-                else{
-                    sx.threadAccessCount[tid]--;
-                    sampleCheck =adaptivPermu[sx.threadSamplingLvl[tid]][sx.threadAccessCount[tid]];
-                    if(sx.threadAccessCount[tid]==0){
-                        sx.threadAccessCount[tid] = burstLength;
-                        if(sx.threadSamplingLvl[tid]<maxSamplingLvl)
-                            sx.threadSamplingLvl[tid]++;
-                    }
-                }
+            final SamplerState ts = ts_get_sampler(st);
+            final boolean sampleCheck;
+            if (ts.pending) {
+                ts.pending = false;
+                sampleCheck = true;
+            } else {
+                sampleCheck = policy.sample(ts, sx, st.getTid());
             }
             if(sampleCheck) {
                 if (event.isWrite()) {
@@ -566,11 +474,11 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     }
 
 
-    protected void read(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+    protected void read(final AccessEvent event, final ShadowThread st, final FTSVarState sx) {
         final int/* epoch */ e = ts_get_E(st);
 
         // Getting the current location
-        SourceLocation sl = event.getAccessInfo().getLoc();
+        final int site = AccessSite.make(event);
         final int tid = st.getTid();
 
         /* optional */ {
@@ -578,12 +486,12 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
             if (r == e) {
                 if (COUNT_OPERATIONS)
                     readSameEpoch.inc(st.getTid());
-                sx.prevReads[tid] = sl;
+                sx.setReadSite(tid, site);
                 return;
             } else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
                 if (COUNT_OPERATIONS)
                     readSharedSameEpoch.inc(st.getTid());
-                sx.prevReads[tid] = sl;
+                sx.setReadSite(tid, site);
                 return;
             }
         }
@@ -596,9 +504,9 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
             if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
                 if (COUNT_OPERATIONS)
                     writeReadError.inc(tid);
-                if(sx.prevWrite != null)
-                    error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid, sl, sx.prevWrite);
-                sx.prevReads[tid] = sl;
+                if(sx.writeSite != AccessSite.NONE)
+                    error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid, site, sx.writeSite);
+                sx.setReadSite(tid, site);
                 return;
             }
 
@@ -612,7 +520,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                     if (COUNT_OPERATIONS)
                         readShare.inc(tid);
                     int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
-                    sx.makeCV(initSize);
+                    sx.makeShared(initSize, rTid, tid);
                     sx.set(rTid, r);
                     sx.set(tid, e);
                     sx.R = Epoch.READ_SHARED;
@@ -622,16 +530,16 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                     readShared.inc(tid);
                 sx.set(tid, e);
             }
-            sx.prevReads[tid] = sl;
+            sx.setReadSite(tid, site);
         }
     }
 
 
 
-    protected void write(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+    protected void write(final AccessEvent event, final ShadowThread st, final FTSVarState sx) {
         final int/* epoch */ e = ts_get_E(st);
         // Getting the current location
-        SourceLocation sl = event.getAccessInfo().getLoc();
+        final int site = AccessSite.make(event);
 
         /* optional */ {
             final int/* epoch */ w = sx.W;
@@ -639,7 +547,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                 if (COUNT_OPERATIONS)
                     writeSameEpoch.inc(st.getTid());
                 synchronized (sx) {
-                    sx.prevWrite = sl;
+                    sx.writeSite = site;
                 }
                 return;
             }
@@ -654,7 +562,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
             if (wTid != tid /* optimization */ && !Epoch.leq(w, tV.get(wTid))) {
                 if (COUNT_OPERATIONS)
                     writeWriteError.inc(tid);
-                error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid, sl, sx.prevWrite);
+                error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid, site, sx.writeSite);
             }
 
             final int/* epoch */ r = sx.R;
@@ -663,7 +571,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                 if (rTid != tid /* optimization */ && !Epoch.leq(r, tV.get(rTid))) {
                     if (COUNT_OPERATIONS)
                         readWriteError.inc(tid);
-                    error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid, sl, sx.prevReads[rTid]);
+                    error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid, site, sx.getReadSite(rTid));
                 } else {
                     if (COUNT_OPERATIONS)
                         writeExclusive.inc(tid);
@@ -673,7 +581,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                     for (int prevReader = sx.nextGt(tV, 0); prevReader > -1; prevReader = sx
                             .nextGt(tV, prevReader + 1)) {
                         error(event, sx, "Read(Shared)-Write Race", "Read by ", prevReader,
-                                "Write by ", tid, sl, sx.prevReads[prevReader]);
+                                "Write by ", tid, site, sx.getReadSite(prevReader));
                     }
                     if (COUNT_OPERATIONS)
                         sharedWriteError.inc(tid);
@@ -683,11 +591,29 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
                 }
             }
             sx.W = e;
-            sx.prevWrite = sl;
+            sx.writeSite = site;
         }
     }
 
 
+    // Inlined at each non-volatile access. Only the "not sampled" decision is taken here:
+    // sampled accesses must record their AccessSite, which the fast path does not know, so
+    // they go to access() with the decision carried over in SamplerState.pending.
+    public static boolean readFastPath(final ShadowVar shadow, final ShadowThread st) {
+        if (shadow instanceof FTSVarState) {
+            final SamplerState ts = ts_get_sampler(st);
+            if (!policy.sample(ts, (FTSVarState) shadow, st.getTid())) {
+                return true;
+            }
+            ts.pending = true;
+        }
+        return false;
+    }
+
+    public static boolean writeFastPath(final ShadowVar shadow, final ShadowThread st) {
+        return readFastPath(shadow, st);
+    }
+
     @Override
     public void volatileAccess(final VolatileAccessEvent event) {
         final ShadowThread st = event.getThread();
@@ -759,8 +685,13 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     @Override
     public void preWait(WaitEvent event) {
         final ShadowThread st = event.getThread();
-        final VectorClock lockV = getV(event.getLock());
-        lockV.max(ts_get_V(st)); // we hold lock, so no need to sync here...
+        final FTSLockState lockV = getV(event.getLock());
+        // we hold lock, so no need to sync here...
+        if (dirtyLocks) {
+            lockV.releaseFrom(ts_get_V(st), st, st.getTid());
+        } else {
+            lockV.max(ts_get_V(st));
+        }
         incEpochAndCV(st, event.getInfo());
         super.preWait(event);
         if (COUNT_OPERATIONS)
@@ -770,8 +701,13 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
     @Override
     public void postWait(WaitEvent event) {
         final ShadowThread st = event.getThread();
-        final VectorClock lockV = getV(event.getLock());
-        maxEpochAndCV(st, lockV, event.getInfo()); // we hold lock here
+        final FTSLockState lockV = getV(event.getLock());
+        // we hold lock here
+        if (dirtyLocks) {
+            lockV.acquireInto(ts_get_V(st), st, st.getTid());
+        } else {
+            maxEpochAndCV(st, lockV, event.getInfo());
+        }
         super.postWait(event);
         if (COUNT_OPERATIONS)
             wait.inc(st.getTid());
@@ -837,6 +773,11 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
             other.inc(st.getTid());
     }
 
+    @Override
+    public void fini() {
+        racePairSummary.write(RacePairAggregator.racePairFile.get());
+    }
+
     @Override
     public void printXML(XMLWriter xml) {
         for (ShadowThread td : ShadowThread.getThreads()) {
@@ -844,22 +785,20 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
         }
     }
 
-    protected void error(final AccessEvent ae, final FTVarState x, final String description,
-                         final String prevOp, final int prevTid, final String curOp, final int curTid, SourceLocation start, SourceLocation end) {
+    protected void error(final AccessEvent ae, final FTSVarState x, final String description,
+                         final String prevOp, final int prevTid, final String curOp, final int curTid, int start, int end) {
 
+        AccessSiteSampler.race(ae.getAccessInfo());
         if (ae instanceof FieldAccessEvent) {
             fieldError((FieldAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         } else {
             arrayError((ArrayAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
             arrayError((ArrayAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         }
-        synchronized (printLock){
-            System.out.print("#---#" + start.toString() + "\n");
-            System.out.print("#---#" + end.toString() + "\n");
-        }
+        racePairSummary.add(start, curTid, end, prevTid, Epoch.clock(ts_get_E(ae.getThread())));
     }
 
-    protected void arrayError(final ArrayAccessEvent aae, final FTVarState sx,
+    protected void arrayError(final ArrayAccessEvent aae, final FTSVarState sx,
                               final String description, final String prevOp, final int prevTid, final String curOp,
                               final int curTid) {
         final ShadowThread st = aae.getThread();
@@ -882,7 +821,7 @@ public class EFastTrackSTool extends Tool implements BarrierListener<FTBarrierSt
         }
     }
 
-    protected void fieldError(final FieldAccessEvent fae, final FTVarState sx,
+    protected void fieldError(final FieldAccessEvent fae, final FTSVarState sx,
                               final String description, final String prevOp, final int prevTid, final String curOp,
                               final int curTid) {
         final FieldInfo fd = fae.getInfo().getField();
@@ -0,0 +1,67 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+import acme.util.Util;
+import rr.state.ShadowLock;
+import tools.util.DirtyVectorClock;
+
+/**
+ * Lock state for FT2S/EFT2S. Same as FTLockState, but the clock also tracks which entries
+ * changed since each thread last acquired the lock, which the tools use when run with
+ * -dirtyLockClocks. See DirtyVectorClock.
+ */
+public class FTSLockState extends DirtyVectorClock {
+
+	private static final long serialVersionUID = 1L;
+
+	// inherited values field: protected by peer.getLock().
+	// That lock will be held during acquire/release/wait events.
+
+	private final ShadowLock peer;
+
+	public FTSLockState(ShadowLock peer, int size) {
+		super(size);
+		this.peer = peer;
+	}
+
+	public ShadowLock getPeer() {
+		return peer;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return String.format("[peer %s: %s]", Util.objectToIdentityString(peer), super.toString());
+	}
+
+}
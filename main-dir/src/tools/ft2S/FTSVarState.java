@@ -32,11 +32,27 @@
 
 package tools.fasttrack;
 
-import rr.meta.SourceLocation;
+import acme.util.count.AggregateCounter;
+import acme.util.count.RatioCounter;
+import acme.util.count.ThreadLocalCounter;
 import rr.state.ShadowVar;
+import rr.tool.RR;
+import tools.util.AccessSite;
 import tools.util.Epoch;
 import tools.util.VectorClock;
 
+/*
+ * Compact shadow state for the sampling tools (FT2S, EFT2S, FT2SS).
+ *
+ * Last-access locations are kept as AccessSite ids rather than
+ * SourceLocation references, and only per-thread data that is actually
+ * needed gets allocated:
+ * - readSites is created when the variable becomes read-shared and
+ *   a read site has been recorded, and grows with the readers' tids.
+ * - adaptive keeps the burst counters for threads other than the
+ *   owner (the creating thread) and is only created the first
+ *   time a second thread is sampled on this variable.
+ */
 public class FTSVarState extends VectorClock implements ShadowVar {
 	// inherited values field:
 	// * if R != SHARED, then values and values[*] are protected by this.
@@ -56,17 +72,52 @@ public class FTSVarState extends VectorClock implements ShadowVar {
 	// if R == Epoch.SHARED, it will never change again.
 	public volatile int/* epoch */ R;
 
-	/**--------------------------------------------------*/
-	public volatile SourceLocation[] prevReads;
-	public volatile SourceLocation prevWrite;
-	/**--^ ones are for the A,B pairs--------------------*/
-	/**--^ ones are for the A,B pairs--------------------*/
-
-	public int[] threadAccessCount;
-	public int[] threadSamplingLvl;
-	public int globalCntr;
-	public int samplingLvl;
-	/**--------------------------------------------------*/
+	// Site of the last write, and of the last read while R != SHARED.
+	// These are only used for reporting, so racy updates on the
+	// same-epoch fast paths are tolerated.
+	public int writeSite = AccessSite.NONE;
+	public int readSite = AccessSite.NONE;
+
+	// readSites[i] is the last read site of thread i once R == SHARED.
+	// The array is replaced (never shrunk) under the lock of this.
+	private volatile int[] readSites;
+
+	// Adaptive sampling state.  For burstLvl=global, cntr/lvl are shared by
+	// all threads.  For burstLvl=thread, they belong to owner, and every
+	// other thread i uses adaptive[2*i] and adaptive[2*i+1].
+	public int cntr;
+	public int lvl;
+	public int owner;
+	public volatile int[] adaptive;
+
+	/*
+	 * Estimated footprint, assuming a 12-byte object header, compressed oops,
+	 * and 8-byte alignment: header + values + W/R + sites + cntr/lvl/owner +
+	 * readSites/adaptive = 12 + 4 + 8 + 8 + 12 + 8 = 52, rounded to 56.
+	 */
+	public static final int BASE_BYTES = 56;
+
+	private static final ThreadLocalCounter shadowVars = new ThreadLocalCounter("FTS",
+			"Shadow Vars", RR.maxTidOption.get());
+	private static final ThreadLocalCounter baseBytes = new ThreadLocalCounter("FTS",
+			"Shadow Var Bytes", RR.maxTidOption.get());
+	private static final ThreadLocalCounter clockBytes = new ThreadLocalCounter("FTS",
+			"Read-Shared Clock Bytes", RR.maxTidOption.get());
+	private static final ThreadLocalCounter siteBytes = new ThreadLocalCounter("FTS",
+			"Read-Shared Site Bytes", RR.maxTidOption.get());
+	private static final ThreadLocalCounter adaptiveBytes = new ThreadLocalCounter("FTS",
+			"Adaptive Counter Bytes", RR.maxTidOption.get());
+
+	static {
+		AggregateCounter total = new AggregateCounter("FTS", "Total Shadow Bytes (est.)", baseBytes,
+				clockBytes, siteBytes, adaptiveBytes);
+		new RatioCounter("FTS", "Bytes Per Shadow Var (est.)", total, shadowVars);
+	}
+
+	private static int arrayBytes(int ints) {
+		return (16 + 4 * ints + 7) & ~7;
+	}
+
 	protected FTSVarState() {
 	}
 
@@ -78,23 +129,84 @@ public class FTSVarState extends VectorClock implements ShadowVar {
 			W = Epoch.ZERO;
 			R = epoch;
 		}
+		final int tid = Epoch.tid(epoch);
+		owner = tid;
+		shadowVars.inc(tid);
+		baseBytes.add(tid, BASE_BYTES);
+	}
+
+	// requires: holds this, R != SHARED, and rTid is the tid of R.
+	// Called on the Read-Share transition in place of makeCV.
+	public void makeShared(int len, int rTid, int tid) {
+		makeCV(len);
+		clockBytes.add(tid, arrayBytes(len));
+		if (readSite != AccessSite.NONE) {
+			growReadSites(Math.max(len, Math.max(rTid, tid) + 1), tid)[rTid] = readSite;
+		}
 	}
 
+	public void setReadSite(int tid, int site) {
+		int[] rs = readSites;
+		if (rs == null) {
+			readSite = site;
+			return;
+		}
+		if (tid >= rs.length) {
+			synchronized (this) {
+				growReadSites(tid + 1, tid)[tid] = site;
+			}
+			return;
+		}
+		rs[tid] = site;
+	}
 
-	public void CreateThreadAccessCount(int maxTid,int setVal){
-		threadAccessCount = new int[maxTid];
-		threadSamplingLvl = new int[maxTid];
-		for(int i=0;i<maxTid;++i) {
-			threadAccessCount[i] = setVal;
-			threadSamplingLvl[i] = 0;
+	public int getReadSite(int tid) {
+		final int[] rs = readSites;
+		if (rs == null) {
+			return readSite;
 		}
-		globalCntr = setVal;
-		return;
+		return tid < rs.length ? rs[tid] : AccessSite.NONE;
 	}
 
-	public void initLoctnInfo(int maxTid){
-		prevReads = new SourceLocation[maxTid];
-		return;
+	// requires: holds this
+	private int[] growReadSites(int len, int tid) {
+		final int[] old = readSites;
+		if (old != null && old.length >= len) {
+			return old;
+		}
+		final int n = old == null ? len : Math.max(len, old.length * 2);
+		final int[] rs = new int[n];
+		int i = 0;
+		if (old != null) {
+			System.arraycopy(old, 0, rs, 0, old.length);
+			i = old.length;
+		}
+		for (; i < n; i++) {
+			rs[i] = AccessSite.NONE;
+		}
+		siteBytes.add(tid, arrayBytes(n) - (old == null ? 0 : arrayBytes(old.length)));
+		readSites = rs;
+		return rs;
+	}
+
+	// Returns the per-thread adaptive counters, creating them with
+	// every counter set to cntrInit and level 0 if needed.
+	public int[] inflateAdaptive(int maxTid, int cntrInit, int tid) {
+		int[] a = adaptive;
+		if (a == null) {
+			synchronized (this) {
+				a = adaptive;
+				if (a == null) {
+					a = new int[2 * maxTid];
+					for (int i = 0; i < a.length; i += 2) {
+						a[i] = cntrInit;
+					}
+					adaptiveBytes.add(tid, arrayBytes(a.length));
+					adaptive = a;
+				}
+			}
+		}
+		return a;
 	}
 
 	@Override
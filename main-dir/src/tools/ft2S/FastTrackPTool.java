@@ -0,0 +1,906 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+import java.util.Random;
+
+import acme.util.Assert;
+import acme.util.Util;
+import acme.util.count.AggregateCounter;
+import acme.util.count.Counter;
+import acme.util.count.ThreadLocalCounter;
+import acme.util.decorations.Decoration;
+import acme.util.decorations.DecorationFactory;
+import acme.util.decorations.DecorationFactory.Type;
+import acme.util.decorations.DefaultValue;
+import acme.util.decorations.NullDefault;
+import acme.util.io.XMLWriter;
+import acme.util.option.CommandLine;
+import acme.util.option.CommandLineOption;
+import rr.RRMain;
+import rr.annotations.Abbrev;
+import rr.barrier.BarrierEvent;
+import rr.barrier.BarrierListener;
+import rr.barrier.BarrierMonitor;
+import rr.error.ErrorMessage;
+import rr.error.ErrorMessages;
+import rr.event.AccessEvent;
+import rr.event.AccessEvent.Kind;
+import rr.event.AcquireEvent;
+import rr.event.ArrayAccessEvent;
+import rr.event.ClassAccessedEvent;
+import rr.event.ClassInitializedEvent;
+import rr.event.FieldAccessEvent;
+import rr.event.JoinEvent;
+import rr.event.NewThreadEvent;
+import rr.event.ReleaseEvent;
+import rr.event.StartEvent;
+import rr.event.VolatileAccessEvent;
+import rr.event.WaitEvent;
+import rr.instrument.classes.ArrayAllocSiteTracker;
+import rr.meta.AccessSiteSampler;
+import rr.meta.ArrayAccessInfo;
+import rr.meta.ClassInfo;
+import rr.meta.FieldInfo;
+import rr.meta.MetaDataInfoMaps;
+import rr.meta.OperationInfo;
+import rr.state.ShadowLock;
+import rr.state.ShadowThread;
+import rr.state.ShadowVar;
+import rr.state.ShadowVolatile;
+import rr.tool.RR;
+import rr.tool.Tool;
+import tools.util.Epoch;
+import tools.util.VectorClock;
+
+/*
+ * FastTrack with Pacer-style sampling periods. Unlike FT2S, which decides per access, the
+ * sampling decision here is global: a background thread starts a new period every -pacerPeriod
+ * milliseconds and samples it with probability -pacerRate percent. All threads follow the same
+ * periods.
+ *
+ * - In a sampled period, accesses and synchronization follow the FT2 rules.
+ *
+ * - In an unsampled period, accesses are checked against the state left by sampled accesses but
+ * record nothing. A read only checks the last write. A write checks the last write and reads and
+ * then drops them: any later access that races with one of them also races with this write, and
+ * like Pacer we only promise the race with the most recent access. Variables with no sampled
+ * state left take the fast path without locking.
+ *
+ * - In an unsampled period, threads do not tick their clocks at releases, since no new epoch gets
+ * recorded anywhere. A thread whose clock has not changed since it last released into a lock
+ * skips the release (FTPLockState), and an acquire of a lock the thread has already joined skips
+ * the join (DirtyVectorClock). Lock handoffs inside an unsampled period are therefore O(1) in
+ * the common case. The first operation of a thread in a sampled period ticks its clock, so
+ * accesses sampled from then on are not ordered by releases made without a tick.
+ *
+ * A race whose first access is in a sampled period is detected, unless an intervening unsampled
+ * write dropped that access, so races are found with probability roughly proportional to the
+ * rate.
+ */
+@Abbrev("FT2P")
+public class FastTrackPTool extends Tool implements BarrierListener<FTBarrierState> {
+
+    private static final boolean COUNT_OPERATIONS = RRMain.slowMode();
+    private static final int INIT_VECTOR_CLOCK_SIZE = 4;
+
+    public static final CommandLineOption<Integer> pacerRate = CommandLine.makeInteger(
+            "pacerRate", 3, CommandLineOption.Kind.EXPERIMENTAL,
+            "Percentage of FT2P sampling periods in which accesses are tracked.");
+
+    public static final CommandLineOption<Integer> pacerPeriod = CommandLine.makeInteger(
+            "pacerPeriod", 10, CommandLineOption.Kind.EXPERIMENTAL,
+            "Length of an FT2P sampling period, in milliseconds.");
+
+    // (period number << 1) | 1 if the period is sampled. Only written by the period thread
+    // (and init()).
+    private static volatile int phase;
+
+    private static final Counter sampledPeriods = new Counter("FT2P", "Sampled Periods");
+    private static final Counter unsampledPeriods = new Counter("FT2P", "Unsampled Periods");
+
+    public final ErrorMessage<FieldInfo> fieldErrors = ErrorMessages
+            .makeFieldErrorMessage("FastTrack");
+    public final ErrorMessage<ArrayAccessInfo> arrayErrors = ErrorMessages
+            .makeArrayErrorMessage("FastTrack");
+
+    private final VectorClock maxEpochPerTid = new VectorClock(INIT_VECTOR_CLOCK_SIZE);
+
+    // guarded by classInitTime
+    public static final Decoration<ClassInfo, VectorClock> classInitTime = MetaDataInfoMaps
+            .getClasses().makeDecoration("FastTrackP:ClassInitTime", Type.MULTIPLE,
+                    new DefaultValue<ClassInfo, VectorClock>() {
+                        private static final long serialVersionUID = 1L;
+
+                        public VectorClock get(ClassInfo st) {
+                            return new VectorClock(INIT_VECTOR_CLOCK_SIZE);
+                        }
+                    });
+
+    public FastTrackPTool(final String name, final Tool next, CommandLine commandLine) {
+        super(name, next, commandLine);
+        commandLine.add(pacerRate);
+        commandLine.add(pacerPeriod);
+        new BarrierMonitor<FTBarrierState>(this, new DefaultValue<Object, FTBarrierState>() {
+            private static final long serialVersionUID = 1L;
+
+            public FTBarrierState get(Object k) {
+                return new FTBarrierState(k, INIT_VECTOR_CLOCK_SIZE);
+            }
+        });
+    }
+
+    @Override
+    public void init() {
+        final int rate = pacerRate.get();
+        final long length = pacerPeriod.get();
+        final Random random = new Random();
+        phase = nextPhase(0, random, rate);
+        if (rate <= 0 || rate >= 100) {
+            return; // every period would be the same
+        }
+        final Thread periods = new Thread("RR Sampling Periods") {
+            @Override
+            public void run() {
+                try {
+                    while (true) {
+                        Thread.sleep(length);
+                        phase = nextPhase(phase, random, rate);
+                    }
+                } catch (InterruptedException e) {
+                    Assert.panic(e);
+                }
+            }
+        };
+        periods.setDaemon(true);
+        periods.start();
+    }
+
+    private static int nextPhase(int p, Random random, int rate) {
+        final int next = ((p >> 1) + 1) << 1;
+        if (random.nextInt(100) < rate) {
+            sampledPeriods.inc();
+            return next | 1;
+        } else {
+            unsampledPeriods.inc();
+            return next;
+        }
+    }
+
+    /*
+     * Shadow State: as in FT2, plus St.P -- the phase the thread last saw, and St.version -- bumped
+     * whenever St.V may have changed. Both are thread-local, with the same exceptions as St.V.
+     */
+
+    // invariant: st.E == st.V(st.tid)
+    protected static int/* epoch */ ts_get_E(ShadowThread st) {
+        Assert.panic("Bad");
+        return -1;
+    }
+
+    protected static void ts_set_E(ShadowThread st, int/* epoch */ e) {
+        Assert.panic("Bad");
+    }
+
+    protected static VectorClock ts_get_V(ShadowThread st) {
+        Assert.panic("Bad");
+        return null;
+    }
+
+    protected static void ts_set_V(ShadowThread st, VectorClock V) {
+        Assert.panic("Bad");
+    }
+
+    protected static int ts_get_phase(ShadowThread st) {
+        Assert.panic("Bad");
+        return -1;
+    }
+
+    protected static void ts_set_phase(ShadowThread st, int p) {
+        Assert.panic("Bad");
+    }
+
+    protected static int ts_get_clockVersion(ShadowThread st) {
+        Assert.panic("Bad");
+        return -1;
+    }
+
+    protected static void ts_set_clockVersion(ShadowThread st, int v) {
+        Assert.panic("Bad");
+    }
+
+    // true if st is in a sampled period. Moves st into the current period first.
+    protected static boolean sampling(ShadowThread st) {
+        final int p = phase;
+        if (p != ts_get_phase(st)) {
+            ts_set_phase(st, p);
+            if ((p & 1) != 0) {
+                // st may have released locks without ticking since its last sampled access.
+                tick(st);
+            }
+        }
+        return (p & 1) != 0;
+    }
+
+    protected static void tick(ShadowThread st) {
+        final int tid = st.getTid();
+        final VectorClock tV = ts_get_V(st);
+        tV.tick(tid);
+        ts_set_E(st, tV.get(tid));
+        ts_set_clockVersion(st, ts_get_clockVersion(st) + 1);
+    }
+
+    protected void maxAndIncEpochAndCV(ShadowThread st, VectorClock other, OperationInfo info) {
+        maxEpochAndCV(st, other, info);
+        tick(st);
+    }
+
+    protected void maxEpochAndCV(ShadowThread st, VectorClock other, OperationInfo info) {
+        final int tid = st.getTid();
+        final VectorClock tV = ts_get_V(st);
+        tV.max(other);
+        ts_set_E(st, tV.get(tid));
+        ts_set_clockVersion(st, ts_get_clockVersion(st) + 1);
+    }
+
+    // Only ticks in sampled periods: an unsampled period records no epochs, so a new epoch would
+    // not tell anything apart.
+    protected void incEpochAndCV(ShadowThread st, OperationInfo info) {
+        if (sampling(st)) {
+            tick(st);
+        }
+    }
+
+    static final Decoration<ShadowLock, FTPLockState> lockVs = ShadowLock.makeDecoration(
+            "FastTrackP:ShadowLock", DecorationFactory.Type.MULTIPLE,
+            new DefaultValue<ShadowLock, FTPLockState>() {
+                private static final long serialVersionUID = 1L;
+
+                public FTPLockState get(final ShadowLock lock) {
+                    return new FTPLockState(lock, INIT_VECTOR_CLOCK_SIZE);
+                }
+            });
+
+    // only call when ld.peer() is held
+    static final FTPLockState getV(final ShadowLock ld) {
+        return lockVs.get(ld);
+    }
+
+    static final Decoration<ShadowVolatile, FTVolatileState> volatileVs = ShadowVolatile
+            .makeDecoration("FastTrackP:shadowVolatile", DecorationFactory.Type.MULTIPLE,
+                    new DefaultValue<ShadowVolatile, FTVolatileState>() {
+                        private static final long serialVersionUID = 1L;
+
+                        public FTVolatileState get(final ShadowVolatile vol) {
+                            return new FTVolatileState(vol, INIT_VECTOR_CLOCK_SIZE);
+                        }
+                    });
+
+    // only call when we are in an event handler for the volatile field.
+    protected static final FTVolatileState getV(final ShadowVolatile ld) {
+        return volatileVs.get(ld);
+    }
+
+    @Override
+    public ShadowVar makeShadowVar(final AccessEvent event) {
+        final ShadowThread st = event.getThread();
+        if (event.getKind() == Kind.VOLATILE) {
+            final VectorClock volV = getV(((VolatileAccessEvent) event).getShadowVolatile());
+            volV.max(ts_get_V(st));
+            return super.makeShadowVar(event);
+        } else if (sampling(st)) {
+            return new FTVarState(event.isWrite(), ts_get_E(st));
+        } else {
+            return new FTVarState(event.isWrite(), Epoch.ZERO);
+        }
+    }
+
+    @Override
+    public void create(NewThreadEvent event) {
+        final ShadowThread st = event.getThread();
+
+        if (ts_get_V(st) == null) {
+            final int tid = st.getTid();
+            final VectorClock tV = new VectorClock(INIT_VECTOR_CLOCK_SIZE);
+            ts_set_V(st, tV);
+            synchronized (maxEpochPerTid) {
+                final int/* epoch */ epoch = maxEpochPerTid.get(tid) + 1;
+                tV.set(tid, epoch);
+                ts_set_E(st, epoch);
+            }
+            tick(st);
+            Util.log("Initial E for " + tid + ": " + Epoch.toString(ts_get_E(st)));
+        }
+
+        super.create(event);
+    }
+
+    // requires: lockV's lock is held by st
+    private void acquireLock(final ShadowThread st, final FTPLockState lockV) {
+        final int tid = st.getTid();
+        if (lockV.isCurrentFor(st, tid)) {
+            if (COUNT_OPERATIONS)
+                skippedAcquire.inc(tid);
+            return;
+        }
+        final VectorClock tV = ts_get_V(st);
+        lockV.acquireInto(tV, st, tid);
+        ts_set_E(st, tV.get(tid));
+        ts_set_clockVersion(st, ts_get_clockVersion(st) + 1);
+        if (COUNT_OPERATIONS)
+            acquire.inc(tid);
+    }
+
+    // requires: lockV's lock is held by st
+    private void releaseLock(final ShadowThread st, final FTPLockState lockV) {
+        final int tid = st.getTid();
+        final boolean sampled = sampling(st);
+        final int version = ts_get_clockVersion(st);
+        if (lockV.needsRelease(st, version)) {
+            lockV.releaseFrom(ts_get_V(st), st, tid);
+            lockV.released(st, version);
+            if (COUNT_OPERATIONS)
+                release.inc(tid);
+        } else {
+            if (COUNT_OPERATIONS)
+                skippedRelease.inc(tid);
+        }
+        if (sampled) {
+            tick(st);
+        }
+    }
+
+    @Override
+    public void acquire(final AcquireEvent event) {
+        acquireLock(event.getThread(), getV(event.getLock()));
+        super.acquire(event);
+    }
+
+    @Override
+    public void release(final ReleaseEvent event) {
+        releaseLock(event.getThread(), getV(event.getLock()));
+        super.release(event);
+    }
+
+    static FTVarState ts_get_badVarState(ShadowThread st) {
+        Assert.panic("Bad");
+        return null;
+    }
+
+    static void ts_set_badVarState(ShadowThread st, FTVarState v) {
+        Assert.panic("Bad");
+    }
+
+    protected static ShadowVar getOriginalOrBad(ShadowVar original, ShadowThread st) {
+        final FTVarState savedState = ts_get_badVarState(st);
+        if (savedState != null) {
+            ts_set_badVarState(st, null);
+            return savedState;
+        } else {
+            return original;
+        }
+    }
+
+    @Override
+    public void access(final AccessEvent event) {
+        final ShadowThread st = event.getThread();
+        final ShadowVar shadow = getOriginalOrBad(event.getOriginalShadow(), st);
+
+        if (shadow instanceof FTVarState) {
+            FTVarState sx = (FTVarState) shadow;
+
+            Object target = event.getTarget();
+            if (target == null) {
+                ClassInfo owner = ((FieldAccessEvent) event).getInfo().getField().getOwner();
+                synchronized (classInitTime) {
+                    VectorClock initTime = classInitTime.get(owner);
+                    // only join if it changes st.V, so the next release can still be skipped.
+                    if (!initTime.leq(ts_get_V(st))) {
+                        maxEpochAndCV(st, initTime, event.getAccessInfo()); // won't change current
+                                                                            // epoch
+                    }
+                }
+            }
+
+            if (sampling(st)) {
+                if (event.isWrite()) {
+                    write(event, st, sx);
+                } else {
+                    read(event, st, sx);
+                }
+            } else {
+                if (event.isWrite()) {
+                    unsampledWrite(event, st, sx);
+                } else {
+                    unsampledRead(event, st, sx);
+                }
+            }
+        } else {
+            super.access(event);
+        }
+    }
+
+    private static final ThreadLocalCounter sampledRead = new ThreadLocalCounter("FT2P",
+            "Sampled Read", RR.maxTidOption.get());
+    private static final ThreadLocalCounter sampledWrite = new ThreadLocalCounter("FT2P",
+            "Sampled Write", RR.maxTidOption.get());
+    private static final ThreadLocalCounter unsampledRead = new ThreadLocalCounter("FT2P",
+            "Unsampled Read", RR.maxTidOption.get());
+    private static final ThreadLocalCounter unsampledWrite = new ThreadLocalCounter("FT2P",
+            "Unsampled Write", RR.maxTidOption.get());
+    private static final ThreadLocalCounter acquire = new ThreadLocalCounter("FT2P", "Acquire",
+            RR.maxTidOption.get());
+    private static final ThreadLocalCounter skippedAcquire = new ThreadLocalCounter("FT2P",
+            "Skipped Acquire", RR.maxTidOption.get());
+    private static final ThreadLocalCounter release = new ThreadLocalCounter("FT2P", "Release",
+            RR.maxTidOption.get());
+    private static final ThreadLocalCounter skippedRelease = new ThreadLocalCounter("FT2P",
+            "Skipped Release", RR.maxTidOption.get());
+    private static final ThreadLocalCounter other = new ThreadLocalCounter("FT2P", "Other",
+            RR.maxTidOption.get());
+
+    static {
+        AggregateCounter accesses = new AggregateCounter("FT2P", "Total Access Ops", sampledRead,
+                sampledWrite, unsampledRead, unsampledWrite);
+        new AggregateCounter("FT2P", "Total Ops", accesses, acquire, skippedAcquire, release,
+                skippedRelease, other);
+    }
+
+    protected void read(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+        final int/* epoch */ e = ts_get_E(st);
+
+        /* optional */ {
+            final int/* epoch */ r = sx.R;
+            if (r == e || (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e)) {
+                if (COUNT_OPERATIONS)
+                    sampledRead.inc(st.getTid());
+                return;
+            }
+        }
+
+        synchronized (sx) {
+            final VectorClock tV = ts_get_V(st);
+            final int/* epoch */ r = sx.R;
+            final int/* epoch */ w = sx.W;
+            final int wTid = Epoch.tid(w);
+            final int tid = st.getTid();
+
+            if (COUNT_OPERATIONS)
+                sampledRead.inc(tid);
+
+            if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+                error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
+                // best effort recovery:
+                return;
+            }
+
+            if (r != Epoch.READ_SHARED) {
+                final int rTid = Epoch.tid(r);
+                if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
+                    sx.R = e;
+                } else {
+                    int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
+                    sx.makeCV(initSize);
+                    sx.set(rTid, r);
+                    sx.set(tid, e);
+                    sx.R = Epoch.READ_SHARED;
+                }
+            } else {
+                sx.set(tid, e);
+            }
+        }
+    }
+
+    protected void unsampledRead(final AccessEvent event, final ShadowThread st,
+            final FTVarState sx) {
+        final int/* epoch */ w = sx.W;
+        final int wTid = Epoch.tid(w);
+        final int tid = st.getTid();
+        if (COUNT_OPERATIONS)
+            unsampledRead.inc(tid);
+        if (wTid != tid && !Epoch.leq(w, ts_get_V(st).get(wTid))) {
+            error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid);
+        }
+    }
+
+    // Inlined at each non-volatile read. Handles every case without a race; on a race, hands
+    // sx to the slow path through badVarState so access() reports it.
+    public static boolean readFastPath(final ShadowVar shadow, final ShadowThread st) {
+        if (shadow instanceof FTVarState) {
+            final FTVarState sx = ((FTVarState) shadow);
+
+            if (!sampling(st)) {
+                final int/* epoch */ w = sx.W;
+                final int wTid = Epoch.tid(w);
+                if (wTid != st.getTid() && !Epoch.leq(w, ts_get_V(st).get(wTid))) {
+                    ts_set_badVarState(st, sx);
+                    return false;
+                }
+                if (COUNT_OPERATIONS)
+                    unsampledRead.inc(st.getTid());
+                return true;
+            }
+
+            final int/* epoch */ e = ts_get_E(st);
+
+            /* optional */ {
+                final int/* epoch */ r = sx.R;
+                if (r == e || (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e)) {
+                    if (COUNT_OPERATIONS)
+                        sampledRead.inc(st.getTid());
+                    return true;
+                }
+            }
+
+            synchronized (sx) {
+                final int tid = st.getTid();
+                final VectorClock tV = ts_get_V(st);
+                final int/* epoch */ r = sx.R;
+                final int/* epoch */ w = sx.W;
+                final int wTid = Epoch.tid(w);
+                if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+                    ts_set_badVarState(st, sx);
+                    return false;
+                }
+
+                if (r != Epoch.READ_SHARED) {
+                    final int rTid = Epoch.tid(r);
+                    if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
+                        sx.R = e;
+                    } else {
+                        int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
+                        sx.makeCV(initSize);
+                        sx.set(rTid, r);
+                        sx.set(tid, e);
+                        sx.R = Epoch.READ_SHARED;
+                    }
+                } else {
+                    sx.set(tid, e);
+                }
+                if (COUNT_OPERATIONS)
+                    sampledRead.inc(tid);
+                return true;
+            }
+        } else {
+            return false;
+        }
+    }
+
+    /***/
+
+    protected void write(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+        final int/* epoch */ e = ts_get_E(st);
+
+        /* optional */ {
+            if (sx.W == e) {
+                if (COUNT_OPERATIONS)
+                    sampledWrite.inc(st.getTid());
+                return;
+            }
+        }
+
+        if (COUNT_OPERATIONS)
+            sampledWrite.inc(st.getTid());
+        synchronized (sx) {
+            checkWrite(event, st, sx);
+            sx.W = e;
+        }
+    }
+
+    protected void unsampledWrite(final AccessEvent event, final ShadowThread st,
+            final FTVarState sx) {
+        if (COUNT_OPERATIONS)
+            unsampledWrite.inc(st.getTid());
+        synchronized (sx) {
+            checkWrite(event, st, sx);
+            sx.W = Epoch.ZERO;
+            sx.R = Epoch.ZERO;
+        }
+    }
+
+    // requires: sx is held. Reports every earlier access that races with this write.
+    private void checkWrite(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+        final int/* epoch */ w = sx.W;
+        final int wTid = Epoch.tid(w);
+        final int tid = st.getTid();
+        final VectorClock tV = ts_get_V(st);
+
+        if (wTid != tid /* optimization */ && !Epoch.leq(w, tV.get(wTid))) {
+            error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid);
+        }
+
+        final int/* epoch */ r = sx.R;
+        if (r != Epoch.READ_SHARED) {
+            final int rTid = Epoch.tid(r);
+            if (rTid != tid /* optimization */ && !Epoch.leq(r, tV.get(rTid))) {
+                error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid);
+            }
+        } else {
+            for (int prevReader = sx.nextGt(tV, 0); prevReader > -1; prevReader = sx
+                    .nextGt(tV, prevReader + 1)) {
+                error(event, sx, "Read(Shared)-Write Race", "Read by ", prevReader, "Write by ",
+                        tid);
+            }
+        }
+    }
+
+    // Inlined at each non-volatile write; same protocol as readFastPath.
+    // only count events when returning true;
+    public static boolean writeFastPath(final ShadowVar shadow, final ShadowThread st) {
+        if (shadow instanceof FTVarState) {
+            final FTVarState sx = ((FTVarState) shadow);
+
+            final boolean sampled = sampling(st);
+            final int/* epoch */ E = sampled ? ts_get_E(st) : Epoch.ZERO;
+
+            /* optional */ {
+                // unsampled: nothing left to check or drop
+                if (sx.W == E && (sampled || sx.R == Epoch.ZERO)) {
+                    if (COUNT_OPERATIONS)
+                        (sampled ? sampledWrite : unsampledWrite).inc(st.getTid());
+                    return true;
+                }
+            }
+
+            synchronized (sx) {
+                final int tid = st.getTid();
+                final int/* epoch */ w = sx.W;
+                final int wTid = Epoch.tid(w);
+                final VectorClock tV = ts_get_V(st);
+
+                if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+                    ts_set_badVarState(st, sx);
+                    return false;
+                }
+
+                final int/* epoch */ r = sx.R;
+                if (r != Epoch.READ_SHARED) {
+                    final int rTid = Epoch.tid(r);
+                    if (rTid != tid && !Epoch.leq(r, tV.get(rTid))) {
+                        ts_set_badVarState(st, sx);
+                        return false;
+                    }
+                } else {
+                    if (sx.anyGt(tV)) {
+                        ts_set_badVarState(st, sx);
+                        return false;
+                    }
+                }
+                sx.W = E;
+                if (!sampled) {
+                    sx.R = Epoch.ZERO;
+                }
+                if (COUNT_OPERATIONS)
+                    (sampled ? sampledWrite : unsampledWrite).inc(tid);
+                return true;
+            }
+        } else {
+            return false;
+        }
+    }
+
+    /*****/
+
+    @Override
+    public void volatileAccess(final VolatileAccessEvent event) {
+        final ShadowThread st = event.getThread();
+        final VectorClock volV = getV((event).getShadowVolatile());
+
+        if (event.isWrite()) {
+            final VectorClock tV = ts_get_V(st);
+            volV.max(tV);
+            incEpochAndCV(st, event.getAccessInfo());
+        } else {
+            maxEpochAndCV(st, volV, event.getAccessInfo());
+        }
+
+        super.volatileAccess(event);
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    // st forked su
+    @Override
+    public void preStart(final StartEvent event) {
+        final ShadowThread st = event.getThread();
+        final ShadowThread su = event.getNewThread();
+        final VectorClock tV = ts_get_V(st);
+
+        // Safe to access su.V, because u has not started yet. See FastTrackTool.
+        maxAndIncEpochAndCV(su, tV, event.getInfo());
+        incEpochAndCV(st, event.getInfo());
+
+        super.preStart(event);
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    @Override
+    public void stop(ShadowThread st) {
+        synchronized (maxEpochPerTid) {
+            maxEpochPerTid.set(st.getTid(), ts_get_E(st));
+        }
+        super.stop(st);
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    // t joined on u
+    @Override
+    public void postJoin(final JoinEvent event) {
+        final ShadowThread st = event.getThread();
+        final ShadowThread su = event.getJoiningThread();
+
+        maxEpochAndCV(st, ts_get_V(su), event.getInfo());
+
+        super.postJoin(event);
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    @Override
+    public void preWait(WaitEvent event) {
+        releaseLock(event.getThread(), getV(event.getLock())); // we hold lock
+        super.preWait(event);
+    }
+
+    @Override
+    public void postWait(WaitEvent event) {
+        acquireLock(event.getThread(), getV(event.getLock())); // we hold lock here
+        super.postWait(event);
+    }
+
+    public static String toString(final ShadowThread td) {
+        return String.format("[tid=%-2d   C=%s   E=%s]", td.getTid(), ts_get_V(td),
+                Epoch.toString(ts_get_E(td)));
+    }
+
+    private final Decoration<ShadowThread, VectorClock> vectorClockForBarrierEntry = ShadowThread
+            .makeDecoration("FT2P:barrier", DecorationFactory.Type.MULTIPLE,
+                    new NullDefault<ShadowThread, VectorClock>());
+
+    public void preDoBarrier(BarrierEvent<FTBarrierState> event) {
+        final ShadowThread st = event.getThread();
+        final FTBarrierState barrierObj = event.getBarrier();
+        synchronized (barrierObj) {
+            final VectorClock barrierV = barrierObj.enterBarrier();
+            barrierV.max(ts_get_V(st));
+            vectorClockForBarrierEntry.set(st, barrierV);
+        }
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    public void postDoBarrier(BarrierEvent<FTBarrierState> event) {
+        final ShadowThread st = event.getThread();
+        final FTBarrierState barrierObj = event.getBarrier();
+        synchronized (barrierObj) {
+            final VectorClock barrierV = vectorClockForBarrierEntry.get(st);
+            barrierObj.stopUsingOldVectorClock(barrierV);
+            maxAndIncEpochAndCV(st, barrierV, null);
+        }
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    ///
+
+    @Override
+    public void classInitialized(ClassInitializedEvent event) {
+        final ShadowThread st = event.getThread();
+        final VectorClock tV = ts_get_V(st);
+        synchronized (classInitTime) {
+            VectorClock initTime = classInitTime.get(event.getRRClass());
+            initTime.copy(tV);
+        }
+        incEpochAndCV(st, null);
+        super.classInitialized(event);
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    @Override
+    public void classAccessed(ClassAccessedEvent event) {
+        final ShadowThread st = event.getThread();
+        synchronized (classInitTime) {
+            final VectorClock initTime = classInitTime.get(event.getRRClass());
+            maxEpochAndCV(st, initTime, null);
+        }
+        if (COUNT_OPERATIONS)
+            other.inc(st.getTid());
+    }
+
+    @Override
+    public void printXML(XMLWriter xml) {
+        for (ShadowThread td : ShadowThread.getThreads()) {
+            xml.print("thread", toString(td));
+        }
+    }
+
+    protected void error(final AccessEvent ae, final FTVarState x, final String description,
+            final String prevOp, final int prevTid, final String curOp, final int curTid) {
+
+        AccessSiteSampler.race(ae.getAccessInfo());
+        if (ae instanceof FieldAccessEvent) {
+            fieldError((FieldAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
+        } else {
+            arrayError((ArrayAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
+        }
+    }
+
+    protected void arrayError(final ArrayAccessEvent aae, final FTVarState sx,
+            final String description, final String prevOp, final int prevTid, final String curOp,
+            final int curTid) {
+        final ShadowThread st = aae.getThread();
+        final Object target = aae.getTarget();
+
+        if (arrayErrors.stillLooking(aae.getInfo())) {
+            arrayErrors.error(st, aae.getInfo(), "Alloc Site", ArrayAllocSiteTracker.get(target),
+                    "Shadow State", sx, "Current Thread", toString(st), "Array",
+                    Util.objectToIdentityString(target) + "[" + aae.getIndex() + "]", "Message",
+                    description, "Previous Op", prevOp + " " + ShadowThread.get(prevTid),
+                    "Currrent Op", curOp + " " + ShadowThread.get(curTid), "Stack",
+                    ShadowThread.stackDumpForErrorMessage(st));
+        }
+        Assert.assertTrue(prevTid != curTid);
+
+        aae.getArrayState().specialize();
+
+        if (!arrayErrors.stillLooking(aae.getInfo())) {
+            advance(aae);
+        }
+    }
+
+    protected void fieldError(final FieldAccessEvent fae, final FTVarState sx,
+            final String description, final String prevOp, final int prevTid, final String curOp,
+            final int curTid) {
+        final FieldInfo fd = fae.getInfo().getField();
+        final ShadowThread st = fae.getThread();
+        final Object target = fae.getTarget();
+
+        if (fieldErrors.stillLooking(fd)) {
+            fieldErrors.error(st, fd, "Shadow State", sx, "Current Thread", toString(st), "Class",
+                    (target == null ? fd.getOwner() : target.getClass()), "Field",
+                    Util.objectToIdentityString(target) + "." + fd, "Message", description,
+                    "Previous Op", prevOp + " " + ShadowThread.get(prevTid), "Currrent Op",
+                    curOp + " " + ShadowThread.get(curTid), "Stack",
+                    ShadowThread.stackDumpForErrorMessage(st));
+        }
+
+        Assert.assertTrue(prevTid != curTid);
+
+        if (!fieldErrors.stillLooking(fd)) {
+            advance(fae);
+        }
+    }
+}
@@ -68,6 +68,7 @@ import rr.event.VolatileAccessEvent;
 import rr.event.WaitEvent;
 import rr.instrument.classes.ArrayAllocSiteTracker;
 
+import rr.meta.AccessSiteSampler;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.ClassInfo;
 import rr.meta.FieldInfo;
@@ -101,7 +102,6 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     private static final boolean COUNT_OPERATIONS = RRMain.slowMode();
     private static final int INIT_VECTOR_CLOCK_SIZE = 4;
 
-    private static final Object printLock = new Object();
     /** --- the extra vatiables for the samling part */
     public static final CommandLineOption<Integer> samplingRate = CommandLine
             .makeInteger("samplingrate", 100, CommandLineOption.Kind.EXPERIMENTAL, "sampling_rate");
@@ -110,7 +110,7 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
             .makeString("burstLvl", "thread", CommandLineOption.Kind.EXPERIMENTAL, "global or local level");
 
     public static final CommandLineOption<String> samplingScheme = CommandLine
-            .makeString("samplingscheme", "count", CommandLineOption.Kind.EXPERIMENTAL, "sampling_scheme");
+            .makeString("samplingscheme", "count", CommandLineOption.Kind.EXPERIMENTAL, "sampling scheme: count, adaptive, geometric or bernoulli");
 
     public static final CommandLineOption<Integer> samplingType = CommandLine
             .makeInteger("samplingtype", 0, CommandLineOption.Kind.EXPERIMENTAL, "sampling_type");
@@ -124,23 +124,14 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     public static final CommandLineOption<Integer> burstLen = CommandLine
             .makeInteger("burstlen", 0, CommandLineOption.Kind.EXPERIMENTAL, "burst_len");
 
-    // for the global sampling 'count'
-    public static boolean setFlag; private static final Object setFlagLock = new Object();
+    public static final CommandLineOption<Boolean> dirtyLockClocks = CommandLine
+            .makeBoolean("dirtyLockClocks", false, CommandLineOption.Kind.EXPERIMENTAL,
+                    "Only merge lock clock entries changed since the acquiring thread last held the lock.  See DirtyVectorClock.");
 
-    public static int globalCounter; private static final Object globalCntrLock = new Object();
-    public static boolean[] globalPermu;
-
-    // for the thread local sampling 'count'
-    public static int[] threadCounter;
-    public static boolean[][] threadPermu;
-
-    // for the 'adaptive' sampling
-    public static int maxSamplingLvl;
-    public static boolean[][] adaptivPermu;
-    public static int  burstLength;
-    public static int decRate;
-    public static int minSamp;
-    public static boolean burstLvl;
+    // resolved from the options above in init(); see SamplingPolicy. Static so the fast
+    // paths can reach it.
+    private static SamplingPolicy policy;
+    private static boolean dirtyLocks;
     /** -------------------------------------------- */
 
     public final ErrorMessage<FieldInfo> fieldErrors = ErrorMessages
@@ -179,7 +170,7 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
         commandLine.add(decrementRate);
         commandLine.add(burstLen);
         commandLine.add(burstLevel);
-        setFlag = true;
+        commandLine.add(dirtyLockClocks);
         /**-----------------------------------*/
         new BarrierMonitor<FTBarrierState>(this, new DefaultValue<Object, FTBarrierState>() {
             public FTBarrierState get(Object k) {
@@ -188,12 +179,20 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
         });
     }
 
+    @Override
+    public void init() {
+        policy = SamplingPolicy.make(samplingScheme.get(), samplingType.get(), samplingRate.get(),
+                burstLevel.get(), burstLen.get(), minSampling.get(), decrementRate.get(),
+                RR.maxTidOption.get());
+        dirtyLocks = dirtyLockClocks.get();
+    }
+
     /*
      * Shadow State: St.E -- epoch decoration on ShadowThread - Thread-local. Never access from a
      * different thread St.V -- VectorClock decoration on ShadowThread - Thread-local while thread
      * is running. - The thread starting t may access st.V before the start. - Any thread joining on
-     * t may read st.V after the join. Sm.V -- FTLockState decoration on ShadowLock - See
-     * FTLockState for synchronization rules. Sx.R,Sx.W,Sx.V -- FTSVarState objects - See FTSVarState
+     * t may read st.V after the join. Sm.V -- FTSLockState decoration on ShadowLock - See
+     * FTSLockState for synchronization rules. Sx.R,Sx.W,Sx.V -- FTSVarState objects - See FTSVarState
      * for synchronization rules. Svx.V -- FTVolatileState decoration on ShadowVolatile (serves same
      * purpose as L for volatiles) - See FTVolatileState for synchronization rules. Sb.V --
      * FTBarrierState decoration on Barriers - See FTBarrierState for synchronization rules.
@@ -218,6 +217,16 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
         Assert.panic("Bad");
     }
 
+    // only touched by the thread st itself once it is running
+    protected static SamplerState ts_get_sampler(ShadowThread st) {
+        Assert.panic("Bad");
+        return null;
+    }
+
+    protected static void ts_set_sampler(ShadowThread st, SamplerState s) {
+        Assert.panic("Bad");
+    }
+
 
     protected void maxAndIncEpochAndCV(ShadowThread st, VectorClock other, OperationInfo info) {
         final int tid = st.getTid();
@@ -241,17 +250,17 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
         ts_set_E(st, tV.get(tid));
     }
 
-    /** FTLockState extends vector clock in some way */
-    static final Decoration<ShadowLock, FTLockState> lockVs = ShadowLock.makeDecoration(
+    /** FTSLockState extends vector clock in some way */
+    static final Decoration<ShadowLock, FTSLockState> lockVs = ShadowLock.makeDecoration(
             "FastTrack:ShadowLock", DecorationFactory.Type.MULTIPLE,
-            new DefaultValue<ShadowLock, FTLockState>() {
-                public FTLockState get(final ShadowLock lock) {
-                    return new FTLockState(lock, INIT_VECTOR_CLOCK_SIZE);
+            new DefaultValue<ShadowLock, FTSLockState>() {
+                public FTSLockState get(final ShadowLock lock) {
+                    return new FTSLockState(lock, INIT_VECTOR_CLOCK_SIZE);
                 }
             });
 
     // only call when ld.peer() is held
-    static final FTLockState getV(final ShadowLock ld) {
+    static final FTSLockState getV(final ShadowLock ld) {
         return lockVs.get(ld);
     }
 
@@ -277,11 +286,8 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
             volV.max(ts_get_V(st));
             return super.makeShadowVar(event);
         } else {
-            FTVarState temp = new FTVarState(event.isWrite(), ts_get_E(event.getThread()));
-            if(samplingScheme.get().equals("adaptive")){
-                temp.CreateThreadAccessCount(RR.maxTidOption.get().intValue(),burstLen.get().intValue());
-            }
-            temp.initLoctnInfo(RR.maxTidOption.get());
+            FTSVarState temp = new FTSVarState(event.isWrite(), ts_get_E(event.getThread()));
+            policy.initVar(temp);
             return temp;
         }
 
@@ -299,67 +305,9 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
                 tV.set(tid, epoch);
                 ts_set_E(st, epoch);
             }
-            if(samplingScheme.get().equals("count")){
-                // count, 1, global sampling
-                if(samplingType.get()==1 && setFlag){
-                    synchronized(globalCntrLock){
-                        globalCounter = 0;
-                        globalPermu = arrayPermute(100,samplingRate.get().intValue());
-                    }
-                    setFlag = false;
-                }
-                //count, 2 thread level sampling
-                else if(samplingType.get()==2){
-                    if(setFlag) {
-                        synchronized (setFlagLock) {
-                            if (setFlag) {
-                                threadCounter = new int[RR.maxTidOption.get()];
-                                for (int i = 0; i < RR.maxTidOption.get(); ++i) threadCounter[i] = 0;
-                                threadPermu = new boolean[RR.maxTidOption.get()][100];
-                                setFlag = false;
-                            }
-                        }
-                    }
-
-                    threadPermu[tid] = arrayPermute(100,samplingRate.get().intValue());
-                }
-            }
-            //adaptive sampling case
-            else {
-                if(setFlag){
-                    synchronized (setFlagLock){
-                        if(setFlag){
-                            burstLength = burstLen.get().intValue();
-                            minSamp = minSampling.get().intValue();
-                            decRate = decrementRate.get().intValue();
-
-                            if(samplingType.get().intValue()==0){
-                                maxSamplingLvl = (burstLength-minSamp)/decRate + 1;
-                                adaptivPermu = new boolean[maxSamplingLvl][burstLength];
-                                for(int i=0;i<maxSamplingLvl;++i)
-                                    adaptivPermu[i] = arrayPermute(burstLength,burstLength-decRate*i);
-                                }
-                            else{
-                                int dummy = burstLength;
-                                maxSamplingLvl = 0;
-                                while(dummy>=minSamp){
-                                    maxSamplingLvl++;
-                                    dummy /= decRate;
-                                }
-                                adaptivPermu = new boolean[maxSamplingLvl][burstLength];
-                                dummy = burstLength;
-                                for(int i=0;i<maxSamplingLvl;++i) {
-                                    adaptivPermu[i] = arrayPermute(burstLength, dummy);
-                                    dummy /= decRate;
-                                }
-                            }
-                            --maxSamplingLvl;
-                            burstLvl = (burstLevel.get().equals("global")?true:false);
-                            setFlag = false;
-                        }
-                    }
-                }
-            }
+            final SamplerState sampler = new SamplerState(tid);
+            policy.initThread(sampler, tid);
+            ts_set_sampler(st, sampler);
 
             incEpochAndCV(st, null);
             Util.log("Initial E for " + tid + ": " + Epoch.toString(ts_get_E(st)));
@@ -369,24 +317,16 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     }
 
 
-    public boolean[] arrayPermute(int len, int tees){
-
-        List<Boolean> dummy = new ArrayList<Boolean>();
-        for(int i = 0; i < tees; i++) dummy.add(true);
-        for(int i = 0; i < (len-tees); i++) dummy.add(false);
-        Collections.shuffle(dummy);
-        boolean[] temp = new boolean[len];
-        for(int i=0;i<len;++i)
-            temp[i] = dummy.get(i).booleanValue();
-        return temp;
-    }
-
     @Override
     public void acquire(final AcquireEvent event) {
         final ShadowThread st = event.getThread();
-        final FTLockState lockV = getV(event.getLock());
+        final FTSLockState lockV = getV(event.getLock());
 
-        maxEpochAndCV(st, lockV, event.getInfo());
+        if (dirtyLocks) {
+            lockV.acquireInto(ts_get_V(st), st, st.getTid());
+        } else {
+            maxEpochAndCV(st, lockV, event.getInfo());
+        }
 
         super.acquire(event);
         if (COUNT_OPERATIONS)
@@ -397,9 +337,13 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     public void release(final ReleaseEvent event) {
         final ShadowThread st = event.getThread();
         final VectorClock tV = ts_get_V(st);
-        final VectorClock lockV = getV(event.getLock());
+        final FTSLockState lockV = getV(event.getLock());
 
-        lockV.max(tV);
+        if (dirtyLocks) {
+            lockV.releaseFrom(tV, st, st.getTid());
+        } else {
+            lockV.max(tV);
+        }
         incEpochAndCV(st, event.getInfo());
 
         super.release(event);
@@ -408,17 +352,17 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     }
 
     
-    static FTVarState ts_get_badVarState(ShadowThread st) {
+    static FTSVarState ts_get_badVarState(ShadowThread st) {
         Assert.panic("Bad");
         return null;
     }
 
-    static void ts_set_badVarState(ShadowThread st, FTVarState v) {
+    static void ts_set_badVarState(ShadowThread st, FTSVarState v) {
         Assert.panic("Bad");
     }
 
     protected static ShadowVar getOriginalOrBad(ShadowVar original, ShadowThread st) {
-        final FTVarState savedState = ts_get_badVarState(st);
+        final FTSVarState savedState = ts_get_badVarState(st);
         if (savedState != null) {
             ts_set_badVarState(st, null);
             return savedState;
@@ -441,9 +385,9 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
         final ShadowThread st = event.getThread();
         final ShadowVar shadow = getOriginalOrBad(event.getOriginalShadow(), st);
 
-        if (shadow instanceof FTVarState) {
+        if (shadow instanceof FTSVarState) {
 
-            FTVarState sx = (FTVarState) shadow;
+            FTSVarState sx = (FTSVarState) shadow;
 
             Object target = event.getTarget();
             if (target == null) {
@@ -455,51 +399,13 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
                     // epoch
                 }
             }
-            // for the checks
-            boolean sampleCheck = false;
-            int istype = samplingType.get().intValue();
-            int tid = st.getTid();
-            // normal samplint
-            if(samplingScheme.get().equals("count")){
-                if(istype==0)
-                    sampleCheck = (Math.random()*100 < samplingRate.get()) ? true : false;
-                else if(istype==1){
-                    synchronized (globalCntrLock){
-                        sampleCheck = globalPermu[globalCounter];
-                        globalCounter++;
-                        if(globalCounter==100)
-                            globalCounter = 0;
-                    }
-                }
-                else{
-                    sampleCheck = threadPermu[tid][threadCounter[tid]];
-                    threadCounter[tid]++;
-                    if(threadCounter[tid]==100)
-                        threadCounter[tid] = 0;
-                }
-            }
-            // adaptive sampling
-            else{
-                if(burstLvl){
-                    synchronized (sx){
-                        sx.globalCntr--;
-                        sampleCheck = adaptivPermu[sx.samplingLvl][sx.globalCntr];
-                        if(sx.globalCntr==0){
-                            sx.globalCntr = burstLength;
-                            if(sx.samplingLvl<maxSamplingLvl)
-                                sx.samplingLvl++;
-                        }
-                    }
-                }
-                else{
-                    sx.threadAccessCount[tid]--;
-                    sampleCheck =adaptivPermu[sx.threadSamplingLvl[tid]][sx.threadAccessCount[tid]];
-                    if(sx.threadAccessCount[tid]==0){
-                        sx.threadAccessCount[tid] = burstLength;
-                        if(sx.threadSamplingLvl[tid]<maxSamplingLvl)
-                            sx.threadSamplingLvl[tid]++;
-                    }
-                }
+            final SamplerState ts = ts_get_sampler(st);
+            final boolean sampleCheck;
+            if (ts.pending) {
+                ts.pending = false;
+                sampleCheck = true;
+            } else {
+                sampleCheck = policy.sample(ts, sx, st.getTid());
             }
             if(sampleCheck) {
                 if (event.isWrite()) {
@@ -567,7 +473,7 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     }
 
 
-    protected void read(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+    protected void read(final AccessEvent event, final ShadowThread st, final FTSVarState sx) {
         final int/* epoch */ e = ts_get_E(st);
 
         /* optional */ {
@@ -608,7 +514,7 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
                     if (COUNT_OPERATIONS)
                         readShare.inc(tid);
                     int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
-                    sx.makeCV(initSize);
+                    sx.makeShared(initSize, rTid, tid);
                     sx.set(rTid, r);
                     sx.set(tid, e);
                     sx.R = Epoch.READ_SHARED;
@@ -622,7 +528,7 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     }
 
 
-    protected void write(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+    protected void write(final AccessEvent event, final ShadowThread st, final FTSVarState sx) {
         final int/* epoch */ e = ts_get_E(st);
 
         /* optional */ {
@@ -676,6 +582,52 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     }
 
 
+    // Inlined at each non-volatile read. Accesses that are not sampled, and sampled accesses
+    // that hit a same-epoch rule, finish here; anything else goes to access() with the
+    // sampling decision carried over in SamplerState.pending.
+    public static boolean readFastPath(final ShadowVar shadow, final ShadowThread st) {
+        if (shadow instanceof FTSVarState) {
+            final FTSVarState sx = ((FTSVarState) shadow);
+            final SamplerState ts = ts_get_sampler(st);
+            if (!policy.sample(ts, sx, st.getTid())) {
+                return true;
+            }
+
+            final int/* epoch */ e = ts_get_E(st);
+            final int/* epoch */ r = sx.R;
+            if (r == e) {
+                if (COUNT_OPERATIONS)
+                    readSameEpoch.inc(st.getTid());
+                return true;
+            } else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
+                if (COUNT_OPERATIONS)
+                    readSharedSameEpoch.inc(st.getTid());
+                return true;
+            }
+            ts.pending = true;
+        }
+        return false;
+    }
+
+    // Same protocol as readFastPath.
+    public static boolean writeFastPath(final ShadowVar shadow, final ShadowThread st) {
+        if (shadow instanceof FTSVarState) {
+            final FTSVarState sx = ((FTSVarState) shadow);
+            final SamplerState ts = ts_get_sampler(st);
+            if (!policy.sample(ts, sx, st.getTid())) {
+                return true;
+            }
+
+            if (sx.W == ts_get_E(st)) {
+                if (COUNT_OPERATIONS)
+                    writeSameEpoch.inc(st.getTid());
+                return true;
+            }
+            ts.pending = true;
+        }
+        return false;
+    }
+
     @Override
     public void volatileAccess(final VolatileAccessEvent event) {
         final ShadowThread st = event.getThread();
@@ -747,8 +699,13 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     @Override
     public void preWait(WaitEvent event) {
         final ShadowThread st = event.getThread();
-        final VectorClock lockV = getV(event.getLock());
-        lockV.max(ts_get_V(st)); // we hold lock, so no need to sync here...
+        final FTSLockState lockV = getV(event.getLock());
+        // we hold lock, so no need to sync here...
+        if (dirtyLocks) {
+            lockV.releaseFrom(ts_get_V(st), st, st.getTid());
+        } else {
+            lockV.max(ts_get_V(st));
+        }
         incEpochAndCV(st, event.getInfo());
         super.preWait(event);
         if (COUNT_OPERATIONS)
@@ -758,8 +715,13 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
     @Override
     public void postWait(WaitEvent event) {
         final ShadowThread st = event.getThread();
-        final VectorClock lockV = getV(event.getLock());
-        maxEpochAndCV(st, lockV, event.getInfo()); // we hold lock here
+        final FTSLockState lockV = getV(event.getLock());
+        // we hold lock here
+        if (dirtyLocks) {
+            lockV.acquireInto(ts_get_V(st), st, st.getTid());
+        } else {
+            maxEpochAndCV(st, lockV, event.getInfo());
+        }
         super.postWait(event);
         if (COUNT_OPERATIONS)
             wait.inc(st.getTid());
@@ -832,9 +794,10 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
         }
     }
 
-    protected void error(final AccessEvent ae, final FTVarState x, final String description,
+    protected void error(final AccessEvent ae, final FTSVarState x, final String description,
                          final String prevOp, final int prevTid, final String curOp, final int curTid) {
 
+        AccessSiteSampler.race(ae.getAccessInfo());
         if (ae instanceof FieldAccessEvent) {
             fieldError((FieldAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         } else {
@@ -844,7 +807,7 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
 
     }
 
-    protected void arrayError(final ArrayAccessEvent aae, final FTVarState sx,
+    protected void arrayError(final ArrayAccessEvent aae, final FTSVarState sx,
                               final String description, final String prevOp, final int prevTid, final String curOp,
                               final int curTid) {
         final ShadowThread st = aae.getThread();
@@ -867,7 +830,7 @@ public class FastTrackSTool extends Tool implements BarrierListener<FTBarrierSta
         }
     }
 
-    protected void fieldError(final FieldAccessEvent fae, final FTVarState sx,
+    protected void fieldError(final FieldAccessEvent fae, final FTSVarState sx,
                               final String description, final String prevOp, final int prevTid, final String curOp,
                               final int curTid) {
         final FieldInfo fd = fae.getInfo().getField();
@@ -0,0 +1,82 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+/**
+ * Samples at rate/100 by skipping a geometrically distributed number of accesses between samples.
+ * Unsampled accesses cost a decrement and a compare; the random draw only happens on sampled
+ * accesses.
+ */
+public final class GeometricSamplingPolicy extends SamplingPolicy {
+
+	private final int rate;
+
+	// 1 / ln(1 - p), or 0 if every access is sampled.
+	private final double scale;
+
+	public GeometricSamplingPolicy(int rate) {
+		this.rate = Math.max(0, Math.min(100, rate));
+		this.scale = (this.rate == 100 || this.rate == 0) ? 0 : 1 / Math.log(1 - this.rate / 100.0);
+	}
+
+	@Override
+	public void initThread(SamplerState ts, int tid) {
+		ts.skip = nextSkip(ts);
+	}
+
+	@Override
+	public boolean sample(SamplerState ts, FTSVarState sx, int tid) {
+		final int s = ts.skip;
+		if (s > 0) {
+			ts.skip = s - 1;
+			return false;
+		}
+		ts.skip = nextSkip(ts);
+		return true;
+	}
+
+	private int nextSkip(SamplerState ts) {
+		if (rate == 0)
+			return Integer.MAX_VALUE;
+		if (scale == 0)
+			return 0;
+		// u uniform in (0,1]
+		final double u = ((ts.next() >>> 11) + 1) * 0x1.0p-53;
+		return (int) Math.min(Integer.MAX_VALUE, Math.log(u) * scale);
+	}
+
+	@Override
+	public String toString() {
+		return "geometric(" + rate + "%)";
+	}
+}
@@ -0,0 +1,90 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+/**
+ * Per-thread state used by a SamplingPolicy. One instance hangs off each ShadowThread (via the
+ * ts_get_sampler/ts_set_sampler extension in the sampling tools) and is only ever read or written
+ * by the thread that owns it, so no synchronization is needed.
+ *
+ * The fields are written on every access, so they are padded by a cache line on each side to keep
+ * the SamplerStates of different threads (often allocated back to back) off each other's lines.
+ * The padding lives in superclasses because the JVM lays out superclass fields first but may
+ * reorder the fields within a class.
+ */
+public final class SamplerState extends SamplerStateFields {
+
+	// 8 * 8 == size of cache line
+	long q0, q1, q2, q3, q4, q5, q6, q7;
+
+	public SamplerState(int tid) {
+		long s = (System.nanoTime() ^ 0x9E3779B97F4A7C15L) + 0xBF58476D1CE4E5B9L * (tid + 1);
+		this.seed = (s == 0) ? 0x2545F4914F6CDD1DL : s;
+	}
+
+	// xorshift64: one step of the per-thread generator.
+	public long next() {
+		long x = seed;
+		x ^= x << 13;
+		x ^= x >>> 7;
+		x ^= x << 17;
+		seed = x;
+		return x;
+	}
+}
+
+abstract class SamplerStatePad {
+	// 8 * 8 == size of cache line. pi fills the gap after a compressed header, where the JVM
+	// would otherwise place a small subclass field.
+	int pi;
+	long p0, p1, p2, p3, p4, p5, p6, p7;
+}
+
+abstract class SamplerStateFields extends SamplerStatePad {
+
+	// cursor into permu for the permutation based policies.
+	public int cursor;
+
+	// this thread's private permutation, for count/thread sampling.
+	public boolean[] permu;
+
+	// xorshift state for the randomized policies. Never zero.
+	public long seed;
+
+	// remaining accesses to skip before the next sample (geometric policy).
+	public int skip;
+
+	// set by a tool's fast path when it already decided to sample the current access but
+	// falls back to the slow path, so access() does not draw a second decision.
+	public boolean pending;
+}
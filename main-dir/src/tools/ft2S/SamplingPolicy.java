@@ -0,0 +1,160 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import acme.util.Assert;
+import acme.util.Util;
+
+/**
+ * Decides, for each access seen by a sampling FastTrack tool, whether the access is checked.
+ *
+ * A policy is built once when the tool is initialized, from the sampling command line options, so
+ * the per-access decision is a single virtual call that touches only the calling thread's
+ * SamplerState and (for the adaptive policies) the variable's own counters. No policy takes a
+ * lock on the access path.
+ *
+ * Schemes:
+ * <ul>
+ * <li>count -- fixed-rate sampling from a 100-entry permutation with samplingrate true entries.
+ * Type 0 draws each access independently (see BernoulliSamplingPolicy), type 1 shares one
+ * permutation cursor between all threads, and type 2 gives every thread its own permutation.
+ * <li>adaptive -- per variable bursts of burstlen accesses whose sampling rate decays after each
+ * burst, either per variable (burstLvl=global) or per variable per thread (burstLvl=thread).
+ * <li>geometric -- samples at samplingrate% by drawing the gap to the next sample from a
+ * geometric distribution, so unsampled accesses only decrement a counter.
+ * <li>bernoulli -- samples each access independently at samplingrate% using a per-thread
+ * xorshift generator.
+ * </ul>
+ */
+public abstract class SamplingPolicy {
+
+	public static final int PERMUTATION_LENGTH = 100;
+
+	/**
+	 * Returns true if the access by thread tid to sx should be checked. Called only by the
+	 * accessing thread, and ts is that thread's SamplerState.
+	 */
+	public abstract boolean sample(SamplerState ts, FTSVarState sx, int tid);
+
+	/**
+	 * Called once for each new thread before it performs any accesses.
+	 */
+	public void initThread(SamplerState ts, int tid) {
+	}
+
+	/**
+	 * Called once for each new variable state before it is published.
+	 */
+	public void initVar(FTSVarState sx) {
+	}
+
+	/**
+	 * Returns an array of len booleans, exactly tees of which are true, in random order.
+	 */
+	public static boolean[] arrayPermute(int len, int tees) {
+		List<Boolean> dummy = new ArrayList<Boolean>();
+		for (int i = 0; i < tees; i++)
+			dummy.add(true);
+		for (int i = 0; i < (len - tees); i++)
+			dummy.add(false);
+		Collections.shuffle(dummy);
+		boolean[] temp = new boolean[len];
+		for (int i = 0; i < len; ++i)
+			temp[i] = dummy.get(i).booleanValue();
+		return temp;
+	}
+
+	public static SamplingPolicy make(String scheme, int type, int rate, String burstLevel,
+			int burstLen, int minSampling, int decRate, int maxTid) {
+		final SamplingPolicy policy;
+		if (scheme.equals("count")) {
+			switch (type) {
+				case 0:
+					policy = new BernoulliSamplingPolicy(rate);
+					break;
+				case 1:
+					policy = new CountGlobalSamplingPolicy(rate);
+					break;
+				default:
+					policy = new CountThreadSamplingPolicy(rate);
+					break;
+			}
+		} else if (scheme.equals("adaptive")) {
+			Assert.assertTrue(burstLen > 0, "adaptive sampling needs -burstlen > 0");
+			Assert.assertTrue(decRate > 0, "adaptive sampling needs -decRate > 0");
+			boolean[][] levels = (type == 0) ? linearLevels(burstLen, minSampling, decRate)
+					: exponentialLevels(burstLen, minSampling, decRate);
+			if (burstLevel.equals("global")) {
+				policy = new AdaptiveGlobalSamplingPolicy(levels, burstLen);
+			} else {
+				policy = new AdaptiveThreadSamplingPolicy(levels, burstLen, maxTid);
+			}
+		} else if (scheme.equals("geometric")) {
+			policy = new GeometricSamplingPolicy(rate);
+		} else if (scheme.equals("bernoulli")) {
+			policy = new BernoulliSamplingPolicy(rate);
+		} else {
+			Assert.fail("Unknown sampling scheme '%s'", scheme);
+			return null;
+		}
+		Util.log("Sampling policy: " + policy);
+		return policy;
+	}
+
+	// level i samples burstLen - i * decRate accesses out of each burst.
+	private static boolean[][] linearLevels(int burstLen, int minSamp, int decRate) {
+		final int n = (burstLen - minSamp) / decRate + 1;
+		final boolean[][] levels = new boolean[n][];
+		for (int i = 0; i < n; ++i)
+			levels[i] = arrayPermute(burstLen, burstLen - decRate * i);
+		return levels;
+	}
+
+	// level i samples burstLen / decRate^i accesses out of each burst.
+	private static boolean[][] exponentialLevels(int burstLen, int minSamp, int decRate) {
+		int n = 0;
+		for (int dummy = burstLen; dummy >= minSamp && dummy > 0; dummy /= decRate)
+			n++;
+		final boolean[][] levels = new boolean[Math.max(n, 1)][];
+		int dummy = burstLen;
+		for (int i = 0; i < levels.length; ++i) {
+			levels[i] = arrayPermute(burstLen, dummy);
+			dummy /= decRate;
+		}
+		return levels;
+	}
+}
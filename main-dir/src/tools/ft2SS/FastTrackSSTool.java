@@ -35,6 +35,8 @@ import java.lang.*;
 import java.util.*;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
 import acme.util.Assert;
 import acme.util.Util;
 import acme.util.count.AggregateCounter;
@@ -69,6 +71,7 @@ import rr.event.VolatileAccessEvent;
 import rr.event.WaitEvent;
 import rr.instrument.classes.ArrayAllocSiteTracker;
 
+import rr.meta.AccessSiteSampler;
 import rr.meta.ArrayAccessInfo;
 import rr.meta.ClassInfo;
 import rr.meta.FieldInfo;
@@ -82,7 +85,9 @@ import rr.state.ShadowVar;
 import rr.state.ShadowVolatile;
 import rr.tool.RR;
 import rr.tool.Tool;
+import tools.util.AccessSite;
 import tools.util.Epoch;
+import tools.util.RacePairAggregator;
 import tools.util.VectorClock;
 /*
  * A revised FastTrack Tool. This makes several improvements over the original: - Simpler
@@ -100,10 +105,10 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
 
     private static final boolean COUNT_OPERATIONS = RRMain.slowMode();
     private static final int INIT_VECTOR_CLOCK_SIZE = 4;
-    private static final Object printLock = new Object();
+    // distinct race pairs, written to -racePairFile by fini()
+    private final RacePairAggregator racePairSummary = new RacePairAggregator();
 
     /**--------------------*/
-    public static boolean setFlag; private static final Object setFlagLock = new Object();
     public static final CommandLineOption<String> racePair = CommandLine
             .makeString("racepair", "input", CommandLineOption.Kind.EXPERIMENTAL, "takes the race pairs as input");
     public static final CommandLineOption<Integer> maxSleeps = CommandLine
@@ -112,16 +117,15 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
             .makeInteger("maxTimeOut", 20, CommandLineOption.Kind.EXPERIMENTAL, "takes the max number of sleeps");
     public static final CommandLineOption<Integer> initialSleeps = CommandLine
             .makeInteger("maxContSleeps", 3, CommandLineOption.Kind.EXPERIMENTAL, "takes the max number of sleeps");
+    public static final CommandLineOption<Integer> maxDelay = CommandLine
+            .makeInteger("maxDelay", 1000, CommandLineOption.Kind.EXPERIMENTAL, "upper bound in ms on a single perturbation delay");
 
-    Random coinToss = new Random();
     public static int maxsleep;
     public static int maxTout;
     public static int contSleeps;
-    public static ArrayList<Queue<FTLockState>> threadLockQueue;
-    public static HashMap<String, Integer> locatnAccessCount = new HashMap<>();
-    public static HashMap<String, Boolean> locatnAccessBool = new HashMap<>();
-    public static HashMap<String, String> racePairMap = new HashMap<>();
-    public static HashMap<String, Boolean> racePairsDetect= new HashMap<>();
+    public static int maxDelayMs;
+    // the -racepair input, built in init(); see RacePairIndex.
+    public static RacePairIndex racePairs = RacePairIndex.empty();
     /**--------------------*/
     public final ErrorMessage<FieldInfo> fieldErrors = ErrorMessages
             .makeFieldErrorMessage("FastTrack");
@@ -151,11 +155,12 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
     /** exact functioning of this stuff*/
     public FastTrackSSTool(final String name, final Tool next, CommandLine commandLine) {
         super(name, next, commandLine);
+        commandLine.add(RacePairAggregator.racePairFile);
         commandLine.add(racePair);
         commandLine.add(maxSleeps);
         commandLine.add(maxTimeOut);
         commandLine.add(initialSleeps);
-        setFlag = true;
+        commandLine.add(maxDelay);
         new BarrierMonitor<FTBarrierState>(this, new DefaultValue<Object, FTBarrierState>() {
             public FTBarrierState get(Object k) {
                 return new FTBarrierState(k, INIT_VECTOR_CLOCK_SIZE);
@@ -163,12 +168,43 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
         });
     }
 
+    @Override
+    public void init() {
+        try {
+            racePairs = RacePairIndex.load(racePair.get());
+        } catch (FileNotFoundException ex) {
+            Assert.warn("Could not read race pairs from %s", racePair.get());
+        }
+        contSleeps = initialSleeps.get().intValue();
+        maxTout = maxTimeOut.get().intValue();
+        maxsleep = maxSleeps.get().intValue();
+        maxDelayMs = maxDelay.get().intValue();
+    }
+
+    private static long delayNanos(int ms) {
+        return TimeUnit.MILLISECONDS.toNanos(Math.min(ms, maxDelayMs));
+    }
+
+    @Override
+    public void fini() {
+        racePairSummary.write(RacePairAggregator.racePairFile.get());
+        for (RacePairSite a : racePairs.sites()) {
+            final int waits = a.waits.get();
+            if (waits > 0) {
+                final int wakeUps = a.wakeUps.get();
+                Util.logf("Race pair %s -> %s: %d delays, %d wake-ups (%.1f%% hit), %.1f ms delayed",
+                        a, a.getPartner(), waits, wakeUps, 100.0 * wakeUps / waits,
+                        a.waitNanos.get() / 1e6);
+            }
+        }
+    }
+
     /*
      * Shadow State: St.E -- epoch decoration on ShadowThread - Thread-local. Never access from a
      * different thread St.V -- VectorClock decoration on ShadowThread - Thread-local while thread
      * is running. - The thread starting t may access st.V before the start. - Any thread joining on
      * t may read st.V after the join. Sm.V -- FTLockState decoration on ShadowLock - See
-     * FTLockState for synchronization rules. Sx.R,Sx.W,Sx.V -- FTVarState objects - See FTVarState
+     * FTLockState for synchronization rules. Sx.R,Sx.W,Sx.V -- FTSVarState objects - See FTSVarState
      * for synchronization rules. Svx.V -- FTVolatileState decoration on ShadowVolatile (serves same
      * purpose as L for volatiles) - See FTVolatileState for synchronization rules. Sb.V --
      * FTBarrierState decoration on Barriers - See FTBarrierState for synchronization rules.
@@ -253,59 +289,15 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
             return super.makeShadowVar(event);
         } else {
             /**----------------------------------*/
-            FTVarState temp = new FTVarState(event.isWrite(), ts_get_E(event.getThread()));
-            temp.initLoctnInfo(RR.maxTidOption.get().intValue());
+            FTSVarState temp = new FTSVarState(event.isWrite(), ts_get_E(event.getThread()));
             /**----------------------------------*/
             return temp;
         }
     }
 
-    public String getFileLineOffset(String inp){
-        int index = inp.lastIndexOf('(');
-        int strLength = inp.length();
-        String ansSubStr = inp.substring(index);
-        return ansSubStr;
-    }
-
     @Override
     public void create(NewThreadEvent event) {
         final ShadowThread st = event.getThread();
-        // creating the datastructures when the first thread is created
-        if(setFlag){
-            synchronized (setFlagLock){
-                if(setFlag){
-                    Scanner inFile1;
-                    try {
-                        //reading the race pairs
-                        int templen = RR.maxTidOption.get().intValue();
-                        System.out.println(templen);
-                        threadLockQueue = new ArrayList<Queue<FTLockState>>(templen);;
-
-                        inFile1 = new Scanner(new File(racePair.get()));
-                        List<String> tokens = new ArrayList<String>();
-                        while (inFile1.hasNext()) {
-                            tokens.add(inFile1.nextLine());
-                        }
-                        String[] temp = tokens.toArray(new String[0]);
-                        for(int i=0;i<temp.length/2;++i){
-                            String A = getFileLineOffset(temp[2*i]);
-                            String B = getFileLineOffset(temp[2*i+1]);
-                            locatnAccessCount.put(A,new Integer(0));
-                            locatnAccessBool.put(B,new Boolean("true"));
-                            racePairMap.put(A,B);
-                            racePairsDetect.put(A,new Boolean("true"));
-                            racePairsDetect.put(B,new Boolean("true"));
-                        }
-                        contSleeps = initialSleeps.get().intValue();
-                        maxTout = maxTimeOut.get().intValue();
-                        maxsleep = maxSleeps.get().intValue();
-                    }catch (FileNotFoundException ex) {
-                        System.out.println("There is a problem in File reading");
-                    }
-                    setFlag = false;
-                }
-            }
-        }
         if (ts_get_V(st) == null) {
             final int tid = st.getTid();
             final VectorClock tV = new VectorClock(INIT_VECTOR_CLOCK_SIZE);
@@ -351,17 +343,17 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
     }
 
 
-    static FTVarState ts_get_badVarState(ShadowThread st) {
+    static FTSVarState ts_get_badVarState(ShadowThread st) {
         Assert.panic("Bad");
         return null;
     }
 
-    static void ts_set_badVarState(ShadowThread st, FTVarState v) {
+    static void ts_set_badVarState(ShadowThread st, FTSVarState v) {
         Assert.panic("Bad");
     }
 
     protected static ShadowVar getOriginalOrBad(ShadowVar original, ShadowThread st) {
-        final FTVarState savedState = ts_get_badVarState(st);
+        final FTSVarState savedState = ts_get_badVarState(st);
         if (savedState != null) {
             ts_set_badVarState(st, null);
             return savedState;
@@ -369,59 +361,33 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
             return original;
         }
     }
-    public String getKeyStr(SourceLocation sl){
-        String dummy = sl.getFile();
-        String fileStr = dummy.substring(dummy.lastIndexOf('/') + 1);
-        String A = "("+fileStr+"):"+sl.getLine()+":"+sl.getOffset();
-        return A;
-    }
     @Override
     public void access(final AccessEvent event) {
-        SourceLocation sl = event.getAccessInfo().getLoc();
-        String A = getKeyStr(sl);
-        // if it is arace pair location
-        if(racePairsDetect.containsKey(A)){
-            if(locatnAccessBool.containsKey(A))
-                locatnAccessBool.put(A,new Boolean("false"));
-            //if B type the just change the flag
+        final RacePairSite rp = racePairs.isEmpty() ? null : racePairs.get(AccessSite.make(event));
+        // if it is a race pair location
+        if(rp != null){
+            //if B type then wake any thread waiting for it
+            if(rp.isB())
+                rp.arrive();
             else{
                 // if A then follow the pseudo code of assignment
-                int accessTillNow = locatnAccessCount.get(A).intValue()+1;
-                int tout = 2; int totalTout = 2;
-                String B = racePairMap.get(A);
-                int currMaxTout = maxTout;
-                locatnAccessBool.put(B,new Boolean("true"));
+                // (delays is read and written separately, so concurrent A-side
+                // accesses may undercount; that only allows an extra delay)
+                int accessTillNow = rp.delays.get()+1;
                 if(accessTillNow<=contSleeps){
-                    currMaxTout *= accessTillNow;
-                    while(totalTout<currMaxTout && locatnAccessBool.get(B).booleanValue()){
-                        try{ Thread.sleep(tout);}
-                        catch(InterruptedException e){ System.out.println("sleep error"); e.printStackTrace();}
-                        tout*=2;
-                        totalTout += tout;
-                    }
-                    locatnAccessCount.put(A,new Integer(accessTillNow));
+                    rp.awaitPartner(delayNanos(maxTout * accessTillNow));
+                    rp.delays.set(accessTillNow);
                 }
-                else if(accessTillNow<=maxsleep && coinToss.nextBoolean()){
-                    while(totalTout<currMaxTout && locatnAccessBool.get(B).booleanValue()){
-                        try{ Thread.sleep(tout);}
-                        catch(InterruptedException e){ System.out.println("sleep error"); e.printStackTrace();}
-                        tout*=2;
-                        totalTout += tout;
-                    }
-                    locatnAccessCount.put(A,new Integer(accessTillNow));
+                else if(accessTillNow<=maxsleep && ThreadLocalRandom.current().nextBoolean()){
+                    rp.awaitPartner(delayNanos(maxTout));
+                    rp.delays.set(accessTillNow);
                 }
             }
             //default part not added
-            int line = sl.getLine();
-            int offset = sl.getOffset();
-            MethodInfo methInfo = sl.getMethod();
-            String methName = methInfo.getName();
-            ClassInfo className = methInfo.getOwner();
-            String desc = methInfo.getDescriptor();
             final ShadowThread st = event.getThread();
             final ShadowVar shadow = getOriginalOrBad(event.getOriginalShadow(), st);
-            if (shadow instanceof FTVarState) {
-                FTVarState sx = (FTVarState) shadow;
+            if (shadow instanceof FTSVarState) {
+                FTSVarState sx = (FTSVarState) shadow;
 
                 Object target = event.getTarget();
                 if (target == null) {
@@ -502,11 +468,11 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
                 wait, vol, other);
     }
 
-    protected void read(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+    protected void read(final AccessEvent event, final ShadowThread st, final FTSVarState sx) {
         final int/* epoch */ e = ts_get_E(st);
 
         // Getting the current location
-        SourceLocation sl = event.getAccessInfo().getLoc();
+        final int site = AccessSite.make(event);
         final int tid = st.getTid();
 
         /* optional */ {
@@ -514,12 +480,12 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
             if (r == e) {
                 if (COUNT_OPERATIONS)
                     readSameEpoch.inc(st.getTid());
-                sx.prevReads[tid] = sl;
+                sx.setReadSite(tid, site);
                 return;
             } else if (r == Epoch.READ_SHARED && sx.get(st.getTid()) == e) {
                 if (COUNT_OPERATIONS)
                     readSharedSameEpoch.inc(st.getTid());
-                sx.prevReads[tid] = sl;
+                sx.setReadSite(tid, site);
                 return;
             }
         }
@@ -532,8 +498,8 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
             if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
                 if (COUNT_OPERATIONS)
                     writeReadError.inc(tid);
-                error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid, sl, sx.prevWrite);
-                sx.prevReads[tid] = sl;
+                error(event, sx, "Write-Read Race", "Write by ", wTid, "Read by ", tid, site, sx.writeSite);
+                sx.setReadSite(tid, site);
                 return;
             }
 
@@ -547,7 +513,7 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
                     if (COUNT_OPERATIONS)
                         readShare.inc(tid);
                     int initSize = Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE);
-                    sx.makeCV(initSize);
+                    sx.makeShared(initSize, rTid, tid);
                     sx.set(rTid, r);
                     sx.set(tid, e);
                     sx.R = Epoch.READ_SHARED;
@@ -557,23 +523,23 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
                     readShared.inc(tid);
                 sx.set(tid, e);
             }
-            sx.prevReads[tid] = sl;
+            sx.setReadSite(tid, site);
         }
     }
 
 
 
-    protected void write(final AccessEvent event, final ShadowThread st, final FTVarState sx) {
+    protected void write(final AccessEvent event, final ShadowThread st, final FTSVarState sx) {
         final int/* epoch */ e = ts_get_E(st);
         // Getting the current location
-        SourceLocation sl = event.getAccessInfo().getLoc();
+        final int site = AccessSite.make(event);
 
         /* optional */ {
             final int/* epoch */ w = sx.W;
             if (w == e) {
                 if (COUNT_OPERATIONS)
                     writeSameEpoch.inc(st.getTid());
-                sx.prevWrite = sl;
+                sx.writeSite = site;
                 return;
             }
         }
@@ -587,7 +553,7 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
             if (wTid != tid /* optimization */ && !Epoch.leq(w, tV.get(wTid))) {
                 if (COUNT_OPERATIONS)
                     writeWriteError.inc(tid);
-                error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid, sl, sx.prevWrite);
+                error(event, sx, "Write-Write Race", "Write by ", wTid, "Write by ", tid, site, sx.writeSite);
             }
 
             final int/* epoch */ r = sx.R;
@@ -596,7 +562,7 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
                 if (rTid != tid /* optimization */ && !Epoch.leq(r, tV.get(rTid))) {
                     if (COUNT_OPERATIONS)
                         readWriteError.inc(tid);
-                    error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid, sl, sx.prevReads[rTid]);
+                    error(event, sx, "Read-Write Race", "Read by ", rTid, "Write by ", tid, site, sx.getReadSite(rTid));
                 } else {
                     if (COUNT_OPERATIONS)
                         writeExclusive.inc(tid);
@@ -606,7 +572,7 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
                     for (int prevReader = sx.nextGt(tV, 0); prevReader > -1; prevReader = sx
                             .nextGt(tV, prevReader + 1)) {
                         error(event, sx, "Read(Shared)-Write Race", "Read by ", prevReader,
-                                "Write by ", tid, sl, sx.prevReads[prevReader]);
+                                "Write by ", tid, site, sx.getReadSite(prevReader));
                     }
                     if (COUNT_OPERATIONS)
                         sharedWriteError.inc(tid);
@@ -616,7 +582,7 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
                 }
             }
             sx.W = e;
-            sx.prevWrite = sl;
+            sx.writeSite = site;
         }
     }
 
@@ -775,21 +741,25 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
         for (ShadowThread td : ShadowThread.getThreads()) {
             xml.print("thread", toString(td));
         }
+        for (RacePairSite a : racePairs.sites()) {
+            if (a.waits.get() > 0) {
+                xml.printInsideScope("racePairDelay", "a", a, "b", a.getPartner(), "delays",
+                        a.waits.get(), "wakeUps", a.wakeUps.get(), "nanos", a.waitNanos.get());
+            }
+        }
     }
 
-    protected void error(final AccessEvent ae, final FTVarState x, final String description,
-                         final String prevOp, final int prevTid, final String curOp, final int curTid, SourceLocation end, SourceLocation start) {
+    protected void error(final AccessEvent ae, final FTSVarState x, final String description,
+                         final String prevOp, final int prevTid, final String curOp, final int curTid, int end, int start) {
 
+        AccessSiteSampler.race(ae.getAccessInfo());
         if (ae instanceof FieldAccessEvent) {
             fieldError((FieldAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         } else {
             arrayError((ArrayAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
             arrayError((ArrayAccessEvent) ae, x, description, prevOp, prevTid, curOp, curTid);
         }
-        synchronized (printLock){
-            System.out.print("#---#" + start.toString() + "\n");
-            System.out.print("#---#" + end.toString() + "\n");
-        }
+        racePairSummary.add(end, curTid, start, prevTid, Epoch.clock(ts_get_E(ae.getThread())));
         // String A = getKeyStr(start); String B = getKeyStr(end);
         // if(racePairMap.containsKey(A)){
         //     if(racePairMap.get(A)==B){
@@ -805,7 +775,7 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
         // }
     }
 
-    protected void arrayError(final ArrayAccessEvent aae, final FTVarState sx,
+    protected void arrayError(final ArrayAccessEvent aae, final FTSVarState sx,
                               final String description, final String prevOp, final int prevTid, final String curOp,
                               final int curTid) {
         final ShadowThread st = aae.getThread();
@@ -828,7 +798,7 @@ public class FastTrackSSTool extends Tool implements BarrierListener<FTBarrierSt
         }
     }
 
-    protected void fieldError(final FieldAccessEvent fae, final FTVarState sx,
+    protected void fieldError(final FieldAccessEvent fae, final FTSVarState sx,
                               final String description, final String prevOp, final int prevTid, final String curOp,
                               final int curTid) {
         final FieldInfo fd = fae.getInfo().getField();
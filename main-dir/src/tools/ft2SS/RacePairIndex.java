@@ -0,0 +1,201 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import rr.meta.SourceLocation;
+import tools.util.AccessSite;
+
+/**
+ * The -racepair input of FT2SS, compiled into a table indexed by AccessSite.
+ *
+ * The input is read once, into a map from location key to RacePairSite. Access infos are
+ * created lazily as classes are instrumented, so a site is matched against the map the first
+ * time it is accessed, and the result (including "not a candidate") is cached in bySite. After
+ * that, looking up a site is one array read.
+ *
+ * byKey is not changed after load. bySite entries are only ever set to the same value by
+ * racing resolvers, and the array is replaced under the lock when it grows, so a lost store
+ * only means a site is resolved again.
+ */
+public final class RacePairIndex {
+
+	private static final RacePairSite NOT_CANDIDATE = new RacePairSite("");
+
+	private final Map<String, RacePairSite> byKey;
+	private volatile RacePairSite[] bySite = new RacePairSite[256];
+
+	private RacePairIndex(Map<String, RacePairSite> byKey) {
+		this.byKey = byKey;
+	}
+
+	public static RacePairIndex empty() {
+		return new RacePairIndex(new HashMap<String, RacePairSite>());
+	}
+
+	/**
+	 * Reads either a RacePairAggregator CSV summary, taking first as A and second as B, or
+	 * pairs of lines A, B, each ending with a location printed by SourceLocation.toString().
+	 */
+	public static RacePairIndex load(String fileName) throws FileNotFoundException {
+		final Map<String, RacePairSite> byKey = new HashMap<String, RacePairSite>();
+		final Scanner in = new Scanner(new File(fileName));
+		try {
+			final boolean csv = in.hasNextLine() && in.findInLine("first,second,") != null;
+			if (csv) {
+				in.nextLine();
+			}
+			while (in.hasNextLine()) {
+				final String a, b;
+				if (csv) {
+					final String[] row = splitCSV(in.nextLine());
+					if (row.length < 2) {
+						continue;
+					}
+					a = row[0];
+					b = row[1];
+				} else {
+					a = in.nextLine();
+					if (!in.hasNextLine()) {
+						break;
+					}
+					b = in.nextLine();
+				}
+				final RacePairSite siteA = intern(byKey, keyOfLine(a));
+				final RacePairSite siteB = intern(byKey, keyOfLine(b));
+				siteA.partner = siteB;
+				siteB.isB = true;
+			}
+		} finally {
+			in.close();
+		}
+		return new RacePairIndex(byKey);
+	}
+
+	// splits one line of CSV with optionally quoted fields.
+	static String[] splitCSV(String line) {
+		final List<String> fields = new ArrayList<String>();
+		final StringBuilder f = new StringBuilder();
+		boolean quoted = false;
+		for (int i = 0; i < line.length(); i++) {
+			final char c = line.charAt(i);
+			if (quoted) {
+				if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					f.append('"');
+					i++;
+				} else if (c == '"') {
+					quoted = false;
+				} else {
+					f.append(c);
+				}
+			} else if (c == '"') {
+				quoted = true;
+			} else if (c == ',') {
+				fields.add(f.toString());
+				f.setLength(0);
+			} else {
+				f.append(c);
+			}
+		}
+		fields.add(f.toString());
+		return fields.toArray(new String[0]);
+	}
+
+	private static RacePairSite intern(Map<String, RacePairSite> byKey, String key) {
+		RacePairSite s = byKey.get(key);
+		if (s == null) {
+			s = new RacePairSite(key);
+			byKey.put(key, s);
+		}
+		return s;
+	}
+
+	static String keyOfLine(String line) {
+		final int i = line.lastIndexOf('(');
+		return i < 0 ? line : line.substring(i);
+	}
+
+	public static String key(SourceLocation sl) {
+		final String file = sl.getFile();
+		return "(" + file.substring(file.lastIndexOf('/') + 1) + "):" + sl.getLine() + ":" + sl.getOffset();
+	}
+
+	public boolean isEmpty() {
+		return byKey.isEmpty();
+	}
+
+	public int size() {
+		return byKey.size();
+	}
+
+	public Iterable<RacePairSite> sites() {
+		return byKey.values();
+	}
+
+	/**
+	 * Returns the RacePairSite for site, or null if the site is not in the input.
+	 */
+	public RacePairSite get(int site) {
+		final RacePairSite[] a = bySite;
+		if (site < a.length) {
+			final RacePairSite s = a[site];
+			if (s != null) {
+				return s == NOT_CANDIDATE ? null : s;
+			}
+		}
+		return resolve(site);
+	}
+
+	private RacePairSite resolve(int site) {
+		final SourceLocation loc = AccessSite.loc(site);
+		final RacePairSite s = loc == null ? null : byKey.get(key(loc));
+		synchronized (this) {
+			RacePairSite[] a = bySite;
+			if (site >= a.length) {
+				final RacePairSite[] b = new RacePairSite[Math.max(site + 1, a.length * 2)];
+				System.arraycopy(a, 0, b, 0, a.length);
+				a = b;
+			}
+			a[site] = s == null ? NOT_CANDIDATE : s;
+			bySite = a;
+		}
+		return s;
+	}
+}
@@ -0,0 +1,131 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.fasttrack;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * One access site named in the -racepair input of FT2SS. A site may be the A side of a pair
+ * (the access to delay), the B side (the access the delay waits for), or both, in which case it
+ * acts as a B side.
+ *
+ * A delayed A-side thread parks on its partner until the partner is reached or the delay runs
+ * out. Waiters enqueue themselves before reading arrivals, and arrive() bumps arrivals before
+ * draining the queue, so a B-side access after the A side started waiting always wakes it, and
+ * B-side accesses with nobody waiting cost one isEmpty() check.
+ */
+public final class RacePairSite {
+
+	// "(File.java):line:offset", as produced by RacePairIndex.key.
+	public final String key;
+
+	// the B side this A side waits for; null if this site is never an A side.
+	// Set while the index is loaded, before it is published.
+	RacePairSite partner;
+
+	// true if some pair names this site as its B side.
+	boolean isB;
+
+	// B side: threads parked in awaitPartner, and the number of accesses that released them.
+	private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<Thread>();
+	private final AtomicInteger arrivals = new AtomicInteger();
+
+	// A side: how many times an access here has been delayed.
+	public final AtomicInteger delays = new AtomicInteger();
+
+	// A side: delays, delays ended by the partner, and total time spent delayed.
+	public final AtomicInteger waits = new AtomicInteger();
+	public final AtomicInteger wakeUps = new AtomicInteger();
+	public final AtomicLong waitNanos = new AtomicLong();
+
+	RacePairSite(String key) {
+		this.key = key;
+	}
+
+	public RacePairSite getPartner() {
+		return partner;
+	}
+
+	public boolean isB() {
+		return isB;
+	}
+
+	/**
+	 * B side: the site was reached. Wakes every thread waiting for it.
+	 */
+	public void arrive() {
+		if (!waiters.isEmpty()) {
+			arrivals.incrementAndGet();
+			Thread t;
+			while ((t = waiters.poll()) != null) {
+				LockSupport.unpark(t);
+			}
+		}
+	}
+
+	/**
+	 * A side: blocks until the partner is reached or maxNanos have passed. Returns true if the
+	 * partner was reached. Returns early, with the interrupt status still set, if the thread
+	 * is interrupted.
+	 */
+	public boolean awaitPartner(long maxNanos) {
+		final RacePairSite b = partner;
+		final Thread me = Thread.currentThread();
+		b.waiters.add(me);
+		final int seen = b.arrivals.get();
+		final long start = System.nanoTime();
+		long left = maxNanos;
+		while (b.arrivals.get() == seen && left > 0 && !me.isInterrupted()) {
+			LockSupport.parkNanos(b, left);
+			left = maxNanos - (System.nanoTime() - start);
+		}
+		final boolean hit = b.arrivals.get() != seen;
+		if (!hit) {
+			b.waiters.remove(me);
+		}
+		waits.incrementAndGet();
+		if (hit) {
+			wakeUps.incrementAndGet();
+		}
+		waitNanos.addAndGet(System.nanoTime() - start);
+		return hit;
+	}
+
+	@Override
+	public String toString() {
+		return key;
+	}
+}
@@ -0,0 +1,482 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.offline;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+import acme.util.Assert;
+import acme.util.Util;
+import rr.event.AccessEvent;
+import rr.replay.LogRecord;
+import rr.replay.LogReader;
+import rr.tool.RR;
+import tools.fasttrack.FTVarState;
+import tools.util.Epoch;
+import tools.util.VectorClock;
+
+/**
+ * FastTrack over a recorded replay log (-tool=LOG), using every core:
+ *
+ * <pre>
+ *   java -cp classes tools.offline.OfflineFastTrack events.rrlog [threads]
+ * </pre>
+ *
+ * Once the synchronization order is fixed, the FastTrack rules for one memory location only
+ * need the clock of the accessing thread at each access, so the log is processed in two stages.
+ *
+ * The reading thread replays the synchronization events (acquire, release, wait, start, join,
+ * volatile accesses and barriers) on thread, lock and volatile vector clocks as FastTrackTool
+ * does. Each non-volatile access is appended to the shard for its location (an object and a
+ * field, or an array and an index), with a snapshot of the thread's vector clock. A snapshot is
+ * shared by all of the thread's accesses until its clock changes.
+ *
+ * Every WINDOW accesses, the shards are checked in parallel on a ForkJoinPool, each with its own
+ * FTVarStates and FastTrackTool's read and write rules. One window is checked while the reader
+ * fills the next, and a window only starts once the previous one is done, so every location
+ * sees its accesses in log order.
+ *
+ * Races are counted by kind and by the access site that found them. Class initialization edges
+ * are not modeled, so accesses ordered only by class initialization may be reported.
+ */
+public class OfflineFastTrack {
+
+	// accesses per window.
+	private static final int WINDOW = 1 << 20;
+
+	private static final int INIT_VECTOR_CLOCK_SIZE = 4;
+
+	private static final AccessEvent.Kind[] KINDS = AccessEvent.Kind.values();
+
+	private static final String[] RACES = { "Write-Read Race", "Write-Write Race",
+			"Read-Write Race", "Read(Shared)-Write Race" };
+
+	private final LogReader in;
+	private final ForkJoinPool pool;
+	private final int shardCount;
+
+	// per string key: 0 = not seen yet, 1 = read, 2 = write; and the field id for field accesses.
+	private byte[] keyKind;
+	private int[] keyField;
+	private final Map<String, Integer> fields = new HashMap<String, Integer>();
+
+	// indexed by the log's thread and object ids.
+	private VectorClock[] threads = new VectorClock[16];
+	private VectorClock[] locks = new VectorClock[1024];
+	private final Map<Long, VectorClock> volatiles = new HashMap<Long, VectorClock>();
+	private final Map<Integer, Barrier> barriers = new HashMap<Integer, Barrier>();
+
+	// index of each thread's current snapshot in window.snaps, or -1 after its clock changes.
+	private int[] snapshots = new int[16];
+
+	private long events;
+	private long accesses;
+	private long syncOps;
+
+	private final Shard[] shards;
+	private Window window;
+	private ForkJoinTask<?> checking;
+
+	/** Threads at a barrier: the join of the arrivals' clocks since the last release. */
+	private static final class Barrier {
+		VectorClock entering = new VectorClock(0);
+		VectorClock released = new VectorClock(0);
+		int arrived;
+	}
+
+	/** The accesses of one window, split by shard. */
+	private final class Window {
+		final List<VectorClock> snaps = new ArrayList<VectorClock>();
+		final int[][] data = new int[shardCount][];
+		final int[] size = new int[shardCount];
+		int count;
+
+		// 5 ints per access: object, field or index, tid, snapshot, key (complemented for writes).
+		void add(int shard, int obj, int loc, int tid, int snap, int key) {
+			int[] d = data[shard];
+			final int n = size[shard];
+			if (d == null) {
+				d = data[shard] = new int[5 * 64];
+			} else if (n + 5 > d.length) {
+				d = data[shard] = Arrays.copyOf(d, d.length * 2);
+			}
+			d[n] = obj;
+			d[n + 1] = loc;
+			d[n + 2] = tid;
+			d[n + 3] = snap;
+			d[n + 4] = key;
+			size[shard] = n + 5;
+			count++;
+		}
+	}
+
+	/** The FastTrack state of the locations in one shard. Only one task uses it at a time. */
+	private static final class Shard {
+		final Map<Long, FTVarState> vars = new HashMap<Long, FTVarState>();
+		final long[] races = new long[RACES.length];
+		final Map<Integer, Long> raceSites = new HashMap<Integer, Long>();
+
+		void check(List<VectorClock> snaps, int[] d, int n) {
+			for (int i = 0; i < n; i += 5) {
+				final long loc = ((long) d[i] << 32) | (d[i + 1] & 0xFFFFFFFFL);
+				final int tid = d[i + 2];
+				final VectorClock tV = snaps.get(d[i + 3]);
+				final int key = d[i + 4];
+				final int/* epoch */ e = tV.get(tid);
+				final FTVarState sx = vars.get(loc);
+				if (sx == null) {
+					vars.put(loc, new FTVarState(key < 0, e));
+				} else if (key < 0) {
+					write(sx, tid, tV, e, ~key);
+				} else {
+					read(sx, tid, tV, e, key);
+				}
+			}
+		}
+
+		private void race(int kind, int key) {
+			races[kind]++;
+			final Long c = raceSites.get(key);
+			raceSites.put(key, c == null ? 1 : c + 1);
+		}
+
+		// FastTrackTool.read, without locking.
+		private void read(FTVarState sx, int tid, VectorClock tV, int/* epoch */ e, int key) {
+			final int/* epoch */ r = sx.R;
+			if (r == e || (r == Epoch.READ_SHARED && sx.get(tid) == e)) {
+				return;
+			}
+			final int/* epoch */ w = sx.W;
+			final int wTid = Epoch.tid(w);
+			if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+				race(0, key);
+				return;
+			}
+			if (r != Epoch.READ_SHARED) {
+				final int rTid = Epoch.tid(r);
+				if (rTid == tid || Epoch.leq(r, tV.get(rTid))) {
+					sx.R = e;
+				} else {
+					sx.makeCV(Math.max(Math.max(rTid, tid), INIT_VECTOR_CLOCK_SIZE));
+					sx.set(rTid, r);
+					sx.set(tid, e);
+					sx.R = Epoch.READ_SHARED;
+				}
+			} else {
+				sx.set(tid, e);
+			}
+		}
+
+		// FastTrackTool.write, without locking.
+		private void write(FTVarState sx, int tid, VectorClock tV, int/* epoch */ e, int key) {
+			final int/* epoch */ w = sx.W;
+			if (w == e) {
+				return;
+			}
+			final int wTid = Epoch.tid(w);
+			if (wTid != tid && !Epoch.leq(w, tV.get(wTid))) {
+				race(1, key);
+			}
+			final int/* epoch */ r = sx.R;
+			if (r != Epoch.READ_SHARED) {
+				final int rTid = Epoch.tid(r);
+				if (rTid != tid && !Epoch.leq(r, tV.get(rTid))) {
+					race(2, key);
+				}
+			} else if (sx.anyGt(tV)) {
+				race(3, key);
+			}
+			sx.W = e;
+		}
+	}
+
+	public OfflineFastTrack(LogReader in, int parallelism) {
+		this.in = in;
+		this.pool = new ForkJoinPool(parallelism);
+		this.shardCount = parallelism * 8;
+		this.shards = new Shard[shardCount];
+		for (int i = 0; i < shardCount; i++) {
+			shards[i] = new Shard();
+		}
+		keyKind = new byte[in.stringCount()];
+		keyField = new int[in.stringCount()];
+		Arrays.fill(snapshots, -1);
+		window = new Window();
+	}
+
+	/******************************************************************/
+
+	private VectorClock thread(int tid) {
+		if (tid >= threads.length) {
+			Assert.assertTrue(tid <= Epoch.MAX_TID, "Thread id %d is above maxTid", tid);
+			final int n = Math.max(tid + 1, threads.length * 2);
+			threads = Arrays.copyOf(threads, n);
+			final int old = snapshots.length;
+			snapshots = Arrays.copyOf(snapshots, n);
+			Arrays.fill(snapshots, old, n, -1);
+		}
+		VectorClock v = threads[tid];
+		if (v == null) {
+			v = threads[tid] = new VectorClock(INIT_VECTOR_CLOCK_SIZE);
+			v.tick(tid);
+		}
+		return v;
+	}
+
+	private void tick(int tid) {
+		thread(tid).tick(tid);
+		snapshots[tid] = -1;
+	}
+
+	private VectorClock lock(int obj) {
+		if (obj >= locks.length) {
+			locks = Arrays.copyOf(locks, Math.max(obj + 1, locks.length * 2));
+		}
+		VectorClock l = locks[obj];
+		if (l == null) {
+			l = locks[obj] = new VectorClock(INIT_VECTOR_CLOCK_SIZE);
+		}
+		return l;
+	}
+
+	private void acquire(int tid, VectorClock from) {
+		thread(tid).max(from);
+		snapshots[tid] = -1;
+	}
+
+	private void release(int tid, VectorClock into) {
+		into.max(thread(tid));
+		tick(tid);
+	}
+
+	private void classify(int key) {
+		if (key >= keyKind.length) {
+			keyKind = Arrays.copyOf(keyKind, Math.max(key + 1, keyKind.length * 2));
+			keyField = Arrays.copyOf(keyField, keyKind.length);
+		}
+		if (keyKind[key] == 0) {
+			// wr_<field>@<loc> or rd_<field>@<loc>; see MetaDataInfoKeys.
+			final String s = in.string(key);
+			keyKind[key] = (byte) (s.startsWith("wr") ? 2 : 1);
+			final String field = s.substring(3, Math.max(3, s.lastIndexOf('@')));
+			Integer f = fields.get(field);
+			if (f == null) {
+				f = fields.size();
+				fields.put(field, f);
+			}
+			keyField[key] = f;
+		}
+	}
+
+	private void access(LogRecord r) {
+		classify(r.key);
+		final boolean isWrite = keyKind[r.key] == 2;
+		final AccessEvent.Kind kind = KINDS[r.a];
+		if (kind == AccessEvent.Kind.VOLATILE) {
+			syncOps++;
+			final long loc = ((long) r.b << 32) | keyField[r.key];
+			VectorClock v = volatiles.get(loc);
+			if (v == null) {
+				v = new VectorClock(INIT_VECTOR_CLOCK_SIZE);
+				volatiles.put(loc, v);
+			}
+			if (isWrite) {
+				release(r.thread, v);
+			} else {
+				acquire(r.thread, v);
+			}
+			return;
+		}
+
+		accesses++;
+		final VectorClock tV = thread(r.thread);
+		int snap = snapshots[r.thread];
+		if (snap < 0) {
+			snap = snapshots[r.thread] = window.snaps.size();
+			window.snaps.add(new VectorClock(tV));
+		}
+		final int loc = kind == AccessEvent.Kind.ARRAY ? r.c : keyField[r.key];
+		final int h = (r.b * 0x9E3779B1) ^ (loc * 0x85EBCA6B);
+		final int shard = ((h ^ (h >>> 16)) & 0x7FFFFFFF) % shardCount;
+		window.add(shard, r.b, loc, r.thread, snap, isWrite ? ~r.key : r.key);
+		if (window.count >= WINDOW) {
+			flush();
+		}
+	}
+
+	private void barrier(LogRecord r, boolean pre) {
+		Barrier b = barriers.get(r.b);
+		if (b == null) {
+			b = new Barrier();
+			barriers.put(r.b, b);
+		}
+		if (pre) {
+			b.entering.max(thread(r.thread));
+			if (++b.arrived == r.c) {
+				b.released = b.entering;
+				b.entering = new VectorClock(0);
+				b.arrived = 0;
+			}
+		} else {
+			acquire(r.thread, b.released);
+			tick(r.thread);
+		}
+	}
+
+	// check the current window once the previous one is done, and start a new one.
+	private void flush() {
+		final Window w = window;
+		window = new Window();
+		Arrays.fill(snapshots, -1);
+		if (checking != null) {
+			checking.join();
+		}
+		checking = pool.submit(new RecursiveAction() {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void compute() {
+				final List<RecursiveAction> tasks = new ArrayList<RecursiveAction>();
+				for (int i = 0; i < shardCount; i++) {
+					final int shard = i;
+					if (w.size[shard] > 0) {
+						tasks.add(new RecursiveAction() {
+							private static final long serialVersionUID = 1L;
+
+							@Override
+							protected void compute() {
+								shards[shard].check(w.snaps, w.data[shard], w.size[shard]);
+							}
+						});
+					}
+				}
+				invokeAll(tasks);
+			}
+		});
+	}
+
+	/******************************************************************/
+
+	public void run() throws Exception {
+		final long start = System.currentTimeMillis();
+		final LogRecord r = new LogRecord();
+		while (in.next(r)) {
+			events++;
+			switch (r.event()) {
+				case CREATE:
+					thread(r.thread);
+					break;
+				case ACCESS:
+					access(r);
+					break;
+				case ACQUIRE:
+				case POSTWAIT:
+					syncOps++;
+					acquire(r.thread, lock(r.b));
+					break;
+				case RELEASE:
+				case PREWAIT:
+					syncOps++;
+					release(r.thread, lock(r.b));
+					break;
+				case PRESTART:
+					syncOps++;
+					thread(r.b);
+					acquire(r.b, thread(r.thread));
+					tick(r.thread);
+					break;
+				case POSTJOIN:
+					syncOps++;
+					acquire(r.thread, thread(r.b));
+					tick(r.b);
+					break;
+				case PREBARRIER:
+					syncOps++;
+					barrier(r, true);
+					break;
+				case POSTBARRIER:
+					syncOps++;
+					barrier(r, false);
+					break;
+				default:
+					break;
+			}
+		}
+		flush();
+		checking.join();
+		pool.shutdown();
+		final long time = System.currentTimeMillis() - start;
+
+		final long[] races = new long[RACES.length];
+		final Map<String, Long> bySite = new TreeMap<String, Long>();
+		for (Shard s : shards) {
+			for (int i = 0; i < races.length; i++) {
+				races[i] += s.races[i];
+			}
+			for (Map.Entry<Integer, Long> e : s.raceSites.entrySet()) {
+				final String site = in.string(e.getKey());
+				final Long c = bySite.get(site);
+				bySite.put(site, c == null ? e.getValue() : c + e.getValue());
+			}
+		}
+		Util.logf("Offline FastTrack: %,d events, %,d accesses, %,d sync ops, %d shards, %,d ms",
+				events, accesses, syncOps, shardCount, time);
+		for (int i = 0; i < RACES.length; i++) {
+			Util.logf("  %-24s %,d", RACES[i], races[i]);
+		}
+		Util.logf("  %,d racing access sites:", bySite.size());
+		for (Map.Entry<String, Long> e : bySite.entrySet()) {
+			Util.logf("    %s  %,d", e.getKey(), e.getValue());
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length < 1 || args.length > 2) {
+			Assert.fail("Usage: OfflineFastTrack <replay log> [threads]");
+		}
+		final LogReader in = LogReader.open(new File(args[0]));
+		// Epoch sizes its tid field from maxTid when it is loaded.
+		RR.maxTidOption.set(Math.max(in.maxThreadId() + 1, RR.maxTidOption.get()));
+		final int threads = args.length > 1 ? Integer.parseInt(args[1])
+				: Runtime.getRuntime().availableProcessors();
+		new OfflineFastTrack(in, threads).run();
+	}
+}
@@ -0,0 +1,81 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.util;
+
+import rr.event.AccessEvent;
+import rr.meta.AccessInfo;
+import rr.meta.ArrayAccessInfo;
+import rr.meta.MetaDataInfoMaps;
+import rr.meta.SourceLocation;
+
+/*
+ * Access sites encoded as ints, so shadow state can remember where an
+ * access happened without holding a SourceLocation reference.
+ *
+ * A site is the id of the FieldAccessInfo or ArrayAccessInfo for the access,
+ * shifted left one bit, with the low bit set for array accesses.  The
+ * MetaDataInfoMaps already intern those infos, so no extra table is needed
+ * to map a site back to its location.
+ */
+
+public final class AccessSite {
+
+	public static final int NONE = -1;
+
+	public static final int make(AccessInfo info) {
+		return info instanceof ArrayAccessInfo ? (info.getId() << 1) | 1 : info.getId() << 1;
+	}
+
+	public static final int make(AccessEvent event) {
+		return make(event.getAccessInfo());
+	}
+
+	public static final boolean isArray(int site) {
+		return (site & 1) != 0;
+	}
+
+	public static final AccessInfo info(int site) {
+		if (site == NONE) return null;
+		final int id = site >>> 1;
+		return isArray(site) ? MetaDataInfoMaps.getArrayAccesses().get(id) : MetaDataInfoMaps.getFieldAccesses().get(id);
+	}
+
+	public static final SourceLocation loc(int site) {
+		final AccessInfo info = info(site);
+		return info == null ? null : info.getLoc();
+	}
+
+	public static String toString(int site) {
+		return site == NONE ? "?" : String.valueOf(loc(site));
+	}
+}
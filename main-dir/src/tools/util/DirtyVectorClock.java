@@ -0,0 +1,216 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.util;
+
+/**
+ * A VectorClock for locks that remembers which entries changed at which release, so that an
+ * acquire only merges the entries that changed since the acquiring thread last joined this
+ * clock.
+ *
+ * Each release that raises at least one entry bumps a version number and stamps the raised
+ * entries with it. Raised entries move to the front of a linked list, so the list is ordered by
+ * stamp, most recent first. For every thread tid the clock also records the version it last joined
+ * into that thread's clock. An acquire walks the list until it reaches entries the thread has
+ * already seen; re-acquiring a lock nobody else has released since is O(1). If many releases
+ * happened in between, the acquire falls back to VectorClock.max. A release still
+ * compares every entry, as VectorClock.max does.
+ *
+ * Threads are identified by tid and by their ShadowThread (or any other object that is unique
+ * per thread), since a tid can be reused by a later thread with a smaller clock.
+ *
+ * All updates must go through releaseFrom/acquireInto: the inherited mutators (max, copy, tick,
+ * set) do not maintain the change stamps. The client is responsible for providing
+ * synchronization, which is normally the lock itself.
+ */
+public class DirtyVectorClock extends VectorClock {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] NONE = new int[0];
+	private static final Object[] NO_THREADS = new Object[0];
+
+	// bumped by each release that changes at least one entry.
+	private int version;
+
+	// changedAt[i]: version of the last release that raised entry i, or 0 if it never changed.
+	private int[] changedAt = NONE;
+
+	// entries that have ever changed, most recently changed first: head, next[head], ...
+	private int head = -1;
+	private int[] next = NONE;
+	private int[] prev = NONE;
+
+	// seen[tid]: version last joined into the clock of thread seenBy[tid].
+	private int[] seen = NONE;
+	private Object[] seenBy = NO_THREADS;
+
+	public DirtyVectorClock(int size) {
+		super(size);
+	}
+
+	// requires: exclusive access to this and tV
+	public void releaseFrom(VectorClock tV, Object thread, int tid) {
+		final int/* epoch */[] src = tV.values;
+		final int n = src.length;
+		grow(n);
+		final int/* epoch */[] dst = this.values;
+		final boolean sawAll = hasSeen(thread, tid, version);
+		final int v = version + 1;
+		boolean changed = false;
+		for (int i = 0; i < n; i++) {
+			if (!Epoch.leq(src[i], dst[i])) {
+				dst[i] = src[i];
+				changedAt[i] = v;
+				moveToFront(i);
+				changed = true;
+			}
+		}
+		if (changed) {
+			version = v;
+		}
+		// the releaser holds this clock joined with its own, if it had seen everything before.
+		if (sawAll) {
+			markSeen(thread, tid);
+		}
+	}
+
+	// requires: exclusive access to this and tV
+	public void acquireInto(VectorClock tV, Object thread, int tid) {
+		if (tid < seen.length && seenBy[tid] == thread) {
+			final int since = seen[tid];
+			if (since == version) {
+				return;
+			}
+			final int/* epoch */[] src = this.values;
+			if (version - since > src.length / 2) {
+				// many releases since: probably most entries changed, and the unrolled max
+				// beats walking the list.
+				tV.max(this);
+				markSeen(thread, tid);
+				return;
+			}
+			int/* epoch */[] dst = tV.values;
+			for (int i = head; i >= 0 && changedAt[i] > since; i = next[i]) {
+				if (i >= dst.length) {
+					tV.set(i, src[i]);
+					dst = tV.values;
+				} else if (!Epoch.leq(src[i], dst[i])) {
+					dst[i] = src[i];
+				}
+			}
+		} else {
+			tV.max(this);
+		}
+		markSeen(thread, tid);
+	}
+
+	// true if thread has already joined every release into this clock, so an acquire would not
+	// change its clock.
+	// requires: exclusive access to this
+	public boolean isCurrentFor(Object thread, int tid) {
+		return hasSeen(thread, tid, version);
+	}
+
+	private void moveToFront(int i) {
+		if (i == head) {
+			return;
+		}
+		// unlink, if already in the list
+		final int p = prev[i];
+		if (p >= 0) {
+			final int nx = next[i];
+			next[p] = nx;
+			if (nx >= 0) {
+				prev[nx] = p;
+			}
+		}
+		prev[i] = -1;
+		next[i] = head;
+		if (head >= 0) {
+			prev[head] = i;
+		}
+		head = i;
+	}
+
+	private boolean hasSeen(Object thread, int tid, int v) {
+		return tid < seen.length && seenBy[tid] == thread && seen[tid] == v;
+	}
+
+	private void markSeen(Object thread, int tid) {
+		if (tid >= seen.length) {
+			final int len = Math.max(tid + 1, seen.length * 2);
+			final int[] s = new int[len];
+			final Object[] sb = new Object[len];
+			System.arraycopy(seen, 0, s, 0, seen.length);
+			System.arraycopy(seenBy, 0, sb, 0, seenBy.length);
+			seen = s;
+			seenBy = sb;
+		}
+		seen[tid] = version;
+		seenBy[tid] = thread;
+	}
+
+	// requires: exclusive access to this
+	private void grow(int len) {
+		final int/* epoch */[] cur = values;
+		if (cur.length < len) {
+			final int/* epoch */[] b = new int/* epoch */[len];
+			System.arraycopy(cur, 0, b, 0, cur.length);
+			for (int i = cur.length; i < len; i++) {
+				b[i] = Epoch.make(i, 0);
+			}
+			values = b;
+		}
+		final int old = changedAt.length;
+		if (old < len) {
+			final int[] c = new int[len];
+			final int[] nx = new int[len];
+			final int[] pv = new int[len];
+			System.arraycopy(changedAt, 0, c, 0, old);
+			System.arraycopy(next, 0, nx, 0, old);
+			System.arraycopy(prev, 0, pv, 0, old);
+			for (int i = old; i < len; i++) {
+				nx[i] = -1;
+				pv[i] = -1;
+			}
+			changedAt = c;
+			next = nx;
+			prev = pv;
+		}
+	}
+
+	// requires: exclusive access to this
+	public int getVersion() {
+		return version;
+	}
+}
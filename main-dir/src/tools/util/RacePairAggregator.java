@@ -0,0 +1,184 @@
+/******************************************************************************
+ *
+ * Copyright (c) 2016, Cormac Flanagan (University of California, Santa Cruz) and Stephen Freund
+ * (Williams College)
+ *
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted
+ * provided that the following conditions are met:
+ *
+ * Redistributions of source code must retain the above copyright notice, this list of conditions
+ * and the following disclaimer.
+ *
+ * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ * and the following disclaimer in the documentation and/or other materials provided with the
+ * distribution.
+ *
+ * Neither the names of the University of California, Santa Cruz and Williams College nor the names
+ * of its contributors may be used to endorse or promote products derived from this software without
+ * specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR
+ * IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND
+ * FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE) ARISING IN ANY
+ * WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ *
+ ******************************************************************************/
+
+package tools.util;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import acme.util.Assert;
+import acme.util.Util;
+import acme.util.option.CommandLine;
+import acme.util.option.CommandLineOption;
+
+/*
+ * Collects the distinct race pairs seen by a tool, replacing the "#---#" lines the
+ * race-pair tools used to print under a global lock.
+ *
+ * A pair is keyed by its two AccessSites in the order they were reported: first is the
+ * current access and second the earlier one it races with, which is how RacePairIndex reads
+ * them back as A and B.  A-B and B-A are therefore different pairs.  Reporting a known pair
+ * only bumps a LongAdder.  A new pair does one putIfAbsent.  At shutdown, pairs whose sites
+ * print as the same two source locations are merged, and the result is written as CSV, most
+ * frequent first:
+ *
+ *   first,second,count,first_tid,second_tid,first_clock
+ *
+ * first_tid/second_tid are the threads of the first report of the pair, and first_clock
+ * is the clock of the reporting access at that time.
+ */
+
+public final class RacePairAggregator {
+
+	public static final CommandLineOption<String> racePairFile = CommandLine.makeString("racePairFile",
+			"race-pairs.csv", CommandLineOption.Kind.EXPERIMENTAL,
+			"CSV file to which the distinct race pairs are written at shutdown.");
+
+	private static final class Pair {
+		final int first, second;
+		final int firstTid, secondTid;
+		final long clock;
+		final int order;
+		final LongAdder count = new LongAdder();
+
+		Pair(int first, int firstTid, int second, int secondTid, long clock, int order) {
+			this.first = first;
+			this.firstTid = firstTid;
+			this.second = second;
+			this.secondTid = secondTid;
+			this.clock = clock;
+			this.order = order;
+		}
+	}
+
+	private final ConcurrentHashMap<Long, Pair> pairs = new ConcurrentHashMap<Long, Pair>();
+	private final AtomicInteger nextOrder = new AtomicInteger();
+
+	/**
+	 * Record one race between the current access at siteA by tidA and the earlier access at
+	 * siteB by tidB, found by an access at the given clock.
+	 */
+	public void add(int siteA, int tidA, int siteB, int tidB, long clock) {
+		final Long key = (((long) siteA) << 32) | (siteB & 0xFFFFFFFFL);
+		Pair p = pairs.get(key);
+		if (p == null) {
+			final Pair q = new Pair(siteA, tidA, siteB, tidB, clock, nextOrder.getAndIncrement());
+			p = pairs.putIfAbsent(key, q);
+			if (p == null) {
+				p = q;
+			}
+		}
+		p.count.increment();
+	}
+
+	/** Number of distinct site pairs so far. */
+	public int size() {
+		return pairs.size();
+	}
+
+	private static final class Row {
+		final String first, second;
+		Pair earliest;
+		long count;
+
+		Row(String first, String second) {
+			this.first = first;
+			this.second = second;
+		}
+	}
+
+	/**
+	 * Merge pairs by source location and return them, most frequent first.
+	 */
+	private List<Row> rows() {
+		final Map<String, Row> byLoc = new HashMap<String, Row>();
+		for (Pair p : pairs.values()) {
+			final String a = AccessSite.toString(p.first);
+			final String b = AccessSite.toString(p.second);
+			final String key = a + "\n" + b;
+			Row r = byLoc.get(key);
+			if (r == null) {
+				r = new Row(a, b);
+				byLoc.put(key, r);
+			}
+			r.count += p.count.sum();
+			if (r.earliest == null || p.order < r.earliest.order) {
+				r.earliest = p;
+			}
+		}
+		final List<Row> rows = new ArrayList<Row>(byLoc.values());
+		Collections.sort(rows, new Comparator<Row>() {
+			public int compare(Row x, Row y) {
+				return x.count != y.count ? (x.count > y.count ? -1 : 1) : x.earliest.order - y.earliest.order;
+			}
+		});
+		return rows;
+	}
+
+	private static String csv(String s) {
+		return "\"" + s.replace("\"", "\"\"") + "\"";
+	}
+
+	/**
+	 * Write the summary to fileName.  Pairs may still be added concurrently; those may or may
+	 * not be included.
+	 */
+	public void write(String fileName) {
+		final List<Row> rows = rows();
+		try {
+			final PrintWriter out = new PrintWriter(new FileWriter(fileName));
+			try {
+				out.println("first,second,count,first_tid,second_tid,first_clock");
+				for (Row r : rows) {
+					final Pair p = r.earliest;
+					out.printf("%s,%s,%d,%d,%d,%d\n", csv(r.first), csv(r.second), r.count,
+							p.firstTid, p.secondTid, p.clock);
+				}
+			} finally {
+				out.close();
+			}
+			Util.logf("Wrote %d distinct race pairs to %s", rows.size(), fileName);
+		} catch (IOException e) {
+			Assert.warn("Could not write race pairs to %s: %s", fileName, e);
+		}
+	}
+}